@@ -0,0 +1,113 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ *
+ */
+package org.openimaj.audio.analysis;
+
+import java.util.Arrays;
+
+import edu.emory.mathcs.jtransforms.fft.FloatFFT_1D;
+
+/**
+ * 	A process-wide cache of 1D FFT plans keyed by transform size. Creating a
+ * 	{@link FloatFFT_1D} computes its bit-reversal and twiddle-factor tables,
+ * 	which for audio-sized windows costs more than the transform itself; as
+ * 	audio streams are processed in chunks of only a handful of distinct sizes,
+ * 	the plans are created once and shared.
+ * 	<p>
+ * 	A plan's tables are never modified after construction, so a single plan can
+ * 	be used by any number of threads at once. Looking up an existing plan does
+ * 	not allocate.
+ *
+ *	@author agent
+ */
+public final class FFTPlanCache
+{
+	/** A cached plan and its size */
+	private static final class Entry
+	{
+		final int size;
+		final FloatFFT_1D plan;
+
+		Entry( final int size, final FloatFFT_1D plan )
+		{
+			this.size = size;
+			this.plan = plan;
+		}
+	}
+
+	/** The cached plans; replaced (never modified) on update */
+	private static volatile Entry[] entries = new Entry[0];
+
+	private FFTPlanCache()
+	{
+	}
+
+	/**
+	 * 	Get the plan for a transform of the given size, creating it if it
+	 * 	has not been seen before.
+	 *
+	 *	@param size The number of (complex) samples in the transform
+	 *	@return The FFT plan
+	 */
+	public static FloatFFT_1D getPlan( final int size )
+	{
+		for( final Entry e : FFTPlanCache.entries )
+			if( e.size == size )
+				return e.plan;
+
+		return FFTPlanCache.createPlan( size );
+	}
+
+	private static synchronized FloatFFT_1D createPlan( final int size )
+	{
+		// Another thread may have created the plan while we waited
+		final Entry[] current = FFTPlanCache.entries;
+		for( final Entry e : current )
+			if( e.size == size )
+				return e.plan;
+
+		final FloatFFT_1D plan = new FloatFFT_1D( size );
+		final Entry[] updated = Arrays.copyOf( current, current.length + 1 );
+		updated[current.length] = new Entry( size, plan );
+		FFTPlanCache.entries = updated;
+
+		return plan;
+	}
+
+	/**
+	 * 	Remove all cached plans.
+	 */
+	public static synchronized void clear()
+	{
+		FFTPlanCache.entries = new Entry[0];
+	}
+}
@@ -32,6 +32,8 @@
  */
 package org.openimaj.audio.analysis;
 
+import java.util.Arrays;
+
 import org.openimaj.audio.AudioFormat;
 import org.openimaj.audio.AudioStream;
 import org.openimaj.audio.SampleChunk;
@@ -50,6 +52,14 @@ import edu.emory.mathcs.jtransforms.fft.FloatFFT_1D;
  * 	frequency domain array (such as that delivered by {@link #getLastFFT()})
  * 	and returns a {@link SampleChunk}. The format of the output sample chunk
  * 	is determined by the given audio format.
+ * 	<p>
+ * 	The FFT plans are shared through the {@link FFTPlanCache}, and the array
+ * 	returned by {@link #getLastFFT()} is reused by subsequent calls to
+ * 	{@link #process(SampleBuffer)} while the number of channels and the size
+ * 	of the transform stay the same, so processing a stream does not allocate
+ * 	in the steady state. Copy the array if it needs to outlive the next chunk.
+ * 	The magnitude methods have variants that fill a caller-supplied array for
+ * 	the same reason.
  *
  *  @author David Dupplaw (dpd@ecs.soton.ac.uk)
  *	@created 28 Oct 2011
@@ -114,27 +124,32 @@ public class FourierTransform extends AudioProcessor
 				this.nextPowerOf2( nSamplesPerChannel ) : nSamplesPerChannel;
 
 		// The Fourier transformer we're going to use
-		final FloatFFT_1D fft = new FloatFFT_1D( nSamplesPerChannel );
+		final FloatFFT_1D fft = FFTPlanCache.getPlan( nSamplesPerChannel );
+
+		// Reuse the output arrays unless their shape has changed.
+		// Twice the length to account for imaginary parts
+		if( this.lastFFT == null || this.lastFFT.length != nChannels ||
+				(nChannels > 0 && this.lastFFT[0].length != sizeOfFFT*2) )
+			this.lastFFT = new float[nChannels][sizeOfFFT*2];
 
 		// Creates an FFT for each of the channels in turn
-		this.lastFFT = new float[nChannels][];
 		for( int c = 0; c < nChannels; c++ )
 		{
-			// Twice the length to account for imaginary parts
-			this.lastFFT[c] = new float[ sizeOfFFT*2 ];
+			final float[] data = this.lastFFT[c];
+			Arrays.fill( data, 0 );
 
 			// Fill the array
 			for( int x = 0; x < nSamplesPerChannel; x++ )
-				this.lastFFT[c][x*2] = sb.get( x*nChannels+c ) * this.scalingFactor;
+				data[x*2] = sb.get( x*nChannels+c ) * this.scalingFactor;
 
 //			System.out.println( "FFT Input (channel "+c+"), length "+this.lastFFT[c].length+": " );
 //			System.out.println( Arrays.toString( this.lastFFT[c] ));
 
 			// Perform the FFT (using jTransforms)
-			fft.complexForward( this.lastFFT[c] );
+			fft.complexForward( data );
 
 			if( this.normalise )
-				this.normaliseReals( sizeOfFFT );
+				this.normaliseReals( data, sizeOfFFT );
 
 //			System.out.println( "FFT Output (channel "+c+"): " );
 //			System.out.println( Arrays.toString( this.lastFFT[c] ));
@@ -144,14 +159,14 @@ public class FourierTransform extends AudioProcessor
     }
 
 	/**
-	 * 	Divides the real parts of the last FFT by the given size
+	 * 	Divides the real parts of the given FFT data by the given size
+	 * 	@param data the FFT data of a single channel
 	 *	@param size the divisor
 	 */
-	private void normaliseReals( final int size )
+	private void normaliseReals( final float[] data, final int size )
 	{
-		for( int c = 0; c < this.lastFFT.length; c++ )
-			for( int i = 0; i < this.lastFFT[c].length; i +=2 )
-				this.lastFFT[c][i] /= size;
+		for( int i = 0; i < data.length; i +=2 )
+			data[i] /= size;
 	}
 
 	/**
@@ -190,7 +205,7 @@ public class FourierTransform extends AudioProcessor
 		final int nChannels = transformedData.length;
 
 		// The Fourier transformer we're going to use
-		final FloatFFT_1D fft = new FloatFFT_1D( transformedData[0].length/2 );
+		final FloatFFT_1D fft = FFTPlanCache.getPlan( transformedData[0].length/2 );
 
 		// Create a sample buffer to put the time domain data into
 		final SampleBuffer sb = SampleBufferFactory.createSampleBuffer( format,
@@ -229,10 +244,22 @@ public class FourierTransform extends AudioProcessor
 	 */
 	public float[][] getMagnitudes()
 	{
-		final float[][] mags = new float[this.lastFFT.length][];
+		return this.getMagnitudes( null );
+	}
+
+	/**
+	 * 	Computes the magnitudes of the last FFT data into the given array,
+	 * 	which is reused if it has the right shape (one row per channel of
+	 * 	length half the FFT size); otherwise a new array is returned.
+	 *
+	 *	@param out The array to fill (can be null)
+	 *	@return The magnitudes of the last FFT data.
+	 */
+	public float[][] getMagnitudes( final float[][] out )
+	{
+		final float[][] mags = this.prepareOutput( out );
 		for( int c = 0; c < this.lastFFT.length; c++ )
 		{
-			mags[c] = new float[ this.lastFFT[c].length/4 ];
 			for( int i = 0; i < this.lastFFT[c].length/4; i++ )
 			{
 				final float re = this.lastFFT[c][i*2];
@@ -254,10 +281,23 @@ public class FourierTransform extends AudioProcessor
 	 */
 	public float[][] getPowerMagnitudes()
 	{
-		final float[][] mags = new float[this.lastFFT.length][];
+		return this.getPowerMagnitudes( null );
+	}
+
+	/**
+	 * 	Computes the power magnitudes of the last FFT data into the given
+	 * 	array, which is reused if it has the right shape; otherwise a new
+	 * 	array is returned.
+	 *
+	 *	@param out The array to fill (can be null)
+	 *	@return The power magnitudes of the last FFT data.
+	 *	@see #getPowerMagnitudes()
+	 */
+	public float[][] getPowerMagnitudes( final float[][] out )
+	{
+		final float[][] mags = this.prepareOutput( out );
 		for( int c = 0; c < this.lastFFT.length; c++ )
 		{
-			mags[c] = new float[ this.lastFFT[c].length/4 ];
 			for( int i = 0; i < this.lastFFT[c].length/4; i++ )
 			{
 				final float re = this.lastFFT[c][i*2];
@@ -279,10 +319,24 @@ public class FourierTransform extends AudioProcessor
 	 */
 	public float[][] getNormalisedMagnitudes( final float scalar )
 	{
-		final float[][] mags = new float[this.lastFFT.length][];
+		return this.getNormalisedMagnitudes( scalar, null );
+	}
+
+	/**
+	 * 	Computes the normalised magnitudes of the last FFT data into the
+	 * 	given array, which is reused if it has the right shape; otherwise a
+	 * 	new array is returned.
+	 *
+	 *	@param scalar The scalar
+	 *	@param out The array to fill (can be null)
+	 *	@return Normalised magnitudes.
+	 *	@see #getNormalisedMagnitudes(float)
+	 */
+	public float[][] getNormalisedMagnitudes( final float scalar, final float[][] out )
+	{
+		final float[][] mags = this.prepareOutput( out );
 		for( int c = 0; c < this.lastFFT.length; c++ )
 		{
-			mags[c] = new float[ this.lastFFT[c].length/4 ];
 			for( int i = 0; i < this.lastFFT[c].length/4; i++ )
 			{
 				final float re = this.lastFFT[c][i*2] * scalar;
@@ -294,6 +348,24 @@ public class FourierTransform extends AudioProcessor
 		return mags;
 	}
 
+	/**
+	 * 	Returns the given array if it can hold the magnitudes of the last FFT
+	 * 	data, otherwise a new array of the right shape.
+	 *	@param out The candidate array (can be null)
+	 *	@return An array with a row of half the FFT length for each channel
+	 */
+	private float[][] prepareOutput( final float[][] out )
+	{
+		final int nChannels = this.lastFFT.length;
+		final int length = nChannels == 0 ? 0 : this.lastFFT[0].length/4;
+
+		if( out != null && out.length == nChannels &&
+				(nChannels == 0 || out[0].length == length) )
+			return out;
+
+		return new float[nChannels][length];
+	}
+
 	/**
 	 * 	Returns just the real numbers from the last FFT. The result will include
 	 * 	the symmetrical part.
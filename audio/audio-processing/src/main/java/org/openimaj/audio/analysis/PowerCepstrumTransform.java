@@ -52,11 +52,15 @@ public class PowerCepstrumTransform extends AudioProcessor
 	/** The last generated cepstrum */
 	private float[][] lastCepstrum = null;
 
+	/** The forward transform of the signal */
+	private final FourierTransform fft = new FourierTransform();
+
+	/** Workspace for the log-squared magnitudes */
+	private float[][] logMags = null;
+
 	@Override
     public SampleChunk process( final SampleChunk sample ) throws Exception
     {
-		final FourierTransform fft = new FourierTransform();
-		
 		//
 		// The squared magnitude of the Fourier transform of the logarithm 
 		// of the squared magnitude of the Fourier transform of a signal...
@@ -64,14 +68,17 @@ public class PowerCepstrumTransform extends AudioProcessor
 		// Working backwards...
 		// ... the FFT of a signal...
 		//
-		fft.process( sample );
-		final float[][] fftCoeffs = fft.getLastFFT();
+		this.fft.process( sample );
+		final float[][] fftCoeffs = this.fft.getLastFFT();
 		
 		// ...the logarithm of the squared magnitude...
-		final float logMags[][] = new float[fftCoeffs.length][];
+		if( this.logMags == null || this.logMags.length != fftCoeffs.length ||
+				(fftCoeffs.length > 0 && this.logMags[0].length != fftCoeffs[0].length/4) )
+			this.logMags = new float[fftCoeffs.length][fftCoeffs.length == 0 ? 0 : fftCoeffs[0].length/4];
+
+		final float logMags[][] = this.logMags;
 		for( int c = 0; c < fftCoeffs.length; c++ )
 		{
-			logMags[c] = new float[fftCoeffs[c].length/4];
 			for( int i = 0; i < fftCoeffs[c].length/4; i++ )
 			{
 				// Calculate magnitude
@@ -91,14 +98,15 @@ public class PowerCepstrumTransform extends AudioProcessor
 		}
 		
 		// ... the Fast Fourier (of the log-squared-mags)
-		this.lastCepstrum  = new float[ logMags.length ][];
-		final FloatFFT_1D fft2 = new FloatFFT_1D( logMags[0].length/4 );
+		if( this.lastCepstrum == null || this.lastCepstrum.length != logMags.length ||
+				(logMags.length > 0 && this.lastCepstrum[0].length != logMags[0].length/4) )
+			this.lastCepstrum = new float[ logMags.length ][ logMags.length == 0 ? 0 : logMags[0].length/4 ];
+
+		final FloatFFT_1D fft2 = FFTPlanCache.getPlan( logMags[0].length/4 );
 		for( int c = 0; c < logMags.length; c++ )
 		{
 			fft2.complexForward( logMags[c] );
 			
-			this.lastCepstrum[c] = new float[ logMags[c].length/4 ];
-			
 			// ...the squared magnitude of...
 			for( int i = 0; i < logMags[c].length/4; i++ )
 			{
@@ -118,7 +126,8 @@ public class PowerCepstrumTransform extends AudioProcessor
     }
 	
 	/**
-	 * 	Returns the last generated cepstrum
+	 * 	Returns the last generated cepstrum. The array is reused by the next
+	 * 	call to {@link #process(SampleChunk)} if the chunk size is unchanged.
 	 *	@return The last generated cepstrum
 	 */
 	public float[][] getLastCepstrum()
@@ -145,11 +145,33 @@ public class MelFilterBank
 	 *	@return The Mel frequency coefficients
 	 */
 	public float[][] process( final float[][] spectrum, final AudioFormat format )
+	{
+		return this.process( spectrum, format, null );
+	}
+
+	/**
+	 * 	Process the input power spectrum with this filter bank, writing the
+	 * 	Mel frequency coefficients into the given array. The array is reused
+	 * 	if it has a row of the right length for each channel of the spectrum;
+	 * 	otherwise a new array is created. Reusing the output in this way means
+	 * 	that filtering a stream of spectra does not allocate.
+	 *
+	 *	@param spectrum The power spectrum
+	 *	@param format The format of the original audio used to produce the
+	 *		spectrum
+	 *	@param output The array to write into (can be null)
+	 *	@return The Mel frequency coefficients
+	 *	@see #process(float[][], AudioFormat)
+	 */
+	public float[][] process( final float[][] spectrum, final AudioFormat format,
+			float[][] output )
 	{
 		// Make sure we've got some filters to apply
 		this.createFilterBank();
 
-		final float[][] output = new float[spectrum.length][this.filters.size()];
+		if( output == null || output.length != spectrum.length ||
+				(spectrum.length > 0 && output[0].length != this.filters.size()) )
+			output = new float[spectrum.length][this.filters.size()];
 
 		for( int c = 0; c < spectrum.length; c++ )
 			for( int i = 0; i < this.filters.size(); i++ )
@@ -0,0 +1,147 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ *
+ */
+package org.openimaj.audio;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.openimaj.audio.analysis.FFTPlanCache;
+import org.openimaj.audio.analysis.FourierTransform;
+import org.openimaj.audio.filters.MelFilterBank;
+import org.openimaj.audio.samples.FloatSampleBuffer;
+
+import edu.emory.mathcs.jtransforms.fft.FloatFFT_1D;
+
+/**
+ *	Tests for the {@link FourierTransform} and its use of the
+ *	{@link FFTPlanCache}.
+ *
+ *	@author agent
+ */
+public class FourierTransformTest
+{
+	private static FloatSampleBuffer randomBuffer( final int nSamples, final int nChannels,
+			final long seed )
+	{
+		final Random r = new Random( seed );
+		final float[] samples = new float[nSamples*nChannels];
+		for( int i = 0; i < samples.length; i++ )
+			samples[i] = r.nextFloat()*2 - 1;
+		return new FloatSampleBuffer( samples, new AudioFormat( 16, 44.1, nChannels ) );
+	}
+
+	/**
+	 * 	The transform of each channel matches a directly computed FFT,
+	 * 	and the output arrays are reused between chunks of the same size.
+	 */
+	@Test
+	public void testProcessReusesOutput()
+	{
+		final FourierTransform ft = new FourierTransform();
+		final int n = 512;
+
+		float[][] previous = null;
+		for( int chunk = 0; chunk < 3; chunk++ )
+		{
+			final FloatSampleBuffer sb = randomBuffer( n, 2, chunk );
+			ft.process( sb );
+			final float[][] fft = ft.getLastFFT();
+
+			if( previous != null )
+				assertSame( previous, fft );
+			previous = fft;
+
+			for( int c = 0; c < 2; c++ )
+			{
+				final float[] expected = new float[n*2];
+				for( int i = 0; i < n; i++ )
+					expected[i*2] = sb.get( i*2+c );
+				new FloatFFT_1D( n ).complexForward( expected );
+				for( int i = 0; i < expected.length; i += 2 )
+					expected[i] /= n;
+
+				assertArrayEquals( expected, fft[c], 1e-5f );
+			}
+		}
+
+		// A different size gets a new array
+		ft.process( randomBuffer( 256, 2, 42 ) );
+		assertNotSame( previous, ft.getLastFFT() );
+		assertEquals( 512, ft.getLastFFT()[0].length );
+	}
+
+	/**
+	 * 	Plans are shared for the same size.
+	 */
+	@Test
+	public void testPlanCache()
+	{
+		assertSame( FFTPlanCache.getPlan( 1024 ), FFTPlanCache.getPlan( 1024 ) );
+		assertNotSame( FFTPlanCache.getPlan( 1024 ), FFTPlanCache.getPlan( 1000 ) );
+	}
+
+	/**
+	 * 	The fill-in variants give the same values as the allocating ones,
+	 * 	and reuse the array they are given.
+	 */
+	@Test
+	public void testMagnitudesInto()
+	{
+		final FourierTransform ft = new FourierTransform();
+		ft.process( randomBuffer( 1024, 1, 7 ) );
+
+		final float[][] mags = ft.getMagnitudes();
+		final float[][] out = new float[1][512];
+		assertSame( out, ft.getMagnitudes( out ) );
+		assertArrayEquals( mags[0], out[0], 0f );
+
+		final float[][] power = ft.getPowerMagnitudes();
+		assertSame( out, ft.getPowerMagnitudes( out ) );
+		assertArrayEquals( power[0], out[0], 0f );
+
+		final MelFilterBank mfb = new MelFilterBank( 20, 300, 8000 );
+		final AudioFormat format = new AudioFormat( 16, 44.1, 1 );
+		final float[][] mel = mfb.process( power, format );
+		final float[][] melOut = new float[1][20];
+		assertSame( melOut, mfb.process( power, format, melOut ) );
+		assertArrayEquals( mel[0], melOut[0], 0f );
+
+		// the wrong shape gets replaced
+		assertNotSame( out, ft.getMagnitudes( new float[1][10] ) );
+	}
+}
@@ -0,0 +1,674 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.feature;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import org.apache.log4j.Logger;
+import org.openimaj.data.identity.Identifiable;
+import org.openimaj.io.IOUtils;
+import org.openimaj.io.ReadWriteableBinary;
+import org.openimaj.io.ReadableBinary;
+import org.openimaj.util.parallel.GlobalExecutorPool.DaemonThreadFactory;
+
+/**
+ * A wrapper for a feature extractor that caches the extracted features to a
+ * log-structured store on disk. Unlike the {@link DiskCachingFeatureExtractor},
+ * which creates one file per object, features are appended to a small number
+ * of large segment files, and an in-memory index maps the identifier of each
+ * object to the location of its feature. This makes the cache usable with
+ * very large numbers of objects without exhausting the file-system.
+ * <p>
+ * Segments are rolled over once they reach a maximum size. When a feature is
+ * regenerated (i.e. when the cache is constructed with the <code>force</code>
+ * flag set), the previous copy becomes garbage; segments that contain more
+ * than a given fraction of garbage are compacted in the background by copying
+ * their live records into the current segment and deleting the old file.
+ * Compaction can also be triggered manually with {@link #compact()}.
+ * <p>
+ * The index is rebuilt by scanning the segments when the cache is opened; any
+ * partially written record at the end of a segment (e.g. caused by a crash) is
+ * discarded. Each record is checksummed, and corrupt records are treated as
+ * cache misses.
+ * <p>
+ * Instances are safe to use from multiple threads. Reads are performed with
+ * positional reads and do not block each other or the writer. The cache should
+ * be {@link #close() closed} when it is no longer required.
+ * <p>
+ * Features implementing {@link ReadWriteableBinary} are stored using their
+ * binary form; all other features are serialised using
+ * {@link IOUtils#write(Object, java.io.DataOutput)}.
+ *
+ * @author agent
+ *
+ * @param <FEATURE>
+ *            Type of feature
+ * @param <OBJECT>
+ *            Type of object
+ */
+public class SegmentedDiskCachingFeatureExtractor<FEATURE, OBJECT extends Identifiable>
+		implements
+		FeatureExtractor<FEATURE, OBJECT>, Closeable
+{
+	private static Logger logger = Logger.getLogger(SegmentedDiskCachingFeatureExtractor.class);
+
+	/**
+	 * The default maximum size of a segment in bytes (256MB)
+	 */
+	public static final long DEFAULT_MAX_SEGMENT_SIZE = 256L * 1024L * 1024L;
+
+	/**
+	 * The default fraction of garbage in a segment above which it will be
+	 * compacted
+	 */
+	public static final double DEFAULT_COMPACTION_THRESHOLD = 0.5;
+
+	private static final String SEGMENT_PREFIX = "segment-";
+	private static final String SEGMENT_SUFFIX = ".dat";
+
+	private static final byte KRYO_RECORD = 0;
+	private static final byte BINARY_RECORD = 1;
+
+	/** size of the length and checksum fields preceding each record */
+	private static final int RECORD_HEADER_SIZE = 12;
+
+	private static final int MAX_READ_ATTEMPTS = 3;
+
+	private static class Segment {
+		final int number;
+		final File file;
+		volatile FileChannel channel;
+		volatile boolean deleted;
+		volatile long size;
+		final AtomicLong liveBytes = new AtomicLong();
+
+		Segment(int number, File file) throws IOException {
+			this.number = number;
+			this.file = file;
+			this.channel = new RandomAccessFile(file, "rw").getChannel();
+			this.size = channel.size();
+		}
+
+		/**
+		 * Re-open the channel if it was closed by an interrupted read (and the
+		 * segment hasn't actually been deleted).
+		 */
+		synchronized void reopen() throws IOException {
+			if (!deleted && !channel.isOpen())
+				channel = new RandomAccessFile(file, "rw").getChannel();
+		}
+
+		synchronized void delete() {
+			deleted = true;
+			try {
+				channel.close();
+			} catch (final IOException e) {
+				logger.warn("Error closing segment " + file, e);
+			}
+			if (!file.delete())
+				logger.warn("Unable to delete compacted segment " + file);
+		}
+
+		double garbageRatio() {
+			return size == 0 ? 0 : 1.0 - ((double) liveBytes.get() / (double) size);
+		}
+	}
+
+	private static class Location {
+		final Segment segment;
+		final long offset;
+		final int length;
+
+		Location(Segment segment, long offset, int length) {
+			this.segment = segment;
+			this.offset = offset;
+			this.length = length;
+		}
+	}
+
+	private final File cacheDir;
+	private final FeatureExtractor<FEATURE, OBJECT> extractor;
+	private final boolean force;
+	private final long maxSegmentSize;
+	private final double compactionThreshold;
+
+	private final ConcurrentHashMap<String, Location> index = new ConcurrentHashMap<String, Location>();
+	private final ConcurrentSkipListMap<Integer, Segment> segments = new ConcurrentSkipListMap<Integer, Segment>();
+	private final Object writeLock = new Object();
+	private volatile Segment active;
+	private volatile boolean closed;
+
+	private final ExecutorService compactor = Executors.newSingleThreadExecutor(new DaemonThreadFactory());
+	private final AtomicBoolean compactionPending = new AtomicBoolean();
+	private final Object compactionLock = new Object();
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong bytesRead = new AtomicLong();
+	private final AtomicLong bytesWritten = new AtomicLong();
+
+	/**
+	 * Construct the cache in the given directory using the default segment
+	 * size and compaction threshold. Any existing segments in the directory
+	 * will be indexed. The given extractor will be used to generate the
+	 * features.
+	 *
+	 * @param cacheDir
+	 *            the location of the cache
+	 * @param extractor
+	 *            the feature extractor
+	 * @throws IOException
+	 *             if the existing segments cannot be read
+	 */
+	public SegmentedDiskCachingFeatureExtractor(File cacheDir, FeatureExtractor<FEATURE, OBJECT> extractor)
+			throws IOException
+	{
+		this(cacheDir, extractor, false);
+	}
+
+	/**
+	 * Construct the cache in the given directory using the default segment
+	 * size and compaction threshold. Any existing segments in the directory
+	 * will be indexed. The given extractor will be used to generate the
+	 * features. Optionally, all features can be regenerated.
+	 *
+	 * @param cacheDir
+	 *            the location of the cache
+	 * @param extractor
+	 *            the feature extractor
+	 * @param force
+	 *            if true, then all features will be regenerated and saved,
+	 *            rather than being loaded.
+	 * @throws IOException
+	 *             if the existing segments cannot be read
+	 */
+	public SegmentedDiskCachingFeatureExtractor(File cacheDir, FeatureExtractor<FEATURE, OBJECT> extractor,
+			boolean force) throws IOException
+	{
+		this(cacheDir, extractor, force, DEFAULT_MAX_SEGMENT_SIZE, DEFAULT_COMPACTION_THRESHOLD);
+	}
+
+	/**
+	 * Construct the cache in the given directory. Any existing segments in the
+	 * directory will be indexed. The given extractor will be used to generate
+	 * the features. Optionally, all features can be regenerated.
+	 *
+	 * @param cacheDir
+	 *            the location of the cache
+	 * @param extractor
+	 *            the feature extractor
+	 * @param force
+	 *            if true, then all features will be regenerated and saved,
+	 *            rather than being loaded.
+	 * @param maxSegmentSize
+	 *            the size in bytes above which a new segment is started
+	 * @param compactionThreshold
+	 *            the fraction of garbage in a segment above which it will be
+	 *            compacted in the background
+	 * @throws IOException
+	 *             if the existing segments cannot be read
+	 */
+	public SegmentedDiskCachingFeatureExtractor(File cacheDir, FeatureExtractor<FEATURE, OBJECT> extractor,
+			boolean force, long maxSegmentSize, double compactionThreshold) throws IOException
+	{
+		this.cacheDir = cacheDir;
+		this.extractor = extractor;
+		this.force = force;
+		this.maxSegmentSize = maxSegmentSize;
+		this.compactionThreshold = compactionThreshold;
+
+		this.cacheDir.mkdirs();
+		openSegments();
+	}
+
+	@Override
+	public FEATURE extractFeature(OBJECT object) {
+		final String id = object.getID();
+
+		if (!force) {
+			final FEATURE feature = load(id);
+
+			if (feature != null) {
+				hits.incrementAndGet();
+				return feature;
+			}
+		}
+
+		misses.incrementAndGet();
+		final FEATURE feature = extractor.extractFeature(object);
+
+		try {
+			write(id, feature);
+		} catch (final IOException e) {
+			logger.warn("Caching of the feature for the " + id + " object was disabled", e);
+		}
+
+		return feature;
+	}
+
+	/**
+	 * Force any compaction of segments whose fraction of garbage exceeds the
+	 * compaction threshold. The current segment is never compacted. This is
+	 * performed automatically in the background, so there is normally no need
+	 * to call this method directly.
+	 *
+	 * @throws IOException
+	 *             if an error occurs copying the live records
+	 */
+	public void compact() throws IOException {
+		synchronized (compactionLock) {
+			final IdentityHashMap<Segment, Segment> candidates = new IdentityHashMap<Segment, Segment>();
+			for (final Segment s : segments.values()) {
+				if (s != active && s.garbageRatio() >= compactionThreshold)
+					candidates.put(s, s);
+			}
+
+			if (candidates.isEmpty())
+				return;
+
+			for (final Entry<String, Location> e : index.entrySet()) {
+				final Location loc = e.getValue();
+				if (!candidates.containsKey(loc.segment))
+					continue;
+
+				final ByteBuffer record = ByteBuffer.allocate(loc.length);
+				readFully(loc.segment.channel, record, loc.offset);
+				record.flip();
+
+				final Location newLoc = append(record);
+				if (index.replace(e.getKey(), loc, newLoc)) {
+					newLoc.segment.liveBytes.addAndGet(newLoc.length);
+					loc.segment.liveBytes.addAndGet(-loc.length);
+				}
+			}
+
+			for (final Segment s : candidates.keySet()) {
+				segments.remove(s.number);
+				s.delete();
+			}
+		}
+	}
+
+	/**
+	 * Close the cache, waiting for any background compaction to complete.
+	 */
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		compactor.shutdown();
+		try {
+			compactor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		synchronized (writeLock) {
+			for (final Segment s : segments.values()) {
+				if (s.channel.isOpen()) {
+					s.channel.force(false);
+					s.channel.close();
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the number of features in the cache
+	 */
+	public int size() {
+		return index.size();
+	}
+
+	/**
+	 * @return the number of segment files currently in use
+	 */
+	public int numSegments() {
+		return segments.size();
+	}
+
+	/**
+	 * @return the number of features that were read from the cache
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return the number of features that were generated by the underlying
+	 *         extractor
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * @return the fraction of requests that were served from the cache, or 0
+	 *         if no requests have been made
+	 */
+	public double getHitRate() {
+		final long h = hits.get();
+		final long total = h + misses.get();
+		return total == 0 ? 0 : (double) h / (double) total;
+	}
+
+	/**
+	 * @return the total number of bytes read from the segment files by cache
+	 *         hits
+	 */
+	public long getBytesRead() {
+		return bytesRead.get();
+	}
+
+	/**
+	 * @return the total number of bytes of newly generated features written to
+	 *         the segment files
+	 */
+	public long getBytesWritten() {
+		return bytesWritten.get();
+	}
+
+	@Override
+	public String toString() {
+		return this.extractor.toString();
+	}
+
+	private void openSegments() throws IOException {
+		final File[] files = cacheDir.listFiles(new FileFilter() {
+			@Override
+			public boolean accept(File f) {
+				return f.isFile() && segmentNumber(f) >= 0;
+			}
+		});
+
+		if (files == null)
+			throw new IOException("Unable to list the cache directory " + cacheDir);
+
+		Arrays.sort(files, new Comparator<File>() {
+			@Override
+			public int compare(File o1, File o2) {
+				return Integer.compare(segmentNumber(o1), segmentNumber(o2));
+			}
+		});
+
+		for (final File f : files) {
+			final Segment s = new Segment(segmentNumber(f), f);
+			segments.put(s.number, s);
+			scan(s);
+			active = s;
+		}
+
+		if (active == null || active.size >= maxSegmentSize)
+			active = newSegment();
+	}
+
+	/**
+	 * Get the number of a segment from its filename, or -1 if the file is not
+	 * a segment.
+	 */
+	private static int segmentNumber(File f) {
+		final String name = f.getName();
+		if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX)
+				|| name.length() <= SEGMENT_PREFIX.length() + SEGMENT_SUFFIX.length())
+			return -1;
+
+		final String number = name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length());
+		for (int i = 0; i < number.length(); i++) {
+			if (!Character.isDigit(number.charAt(i)))
+				return -1;
+		}
+
+		try {
+			return Integer.parseInt(number);
+		} catch (final NumberFormatException e) {
+			// too large
+			return -1;
+		}
+	}
+
+	private Segment newSegment() throws IOException {
+		final int number = segments.isEmpty() ? 0 : segments.lastKey() + 1;
+		final File file = new File(cacheDir, String.format("%s%08d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+		final Segment s = new Segment(number, file);
+		segments.put(number, s);
+		return s;
+	}
+
+	/**
+	 * Scan a segment, adding its records to the index. Any trailing partial or
+	 * corrupt data is truncated.
+	 */
+	private void scan(Segment s) throws IOException {
+		final ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+		final long fileSize = s.channel.size();
+		long offset = 0;
+
+		while (offset + RECORD_HEADER_SIZE <= fileSize) {
+			header.clear();
+			readFully(s.channel, header, offset);
+			header.flip();
+			final int length = header.getInt();
+			final long crc = header.getLong();
+
+			if (length < RECORD_HEADER_SIZE || offset + length > fileSize)
+				break;
+
+			final ByteBuffer record = ByteBuffer.allocate(length);
+			readFully(s.channel, record, offset);
+			if (checksum(record.array(), length) != crc)
+				break;
+
+			final String id = new DataInputStream(new ByteArrayInputStream(record.array(), RECORD_HEADER_SIZE,
+					length - RECORD_HEADER_SIZE)).readUTF();
+			final Location loc = new Location(s, offset, length);
+			s.liveBytes.addAndGet(length);
+			final Location old = index.put(id, loc);
+			if (old != null)
+				old.segment.liveBytes.addAndGet(-old.length);
+
+			offset += length;
+		}
+
+		if (offset != fileSize) {
+			logger.warn("Truncating " + (fileSize - offset) + " bytes of incomplete data from " + s.file);
+			s.channel.truncate(offset);
+		}
+		s.size = offset;
+	}
+
+	private static long checksum(byte[] record, int length) {
+		final CRC32 crc = new CRC32();
+		crc.update(record, RECORD_HEADER_SIZE, length - RECORD_HEADER_SIZE);
+		return crc.getValue();
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			final int n = channel.read(buffer, position);
+			if (n < 0)
+				throw new IOException("Unexpected end of segment");
+			position += n;
+		}
+	}
+
+	private void write(String id, FEATURE feature) throws IOException {
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		final DataOutputStream dos = new DataOutputStream(baos);
+		dos.writeInt(0);
+		dos.writeLong(0);
+		dos.writeUTF(id);
+
+		if (feature instanceof ReadWriteableBinary) {
+			dos.writeByte(BINARY_RECORD);
+			dos.writeUTF(feature.getClass().getName());
+			((ReadWriteableBinary) feature).writeBinary(dos);
+		} else {
+			dos.writeByte(KRYO_RECORD);
+			IOUtils.write(feature, dos);
+		}
+		dos.flush();
+
+		final byte[] bytes = baos.toByteArray();
+		final ByteBuffer record = ByteBuffer.wrap(bytes);
+		record.putInt(0, bytes.length);
+		record.putLong(4, checksum(bytes, bytes.length));
+
+		final Location loc = append(record);
+		loc.segment.liveBytes.addAndGet(loc.length);
+		bytesWritten.addAndGet(loc.length);
+
+		final Location old = index.put(id, loc);
+		if (old != null) {
+			old.segment.liveBytes.addAndGet(-old.length);
+
+			if (old.segment != active && old.segment.garbageRatio() >= compactionThreshold)
+				scheduleCompaction();
+		}
+	}
+
+	private Location append(ByteBuffer record) throws IOException {
+		final int length = record.remaining();
+
+		synchronized (writeLock) {
+			if (active.size > 0 && active.size + length > maxSegmentSize) {
+				active.channel.force(false);
+				active = newSegment();
+			}
+
+			final Segment s = active;
+			final long offset = s.size;
+			long position = offset;
+			while (record.hasRemaining())
+				position += s.channel.write(record, position);
+			s.size = position;
+
+			return new Location(s, offset, length);
+		}
+	}
+
+	private void scheduleCompaction() {
+		if (compactionPending.compareAndSet(false, true)) {
+			try {
+				compactor.execute(new Runnable() {
+					@Override
+					public void run() {
+						compactionPending.set(false);
+						try {
+							compact();
+						} catch (final IOException e) {
+							logger.warn("Error compacting the feature cache", e);
+						}
+					}
+				});
+			} catch (final RuntimeException e) {
+				// the cache has been closed
+				compactionPending.set(false);
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private FEATURE load(String id) {
+		for (int attempt = 0; attempt < MAX_READ_ATTEMPTS; attempt++) {
+			final Location loc = index.get(id);
+			if (loc == null)
+				return null;
+
+			final ByteBuffer record = ByteBuffer.allocate(loc.length);
+			try {
+				readFully(loc.segment.channel, record, loc.offset);
+			} catch (final ClosedChannelException e) {
+				// either the segment was compacted (in which case the index
+				// will have been updated) or the channel was closed by an
+				// interrupt; either way try again
+				if (closed)
+					return null;
+
+				try {
+					loc.segment.reopen();
+				} catch (final IOException e1) {
+					logger.warn("Error re-opening segment " + loc.segment.file, e1);
+				}
+				continue;
+			} catch (final IOException e) {
+				logger.warn("Error reading from cache. Feature will be regenerated.", e);
+				return null;
+			}
+			bytesRead.addAndGet(loc.length);
+
+			final byte[] bytes = record.array();
+			if (record.getLong(4) != checksum(bytes, loc.length)) {
+				logger.warn("Corrupt record in cache. Feature will be regenerated.");
+				return null;
+			}
+
+			try {
+				final DataInputStream dis = new DataInputStream(new ByteArrayInputStream(bytes, RECORD_HEADER_SIZE,
+						loc.length - RECORD_HEADER_SIZE));
+				dis.readUTF();
+
+				if (dis.readByte() == BINARY_RECORD) {
+					final ReadableBinary feature = IOUtils.<ReadableBinary> newInstance(dis.readUTF());
+					feature.readBinary(dis);
+					return (FEATURE) feature;
+				} else {
+					return IOUtils.<FEATURE> read(dis);
+				}
+			} catch (final Exception e) {
+				logger.warn("Error reading from cache. Feature will be regenerated.", e);
+				return null;
+			}
+		}
+
+		return null;
+	}
+}
@@ -0,0 +1,139 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.feature.local.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.openimaj.data.MappedByteDataSource;
+import org.openimaj.data.MappedDataWriter;
+import org.openimaj.data.MappedFloatDataSource;
+import org.openimaj.feature.ArrayFeatureVector;
+import org.openimaj.feature.local.LocalFeature;
+import org.openimaj.feature.local.list.LocalFeatureList;
+import org.openimaj.feature.local.list.MemoryLocalFeatureList;
+
+/**
+ * Utility methods to convert the feature vectors of {@link LocalFeatureList}s
+ * into the flat row-major layout that can be memory-mapped by a
+ * {@link MappedByteDataSource} or {@link MappedFloatDataSource}. Only
+ * features with <code>byte[]</code> or <code>float[]</code> backed
+ * {@link ArrayFeatureVector}s are supported.
+ * 
+ * @author agent
+ */
+public final class MappedLocalFeatureWriter {
+	private MappedLocalFeatureWriter() {
+	}
+
+	/**
+	 * Write the feature vectors from the given lists to the given file.
+	 * 
+	 * @param lists
+	 *            the lists of features
+	 * @param output
+	 *            the output file
+	 * @return the row offsets of each list; element <code>i</code> is the
+	 *         first row of list <code>i</code> and the final element is the
+	 *         total number of rows
+	 * @throws IOException
+	 *             if an error occurs writing
+	 */
+	public static <T extends LocalFeature<?, ? extends ArrayFeatureVector<?>>> long[] write(
+			List<? extends LocalFeatureList<T>> lists, File output) throws IOException
+	{
+		final long[] offsets = new long[lists.size() + 1];
+		final MappedDataWriter writer = new MappedDataWriter(output);
+
+		try {
+			for (int i = 0; i < lists.size(); i++) {
+				offsets[i] = writer.numRows();
+				write(lists.get(i), writer);
+			}
+		} finally {
+			writer.close();
+		}
+
+		offsets[lists.size()] = writer.numRows();
+		return offsets;
+	}
+
+	/**
+	 * Convert the given files containing (binary or ascii)
+	 * {@link LocalFeatureList}s into a single file. The files are loaded one
+	 * at a time, so only a single list needs to fit in memory.
+	 * 
+	 * @param inputs
+	 *            the input files
+	 * @param clz
+	 *            the class of the local features in the files
+	 * @param output
+	 *            the output file
+	 * @return the row offsets of each input; element <code>i</code> is the
+	 *         first row of file <code>i</code> and the final element is the
+	 *         total number of rows
+	 * @throws IOException
+	 *             if an error occurs reading or writing
+	 */
+	public static <T extends LocalFeature<?, ? extends ArrayFeatureVector<?>>> long[] convert(List<File> inputs,
+			Class<T> clz, File output) throws IOException
+	{
+		final long[] offsets = new long[inputs.size() + 1];
+		final MappedDataWriter writer = new MappedDataWriter(output);
+
+		try {
+			for (int i = 0; i < inputs.size(); i++) {
+				offsets[i] = writer.numRows();
+				write(MemoryLocalFeatureList.read(inputs.get(i), clz), writer);
+			}
+		} finally {
+			writer.close();
+		}
+
+		offsets[inputs.size()] = writer.numRows();
+		return offsets;
+	}
+
+	private static <T extends LocalFeature<?, ? extends ArrayFeatureVector<?>>> void write(LocalFeatureList<T> list,
+			MappedDataWriter writer) throws IOException
+	{
+		for (final T f : list) {
+			final Object values = f.getFeatureVector().values;
+
+			if (values instanceof byte[])
+				writer.write((byte[]) values);
+			else if (values instanceof float[])
+				writer.write((float[]) values);
+			else
+				throw new IllegalArgumentException("Only byte[] and float[] feature vectors are supported");
+		}
+	}
+}
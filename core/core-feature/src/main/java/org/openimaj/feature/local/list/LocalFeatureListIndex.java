@@ -31,15 +31,24 @@ package org.openimaj.feature.local.list;
 
 import gnu.trove.map.hash.TIntObjectHashMap;
 
+import java.io.BufferedInputStream;
 import java.io.DataInput;
+import java.io.DataInputStream;
 import java.io.DataOutput;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map.Entry;
 
 import org.openimaj.feature.local.LocalFeature;
+import org.openimaj.feature.local.list.MemoryMappedLocalFeatureList.MappedRegion;
 import org.openimaj.feature.local.quantised.QuantisedLocalFeature;
 import org.openimaj.io.ReadWriteable;
 import org.openimaj.io.ReadWriteableBinary;
@@ -137,6 +146,138 @@ public class LocalFeatureListIndex<K extends ReadWriteable, V extends LocalFeatu
 		}
 	}
 
+	/**
+	 * {@link FilterInputStream} that counts the number of bytes consumed.
+	 */
+	private static class CountingInputStream extends FilterInputStream {
+		long count;
+
+		CountingInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			final int r = super.read();
+			if (r >= 0)
+				count++;
+			return r;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			final int r = super.read(b, off, len);
+			if (r > 0)
+				count += r;
+			return r;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			final long r = super.skip(n);
+			count += r;
+			return r;
+		}
+
+		void skipFully(long n) throws IOException {
+			while (n > 0) {
+				final long r = skip(n);
+				if (r <= 0) {
+					if (read() < 0)
+						throw new EOFException();
+					n--;
+				} else {
+					n -= r;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Memory-map a {@link LocalFeatureListIndex} previously written to a file
+	 * in binary form (i.e. with
+	 * {@link org.openimaj.io.IOUtils#writeBinary(File, org.openimaj.io.WriteableBinary)}
+	 * ). The file is scanned once to read the keys and record the position of
+	 * the features belonging to each key; the features themselves are not
+	 * read. Each value of the returned index is a
+	 * {@link MemoryMappedLocalFeatureList} that reads directly from the mapped
+	 * file, so looking up the features for a key does not involve any
+	 * deserialisation or seeking through the file.
+	 * <p>
+	 * The returned index should be treated as read-only.
+	 * 
+	 * @param <K>
+	 *            the key type
+	 * @param <V>
+	 *            the value type
+	 * @param file
+	 *            the file
+	 * @return the memory mapped index
+	 * @throws IOException
+	 *             if an error occurs reading the file
+	 */
+	@SuppressWarnings("unchecked")
+	public static <K extends ReadWriteable, V extends LocalFeature<?, ?>> LocalFeatureListIndex<K, V> readMapped(
+			File file) throws IOException
+	{
+		final LocalFeatureListIndex<K, V> index = new LocalFeatureListIndex<K, V>();
+
+		final List<K> keys = new ArrayList<K>();
+		final List<long[]> positions = new ArrayList<long[]>();
+		final TIntObjectHashMap<int[]> lengths = new TIntObjectHashMap<int[]>();
+		int maxRecordLength = 0;
+
+		final CountingInputStream cis = new CountingInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			final DataInputStream in = new DataInputStream(cis);
+
+			final byte[] header = new byte[BINARY_HEADER.length];
+			in.readFully(header);
+			if (!Arrays.equals(header, BINARY_HEADER))
+				throw new IOException("File does not contain a LocalFeatureListIndex");
+
+			index.keyClass = (Class<K>) Class.forName(in.readUTF());
+			index.valueClass = (Class<V>) Class.forName(in.readUTF());
+
+			final int size = in.readInt();
+			for (int i = 0; i < size; i++) {
+				final K key = index.keyClass.newInstance();
+				key.readBinary(in);
+
+				final int nItems = in.readInt();
+				final int veclen = in.readInt();
+
+				if (!lengths.containsKey(veclen))
+					lengths.put(veclen, MemoryMappedLocalFeatureList.recordLengths(index.valueClass, veclen));
+				final int recordLength = lengths.get(veclen)[0];
+				maxRecordLength = Math.max(maxRecordLength, recordLength);
+
+				keys.add(key);
+				positions.add(new long[] { cis.count, nItems, veclen });
+
+				cis.skipFully((long) nItems * recordLength);
+			}
+		} catch (final IOException e) {
+			throw e;
+		} catch (final Exception e) {
+			throw new IOException(e);
+		} finally {
+			cis.close();
+		}
+
+		final MappedRegion region = new MappedRegion(file, 0, file.length(), maxRecordLength);
+		for (int i = 0; i < keys.size(); i++) {
+			final long[] pos = positions.get(i);
+			final int veclen = (int) pos[2];
+			final int[] len = lengths.get(veclen);
+
+			index.put(keys.get(i), new MemoryMappedLocalFeatureList<V>(region, pos[0], (int) pos[1], veclen, len[0],
+					len[1], index.valueClass));
+		}
+
+		return index;
+	}
+
 	/**
 	 * <p>
 	 * Invert an index of quantised features. The inversion process swaps keys
@@ -0,0 +1,570 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.feature.local.list;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.openimaj.data.RandomData;
+import org.openimaj.feature.local.LocalFeature;
+import org.openimaj.io.IOUtils;
+
+/**
+ * A read-only {@link LocalFeatureList} backed by a memory-mapped binary file.
+ * Unlike the {@link FileLocalFeatureList}, no I/O calls are made when features
+ * are accessed, and the raw location and feature data of each record can be
+ * accessed directly as views of the mapped buffer without creating any
+ * {@link LocalFeature} objects. This makes it suitable for streaming very
+ * large numbers of features (for example into a quantiser) without creating
+ * lots of short-lived objects:
+ * <ul>
+ * <li>{@link #get(int, LocalFeature)} reads a feature into an existing
+ * (flyweight) instance, and {@link #flyweightIterator()} iterates over the
+ * list re-using a single instance;</li>
+ * <li>{@link #getLocationBuffer(int)} and {@link #getFeatureBuffer(int)}
+ * provide zero-copy views of the binary location and feature vector of a
+ * record;</li>
+ * <li>{@link #getFeatureBlock()} copies the binary feature vectors of all the
+ * records into a single contiguous array. For features with byte-valued
+ * vectors (i.e. {@code Keypoint}s), this is simply the descriptors, one after
+ * the other.</li>
+ * </ul>
+ * Binary records are assumed to consist of the binary form of the location
+ * followed by the binary form of the feature vector. Only binary files are
+ * supported.
+ * 
+ * @author agent
+ * 
+ * @param <T>
+ *            the type of local feature
+ */
+public class MemoryMappedLocalFeatureList<T extends LocalFeature<?, ?>> extends AbstractList<T>
+		implements
+		LocalFeatureList<T>
+{
+	/**
+	 * A read-only region of a file mapped into memory. Regions larger than
+	 * {@link Integer#MAX_VALUE} are split into overlapping chunks such that
+	 * any record starting within a chunk is completely contained in that
+	 * chunk.
+	 */
+	static class MappedRegion {
+		static final long CHUNK_SIZE = 1L << 30;
+
+		final ByteBuffer[] chunks;
+
+		MappedRegion(File file, long start, long length, int maxRecordLength) throws IOException {
+			final RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try {
+				final FileChannel channel = raf.getChannel();
+				final int nchunks = (int) Math.max(1, (length + CHUNK_SIZE - 1) / CHUNK_SIZE);
+
+				chunks = new ByteBuffer[nchunks];
+				for (int i = 0; i < nchunks; i++) {
+					final long offset = i * CHUNK_SIZE;
+					final long len = Math.min(CHUNK_SIZE + maxRecordLength, length - offset);
+					chunks[i] = channel.map(MapMode.READ_ONLY, start + offset, len);
+				}
+			} finally {
+				raf.close();
+			}
+		}
+
+		final ByteBuffer chunk(long position) {
+			return chunks[(int) (position / CHUNK_SIZE)];
+		}
+
+		static final int offset(long position) {
+			return (int) (position % CHUNK_SIZE);
+		}
+	}
+
+	/**
+	 * {@link DataInput} over absolute positions in a {@link ByteBuffer} that
+	 * doesn't modify the buffer state, so can be used concurrently. As for a
+	 * {@link DataInputStream}, reading beyond the limit of the buffer with
+	 * {@link #readFully(byte[], int, int)} throws an {@link EOFException}, and
+	 * the limit ends the line in {@link #readLine()}.
+	 */
+	static class ByteBufferDataInput implements DataInput {
+		private final ByteBuffer buffer;
+		private int pos;
+
+		ByteBufferDataInput(ByteBuffer buffer, int pos) {
+			this.buffer = buffer;
+			this.pos = pos;
+		}
+
+		@Override
+		public void readFully(byte[] b) throws IOException {
+			readFully(b, 0, b.length);
+		}
+
+		@Override
+		public void readFully(byte[] b, int off, int len) throws IOException {
+			if (pos + len > buffer.limit())
+				throw new EOFException();
+
+			final ByteBuffer dup = buffer.duplicate();
+			dup.position(pos);
+			dup.get(b, off, len);
+			pos += len;
+		}
+
+		@Override
+		public int skipBytes(int n) {
+			pos += n;
+			return n;
+		}
+
+		@Override
+		public boolean readBoolean() {
+			return buffer.get(pos++) != 0;
+		}
+
+		@Override
+		public byte readByte() {
+			return buffer.get(pos++);
+		}
+
+		@Override
+		public int readUnsignedByte() {
+			return buffer.get(pos++) & 0xff;
+		}
+
+		@Override
+		public short readShort() {
+			final short v = buffer.getShort(pos);
+			pos += 2;
+			return v;
+		}
+
+		@Override
+		public int readUnsignedShort() {
+			return readShort() & 0xffff;
+		}
+
+		@Override
+		public char readChar() {
+			final char v = buffer.getChar(pos);
+			pos += 2;
+			return v;
+		}
+
+		@Override
+		public int readInt() {
+			final int v = buffer.getInt(pos);
+			pos += 4;
+			return v;
+		}
+
+		@Override
+		public long readLong() {
+			final long v = buffer.getLong(pos);
+			pos += 8;
+			return v;
+		}
+
+		@Override
+		public float readFloat() {
+			final float v = buffer.getFloat(pos);
+			pos += 4;
+			return v;
+		}
+
+		@Override
+		public double readDouble() {
+			final double v = buffer.getDouble(pos);
+			pos += 8;
+			return v;
+		}
+
+		/**
+		 * Read a line of bytes, each converted to a char by zero-extension, in
+		 * the same way as {@link DataInputStream#readLine()}. The line ends at
+		 * <code>\n</code>, <code>\r</code>, <code>\r\n</code> or the limit of
+		 * the buffer.
+		 *
+		 * @return the line without its terminator, or null if the limit of the
+		 *         buffer has been reached
+		 */
+		@Override
+		public String readLine() {
+			if (pos >= buffer.limit())
+				return null;
+
+			final StringBuilder sb = new StringBuilder();
+			while (pos < buffer.limit()) {
+				final int c = buffer.get(pos++) & 0xff;
+
+				if (c == '\n')
+					break;
+
+				if (c == '\r') {
+					if (pos < buffer.limit() && buffer.get(pos) == '\n')
+						pos++;
+					break;
+				}
+
+				sb.append((char) c);
+			}
+			return sb.toString();
+		}
+
+		/**
+		 * Read a string in the modified UTF-8 format written by
+		 * {@link DataOutput#writeUTF(String)}, using
+		 * {@link DataInputStream#readUTF(DataInput)}. Standard UTF-8 decoding
+		 * would misread the two-byte encoding of NUL and the surrogate pairs
+		 * used for supplementary characters.
+		 */
+		@Override
+		public String readUTF() throws IOException {
+			return DataInputStream.readUTF(this);
+		}
+	}
+
+	private final MappedRegion region;
+	private final long offset;
+	private final int size;
+	private final int veclen;
+	private final int recordLength;
+	private final int locationLength;
+	private final Class<T> clz;
+
+	MemoryMappedLocalFeatureList(MappedRegion region, long offset, int size, int veclen, int recordLength,
+			int locationLength, Class<T> clz)
+	{
+		this.region = region;
+		this.offset = offset;
+		this.size = size;
+		this.veclen = veclen;
+		this.recordLength = recordLength;
+		this.locationLength = locationLength;
+		this.clz = clz;
+	}
+
+	/**
+	 * Memory-map a binary file containing a set of local features of type
+	 * clz. It is assumed that clz can instantiate itself either given a vec
+	 * length or no parameters, that the instance can write itself even when
+	 * filled with no other data, and that all instances with the same vec
+	 * length have the same binary length.
+	 * 
+	 * @param <T>
+	 *            the local feature class
+	 * @param keypointFile
+	 *            the file
+	 * @param clz
+	 *            the local feature class
+	 * @return a list of local features backed by the mapped file
+	 * @throws IOException
+	 *             if a problem occurs reading the file, or the file is not
+	 *             binary
+	 */
+	public static <T extends LocalFeature<?, ?>> MemoryMappedLocalFeatureList<T> read(File keypointFile, Class<T> clz)
+			throws IOException
+	{
+		if (!IOUtils.isBinary(keypointFile, LocalFeatureList.BINARY_HEADER))
+			throw new IOException("Only binary local feature files can be memory mapped");
+
+		final int[] header = LocalFeatureListUtils.readHeader(keypointFile, true);
+		final int size = header[0];
+		final int veclen = header[1];
+		final int headerLength = header[2];
+
+		final int[] lengths = recordLengths(clz, veclen);
+		final MappedRegion region = new MappedRegion(keypointFile, headerLength, (long) size * lengths[0], lengths[0]);
+
+		return new MemoryMappedLocalFeatureList<T>(region, 0, size, veclen, lengths[0], lengths[1], clz);
+	}
+
+	/**
+	 * Compute the length of a record and the length of the location part of
+	 * the record for features of the given type and vec length.
+	 */
+	static <T extends LocalFeature<?, ?>> int[] recordLengths(Class<T> clz, int veclen) throws IOException {
+		final T instance = LocalFeatureListUtils.newInstance(clz, veclen);
+
+		final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		final DataOutputStream dos = new DataOutputStream(buffer);
+		instance.getLocation().writeBinary(dos);
+		dos.flush();
+		final int locationLength = buffer.size();
+
+		instance.writeBinary(dos);
+		dos.flush();
+		final int recordLength = buffer.size() - locationLength;
+
+		return new int[] { recordLength, locationLength };
+	}
+
+	private long position(int index) {
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+
+		return offset + (long) index * recordLength;
+	}
+
+	@Override
+	public T get(int index) {
+		return get(index, LocalFeatureListUtils.newInstance(clz, veclen));
+	}
+
+	/**
+	 * Read the feature at the given index into the given instance. This allows
+	 * a single (flyweight) instance to be re-used when iterating over large
+	 * numbers of features.
+	 * 
+	 * @param index
+	 *            the index of the feature
+	 * @param reuse
+	 *            the instance to fill
+	 * @return the filled instance
+	 */
+	public T get(int index, T reuse) {
+		final long pos = position(index);
+
+		try {
+			reuse.readBinary(new ByteBufferDataInput(region.chunk(pos), MappedRegion.offset(pos)));
+		} catch (final IOException e) {
+			throw new RuntimeException(e);
+		}
+
+		return reuse;
+	}
+
+	/**
+	 * Get an iterator that re-uses a single feature instance. Each call to
+	 * {@link Iterator#next()} overwrites the data returned by the previous
+	 * call, so the returned features must not be retained.
+	 * 
+	 * @return the flyweight iterator
+	 */
+	public Iterator<T> flyweightIterator() {
+		return new Iterator<T>() {
+			final T instance = LocalFeatureListUtils.newInstance(clz, veclen);
+			int next = 0;
+
+			@Override
+			public boolean hasNext() {
+				return next < size;
+			}
+
+			@Override
+			public T next() {
+				if (next >= size)
+					throw new NoSuchElementException();
+
+				return get(next++, instance);
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * Get a read-only view of the binary location data of the feature at the
+	 * given index. The data is not copied.
+	 * 
+	 * @param index
+	 *            the index of the feature
+	 * @return a buffer containing the location data
+	 */
+	public ByteBuffer getLocationBuffer(int index) {
+		return view(position(index), locationLength);
+	}
+
+	/**
+	 * Get a read-only view of the binary feature vector data of the feature at
+	 * the given index. The data is not copied.
+	 * 
+	 * @param index
+	 *            the index of the feature
+	 * @return a buffer containing the feature vector data
+	 */
+	public ByteBuffer getFeatureBuffer(int index) {
+		return view(position(index) + locationLength, recordLength - locationLength);
+	}
+
+	private ByteBuffer view(long pos, int length) {
+		final ByteBuffer buffer = region.chunk(pos).duplicate();
+		final int off = MappedRegion.offset(pos);
+		buffer.limit(off + length);
+		buffer.position(off);
+		return buffer.slice().asReadOnlyBuffer();
+	}
+
+	/**
+	 * @return the length in bytes of the binary feature vector of each record
+	 */
+	public int featureLength() {
+		return recordLength - locationLength;
+	}
+
+	/**
+	 * Copy the binary feature vector data of all the features into a single
+	 * contiguous array.
+	 * 
+	 * @return the feature data of all the features
+	 * @throws IllegalStateException
+	 *             if the feature data is too large to fit in an array; use
+	 *             {@link #getFeatureBlock(int, int, byte[], int)} to copy it
+	 *             in parts
+	 * @see #getFeatureBlock(int, int, byte[], int)
+	 */
+	public byte[] getFeatureBlock() {
+		final long length = (long) size * featureLength();
+		if (length > Integer.MAX_VALUE)
+			throw new IllegalStateException("The feature data of " + size + " features (" + length
+					+ " bytes) is too large for a single array");
+
+		final byte[] block = new byte[(int) length];
+		getFeatureBlock(0, size, block, 0);
+		return block;
+	}
+
+	/**
+	 * Copy the binary feature vector data of the features from
+	 * <code>fromIndex</code> (inclusive) to <code>toIndex</code> (exclusive)
+	 * into the given array. The data of each feature occupies
+	 * {@link #featureLength()} consecutive bytes.
+	 * 
+	 * @param fromIndex
+	 *            the index of the first feature
+	 * @param toIndex
+	 *            the index after the last feature
+	 * @param dest
+	 *            the destination array
+	 * @param destOffset
+	 *            the offset in the destination array to start writing
+	 */
+	public void getFeatureBlock(int fromIndex, int toIndex, byte[] dest, int destOffset) {
+		final int flen = featureLength();
+
+		for (int i = fromIndex; i < toIndex; i++) {
+			final long pos = position(i) + locationLength;
+			final ByteBuffer buffer = region.chunk(pos).duplicate();
+			buffer.position(MappedRegion.offset(pos));
+			buffer.get(dest, destOffset, flen);
+			destOffset += flen;
+		}
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public int vecLength() {
+		return veclen;
+	}
+
+	@Override
+	public void writeBinary(DataOutput out) throws IOException {
+		LocalFeatureListUtils.writeBinary(out, this);
+	}
+
+	@Override
+	public void writeASCII(PrintWriter out) throws IOException {
+		LocalFeatureListUtils.writeASCII(out, this);
+	}
+
+	@Override
+	public byte[] binaryHeader() {
+		return LocalFeatureList.BINARY_HEADER;
+	}
+
+	@Override
+	public String asciiHeader() {
+		return "";
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public <Q> Q[] asDataArray(Q[] a) {
+		if (a.length < size()) {
+			a = (Q[]) Array.newInstance(a.getClass().getComponentType(), size());
+		}
+
+		int i = 0;
+		for (final T t : this) {
+			a[i++] = (Q) t.getFeatureVector().getVector();
+		}
+
+		return a;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The returned sublist is also backed by the mapped file.
+	 */
+	@Override
+	public MemoryMappedLocalFeatureList<T> subList(int fromIndex, int toIndex) {
+		if (fromIndex < 0 || toIndex > size || fromIndex > toIndex)
+			throw new IndexOutOfBoundsException("fromIndex: " + fromIndex + ", toIndex: " + toIndex + ", size: " + size);
+
+		return new MemoryMappedLocalFeatureList<T>(region, offset + (long) fromIndex * recordLength, toIndex - fromIndex,
+				veclen, recordLength, locationLength, clz);
+	}
+
+	@Override
+	public MemoryLocalFeatureList<T> randomSubList(int nelem) {
+		if (nelem > size())
+			throw new IllegalArgumentException("number of requested elements is greater than the list size");
+
+		final int[] rnds = RandomData.getUniqueRandomInts(nelem, 0, size());
+		final MemoryLocalFeatureList<T> kl = new MemoryLocalFeatureList<T>(veclen, nelem);
+		for (final int idx : rnds)
+			kl.add(this.get(idx));
+
+		return kl;
+	}
+}
@@ -0,0 +1,314 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.feature;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openimaj.data.identity.IdentifiableObject;
+
+/**
+ * Tests for the {@link SegmentedDiskCachingFeatureExtractor}
+ *
+ * @author agent
+ */
+public class SegmentedDiskCachingFeatureExtractorTest {
+	/**
+	 * Temporary folder for the cache
+	 */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static class CountingExtractor implements FeatureExtractor<DoubleFV, IdentifiableObject<Double>> {
+		int count;
+
+		@Override
+		public DoubleFV extractFeature(IdentifiableObject<Double> object) {
+			count++;
+			return new DoubleFV(new double[] { object.data, object.data * 2, object.data * 3 });
+		}
+	}
+
+	private static class ArrayExtractor implements FeatureExtractor<double[], IdentifiableObject<Double>> {
+		@Override
+		public double[] extractFeature(IdentifiableObject<Double> object) {
+			return new double[] { object.data, -object.data };
+		}
+	}
+
+	private static IdentifiableObject<Double> obj(int i) {
+		return new IdentifiableObject<Double>("obj" + i, (double) i);
+	}
+
+	/**
+	 * Test that features are cached, survive re-opening the cache and are
+	 * spread over multiple segments.
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testCaching() throws IOException {
+		final File dir = folder.newFolder("cache");
+		final CountingExtractor fe = new CountingExtractor();
+
+		SegmentedDiskCachingFeatureExtractor<DoubleFV, IdentifiableObject<Double>> cache =
+				new SegmentedDiskCachingFeatureExtractor<DoubleFV, IdentifiableObject<Double>>(dir, fe, false, 1024, 0.5);
+
+		for (int i = 0; i < 100; i++)
+			cache.extractFeature(obj(i));
+		for (int i = 0; i < 100; i++)
+			assertArrayEquals(new double[] { i, 2 * i, 3 * i }, cache.extractFeature(obj(i)).values, 0);
+
+		assertEquals(100, fe.count);
+		assertEquals(0.5, cache.getHitRate(), 0);
+		assertEquals(cache.getBytesWritten(), cache.getBytesRead());
+		assertTrue(cache.numSegments() > 1);
+		cache.close();
+
+		cache = new SegmentedDiskCachingFeatureExtractor<DoubleFV, IdentifiableObject<Double>>(dir, fe, false, 1024, 0.5);
+		assertEquals(100, cache.size());
+		for (int i = 0; i < 100; i++)
+			assertArrayEquals(new double[] { i, 2 * i, 3 * i }, cache.extractFeature(obj(i)).values, 0);
+		assertEquals(100, fe.count);
+		cache.close();
+	}
+
+	/**
+	 * Test that features that are not {@link org.openimaj.io.ReadWriteableBinary}
+	 * can be cached
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testNonBinaryFeatures() throws IOException {
+		final File dir = folder.newFolder("cache");
+		final SegmentedDiskCachingFeatureExtractor<double[], IdentifiableObject<Double>> cache =
+				new SegmentedDiskCachingFeatureExtractor<double[], IdentifiableObject<Double>>(dir, new ArrayExtractor());
+
+		cache.extractFeature(obj(42));
+		assertArrayEquals(new double[] { 42, -42 }, cache.extractFeature(obj(42)), 0);
+		assertEquals(1, cache.getHits());
+		cache.close();
+	}
+
+	/**
+	 * Test that regenerating features produces garbage that is removed by
+	 * compaction without losing any live features.
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testCompaction() throws IOException {
+		final File dir = folder.newFolder("cache");
+		final CountingExtractor fe = new CountingExtractor();
+
+		SegmentedDiskCachingFeatureExtractor<DoubleFV, IdentifiableObject<Double>> cache =
+				new SegmentedDiskCachingFeatureExtractor<DoubleFV, IdentifiableObject<Double>>(dir, fe, true, 1024, 0.5);
+		for (int j = 0; j < 5; j++)
+			for (int i = 0; i < 50; i++)
+				cache.extractFeature(obj(i));
+		cache.compact();
+		cache.close();
+
+		final int maxSegments = (int) Math.ceil(2.0 * 50 * (cache.getBytesWritten() / 250) / 1024) + 1;
+		assertTrue(dir.list().length <= maxSegments);
+
+		cache = new SegmentedDiskCachingFeatureExtractor<DoubleFV, IdentifiableObject<Double>>(dir, fe, false, 1024, 0.5);
+		assertEquals(50, cache.size());
+		for (int i = 0; i < 50; i++)
+			assertArrayEquals(new double[] { i, 2 * i, 3 * i }, cache.extractFeature(obj(i)).values, 0);
+		assertEquals(1.0, cache.getHitRate(), 0);
+		cache.close();
+	}
+
+	/**
+	 * Test that concurrent reads and writes during compaction neither lose
+	 * features nor return the wrong ones.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testConcurrentCompaction() throws Exception {
+		final File dir = folder.newFolder("cache");
+		final int nobjects = 200;
+		final int nthreads = 4;
+
+		// regenerate two thirds of the features without compacting, so that
+		// the first segments are mostly garbage, but still have live records
+		SegmentedDiskCachingFeatureExtractor<DoubleFV, IdentifiableObject<Double>> cache =
+				new SegmentedDiskCachingFeatureExtractor<DoubleFV, IdentifiableObject<Double>>(dir,
+						new CountingExtractor(), true, 1024, 2);
+		for (int i = 0; i < nobjects; i++)
+			cache.extractFeature(obj(i));
+		for (int i = 0; i < nobjects; i++)
+			if (i % 3 != 0)
+				cache.extractFeature(obj(i));
+		cache.close();
+
+		final File first = new File(dir, "segment-00000000.dat");
+		assertTrue(first.exists());
+
+		final SegmentedDiskCachingFeatureExtractor<DoubleFV, IdentifiableObject<Double>> concurrent =
+				new SegmentedDiskCachingFeatureExtractor<DoubleFV, IdentifiableObject<Double>>(dir,
+						new CountingExtractor(), false, 1024, 0.5);
+		final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+
+		final Thread[] threads = new Thread[nthreads];
+		for (int t = 0; t < nthreads; t++) {
+			final int thread = t;
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						for (int i = 0; i < nobjects; i++) {
+							// a cached feature
+							final int r = (i * 7 + thread * 13) % nobjects;
+							assertArrayEquals(new double[] { r, 2 * r, 3 * r },
+									concurrent.extractFeature(obj(r)).values, 0);
+
+							// a new feature, unique to this thread
+							final int w = nobjects + thread * nobjects + i;
+							assertArrayEquals(new double[] { w, 2 * w, 3 * w },
+									concurrent.extractFeature(obj(w)).values, 0);
+						}
+					} catch (final Throwable e) {
+						errors.add(e);
+					}
+				}
+			};
+			threads[t].start();
+		}
+
+		boolean running = true;
+		while (running) {
+			concurrent.compact();
+
+			running = false;
+			for (final Thread t : threads)
+				running |= t.isAlive();
+		}
+		for (final Thread t : threads)
+			t.join();
+		concurrent.compact();
+
+		assertTrue(errors.toString(), errors.isEmpty());
+		assertEquals(nthreads * nobjects, concurrent.getHits());
+		assertEquals(nthreads * nobjects, concurrent.getMisses());
+		assertEquals(nobjects + nthreads * nobjects, concurrent.size());
+		assertFalse(first.exists());
+		concurrent.close();
+
+		final CountingExtractor fe = new CountingExtractor();
+		cache = new SegmentedDiskCachingFeatureExtractor<DoubleFV, IdentifiableObject<Double>>(dir, fe, false, 1024,
+				0.5);
+		assertEquals(nobjects + nthreads * nobjects, cache.size());
+		for (int i = 0; i < nobjects + nthreads * nobjects; i++)
+			assertArrayEquals(new double[] { i, 2 * i, 3 * i }, cache.extractFeature(obj(i)).values, 0);
+		assertEquals(0, fe.count);
+		cache.close();
+	}
+
+	/**
+	 * Test that an incomplete record at the end of the active segment (e.g.
+	 * from a crash) is discarded, and that the earlier records survive
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testTruncatedSegment() throws IOException {
+		final File dir = folder.newFolder("cache");
+		final CountingExtractor fe = new CountingExtractor();
+
+		SegmentedDiskCachingFeatureExtractor<DoubleFV, IdentifiableObject<Double>> cache =
+				new SegmentedDiskCachingFeatureExtractor<DoubleFV, IdentifiableObject<Double>>(dir, fe);
+		for (int i = 0; i < 20; i++)
+			cache.extractFeature(obj(i));
+		cache.close();
+
+		final File[] files = dir.listFiles();
+		assertEquals(1, files.length);
+		final RandomAccessFile raf = new RandomAccessFile(files[0], "rw");
+		raf.setLength(raf.length() - 5);
+		raf.close();
+
+		cache = new SegmentedDiskCachingFeatureExtractor<DoubleFV, IdentifiableObject<Double>>(dir, fe);
+		assertEquals(19, cache.size());
+		for (int i = 0; i < 21; i++)
+			assertArrayEquals(new double[] { i, 2 * i, 3 * i }, cache.extractFeature(obj(i)).values, 0);
+		assertEquals(19, cache.getHits());
+		assertEquals(22, fe.count);
+		cache.close();
+
+		// the regenerated records must have been appended after the good ones
+		cache = new SegmentedDiskCachingFeatureExtractor<DoubleFV, IdentifiableObject<Double>>(dir, fe);
+		assertEquals(21, cache.size());
+		for (int i = 0; i < 21; i++)
+			assertArrayEquals(new double[] { i, 2 * i, 3 * i }, cache.extractFeature(obj(i)).values, 0);
+		assertEquals(22, fe.count);
+		cache.close();
+	}
+
+	/**
+	 * Test that files in the cache directory that look like, but aren't,
+	 * segments are ignored
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testOtherFiles() throws IOException {
+		final File dir = folder.newFolder("cache");
+		for (final String name : new String[] { "segment-foo.dat", "segment-.dat", "segment-+1.dat",
+				"segment-99999999999.dat" })
+			assertTrue(new File(dir, name).createNewFile());
+
+		final SegmentedDiskCachingFeatureExtractor<DoubleFV, IdentifiableObject<Double>> cache =
+				new SegmentedDiskCachingFeatureExtractor<DoubleFV, IdentifiableObject<Double>>(dir,
+						new CountingExtractor());
+		assertEquals(1, cache.numSegments());
+		cache.extractFeature(obj(1));
+		assertEquals(1, cache.size());
+		cache.close();
+
+		assertTrue(new File(dir, "segment-foo.dat").exists());
+		assertEquals(5, dir.list().length);
+	}
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.feature.local.list;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+import org.openimaj.feature.local.list.MemoryMappedLocalFeatureList.ByteBufferDataInput;
+
+/**
+ * Tests for the {@link java.io.DataInput} used to read memory-mapped
+ * features
+ *
+ * @author agent
+ */
+public class ByteBufferDataInputTest {
+	/**
+	 * Strings written with {@link DataOutputStream#writeUTF(String)},
+	 * including NUL and supplementary characters, must be read back
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testReadUTF() throws IOException {
+		final String[] strings = { "", "plain", "nul\u0000char", "caf\u00e9", "\ud83d\ude00 smile" };
+
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		final DataOutputStream dos = new DataOutputStream(baos);
+		dos.writeInt(42);
+		for (final String s : strings)
+			dos.writeUTF(s);
+		dos.close();
+
+		final ByteBufferDataInput in = new ByteBufferDataInput(ByteBuffer.wrap(baos.toByteArray()), 4);
+		for (final String s : strings)
+			assertEquals(s, in.readUTF());
+	}
+
+	/**
+	 * Lines must be split on any terminator, and the limit of the buffer must
+	 * end the last line
+	 */
+	@Test
+	public void testReadLine() {
+		final byte[] bytes = "xxfirst\nsecond\r\nthird\r\n\rlast".getBytes();
+		final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		final ByteBufferDataInput in = new ByteBufferDataInput(buffer, 2);
+
+		assertEquals("first", in.readLine());
+		assertEquals("second", in.readLine());
+		assertEquals("third", in.readLine());
+		assertEquals("", in.readLine());
+		assertEquals("last", in.readLine());
+		assertNull(in.readLine());
+
+		buffer.limit(bytes.length - 2);
+		final ByteBufferDataInput limited = new ByteBufferDataInput(buffer, bytes.length - 4);
+		assertEquals("la", limited.readLine());
+		assertNull(limited.readLine());
+	}
+}
@@ -0,0 +1,818 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.video;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openimaj.image.FImage;
+import org.openimaj.image.Image;
+import org.openimaj.image.MBFImage;
+import org.openimaj.image.colour.ColourSpace;
+import org.openimaj.util.parallel.GlobalExecutorPool.DaemonThreadFactory;
+import org.openimaj.video.timecode.VideoTimecode;
+
+/**
+ *	A bounded cache of the frames of a video that allows random access by
+ *	frame index or timecode. Unlike {@link VideoCache}, which holds every
+ *	frame on the heap, only the most recently used frames are kept as
+ *	{@link Image}s; every decoded frame is also written, as raw pixel planes,
+ *	to a memory-mapped spill file from which it can be read back without
+ *	re-decoding. The conversion between frames and planes is performed by a
+ *	{@link FrameSerialiser}.
+ *	<p>
+ *	Frames are decoded from the source video on demand. Requests a little
+ *	ahead of the decoder are satisfied by decoding forward; requests further
+ *	away (or behind it) seek the source with a {@link VideoSeeker}, which
+ *	lands exactly on the requested frame whether the source reports the
+ *	last frame it returned (like <code>XuggleVideo</code>) or the next one.
+ *	<p>
+ *	The cache is itself a {@link Video} which plays the cached frames, so
+ *	it can be given to a {@link VideoDisplay} or {@link VideoPlayer}. A
+ *	background thread decodes a number of frames ahead of the play head so
+ *	that playback and scrubbing rarely wait for the decoder. Like
+ *	{@link ArrayBackedVideo}, the frames returned are shared with the cache
+ *	and should be cloned if they are going to be modified.
+ *
+ *	@author agent
+ *
+ *	@param <I> The type of video frames to be cached
+ */
+public class SpillableVideoCache<I extends Image<?, I>> extends Video<I>
+{
+	/**
+	 *	Converts frames to and from the raw representation held in the
+	 *	spill file. Every frame of a video must use the same number of
+	 *	bytes.
+	 *
+	 *	@param <I> The type of frame
+	 */
+	public interface FrameSerialiser<I extends Image<?, I>>
+	{
+		/**
+		 *	Get the number of bytes needed to store a frame of the given size.
+		 *
+		 *	@param width The width of the frame
+		 *	@param height The height of the frame
+		 *	@return The number of bytes
+		 */
+		public int frameBytes( int width, int height );
+
+		/**
+		 *	Write a frame into the given buffer, starting at its position.
+		 *
+		 *	@param frame The frame
+		 *	@param buffer The buffer
+		 */
+		public void write( I frame, ByteBuffer buffer );
+
+		/**
+		 *	Read a frame of the given size from the given buffer, starting at
+		 *	its position.
+		 *
+		 *	@param buffer The buffer
+		 *	@param width The width of the frame
+		 *	@param height The height of the frame
+		 *	@return The frame
+		 */
+		public I read( ByteBuffer buffer, int width, int height );
+	}
+
+	/**
+	 *	Lossless {@link FrameSerialiser} for {@link FImage}s that stores the
+	 *	pixels as floats.
+	 */
+	public static class FImageSerialiser implements FrameSerialiser<FImage>
+	{
+		@Override
+		public int frameBytes( final int width, final int height )
+		{
+			return width * height * 4;
+		}
+
+		@Override
+		public void write( final FImage frame, final ByteBuffer buffer )
+		{
+			final FloatBuffer fb = buffer.asFloatBuffer();
+			for( int y = 0; y < frame.height; y++ )
+				fb.put( frame.pixels[y] );
+		}
+
+		@Override
+		public FImage read( final ByteBuffer buffer, final int width, final int height )
+		{
+			final FImage frame = new FImage( width, height );
+			final FloatBuffer fb = buffer.asFloatBuffer();
+			for( int y = 0; y < height; y++ )
+				fb.get( frame.pixels[y] );
+			return frame;
+		}
+	}
+
+	/**
+	 *	Lossless {@link FrameSerialiser} for {@link MBFImage}s that stores
+	 *	each band as a plane of floats.
+	 */
+	public static class MBFImageSerialiser implements FrameSerialiser<MBFImage>
+	{
+		private final ColourSpace colourSpace;
+
+		/**
+		 *	Construct for frames in the given colour space.
+		 *
+		 *	@param colourSpace The colour space of the frames
+		 */
+		public MBFImageSerialiser( final ColourSpace colourSpace )
+		{
+			this.colourSpace = colourSpace;
+		}
+
+		@Override
+		public int frameBytes( final int width, final int height )
+		{
+			return this.colourSpace.getNumBands() * width * height * 4;
+		}
+
+		@Override
+		public void write( final MBFImage frame, final ByteBuffer buffer )
+		{
+			final FloatBuffer fb = buffer.asFloatBuffer();
+			for( final FImage band : frame.bands )
+				for( int y = 0; y < band.height; y++ )
+					fb.put( band.pixels[y] );
+		}
+
+		@Override
+		public MBFImage read( final ByteBuffer buffer, final int width, final int height )
+		{
+			final MBFImage frame = new MBFImage( width, height, this.colourSpace );
+			final FloatBuffer fb = buffer.asFloatBuffer();
+			for( final FImage band : frame.bands )
+				for( int y = 0; y < height; y++ )
+					fb.get( band.pixels[y] );
+			return frame;
+		}
+	}
+
+	/**
+	 *	{@link FrameSerialiser} for {@link MBFImage}s that stores each band
+	 *	as a plane of bytes. Pixel values are assumed to be in the range 0..1
+	 *	and are quantised to 256 levels, which is lossless for frames that
+	 *	were decoded from 8-bit video and uses a quarter of the space of
+	 *	{@link MBFImageSerialiser}.
+	 */
+	public static class MBFImageByteSerialiser implements FrameSerialiser<MBFImage>
+	{
+		private final ColourSpace colourSpace;
+
+		/**
+		 *	Construct for frames in the given colour space.
+		 *
+		 *	@param colourSpace The colour space of the frames
+		 */
+		public MBFImageByteSerialiser( final ColourSpace colourSpace )
+		{
+			this.colourSpace = colourSpace;
+		}
+
+		@Override
+		public int frameBytes( final int width, final int height )
+		{
+			return this.colourSpace.getNumBands() * width * height;
+		}
+
+		@Override
+		public void write( final MBFImage frame, final ByteBuffer buffer )
+		{
+			for( final FImage band : frame.bands )
+			{
+				for( int y = 0; y < band.height; y++ )
+				{
+					final float[] row = band.pixels[y];
+					for( int x = 0; x < row.length; x++ )
+					{
+						final float v = row[x] < 0 ? 0 : (row[x] > 1 ? 1 : row[x]);
+						buffer.put( (byte) Math.round( v * 255 ) );
+					}
+				}
+			}
+		}
+
+		@Override
+		public MBFImage read( final ByteBuffer buffer, final int width, final int height )
+		{
+			final MBFImage frame = new MBFImage( width, height, this.colourSpace );
+			for( final FImage band : frame.bands )
+			{
+				for( int y = 0; y < height; y++ )
+				{
+					final float[] row = band.pixels[y];
+					for( int x = 0; x < width; x++ )
+						row[x] = (buffer.get() & 0xff) / 255f;
+				}
+			}
+			return frame;
+		}
+	}
+
+	/** The source of the frames */
+	private final Video<I> source;
+
+	private final FrameSerialiser<I> serialiser;
+
+	private final int width;
+
+	private final int height;
+
+	private final double fps;
+
+	/** Number of frames in the video, or -1 if not (yet) known */
+	private long numFrames;
+
+	/**
+	 *	The lowest index found to be beyond the end of the video by seeking
+	 *	to it. This doesn't give the length, but nothing at or after it needs
+	 *	to be decoded or prefetched.
+	 */
+	private long missingFrom = Long.MAX_VALUE;
+
+	/** The in-heap tier, in access order */
+	private final LinkedHashMap<Integer, I> heap;
+
+	/** The frames that have been written to the spill file */
+	private final BitSet spilled = new BitSet();
+
+	private final int frameBytes;
+
+	private final int framesPerSegment;
+
+	private final File spillFile;
+
+	private final RandomAccessFile spillRaf;
+
+	private final FileChannel spillChannel;
+
+	private final List<MappedByteBuffer> segments = new ArrayList<MappedByteBuffer>();
+
+	/** Guards the source video and the decoder position */
+	private final Object decoderLock = new Object();
+
+	/** Positions the source exactly, whatever its seek convention */
+	private final VideoSeeker<I> seeker;
+
+	/** The index of the frame the source will return next */
+	private long decoderPosition;
+
+	/** Whether a frame has been read at or before the decoder position since the last seek */
+	private boolean decoderPositionValid;
+
+	/** Requests this far ahead of the decoder are decoded rather than seeked */
+	private final int forwardDecodeLimit;
+
+	private final int prefetchFrames;
+
+	private final Thread prefetcher;
+
+	private volatile boolean closed = false;
+
+	/**
+	 *	Construct a cache over the given video that keeps at most the given
+	 *	number of frames on the heap and spills to a temporary file. No
+	 *	frames are prefetched.
+	 *
+	 *	@param source The video to cache
+	 *	@param serialiser The serialiser for the spilled frames
+	 *	@param maxHeapFrames The maximum number of frames to keep on the heap
+	 *	@throws IOException If the spill file cannot be created
+	 */
+	public SpillableVideoCache( final Video<I> source, final FrameSerialiser<I> serialiser,
+			final int maxHeapFrames ) throws IOException
+	{
+		this( source, serialiser, maxHeapFrames, 0, null );
+	}
+
+	/**
+	 *	Construct a cache over the given video that keeps at most the given
+	 *	number of frames on the heap, spills to the given file, and decodes
+	 *	up to the given number of frames ahead of the play head in the
+	 *	background.
+	 *
+	 *	@param source The video to cache
+	 *	@param serialiser The serialiser for the spilled frames
+	 *	@param maxHeapFrames The maximum number of frames to keep on the heap
+	 *	@param prefetchFrames The number of frames to decode ahead of the
+	 *			play head; 0 disables prefetching
+	 *	@param spillFile The spill file; if null a temporary file is created.
+	 *			The file is deleted when the cache is closed.
+	 *	@throws IOException If the spill file cannot be created
+	 */
+	public SpillableVideoCache( final Video<I> source, final FrameSerialiser<I> serialiser,
+			final int maxHeapFrames, final int prefetchFrames, final File spillFile ) throws IOException
+	{
+		if( maxHeapFrames < 1 )
+			throw new IllegalArgumentException( "At least one frame must be held on the heap" );
+
+		this.source = source;
+		this.seeker = new VideoSeeker<I>( source );
+		this.serialiser = serialiser;
+		this.width = source.getWidth();
+		this.height = source.getHeight();
+		this.fps = source.getFPS();
+		this.numFrames = source.countFrames();
+		this.prefetchFrames = prefetchFrames;
+		this.forwardDecodeLimit = Math.max( prefetchFrames, (int) Math.ceil( this.fps ) );
+
+		this.heap = new LinkedHashMap<Integer, I>( 16, 0.75f, true )
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry( final Map.Entry<Integer, I> eldest )
+			{
+				return this.size() > maxHeapFrames;
+			}
+		};
+
+		// Mapped regions are limited to 2GB, so the file is mapped in
+		// segments of whole frames as it grows
+		this.frameBytes = serialiser.frameBytes( this.width, this.height );
+		this.framesPerSegment = Math.max( 1, (1 << 30) / this.frameBytes );
+		this.spillFile = spillFile == null ?
+				File.createTempFile( "openimaj-video-cache", ".raw" ) : spillFile;
+		this.spillFile.deleteOnExit();
+		this.spillRaf = new RandomAccessFile( this.spillFile, "rw" );
+		this.spillChannel = this.spillRaf.getChannel();
+
+		source.reset();
+		this.decoderPosition = 0;
+		this.decoderPositionValid = true;
+
+		if( prefetchFrames > 0 )
+		{
+			this.prefetcher = new DaemonThreadFactory().newThread( new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					SpillableVideoCache.this.prefetch();
+				}
+			} );
+			this.prefetcher.start();
+		}
+		else
+			this.prefetcher = null;
+	}
+
+	/**
+	 *	Returns the frame at the given index, or null if the index is beyond
+	 *	the end of the video. The frame is decoded if it is not already
+	 *	cached. This does not move the play head.
+	 *
+	 *	@param index The index of the frame
+	 *	@return The frame at the given index
+	 */
+	public I getFrame( final long index )
+	{
+		if( index < 0 )
+			throw new IllegalArgumentException( "Frame index must be non-negative" );
+
+		final I frame = this.getCachedFrame( index );
+		if( frame != null )
+			return frame;
+		return this.decode( index );
+	}
+
+	/**
+	 *	Returns the frame at the given timecode, or null if the timecode is
+	 *	beyond the end of the video. This does not move the play head.
+	 *
+	 *	@param timecode The timecode of the frame
+	 *	@return The frame at the given timecode
+	 */
+	public I getFrame( final VideoTimecode timecode )
+	{
+		return this.getFrame( timecode.getFrameNumber() );
+	}
+
+	/**
+	 *	Returns whether the frame at the given index can be returned without
+	 *	decoding.
+	 *
+	 *	@param index The index of the frame
+	 *	@return true if the frame is cached
+	 */
+	public synchronized boolean isCached( final long index )
+	{
+		return index <= Integer.MAX_VALUE && this.spilled.get( (int) index );
+	}
+
+	/**
+	 *	Get the frame from the heap or spill tier.
+	 *
+	 *	@param index The index of the frame
+	 *	@return The frame or null if it has not been cached
+	 */
+	private synchronized I getCachedFrame( final long index )
+	{
+		if( index > Integer.MAX_VALUE )
+			throw new IllegalArgumentException( "Frame index too large to cache" );
+
+		final Integer key = (int) index;
+		I frame = this.heap.get( key );
+		if( frame == null && this.spilled.get( key ) )
+		{
+			frame = this.serialiser.read( this.spillRegion( key ), this.width, this.height );
+			this.heap.put( key, frame );
+		}
+		return frame;
+	}
+
+	/**
+	 *	Decode the frame at the given index, seeking if it is behind or too
+	 *	far ahead of the decoder, and caching every frame that is decoded on
+	 *	the way.
+	 *
+	 *	@param index The index of the frame
+	 *	@return The frame or null if it is beyond the end of the video
+	 */
+	private I decode( final long index )
+	{
+		synchronized( this.decoderLock )
+		{
+			// another thread may have decoded it while we waited
+			final I cached = this.getCachedFrame( index );
+			if( cached != null || this.closed )
+				return cached;
+
+			if( index >= this.getMissingFrom() )
+				return null;
+
+			if( index < this.decoderPosition || index > this.decoderPosition + this.forwardDecodeLimit )
+			{
+				final boolean positioned = this.seeker.seek( index );
+				this.decoderPosition = index;
+				this.decoderPositionValid = false;
+				if( !positioned )
+				{
+					this.setMissingFrom( index );
+					return null;
+				}
+			}
+
+			I frame = null;
+			while( this.decoderPosition <= index )
+			{
+				final long n = this.getNumFrames();
+				if( n >= 0 && this.decoderPosition >= n )
+					return null;
+
+				final I next = this.source.hasNextFrame() ? this.source.getNextFrame() : null;
+				if( next == null )
+				{
+					// running out straight after a seek past the end
+					// doesn't tell us the length of the video
+					if( this.decoderPositionValid )
+						this.setNumFrames( this.decoderPosition );
+					else
+						this.setMissingFrom( this.decoderPosition );
+					return null;
+				}
+				this.decoderPositionValid = true;
+
+				frame = next.clone();
+				this.store( (int) this.decoderPosition, frame );
+				this.decoderPosition++;
+			}
+			return frame;
+		}
+	}
+
+	/**
+	 *	Put a newly decoded frame into both tiers.
+	 *
+	 *	@param index The index of the frame
+	 *	@param frame The frame
+	 */
+	private synchronized void store( final int index, final I frame )
+	{
+		if( this.closed )
+			return;
+
+		this.heap.put( index, frame );
+		this.serialiser.write( frame, this.spillRegion( index ) );
+		this.spilled.set( index );
+	}
+
+	/**
+	 *	Get a buffer over the part of the spill file that holds the given
+	 *	frame, mapping more of the file if necessary.
+	 *
+	 *	@param index The index of the frame
+	 *	@return A buffer positioned at the start of the frame
+	 */
+	private ByteBuffer spillRegion( final int index )
+	{
+		final int segment = index / this.framesPerSegment;
+		try
+		{
+			while( this.segments.size() <= segment )
+			{
+				final long segmentBytes = (long) this.framesPerSegment * this.frameBytes;
+				this.segments.add( this.spillChannel.map( MapMode.READ_WRITE,
+						this.segments.size() * segmentBytes, segmentBytes ) );
+			}
+		}
+		catch( final IOException e )
+		{
+			throw new RuntimeException( "Unable to map the spill file", e );
+		}
+
+		final ByteBuffer buffer = this.segments.get( segment ).duplicate();
+		buffer.position( (index % this.framesPerSegment) * this.frameBytes );
+		buffer.limit( buffer.position() + this.frameBytes );
+		return buffer.slice();
+	}
+
+	private synchronized long getNumFrames()
+	{
+		return this.numFrames;
+	}
+
+	private synchronized void setNumFrames( final long n )
+	{
+		if( this.numFrames < 0 || n < this.numFrames )
+			this.numFrames = n;
+	}
+
+	private synchronized long getMissingFrom()
+	{
+		return this.missingFrom;
+	}
+
+	private synchronized void setMissingFrom( final long index )
+	{
+		if( index < this.missingFrom )
+			this.missingFrom = index;
+	}
+
+	/**
+	 *	Body of the prefetch thread: keeps the frames from the play head up to
+	 *	the prefetch distance cached.
+	 */
+	private void prefetch()
+	{
+		while( !this.closed )
+		{
+			int next;
+			synchronized( this )
+			{
+				next = this.nextFrameToPrefetch();
+				while( next < 0 && !this.closed )
+				{
+					try
+					{
+						this.wait();
+					}
+					catch( final InterruptedException e )
+					{
+						return;
+					}
+					next = this.nextFrameToPrefetch();
+				}
+			}
+
+			if( next >= 0 )
+				this.decode( next );
+		}
+	}
+
+	/**
+	 *	@return the first uncached frame within the prefetch distance of the
+	 *			play head, or -1 if there is none
+	 */
+	private synchronized int nextFrameToPrefetch()
+	{
+		final int head = this.currentFrame;
+		final int next = this.spilled.nextClearBit( head );
+		if( next >= (long) head + this.prefetchFrames || (this.numFrames >= 0 && next >= this.numFrames)
+				|| next >= this.missingFrom )
+			return -1;
+		return next;
+	}
+
+	/**
+	 *	Move the play head and wake the prefetcher.
+	 *
+	 *	@param index The new play head position
+	 */
+	private synchronized void moveHead( final long index )
+	{
+		this.currentFrame = (int) index;
+		this.notifyAll();
+	}
+
+	/**
+	 *	{@inheritDoc}
+	 *	<p>
+	 *	Returns the frame at the play head and advances it, or null at the
+	 *	end of the video.
+	 *
+	 *	@see org.openimaj.video.Video#getNextFrame()
+	 */
+	@Override
+	public I getNextFrame()
+	{
+		final int index = this.getCurrentFrameIndex();
+		final I frame = this.getFrame( index );
+		if( frame != null )
+			this.moveHead( index + 1 );
+		return frame;
+	}
+
+	/**
+	 *	{@inheritDoc}
+	 *	@see org.openimaj.video.Video#getCurrentFrame()
+	 */
+	@Override
+	public I getCurrentFrame()
+	{
+		return this.getFrame( this.getCurrentFrameIndex() );
+	}
+
+	/**
+	 *	{@inheritDoc}
+	 *	<p>
+	 *	This only moves the play head; the frame is decoded when requested
+	 *	(or by the prefetcher).
+	 *
+	 *	@see org.openimaj.video.Video#setCurrentFrameIndex(long)
+	 */
+	@Override
+	public void setCurrentFrameIndex( final long newFrame )
+	{
+		this.moveHead( newFrame );
+	}
+
+	/**
+	 *	{@inheritDoc}
+	 *	@see org.openimaj.video.Video#seek(double)
+	 */
+	@Override
+	public void seek( final double timestamp )
+	{
+		this.moveHead( Math.round( timestamp * this.fps ) );
+	}
+
+	/**
+	 *	{@inheritDoc}
+	 *	@see org.openimaj.video.Video#hasNextFrame()
+	 */
+	@Override
+	public boolean hasNextFrame()
+	{
+		final long n = this.getNumFrames();
+		return n < 0 || this.getCurrentFrameIndex() < n;
+	}
+
+	/**
+	 *	{@inheritDoc}
+	 *	@see org.openimaj.video.Video#countFrames()
+	 */
+	@Override
+	public long countFrames()
+	{
+		return this.getNumFrames();
+	}
+
+	/**
+	 *	{@inheritDoc}
+	 *	<p>
+	 *	Moves the play head to the start of the video; the cached frames are
+	 *	kept.
+	 *
+	 *	@see org.openimaj.video.Video#reset()
+	 */
+	@Override
+	public void reset()
+	{
+		this.moveHead( 0 );
+	}
+
+	/**
+	 *	{@inheritDoc}
+	 *	@see org.openimaj.video.Video#getWidth()
+	 */
+	@Override
+	public int getWidth()
+	{
+		return this.width;
+	}
+
+	/**
+	 *	{@inheritDoc}
+	 *	@see org.openimaj.video.Video#getHeight()
+	 */
+	@Override
+	public int getHeight()
+	{
+		return this.height;
+	}
+
+	/**
+	 *	{@inheritDoc}
+	 *	@see org.openimaj.video.Video#getTimeStamp()
+	 */
+	@Override
+	public long getTimeStamp()
+	{
+		return (long) (1000 * this.getCurrentFrameIndex() / this.fps);
+	}
+
+	/**
+	 *	{@inheritDoc}
+	 *	@see org.openimaj.video.Video#getFPS()
+	 */
+	@Override
+	public double getFPS()
+	{
+		return this.fps;
+	}
+
+	/**
+	 *	{@inheritDoc}
+	 *	<p>
+	 *	Stops the prefetcher, closes the source video and deletes the spill
+	 *	file.
+	 *
+	 *	@see org.openimaj.video.Video#close()
+	 */
+	@Override
+	public void close()
+	{
+		synchronized( this )
+		{
+			this.closed = true;
+			this.notifyAll();
+		}
+
+		synchronized( this.decoderLock )
+		{
+			this.source.close();
+		}
+
+		synchronized( this )
+		{
+			this.heap.clear();
+			this.spilled.clear();
+			this.segments.clear();
+			try
+			{
+				this.spillChannel.close();
+				this.spillRaf.close();
+			}
+			catch( final IOException e )
+			{
+				// nothing we can do
+			}
+			this.spillFile.delete();
+		}
+	}
+}
@@ -41,6 +41,10 @@ import org.openimaj.video.timecode.VideoTimecode;
 /**
  *	This class represents a cache of video material. It is also able to
  *	build the cache for you with the static methods.
+ *	<p>
+ *	All of the frames are held on the heap, so this is only suitable for
+ *	short pieces of video; {@link SpillableVideoCache} provides a bounded
+ *	cache for longer videos.
  *
  *	@author David Dupplaw (dpd@ecs.soton.ac.uk)
  *	
@@ -0,0 +1,130 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.video;
+
+import org.openimaj.image.Image;
+
+/**
+ * Positions a {@link Video} so that the next call to
+ * {@link Video#getNextFrame()} returns a given frame.
+ * <p>
+ * {@link Video} implementations do not agree on what
+ * {@link Video#getCurrentFrameIndex()} means. Videos that count frames (for
+ * example {@link ArrayBackedVideo}) report the index of the frame that will
+ * be returned next, and {@link Video#setCurrentFrameIndex(long)} makes the
+ * given frame the next one. Decoder-backed videos (for example
+ * <code>XuggleVideo</code>) report the index of the frame that was last
+ * returned, and {@link Video#setCurrentFrameIndex(long)} decodes up to and
+ * including the given frame, so the next frame is one further on. Using
+ * {@link Video#setCurrentFrameIndex(long)} directly is therefore off by one
+ * for one kind of video or the other.
+ * <p>
+ * The first seek to a frame other than zero works out which convention the
+ * video follows by resetting it and reading the first frame. Every seek then
+ * checks the position the video reports after seeking, and corrects it by
+ * resetting or reading forward if the video did not land exactly on the
+ * requested frame (for example because it could only seek to a keyframe).
+ *
+ * @author agent
+ *
+ * @param <T>
+ *            Type of the video frames
+ */
+public class VideoSeeker<T extends Image<?, T>> {
+	private final Video<T> video;
+
+	/** 1 if the video reports the last frame returned, 0 if the next one */
+	private int offset = -1;
+
+	/**
+	 * Construct a seeker for the given video.
+	 *
+	 * @param video
+	 *            the video
+	 */
+	public VideoSeeker(Video<T> video) {
+		this.video = video;
+	}
+
+	/**
+	 * Position the video so that the next call to
+	 * {@link Video#getNextFrame()} returns the given frame.
+	 *
+	 * @param frame
+	 *            the frame number
+	 * @return true if the video was positioned; false if it ran out of frames
+	 *         before reaching the requested frame
+	 */
+	public boolean seek(long frame) {
+		if (frame <= 0) {
+			video.reset();
+			return true;
+		}
+
+		if (offset < 0) {
+			video.reset();
+			if (video.getNextFrame() == null)
+				return false;
+			offset = frameIndex() == 0 ? 1 : 0;
+		}
+
+		video.setCurrentFrameIndex(frame - offset);
+
+		long next = frameIndex() + offset;
+		if (next > frame) {
+			video.reset();
+			next = 0;
+		}
+
+		while (next < frame) {
+			if (video.getNextFrame() == null)
+				return false;
+			next++;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Get the index the video reports for its current position. Videos that
+	 * derive the index from the timestamp may truncate it at non-integral
+	 * frame rates, so the larger of the reported index and the rounded frame
+	 * number of the timestamp is used.
+	 */
+	private long frameIndex() {
+		long index = video.getCurrentFrameIndex();
+
+		final double fps = video.getFPS();
+		if (fps > 0)
+			index = Math.max(index, Math.round(video.getTimeStamp() * fps / 1000d));
+
+		return index;
+	}
+}
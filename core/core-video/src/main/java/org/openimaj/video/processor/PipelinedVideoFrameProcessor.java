@@ -0,0 +1,229 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.video.processor;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.openimaj.image.Image;
+import org.openimaj.image.processor.ImageProcessor;
+import org.openimaj.util.parallel.GlobalExecutorPool.DaemonThreadFactory;
+import org.openimaj.video.Video;
+import org.openimaj.video.VideoWriter;
+
+/**
+ * A {@link VideoFrameProcessor} that processes whole videos as a
+ * decode&rarr;process&rarr;encode pipeline. A decoder thread reads frames from
+ * the video and hands them to a pool of worker threads that apply the
+ * {@link ImageProcessor}; the processed frames are passed, in their original
+ * order, to an optional sink (typically a {@link VideoWriter}) on the calling
+ * thread. The number of frames in flight is bounded, so memory use does not
+ * depend on the relative speeds of the stages.
+ * <p>
+ * This is only appropriate for frame-local processing: the image processor
+ * is shared by all workers, so it must not keep state between frames and
+ * must be safe to use from several threads. As a frame may still be being
+ * processed when the next one is decoded, and many videos (for example the
+ * <code>XuggleVideo</code>) refill the same image for every frame, the decoder
+ * thread copies each frame before passing it on. If the video is known to
+ * return a new image for every frame, the copy can be avoided with
+ * {@link #setCloneFrames(boolean)}.
+ * <p>
+ * When used in a chain (i.e. through {@link #getNextFrame()}), frames are
+ * processed one at a time as normal.
+ *
+ * @author agent
+ *
+ * @param <I>
+ *            Type of the video frames
+ */
+public class PipelinedVideoFrameProcessor<I extends Image<?, I>> extends VideoFrameProcessor<I>
+{
+	private static final Future<?> END = new FutureTask<Object>(new Callable<Object>() {
+		@Override
+		public Object call() throws Exception {
+			return null;
+		}
+	});
+
+	private final int numThreads;
+	private final int queueCapacity;
+	private boolean cloneFrames = true;
+
+	/**
+	 * Construct with the given processor, number of worker threads and
+	 * maximum number of frames in flight.
+	 *
+	 * @param processor
+	 *            the (thread-safe) image processor
+	 * @param numThreads
+	 *            the number of worker threads
+	 * @param queueCapacity
+	 *            the maximum number of decoded frames awaiting output
+	 */
+	public PipelinedVideoFrameProcessor(ImageProcessor<I> processor, int numThreads, int queueCapacity)
+	{
+		super(processor);
+		this.numThreads = numThreads;
+		this.queueCapacity = queueCapacity;
+	}
+
+	/**
+	 * Construct a chainable processor with the given video, processor, number
+	 * of worker threads and maximum number of frames in flight.
+	 *
+	 * @param video
+	 *            the video
+	 * @param processor
+	 *            the (thread-safe) image processor
+	 * @param numThreads
+	 *            the number of worker threads
+	 * @param queueCapacity
+	 *            the maximum number of decoded frames awaiting output
+	 */
+	public PipelinedVideoFrameProcessor(Video<I> video, ImageProcessor<I> processor, int numThreads,
+			int queueCapacity)
+	{
+		super(video, processor);
+		this.numThreads = numThreads;
+		this.queueCapacity = queueCapacity;
+	}
+
+	/**
+	 * Set whether each decoded frame is copied before it is passed to the
+	 * workers. This is true by default, and should only be disabled if the
+	 * video returns a distinct image for every frame.
+	 *
+	 * @param cloneFrames
+	 *            true if the frames should be copied; false otherwise
+	 */
+	public void setCloneFrames(boolean cloneFrames)
+	{
+		this.cloneFrames = cloneFrames;
+	}
+
+	/**
+	 * Process the whole video through the pipeline, discarding the
+	 * processed frames.
+	 */
+	@Override
+	public void process(Video<I> video)
+	{
+		process(video, null);
+	}
+
+	/**
+	 * Process the whole video through the pipeline, passing the processed
+	 * frames in order to the given sink.
+	 *
+	 * @param video
+	 *            the video to process
+	 * @param sink
+	 *            the processor that receives the processed frames (for
+	 *            example a {@link VideoWriter}); can be null
+	 */
+	@SuppressWarnings("unchecked")
+	public void process(final Video<I> video, VideoProcessor<I> sink)
+	{
+		final ThreadPoolExecutor workers = new ThreadPoolExecutor(numThreads, numThreads, 0, TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory());
+		final BlockingQueue<Future<I>> queue = new ArrayBlockingQueue<Future<I>>(queueCapacity);
+
+		final Thread decoder = new DaemonThreadFactory().newThread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					final boolean copy = cloneFrames;
+					I frame;
+					while ((frame = video.getNextFrame()) != null) {
+						// the video may overwrite the frame when decoding the next
+						final I f = copy ? frame.clone() : frame;
+						queue.put(workers.submit(new Callable<I>() {
+							@Override
+							public I call() throws Exception {
+								return processFrame(f);
+							}
+						}));
+					}
+					queue.put((Future<I>) END);
+				} catch (final InterruptedException e) {
+					// the consumer has given up
+				} catch (final Throwable t) {
+					// pass the failure to the consumer in place of a frame
+					final FutureTask<I> failed = new FutureTask<I>(new Callable<I>() {
+						@Override
+						public I call() throws Exception {
+							if (t instanceof Exception)
+								throw (Exception) t;
+							throw (Error) t;
+						}
+					});
+					failed.run();
+					try {
+						queue.put(failed);
+					} catch (final InterruptedException e) {
+						// the consumer has given up
+					}
+				}
+			}
+		});
+		decoder.start();
+
+		try {
+			Future<I> next;
+			while ((next = queue.take()) != END) {
+				final I processed = next.get();
+				if (sink != null)
+					sink.processFrame(processed);
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (final ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new RuntimeException(e.getCause());
+		} finally {
+			decoder.interrupt();
+			workers.shutdownNow();
+		}
+
+		if (sink != null)
+			sink.processingComplete();
+		processingComplete();
+	}
+}
@@ -0,0 +1,374 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.video.processor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.openimaj.image.Image;
+import org.openimaj.util.parallel.GlobalExecutorPool;
+import org.openimaj.video.Video;
+import org.openimaj.video.VideoSeeker;
+
+/**
+ * Offline execution of {@link VideoProcessor}s over a seekable video by
+ * splitting it into time shards that are processed concurrently. Each shard
+ * opens its own copy of the video (and thus has its own decoder) through a
+ * {@link VideoFactory}, seeks to the start of the shard and drives a fresh
+ * processor from a {@link ProcessorFactory} over its frames.
+ * <p>
+ * As processors are usually stateful (for example, a shot detector compares
+ * each frame with the previous one), every shard apart from the first starts
+ * a given number of <em>warm-up</em> frames before its nominal start. The
+ * processor sees the warm-up frames, but they belong to the previous shard,
+ * and results computed for them should be discarded when the shards are
+ * stitched back together; {@link Shard} provides the frame ranges needed to
+ * do this.
+ * <p>
+ * Shards are positioned with a {@link VideoSeeker}, which checks where the
+ * video actually landed, so it works both for videos whose
+ * {@link Video#setCurrentFrameIndex(long)} makes the requested frame the next
+ * one and for decoder-backed videos (such as <code>XuggleVideo</code>) that
+ * make it the current one. Subclasses can override
+ * {@link #seek(Video, long)} for videos that can be positioned more
+ * efficiently.
+ *
+ * @author agent
+ *
+ * @param <T>
+ *            Type of the video frames
+ * @param <P>
+ *            Type of the processor
+ */
+public class ShardedVideoProcessor<T extends Image<?, T>, P extends VideoProcessor<T>>
+{
+	/**
+	 * Factory for creating independent instances of the video being
+	 * processed. Each shard is processed with its own instance.
+	 *
+	 * @param <T>
+	 *            Type of the video frames
+	 */
+	public interface VideoFactory<T extends Image<?, T>>
+	{
+		/**
+		 * @return a new instance of the video, positioned at the start
+		 */
+		public Video<T> create();
+	}
+
+	/**
+	 * Factory for creating the processor used for each shard.
+	 *
+	 * @param <T>
+	 *            Type of the video frames
+	 * @param <P>
+	 *            Type of the processor
+	 */
+	public interface ProcessorFactory<T extends Image<?, T>, P extends VideoProcessor<T>>
+	{
+		/**
+		 * @return a new processor
+		 */
+		public P create();
+	}
+
+	/**
+	 * A shard of the video and the processor that was applied to it. All
+	 * frame numbers are absolute frame numbers within the video; the frames
+	 * of the shard are <code>[start, end)</code>, and the processor was
+	 * applied to the frames <code>[warmupStart, end)</code>.
+	 *
+	 * @param <P>
+	 *            Type of the processor
+	 */
+	public static class Shard<P>
+	{
+		/** The index of the shard */
+		public final int index;
+
+		/** The first frame given to the processor */
+		public final long warmupStart;
+
+		/** The first frame belonging to the shard */
+		public final long start;
+
+		/** The frame after the last frame belonging to the shard */
+		public final long end;
+
+		/** The processor applied to the shard */
+		public P processor;
+
+		/** The number of frames given to the processor */
+		public long framesProcessed;
+
+		Shard(int index, long warmupStart, long start, long end)
+		{
+			this.index = index;
+			this.warmupStart = warmupStart;
+			this.start = start;
+			this.end = end;
+		}
+
+		/**
+		 * Convert the index of a frame as seen by the processor (counting
+		 * from zero at {@link #warmupStart}) to an absolute frame number.
+		 *
+		 * @param localFrame
+		 *            the local frame index
+		 * @return the absolute frame number
+		 */
+		public long toAbsolute(long localFrame)
+		{
+			return warmupStart + localFrame;
+		}
+
+		/**
+		 * Test whether a frame (as seen by the processor) belongs to this
+		 * shard rather than to its warm-up period.
+		 *
+		 * @param localFrame
+		 *            the local frame index
+		 * @return true if the frame belongs to the shard
+		 */
+		public boolean owns(long localFrame)
+		{
+			final long f = toAbsolute(localFrame);
+			return f >= start && f < end;
+		}
+
+		@Override
+		public String toString()
+		{
+			return "Shard " + index + " [" + start + ", " + end + ") warm-up from " + warmupStart;
+		}
+	}
+
+	private final VideoFactory<T> videoFactory;
+	private final ProcessorFactory<T, P> processorFactory;
+	private final int numShards;
+	private final int overlap;
+	private final ThreadPoolExecutor pool;
+
+	private long numFrames = -1;
+	private double fps = -1;
+
+	/**
+	 * Construct with the given factories, number of shards and number of
+	 * warm-up frames. Processing uses the {@link GlobalExecutorPool}.
+	 *
+	 * @param videoFactory
+	 *            factory for independent instances of the video
+	 * @param processorFactory
+	 *            factory for the per-shard processors
+	 * @param numShards
+	 *            the number of shards to split the video into
+	 * @param overlap
+	 *            the number of warm-up frames before each shard
+	 */
+	public ShardedVideoProcessor(VideoFactory<T> videoFactory, ProcessorFactory<T, P> processorFactory,
+			int numShards, int overlap)
+	{
+		this(videoFactory, processorFactory, numShards, overlap, GlobalExecutorPool.getPool());
+	}
+
+	/**
+	 * Construct with the given factories, number of shards, number of
+	 * warm-up frames and thread pool.
+	 *
+	 * @param videoFactory
+	 *            factory for independent instances of the video
+	 * @param processorFactory
+	 *            factory for the per-shard processors
+	 * @param numShards
+	 *            the number of shards to split the video into
+	 * @param overlap
+	 *            the number of warm-up frames before each shard
+	 * @param pool
+	 *            the thread pool used to process the shards
+	 */
+	public ShardedVideoProcessor(VideoFactory<T> videoFactory, ProcessorFactory<T, P> processorFactory,
+			int numShards, int overlap, ThreadPoolExecutor pool)
+	{
+		if (numShards < 1)
+			throw new IllegalArgumentException("At least one shard is required");
+		if (overlap < 0)
+			throw new IllegalArgumentException("The overlap must not be negative");
+
+		this.videoFactory = videoFactory;
+		this.processorFactory = processorFactory;
+		this.numShards = numShards;
+		this.overlap = overlap;
+		this.pool = pool;
+	}
+
+	/**
+	 * Split the video into shards and process them concurrently. The shards
+	 * are returned in order.
+	 *
+	 * @return the processed shards
+	 */
+	public List<Shard<P>> process()
+	{
+		final Video<T> probe = videoFactory.create();
+		try {
+			numFrames = probe.countFrames();
+			fps = probe.getFPS();
+		} finally {
+			probe.close();
+		}
+
+		if (numFrames < 0)
+			throw new UnsupportedOperationException("The number of frames in the video is unknown");
+
+		final List<Shard<P>> shards = createShards(numFrames);
+		final List<Future<Shard<P>>> futures = new ArrayList<Future<Shard<P>>>(shards.size());
+		for (final Shard<P> shard : shards) {
+			futures.add(pool.submit(new Callable<Shard<P>>() {
+				@Override
+				public Shard<P> call() throws Exception {
+					return processShard(shard);
+				}
+			}));
+		}
+
+		try {
+			for (final Future<Shard<P>> f : futures)
+				f.get();
+		} catch (final InterruptedException e) {
+			for (final Future<Shard<P>> f : futures)
+				f.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (final ExecutionException e) {
+			for (final Future<Shard<P>> f : futures)
+				f.cancel(true);
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new RuntimeException(e.getCause());
+		}
+
+		return shards;
+	}
+
+	/**
+	 * Split a video with the given number of frames into contiguous shards
+	 * of (nearly) equal length.
+	 *
+	 * @param nFrames
+	 *            the number of frames
+	 * @return the shards
+	 */
+	protected List<Shard<P>> createShards(long nFrames)
+	{
+		final int n = (int) Math.max(1, Math.min(numShards, nFrames));
+		final List<Shard<P>> shards = new ArrayList<Shard<P>>(n);
+
+		for (int i = 0; i < n; i++) {
+			final long start = nFrames * i / n;
+			final long end = nFrames * (i + 1) / n;
+			shards.add(new Shard<P>(i, Math.max(0, start - overlap), start, end));
+		}
+
+		return shards;
+	}
+
+	/**
+	 * Process a single shard with its own video instance and processor.
+	 *
+	 * @param shard
+	 *            the shard
+	 * @return the shard, with its processor set
+	 */
+	protected Shard<P> processShard(Shard<P> shard)
+	{
+		final Video<T> video = videoFactory.create();
+		try {
+			if (shard.warmupStart > 0)
+				seek(video, shard.warmupStart);
+
+			final P processor = processorFactory.create();
+			shard.processor = processor;
+
+			final long count = shard.end - shard.warmupStart;
+			long processed = 0;
+			T frame;
+			while (processed < count && !Thread.currentThread().isInterrupted()
+					&& (frame = video.getNextFrame()) != null)
+			{
+				processor.processFrame(frame);
+				processed++;
+			}
+			shard.framesProcessed = processed;
+
+			processor.processingComplete();
+		} finally {
+			video.close();
+		}
+
+		return shard;
+	}
+
+	/**
+	 * Position the video so that the next frame returned by
+	 * {@link Video#getNextFrame()} is the given frame.
+	 *
+	 * @param video
+	 *            the video
+	 * @param frame
+	 *            the frame number
+	 */
+	protected void seek(Video<T> video, long frame)
+	{
+		new VideoSeeker<T>(video).seek(frame);
+	}
+
+	/**
+	 * @return the number of frames in the video, or -1 if
+	 *         {@link #process()} has not been called
+	 */
+	public long getNumFrames()
+	{
+		return numFrames;
+	}
+
+	/**
+	 * @return the frame rate of the video, or -1 if {@link #process()} has
+	 *         not been called
+	 */
+	public double getFPS()
+	{
+		return fps;
+	}
+}
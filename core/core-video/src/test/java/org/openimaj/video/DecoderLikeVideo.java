@@ -0,0 +1,132 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.video;
+
+import org.openimaj.image.FImage;
+
+/**
+ * A video whose frame numbering and seeking behave like a decoder-backed
+ * video such as <code>XuggleVideo</code>: {@link #getCurrentFrameIndex()} is
+ * the index of the last frame returned, {@link #setCurrentFrameIndex(long)}
+ * decodes up to and including the requested frame, and every frame is
+ * decoded into the same image. The first pixel of frame <code>i</code> is
+ * <code>i</code>.
+ *
+ * @author agent
+ */
+public class DecoderLikeVideo extends Video<FImage> {
+	private final FImage buffer = new FImage(1, 1);
+	private final int length;
+	private final double fps;
+
+	/** The last frame decoded, or -1 before the first frame */
+	int current = -1;
+
+	/** The number of frames decoded */
+	int decodes;
+
+	/**
+	 * Construct with the given number of frames and frame rate
+	 *
+	 * @param length
+	 *            the number of frames
+	 * @param fps
+	 *            the frame rate
+	 */
+	public DecoderLikeVideo(int length, double fps) {
+		this.length = length;
+		this.fps = fps;
+	}
+
+	@Override
+	public FImage getNextFrame() {
+		if (current + 1 >= length)
+			return null;
+
+		current++;
+		decodes++;
+		buffer.pixels[0][0] = current;
+		return buffer;
+	}
+
+	@Override
+	public FImage getCurrentFrame() {
+		return buffer;
+	}
+
+	@Override
+	public int getCurrentFrameIndex() {
+		// computed from the timestamp and truncated, as XuggleVideo does
+		return (int) (getTimeStamp() / 1000d * fps);
+	}
+
+	@Override
+	public void setCurrentFrameIndex(long newFrame) {
+		// decode from the preceding "keyframe" up to the requested frame
+		current = (int) (Math.min(newFrame, length) / 5 * 5) - 1;
+		while (current < newFrame && getNextFrame() != null)
+			;
+	}
+
+	@Override
+	public boolean hasNextFrame() {
+		return current + 1 < length;
+	}
+
+	@Override
+	public long countFrames() {
+		return length;
+	}
+
+	@Override
+	public void reset() {
+		current = -1;
+	}
+
+	@Override
+	public long getTimeStamp() {
+		return (long) (Math.max(current, 0) * 1000d / fps);
+	}
+
+	@Override
+	public double getFPS() {
+		return fps;
+	}
+
+	@Override
+	public int getWidth() {
+		return buffer.width;
+	}
+
+	@Override
+	public int getHeight() {
+		return buffer.height;
+	}
+}
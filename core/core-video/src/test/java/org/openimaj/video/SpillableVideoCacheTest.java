@@ -0,0 +1,465 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.video;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Test;
+import org.openimaj.image.FImage;
+import org.openimaj.image.Image;
+import org.openimaj.image.MBFImage;
+import org.openimaj.image.colour.ColourSpace;
+import org.openimaj.video.SpillableVideoCache.FImageSerialiser;
+import org.openimaj.video.SpillableVideoCache.MBFImageByteSerialiser;
+import org.openimaj.video.SpillableVideoCache.MBFImageSerialiser;
+import org.openimaj.video.timecode.HrsMinSecFrameTimecode;
+
+/**
+ * Tests for {@link SpillableVideoCache}
+ *
+ * @author agent
+ */
+public class SpillableVideoCacheTest {
+	private static final int NFRAMES = 200;
+	private static final double FPS = 25;
+
+	/**
+	 * An {@link ArrayBackedVideo} that behaves like a decoder: it runs out of
+	 * frames at the end, can seek past the end, and counts the frames it
+	 * decodes, the seeks it performs, and the calls that ask for a frame
+	 * (including past the end).
+	 *
+	 * @param <I>
+	 *            Type of frame
+	 */
+	static class CountingVideo<I extends Image<?, I>> extends ArrayBackedVideo<I> {
+		final I[] frames;
+		final boolean knownLength;
+		int next = 0;
+		int decodes = 0;
+		int seeks = 0;
+		int requests = 0;
+		boolean closed = false;
+
+		CountingVideo(I[] frames, boolean knownLength) {
+			super(frames, FPS, false);
+			this.frames = frames;
+			this.knownLength = knownLength;
+		}
+
+		@Override
+		public synchronized I getNextFrame() {
+			requests++;
+			if (next >= frames.length)
+				return null;
+			decodes++;
+			return frames[next++];
+		}
+
+		@Override
+		public synchronized boolean hasNextFrame() {
+			requests++;
+			return next < frames.length;
+		}
+
+		@Override
+		public synchronized int getCurrentFrameIndex() {
+			return next;
+		}
+
+		@Override
+		public synchronized void setCurrentFrameIndex(long newFrame) {
+			seeks++;
+			next = (int) newFrame;
+		}
+
+		@Override
+		public synchronized void reset() {
+			next = 0;
+		}
+
+		@Override
+		public long countFrames() {
+			return knownLength ? frames.length : -1;
+		}
+
+		@Override
+		public void close() {
+			closed = true;
+		}
+	}
+
+	private static MBFImage[] createColourFrames() {
+		final Random rng = new Random(0);
+		final MBFImage[] frames = new MBFImage[NFRAMES];
+		for (int i = 0; i < NFRAMES; i++) {
+			frames[i] = new MBFImage(16, 12, ColourSpace.RGB);
+			for (final FImage band : frames[i].bands)
+				for (int y = 0; y < band.height; y++)
+					for (int x = 0; x < band.width; x++)
+						band.pixels[y][x] = rng.nextInt(256) / 255f;
+		}
+		return frames;
+	}
+
+	private static FImage[] createGreyFrames() {
+		final Random rng = new Random(0);
+		final FImage[] frames = new FImage[NFRAMES];
+		for (int i = 0; i < NFRAMES; i++) {
+			frames[i] = new FImage(16, 12);
+			for (int y = 0; y < frames[i].height; y++)
+				for (int x = 0; x < frames[i].width; x++)
+					frames[i].pixels[y][x] = rng.nextFloat();
+		}
+		return frames;
+	}
+
+	private static void assertFrameEquals(FImage expected, FImage actual) {
+		for (int y = 0; y < expected.height; y++)
+			assertArrayEquals(expected.pixels[y], actual.pixels[y], 0f);
+	}
+
+	private static void assertFrameEquals(MBFImage expected, MBFImage actual) {
+		assertEquals(expected.numBands(), actual.numBands());
+		for (int b = 0; b < expected.numBands(); b++)
+			assertFrameEquals(expected.getBand(b), actual.getBand(b));
+	}
+
+	/**
+	 * Read every frame, then read them again in a random order. With only a
+	 * few frames on the heap most of the second pass must come back from the
+	 * spill file, without decoding anything.
+	 */
+	private static <I extends Image<?, I>> void checkRoundTrip(CountingVideo<I> source,
+			SpillableVideoCache<I> cache, I[] frames)
+	{
+		for (int i = 0; i < NFRAMES; i++) {
+			assertTrue(cache.hasNextFrame());
+			final I frame = cache.getNextFrame();
+			if (frame instanceof MBFImage)
+				assertFrameEquals((MBFImage) frames[i], (MBFImage) frame);
+			else
+				assertFrameEquals((FImage) frames[i], (FImage) frame);
+		}
+		assertEquals(NFRAMES, source.decodes);
+
+		final Random rng = new Random(1);
+		for (int k = 0; k < 500; k++) {
+			final int i = rng.nextInt(NFRAMES);
+			assertTrue(cache.isCached(i));
+			final I frame = cache.getFrame(i);
+			if (frame instanceof MBFImage)
+				assertFrameEquals((MBFImage) frames[i], (MBFImage) frame);
+			else
+				assertFrameEquals((FImage) frames[i], (FImage) frame);
+		}
+		assertEquals(NFRAMES, source.decodes);
+		assertEquals(0, source.seeks);
+	}
+
+	/**
+	 * Greyscale frames evicted from the heap must be read back exactly
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testFImageSerialiser() throws IOException {
+		final FImage[] frames = createGreyFrames();
+		final CountingVideo<FImage> source = new CountingVideo<FImage>(frames, true);
+		final SpillableVideoCache<FImage> cache = new SpillableVideoCache<FImage>(source, new FImageSerialiser(), 4);
+		try {
+			checkRoundTrip(source, cache, frames);
+		} finally {
+			cache.close();
+		}
+	}
+
+	/**
+	 * Colour frames evicted from the heap must be read back exactly
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testMBFImageSerialiser() throws IOException {
+		final MBFImage[] frames = createColourFrames();
+		final CountingVideo<MBFImage> source = new CountingVideo<MBFImage>(frames, true);
+		final SpillableVideoCache<MBFImage> cache = new SpillableVideoCache<MBFImage>(source,
+				new MBFImageSerialiser(ColourSpace.RGB), 4);
+		try {
+			checkRoundTrip(source, cache, frames);
+		} finally {
+			cache.close();
+		}
+	}
+
+	/**
+	 * The byte serialiser must be lossless for frames with 8-bit values
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testMBFImageByteSerialiser() throws IOException {
+		final MBFImage[] frames = createColourFrames();
+		final CountingVideo<MBFImage> source = new CountingVideo<MBFImage>(frames, true);
+		final SpillableVideoCache<MBFImage> cache = new SpillableVideoCache<MBFImage>(source,
+				new MBFImageByteSerialiser(ColourSpace.RGB), 4);
+		try {
+			checkRoundTrip(source, cache, frames);
+		} finally {
+			cache.close();
+		}
+	}
+
+	/**
+	 * Requests behind the decoder or far ahead of it must seek; requests a
+	 * little ahead must decode forward
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testRandomAccess() throws IOException {
+		final FImage[] frames = createGreyFrames();
+		final CountingVideo<FImage> source = new CountingVideo<FImage>(frames, true);
+		final SpillableVideoCache<FImage> cache = new SpillableVideoCache<FImage>(source, new FImageSerialiser(), 4);
+		try {
+			// far ahead (the first seek also reads the first frame to find
+			// out how the source numbers its frames)
+			assertFrameEquals(frames[150], cache.getFrame(150));
+			assertEquals(1, source.seeks);
+			assertEquals(2, source.decodes);
+
+			// behind
+			assertFrameEquals(frames[10], cache.getFrame(10));
+			assertEquals(2, source.seeks);
+			assertEquals(3, source.decodes);
+
+			// a little ahead: decoded forward, caching the frames on the way
+			assertFrameEquals(frames[15], cache.getFrame(15));
+			assertEquals(2, source.seeks);
+			assertEquals(8, source.decodes);
+			for (int i = 10; i <= 15; i++)
+				assertTrue(cache.isCached(i));
+			assertFalse(cache.isCached(16));
+
+			// more than a second ahead
+			assertFrameEquals(frames[100], cache.getFrame(100));
+			assertEquals(3, source.seeks);
+
+			// everything read so far comes back without touching the source
+			final int decodes = source.decodes;
+			assertFrameEquals(frames[150], cache.getFrame(150));
+			assertFrameEquals(frames[12], cache.getFrame(12));
+			assertEquals(decodes, source.decodes);
+			assertEquals(3, source.seeks);
+
+			// random access doesn't move the play head
+			assertEquals(0, cache.getCurrentFrameIndex());
+		} finally {
+			cache.close();
+		}
+	}
+
+	/**
+	 * Random access must return the requested frame from a source that, like
+	 * <code>XuggleVideo</code>, reports the last frame returned, seeks so
+	 * that the requested frame is the current one, and reuses its frame
+	 * buffer
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testDecoderLikeSource() throws IOException {
+		final DecoderLikeVideo source = new DecoderLikeVideo(NFRAMES, 29.97);
+		final SpillableVideoCache<FImage> cache = new SpillableVideoCache<FImage>(source, new FImageSerialiser(), 4);
+		try {
+			final Random rng = new Random(1);
+			for (int k = 0; k < 100; k++) {
+				final int i = rng.nextInt(NFRAMES);
+				assertEquals(i, (int) cache.getFrame(i).pixels[0][0]);
+			}
+
+			for (int i = 0; i < NFRAMES; i++)
+				assertEquals(i, (int) cache.getFrame(i).pixels[0][0]);
+			assertNull(cache.getFrame(NFRAMES + 10));
+		} finally {
+			cache.close();
+		}
+	}
+
+	/**
+	 * Frames can be looked up by timecode
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testTimecode() throws IOException {
+		final FImage[] frames = createGreyFrames();
+		final CountingVideo<FImage> source = new CountingVideo<FImage>(frames, true);
+		final SpillableVideoCache<FImage> cache = new SpillableVideoCache<FImage>(source, new FImageSerialiser(), 4);
+		try {
+			assertFrameEquals(frames[123], cache.getFrame(new HrsMinSecFrameTimecode(123, FPS)));
+			assertFrameEquals(frames[0], cache.getFrame(new HrsMinSecFrameTimecode(0, FPS)));
+			assertNull(cache.getFrame(new HrsMinSecFrameTimecode(NFRAMES, FPS)));
+		} finally {
+			cache.close();
+		}
+	}
+
+	/**
+	 * When the length of the source is unknown, it is found by reading past
+	 * the end, but not by seeking past it
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testEnd() throws IOException {
+		final FImage[] frames = createGreyFrames();
+		final CountingVideo<FImage> source = new CountingVideo<FImage>(frames, false);
+		final SpillableVideoCache<FImage> cache = new SpillableVideoCache<FImage>(source, new FImageSerialiser(), 4);
+		try {
+			assertEquals(-1, cache.countFrames());
+
+			assertNull(cache.getFrame(NFRAMES + 100));
+			assertEquals(-1, cache.countFrames());
+			assertNull(cache.getFrame(NFRAMES + 101));
+			assertEquals(-1, cache.countFrames());
+
+			int n = 0;
+			while (cache.getNextFrame() != null)
+				n++;
+
+			assertEquals(NFRAMES, n);
+			assertEquals(NFRAMES, cache.countFrames());
+			assertFalse(cache.hasNextFrame());
+			assertNull(cache.getFrame(NFRAMES));
+		} finally {
+			cache.close();
+		}
+	}
+
+	/**
+	 * The prefetcher must cache the frames ahead of the play head, and no
+	 * further
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testPrefetch() throws Exception {
+		final FImage[] frames = createGreyFrames();
+		final CountingVideo<FImage> source = new CountingVideo<FImage>(frames, true);
+		final SpillableVideoCache<FImage> cache = new SpillableVideoCache<FImage>(source, new FImageSerialiser(), 4,
+				10, null);
+		try {
+			cache.setCurrentFrameIndex(100);
+			for (int i = 0; i < 500 && !cache.isCached(109); i++)
+				Thread.sleep(10);
+
+			for (int i = 100; i < 110; i++)
+				assertTrue(cache.isCached(i));
+
+			Thread.sleep(100);
+			assertFalse(cache.isCached(110));
+			assertFalse(cache.isCached(99));
+
+			for (int i = 100; i < 110; i++)
+				assertFrameEquals(frames[i], cache.getNextFrame());
+		} finally {
+			cache.close();
+		}
+	}
+
+	/**
+	 * With an unknown length and the play head past the end, the prefetcher
+	 * must go idle rather than seek the source over and over
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testPrefetchPastEnd() throws Exception {
+		final FImage[] frames = createGreyFrames();
+		final CountingVideo<FImage> source = new CountingVideo<FImage>(frames, false);
+		final SpillableVideoCache<FImage> cache = new SpillableVideoCache<FImage>(source, new FImageSerialiser(), 4,
+				10, null);
+		try {
+			cache.setCurrentFrameIndex(NFRAMES + 50);
+			Thread.sleep(100);
+
+			final int requests = source.requests;
+			Thread.sleep(100);
+			assertEquals(requests, source.requests);
+			assertEquals(-1, cache.countFrames());
+
+			// moving the head back within the video prefetches again
+			cache.setCurrentFrameIndex(100);
+			for (int i = 0; i < 500 && !cache.isCached(109); i++)
+				Thread.sleep(10);
+			assertTrue(cache.isCached(109));
+			assertNull(cache.getFrame(NFRAMES + 50));
+		} finally {
+			cache.close();
+		}
+	}
+
+	/**
+	 * Closing must stop the prefetcher, close the source and delete the
+	 * spill file
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testClose() throws Exception {
+		final File spill = File.createTempFile("openimaj-video-cache-test", ".raw");
+		final FImage[] frames = createGreyFrames();
+		final CountingVideo<FImage> source = new CountingVideo<FImage>(frames, true);
+		final SpillableVideoCache<FImage> cache = new SpillableVideoCache<FImage>(source, new FImageSerialiser(), 4,
+				10, spill);
+
+		cache.getFrame(0);
+		assertTrue(spill.exists());
+
+		cache.close();
+		assertTrue(source.closed);
+		assertFalse(spill.exists());
+
+		final int decodes = source.decodes;
+		cache.setCurrentFrameIndex(50);
+		Thread.sleep(100);
+		assertEquals(decodes, source.decodes);
+		assertFalse(cache.isCached(0));
+	}
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.video;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.openimaj.image.FImage;
+
+/**
+ * Tests for {@link VideoSeeker}
+ *
+ * @author agent
+ */
+public class VideoSeekerTest {
+	private static ArrayBackedVideo<FImage> createArrayBacked(int length) {
+		final FImage[] frames = new FImage[length];
+		for (int i = 0; i < length; i++) {
+			frames[i] = new FImage(1, 1);
+			frames[i].pixels[0][0] = i;
+		}
+		return new ArrayBackedVideo<FImage>(frames, 25, false);
+	}
+
+	private static void checkSeeks(Video<FImage> video, int length) {
+		final VideoSeeker<FImage> seeker = new VideoSeeker<FImage>(video);
+
+		for (final int frame : new int[] { 7, 0, 1, 13, 12, 5, 6, 30, length - 2, 2 }) {
+			assertTrue(seeker.seek(frame));
+			assertEquals(frame, (int) video.getNextFrame().pixels[0][0]);
+			assertEquals(frame + 1, (int) video.getNextFrame().pixels[0][0]);
+		}
+	}
+
+	/**
+	 * Videos that report the next frame must land on the requested frame
+	 */
+	@Test
+	public void testArrayBackedVideo() {
+		checkSeeks(createArrayBacked(40), 40);
+	}
+
+	/**
+	 * Videos that report the last frame returned, and that derive the index
+	 * from a truncated timestamp, must also land on the requested frame
+	 */
+	@Test
+	public void testDecoderLikeVideo() {
+		checkSeeks(new DecoderLikeVideo(40, 25), 40);
+		checkSeeks(new DecoderLikeVideo(40, 29.97), 40);
+	}
+
+	/**
+	 * Seeking past the end of a video must fail
+	 */
+	@Test
+	public void testSeekPastEnd() {
+		final DecoderLikeVideo video = new DecoderLikeVideo(10, 25);
+		final VideoSeeker<FImage> seeker = new VideoSeeker<FImage>(video);
+
+		assertTrue(seeker.seek(9));
+		assertEquals(9, (int) video.getNextFrame().pixels[0][0]);
+		assertFalse(seeker.seek(11));
+	}
+}
@@ -0,0 +1,233 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.video.processor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.openimaj.image.FImage;
+import org.openimaj.image.processor.ImageProcessor;
+import org.openimaj.video.ArrayBackedVideo;
+import org.openimaj.video.Video;
+
+/**
+ * Tests for {@link PipelinedVideoFrameProcessor}
+ *
+ * @author agent
+ */
+public class PipelinedVideoFrameProcessorTest {
+	private static final int NFRAMES = 200;
+
+	/**
+	 * Sink that records the value of the first pixel of each frame
+	 */
+	static class RecordingSink extends VideoProcessor<FImage> {
+		List<Float> frames = new ArrayList<Float>();
+		boolean complete;
+
+		@Override
+		public FImage processFrame(FImage frame) {
+			frames.add(frame.pixels[0][0]);
+			return frame;
+		}
+
+		@Override
+		public void processingComplete() {
+			complete = true;
+		}
+	}
+
+	/**
+	 * Video over an array of frames that ends after the last frame (an
+	 * {@link ArrayBackedVideo} that doesn't loop never runs out of frames).
+	 * If failAt is non-negative, reading that frame throws.
+	 */
+	private static Video<FImage> createVideo(final int failAt) {
+		final FImage[] frames = new FImage[NFRAMES];
+		for (int i = 0; i < NFRAMES; i++) {
+			frames[i] = new FImage(1, 1);
+			frames[i].pixels[0][0] = i;
+		}
+
+		return new ArrayBackedVideo<FImage>(frames, 25, false) {
+			int next = 0;
+
+			@Override
+			public synchronized FImage getNextFrame() {
+				if (next == failAt)
+					throw new IllegalStateException("decoder failure");
+				if (next >= NFRAMES)
+					return null;
+				next++;
+				return super.getNextFrame();
+			}
+		};
+	}
+
+	/**
+	 * Video that, like a video decoded by Xuggler, refills a single image
+	 * with every frame
+	 */
+	private static Video<FImage> createReusingVideo() {
+		final FImage buffer = new FImage(1, 1);
+
+		return new ArrayBackedVideo<FImage>(new FImage[] { buffer }, 25, false) {
+			int next = 0;
+
+			@Override
+			public synchronized FImage getNextFrame() {
+				if (next >= NFRAMES)
+					return null;
+				buffer.pixels[0][0] = next++;
+				return buffer;
+			}
+		};
+	}
+
+	/**
+	 * Processor that doubles the frame, after a random delay so that the
+	 * workers finish out of order
+	 */
+	private static ImageProcessor<FImage> createProcessor(final int failAt) {
+		final Random rng = new Random(0);
+		return new ImageProcessor<FImage>() {
+			@Override
+			public void processImage(FImage image) {
+				if ((int) image.pixels[0][0] == failAt)
+					throw new IllegalArgumentException("worker failure");
+
+				final int delay;
+				synchronized (rng) {
+					delay = rng.nextInt(3);
+				}
+				try {
+					Thread.sleep(delay);
+				} catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+
+				image.multiplyInplace(2f);
+			}
+		};
+	}
+
+	/**
+	 * Processed frames must reach the sink in the order of the video
+	 */
+	@Test
+	public void testOrder() {
+		final RecordingSink sink = new RecordingSink();
+		new PipelinedVideoFrameProcessor<FImage>(createProcessor(-1), 4, 8).process(createVideo(-1), sink);
+
+		assertEquals(NFRAMES, sink.frames.size());
+		for (int i = 0; i < NFRAMES; i++)
+			assertEquals(2f * i, sink.frames.get(i), 0f);
+		assertTrue(sink.complete);
+	}
+
+	/**
+	 * Frames must be processed correctly when the video refills the same
+	 * image for each frame
+	 */
+	@Test
+	public void testReusedFrameBuffer() {
+		final RecordingSink sink = new RecordingSink();
+		new PipelinedVideoFrameProcessor<FImage>(createProcessor(-1), 4, 8).process(createReusingVideo(), sink);
+
+		assertEquals(NFRAMES, sink.frames.size());
+		for (int i = 0; i < NFRAMES; i++)
+			assertEquals(2f * i, sink.frames.get(i), 0f);
+	}
+
+	/**
+	 * An exception thrown by a worker must reach the caller, after the
+	 * frames before it have been delivered
+	 */
+	@Test
+	public void testWorkerException() {
+		final RecordingSink sink = new RecordingSink();
+		try {
+			new PipelinedVideoFrameProcessor<FImage>(createProcessor(57), 4, 8).process(createVideo(-1), sink);
+			fail("expected an exception");
+		} catch (final IllegalArgumentException e) {
+			assertEquals("worker failure", e.getMessage());
+		}
+
+		assertEquals(57, sink.frames.size());
+		assertFalse(sink.complete);
+	}
+
+	/**
+	 * An exception thrown while decoding must reach the caller, after the
+	 * frames before it have been delivered
+	 */
+	@Test
+	public void testDecoderException() {
+		final RecordingSink sink = new RecordingSink();
+		try {
+			new PipelinedVideoFrameProcessor<FImage>(createProcessor(-1), 4, 8).process(createVideo(31), sink);
+			fail("expected an exception");
+		} catch (final IllegalStateException e) {
+			assertEquals("decoder failure", e.getMessage());
+		}
+
+		assertEquals(31, sink.frames.size());
+		assertFalse(sink.complete);
+	}
+
+	/**
+	 * An {@link Error} from a worker must reach the caller wrapped, not be lost
+	 */
+	@Test
+	public void testErrorIsWrapped() {
+		final Error error = new AssertionError("boom");
+		final ImageProcessor<FImage> processor = new ImageProcessor<FImage>() {
+			@Override
+			public void processImage(FImage image) {
+				throw error;
+			}
+		};
+
+		try {
+			new PipelinedVideoFrameProcessor<FImage>(processor, 2, 2).process(createVideo(-1), new RecordingSink());
+			fail("expected an exception");
+		} catch (final RuntimeException e) {
+			assertSame(error, e.getCause());
+		}
+	}
+}
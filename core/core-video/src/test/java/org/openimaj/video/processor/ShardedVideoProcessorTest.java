@@ -0,0 +1,223 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.video.processor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.openimaj.image.FImage;
+import org.openimaj.video.ArrayBackedVideo;
+import org.openimaj.video.DecoderLikeVideo;
+import org.openimaj.video.Video;
+import org.openimaj.video.processor.ShardedVideoProcessor.ProcessorFactory;
+import org.openimaj.video.processor.ShardedVideoProcessor.Shard;
+import org.openimaj.video.processor.ShardedVideoProcessor.VideoFactory;
+
+/**
+ * Tests for {@link ShardedVideoProcessor}
+ *
+ * @author agent
+ */
+public class ShardedVideoProcessorTest {
+	/**
+	 * Processor that records the value of the first pixel of each frame
+	 */
+	static class RecordingProcessor extends VideoProcessor<FImage> {
+		List<Integer> frames = new ArrayList<Integer>();
+
+		@Override
+		public FImage processFrame(FImage frame) {
+			frames.add((int) frame.pixels[0][0]);
+			return frame;
+		}
+	}
+
+	private static ShardedVideoProcessor<FImage, RecordingProcessor> create(int nFrames, int numShards, int overlap) {
+		final FImage[] frames = new FImage[nFrames];
+		for (int i = 0; i < nFrames; i++) {
+			frames[i] = new FImage(1, 1);
+			frames[i].pixels[0][0] = i;
+		}
+
+		return create(new VideoFactory<FImage>() {
+			@Override
+			public Video<FImage> create() {
+				return new ArrayBackedVideo<FImage>(frames, 25, false);
+			}
+		}, numShards, overlap);
+	}
+
+	private static ShardedVideoProcessor<FImage, RecordingProcessor> create(VideoFactory<FImage> videoFactory,
+			int numShards, int overlap) {
+		final ProcessorFactory<FImage, RecordingProcessor> processorFactory =
+				new ProcessorFactory<FImage, RecordingProcessor>() {
+					@Override
+					public RecordingProcessor create() {
+						return new RecordingProcessor();
+					}
+				};
+
+		return new ShardedVideoProcessor<FImage, RecordingProcessor>(videoFactory, processorFactory, numShards,
+				overlap);
+	}
+
+	/**
+	 * Local frame numbers are relative to the start of the warm-up, and only
+	 * the frames in <code>[start, end)</code> are owned
+	 */
+	@Test
+	public void testOwnsAndToAbsolute() {
+		final Shard<RecordingProcessor> shard = new Shard<RecordingProcessor>(1, 8, 10, 20);
+
+		assertEquals(8, shard.toAbsolute(0));
+		assertEquals(10, shard.toAbsolute(2));
+		assertEquals(20, shard.toAbsolute(12));
+
+		assertFalse(shard.owns(0));
+		assertFalse(shard.owns(1));
+		assertTrue(shard.owns(2));
+		assertTrue(shard.owns(11));
+		assertFalse(shard.owns(12));
+	}
+
+	/**
+	 * A shard without warm-up owns everything from its first local frame
+	 */
+	@Test
+	public void testOwnsWithoutWarmup() {
+		final Shard<RecordingProcessor> shard = new Shard<RecordingProcessor>(0, 0, 0, 5);
+
+		assertEquals(0, shard.toAbsolute(0));
+		assertTrue(shard.owns(0));
+		assertTrue(shard.owns(4));
+		assertFalse(shard.owns(5));
+	}
+
+	/**
+	 * Shards must tile the video and start their warm-up no more than
+	 * <code>overlap</code> frames early
+	 */
+	@Test
+	public void testCreateShards() {
+		final List<Shard<RecordingProcessor>> shards = create(100, 3, 2).createShards(100);
+
+		assertEquals(3, shards.size());
+		assertEquals(0, shards.get(0).start);
+		assertEquals(0, shards.get(0).warmupStart);
+		for (int i = 1; i < shards.size(); i++) {
+			assertEquals(i, shards.get(i).index);
+			assertEquals(shards.get(i - 1).end, shards.get(i).start);
+			assertEquals(shards.get(i).start - 2, shards.get(i).warmupStart);
+		}
+		assertEquals(100, shards.get(2).end);
+	}
+
+	/**
+	 * Asking for more shards than there are frames gives one frame per shard
+	 */
+	@Test
+	public void testCreateShardsMoreShardsThanFrames() {
+		final List<Shard<RecordingProcessor>> shards = create(3, 10, 5).createShards(3);
+
+		assertEquals(3, shards.size());
+		for (int i = 0; i < 3; i++) {
+			assertEquals(i, shards.get(i).start);
+			assertEquals(i + 1, shards.get(i).end);
+			assertEquals(0, shards.get(i).warmupStart);
+		}
+	}
+
+	/**
+	 * An empty video still gets a single (empty) shard
+	 */
+	@Test
+	public void testCreateShardsEmpty() {
+		final List<Shard<RecordingProcessor>> shards = create(1, 4, 1).createShards(0);
+
+		assertEquals(1, shards.size());
+		assertEquals(0, shards.get(0).start);
+		assertEquals(0, shards.get(0).end);
+	}
+
+	/**
+	 * Every frame must be given to its shard's processor in order, preceded
+	 * by the warm-up frames, and the owned frames must cover the video
+	 * exactly once
+	 */
+	@Test
+	public void testProcess() {
+		for (final int numShards : new int[] { 1, 2, 5, 13, 200 })
+			checkProcess(create(50, numShards, 3));
+	}
+
+	/**
+	 * Shards must start on exactly the right frame for videos that, like
+	 * <code>XuggleVideo</code>, report the last frame returned rather than
+	 * the next one and reuse their frame buffer
+	 */
+	@Test
+	public void testProcessDecoderLikeVideo() {
+		final VideoFactory<FImage> videoFactory = new VideoFactory<FImage>() {
+			@Override
+			public Video<FImage> create() {
+				return new DecoderLikeVideo(50, 29.97);
+			}
+		};
+
+		for (final int numShards : new int[] { 1, 2, 5, 13, 200 })
+			checkProcess(create(videoFactory, numShards, 3));
+	}
+
+	private void checkProcess(ShardedVideoProcessor<FImage, RecordingProcessor> svp) {
+		final List<Shard<RecordingProcessor>> shards = svp.process();
+
+		final List<Integer> owned = new ArrayList<Integer>();
+		for (final Shard<RecordingProcessor> shard : shards) {
+			final List<Integer> seen = shard.processor.frames;
+			assertEquals(shard.end - shard.warmupStart, shard.framesProcessed);
+			assertEquals(shard.framesProcessed, seen.size());
+
+			for (int i = 0; i < seen.size(); i++) {
+				assertEquals(shard.toAbsolute(i), (long) seen.get(i));
+				if (shard.owns(i))
+					owned.add(seen.get(i));
+			}
+		}
+
+		assertEquals(50, owned.size());
+		for (int i = 0; i < 50; i++)
+			assertEquals(i, (int) owned.get(i));
+	}
+}
@@ -0,0 +1,224 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Iterator;
+import java.util.Random;
+
+/**
+ * Abstract base for {@link DataSource}s that are backed by a memory-mapped
+ * file containing a flat, row-major matrix of fixed-width elements (with no
+ * header). Because a single mapping is limited to 2GB, the file is mapped as
+ * a number of segments, each of which holds a whole number of rows; no row
+ * ever crosses a segment boundary.
+ * <p>
+ * The data is paged in on demand by the operating system, so the size of the
+ * data is limited only by the available address space rather than the heap.
+ * Multiple data sources (or multiple JVMs) mapping the same file share the
+ * same physical pages.
+ * 
+ * @author agent
+ * 
+ * @param <DATATYPE>
+ *            the data type which can be returned
+ */
+public abstract class AbstractMappedDataSource<DATATYPE> implements DataSource<DATATYPE> {
+	protected final File file;
+	protected final int numDimensions;
+	protected final int numRows;
+	protected final int rowsPerSegment;
+	protected final int bytesPerRow;
+	protected final ByteBuffer[] segments;
+	protected Random rng = new Random();
+
+	/**
+	 * Construct by mapping the given file.
+	 * 
+	 * @param file
+	 *            the file to map
+	 * @param numDimensions
+	 *            the number of dimensions of each row
+	 * @param bytesPerElement
+	 *            the number of bytes used to encode each element of a row
+	 * @param maxSegmentSize
+	 *            the maximum number of bytes in each mapped segment
+	 * @throws IOException
+	 *             if an error occurs mapping the file
+	 */
+	protected AbstractMappedDataSource(File file, int numDimensions, int bytesPerElement, int maxSegmentSize)
+			throws IOException
+	{
+		this.file = file;
+		this.numDimensions = numDimensions;
+		this.bytesPerRow = numDimensions * bytesPerElement;
+
+		final long length = file.length();
+		if (length % bytesPerRow != 0)
+			throw new IOException("The length of the file " + file + " is not a multiple of the row size (" + bytesPerRow
+					+ " bytes)");
+
+		final long rows = length / bytesPerRow;
+		if (rows > Integer.MAX_VALUE)
+			throw new IOException("The file " + file + " contains too many rows");
+
+		this.numRows = (int) rows;
+		this.rowsPerSegment = Math.max(1, maxSegmentSize / bytesPerRow);
+
+		final int nSegments = (numRows + rowsPerSegment - 1) / rowsPerSegment;
+		this.segments = new ByteBuffer[nSegments];
+
+		RandomAccessFile raf = null;
+		try {
+			raf = new RandomAccessFile(file, "r");
+			final FileChannel channel = raf.getChannel();
+
+			for (int i = 0; i < nSegments; i++) {
+				final long start = (long) i * rowsPerSegment * bytesPerRow;
+				final long size = Math.min((long) rowsPerSegment * bytesPerRow, length - start);
+
+				segments[i] = channel.map(MapMode.READ_ONLY, start, size);
+			}
+		} finally {
+			// the mappings remain valid after the channel is closed
+			if (raf != null)
+				raf.close();
+		}
+	}
+
+	/**
+	 * Get a view of the bytes of the given row. The returned buffer is
+	 * independent of any other view, and its position and limit delimit the
+	 * row within the underlying mapped segment. No data is copied.
+	 * 
+	 * @param row
+	 *            the row
+	 * @return a view of the row
+	 */
+	protected ByteBuffer rowBytes(int row) {
+		final ByteBuffer buffer = segments[row / rowsPerSegment].duplicate();
+		final int offset = (row % rowsPerSegment) * bytesPerRow;
+
+		buffer.limit(offset + bytesPerRow);
+		buffer.position(offset);
+
+		return buffer;
+	}
+
+	/**
+	 * Set the random number generator used for selecting random rows.
+	 * 
+	 * @param rng
+	 *            the random number generator
+	 */
+	public void setRandom(Random rng) {
+		this.rng = rng;
+	}
+
+	/**
+	 * Get the file backing this data source
+	 * 
+	 * @return the file
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	@Override
+	public int numDimensions() {
+		return numDimensions;
+	}
+
+	@Override
+	public int size() {
+		return numRows;
+	}
+
+	@Override
+	public void getData(int startRow, int stopRow, DATATYPE[] data) {
+		for (int i = startRow, j = 0; i < stopRow; i++, j++)
+			readRow(i, data[j]);
+	}
+
+	@Override
+	public DATATYPE getData(int row) {
+		final DATATYPE data = createTemporaryArray(1)[0];
+		readRow(row, data);
+		return data;
+	}
+
+	@Override
+	public void getRandomRows(DATATYPE[] data) {
+		final int k = data.length;
+		final int[] ind = RandomData.getUniqueRandomInts(k, 0, numRows, rng);
+
+		for (int i = 0; i < k; i++)
+			readRow(ind[i], data[i]);
+	}
+
+	@Override
+	public Iterator<DATATYPE> iterator() {
+		return new Iterator<DATATYPE>() {
+			int row = 0;
+
+			@Override
+			public boolean hasNext() {
+				return row < numRows;
+			}
+
+			@Override
+			public DATATYPE next() {
+				return getData(row++);
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * Copy the given row into the given array with a single bulk transfer
+	 * from the mapped buffer.
+	 * 
+	 * @param row
+	 *            the row
+	 * @param data
+	 *            the array to fill; must have {@link #numDimensions()}
+	 *            elements
+	 */
+	protected abstract void readRow(int row, DATATYPE data);
+}
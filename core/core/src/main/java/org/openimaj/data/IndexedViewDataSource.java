@@ -30,6 +30,7 @@
 package org.openimaj.data;
 
 import java.lang.reflect.Array;
+import java.util.Arrays;
 
 /**
  * This {@link DataSource} provides an indexed view of a subset of another
@@ -75,6 +76,31 @@ public class IndexedViewDataSource<DATATYPE> extends AbstractDataSource<DATATYPE
 		}
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Unlike the default implementation, the selected rows are copied into
+	 * any non-null elements of the given array rather than replacing them
+	 * with references to the underlying data. This means that the caller can
+	 * safely modify the result without altering the inner data source.
+	 */
+	@Override
+	public void getRandomRows(DATATYPE[] data) {
+		final int[] rndIndexes = RandomData.getUniqueRandomInts(data.length, 0, size());
+		final DATATYPE[] tmp = Arrays.copyOf(data, 1);
+
+		for (int i = 0; i < rndIndexes.length; i++) {
+			final int row = indexes[rndIndexes[i]];
+
+			if (data[i] == null) {
+				data[i] = innerSource.getData(row);
+			} else {
+				tmp[0] = data[i];
+				innerSource.getData(row, row + 1, tmp);
+			}
+		}
+	}
+
 	@Override
 	public DATATYPE getData(int row) {
 		return innerSource.getData(indexes[row]);
@@ -0,0 +1,119 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.data;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Writer for the flat row-major files read by {@link MappedByteDataSource}
+ * and {@link MappedFloatDataSource}. Rows are appended one at a time, so
+ * arbitrarily large files can be created without holding the data in memory.
+ * The writer checks that all rows have the same length.
+ * 
+ * @author agent
+ */
+public class MappedDataWriter implements Closeable {
+	private final DataOutputStream out;
+	private int numDimensions = -1;
+	private long numRows;
+
+	/**
+	 * Construct a writer that will create (or overwrite) the given file.
+	 * 
+	 * @param file
+	 *            the file to write
+	 * @throws IOException
+	 *             if the file cannot be opened
+	 */
+	public MappedDataWriter(File file) throws IOException {
+		this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 20));
+	}
+
+	private void checkLength(int length) {
+		if (numDimensions == -1)
+			numDimensions = length;
+		else if (numDimensions != length)
+			throw new IllegalArgumentException("Row has " + length + " dimensions; expected " + numDimensions);
+	}
+
+	/**
+	 * Append a row of bytes
+	 * 
+	 * @param row
+	 *            the row
+	 * @throws IOException
+	 *             if an error occurs writing
+	 */
+	public void write(byte[] row) throws IOException {
+		checkLength(row.length);
+		out.write(row);
+		numRows++;
+	}
+
+	/**
+	 * Append a row of floats
+	 * 
+	 * @param row
+	 *            the row
+	 * @throws IOException
+	 *             if an error occurs writing
+	 */
+	public void write(float[] row) throws IOException {
+		checkLength(row.length);
+		for (final float f : row)
+			out.writeFloat(f);
+		numRows++;
+	}
+
+	/**
+	 * @return the number of rows written so far
+	 */
+	public long numRows() {
+		return numRows;
+	}
+
+	/**
+	 * @return the number of dimensions of the rows written so far, or -1 if
+	 *         no rows have been written
+	 */
+	public int numDimensions() {
+		return numDimensions;
+	}
+
+	@Override
+	public void close() throws IOException {
+		out.close();
+	}
+}
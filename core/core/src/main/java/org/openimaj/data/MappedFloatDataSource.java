@@ -0,0 +1,133 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.FloatBuffer;
+
+/**
+ * A {@link DataSource} of <code>float[]</code> rows backed by a memory-mapped
+ * file. The file is a flat row-major matrix of big-endian floats with no
+ * header, as produced by {@link #write(Iterable, File)}.
+ * 
+ * @see AbstractMappedDataSource
+ * 
+ * @author agent
+ */
+public class MappedFloatDataSource extends AbstractMappedDataSource<float[]> {
+	private final FloatBuffer[] floatSegments;
+
+	/**
+	 * Construct by mapping the given file with the largest possible segments.
+	 * 
+	 * @param file
+	 *            the file
+	 * @param numDimensions
+	 *            the number of dimensions of each row
+	 * @throws IOException
+	 *             if an error occurs mapping the file
+	 */
+	public MappedFloatDataSource(File file, int numDimensions) throws IOException {
+		this(file, numDimensions, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Construct by mapping the given file with segments of at most the given
+	 * number of bytes.
+	 * 
+	 * @param file
+	 *            the file
+	 * @param numDimensions
+	 *            the number of dimensions of each row
+	 * @param maxSegmentSize
+	 *            the maximum number of bytes in each mapped segment
+	 * @throws IOException
+	 *             if an error occurs mapping the file
+	 */
+	public MappedFloatDataSource(File file, int numDimensions, int maxSegmentSize) throws IOException {
+		super(file, numDimensions, 4, maxSegmentSize);
+
+		floatSegments = new FloatBuffer[segments.length];
+		for (int i = 0; i < segments.length; i++)
+			floatSegments[i] = segments[i].asFloatBuffer();
+	}
+
+	/**
+	 * Get a read-only view of the given row. No data is copied; the position
+	 * and limit of the returned buffer delimit the row.
+	 * 
+	 * @param row
+	 *            the row
+	 * @return a view of the row
+	 */
+	public FloatBuffer getRowView(int row) {
+		final FloatBuffer buffer = floatSegments[row / rowsPerSegment].asReadOnlyBuffer();
+		final int offset = (row % rowsPerSegment) * numDimensions;
+
+		buffer.limit(offset + numDimensions);
+		buffer.position(offset);
+
+		return buffer;
+	}
+
+	@Override
+	protected void readRow(int row, float[] data) {
+		final FloatBuffer buffer = floatSegments[row / rowsPerSegment].duplicate();
+		buffer.position((row % rowsPerSegment) * numDimensions);
+		buffer.get(data, 0, numDimensions);
+	}
+
+	@Override
+	public float[][] createTemporaryArray(int size) {
+		return new float[size][numDimensions];
+	}
+
+	/**
+	 * Write the given rows to a file in the format read by
+	 * {@link MappedFloatDataSource}.
+	 * 
+	 * @param rows
+	 *            the rows to write; all rows must have the same length
+	 * @param file
+	 *            the file to write to
+	 * @throws IOException
+	 *             if an error occurs writing
+	 */
+	public static void write(Iterable<float[]> rows, File file) throws IOException {
+		final MappedDataWriter writer = new MappedDataWriter(file);
+		try {
+			for (final float[] row : rows)
+				writer.write(row);
+		} finally {
+			writer.close();
+		}
+	}
+}
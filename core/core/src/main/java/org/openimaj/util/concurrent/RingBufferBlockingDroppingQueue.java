@@ -0,0 +1,559 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.util.concurrent;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded, lock-free {@linkplain BlockingDroppingQueue blocking dropping
+ * queue} backed by a ring buffer. This is intended as a drop-in replacement
+ * for {@link ArrayBlockingDroppingQueue} in situations where very high rates
+ * of insertion and removal mean that the lock and condition signalling of the
+ * array-based queue become a bottleneck (for example between a live stream
+ * source and its consumers in a
+ * {@link org.openimaj.util.stream.BlockingDroppingBufferedStream}).
+ *
+ * <p>
+ * Elements are ordered FIFO. The implementation is based on Dmitry Vyukov's
+ * bounded multi-producer multi-consumer queue: each slot of the ring carries
+ * its own sequence number, and producers and consumers claim slots by
+ * advancing a shared (cache-line padded) tail or head sequence with a single
+ * compare-and-set. It is safe for any number of producer and consumer threads,
+ * and so also serves the single-producer single-consumer case.
+ *
+ * <p>
+ * As with {@link ArrayBlockingDroppingQueue}, <tt>offer</tt> fails if the
+ * queue is full, whilst <tt>put</tt> removes the oldest item to make room and
+ * returns it. If several producers race for the last free slot it is possible
+ * for a <tt>put</tt> to have to drop more than once; every dropped item is
+ * counted by {@link #dropCount()}, but only the last is returned.
+ *
+ * <p>
+ * Blocking retrievals ({@link #take()} and {@link #poll(long, TimeUnit)}) do
+ * not use locks; instead they wait using a configurable {@link WaitStrategy}.
+ * Producers never signal consumers, so the choice of strategy trades the
+ * latency of consumers against CPU usage whilst they are waiting.
+ *
+ * <p>
+ * The {@link #iterator()} returns a weakly consistent snapshot of the queue
+ * and does not support removal; consequently {@link #remove(Object)} is also
+ * unsupported. {@link #size()} is exact when the queue is quiescent, but is
+ * only an estimate whilst other threads are modifying it.
+ *
+ * @author agent
+ * @param <E>
+ *            the type of elements held in this collection
+ */
+public class RingBufferBlockingDroppingQueue<E> extends AbstractQueue<E> implements BlockingDroppingQueue<E> {
+	/**
+	 * Strategies for waiting for an item to become available in blocking
+	 * retrieval operations.
+	 *
+	 * @author agent
+	 */
+	public static enum WaitStrategy {
+		/**
+		 * Busy-spin. Gives the lowest latency, but occupies a whole CPU whilst
+		 * waiting; only appropriate if there are more cores than active
+		 * threads.
+		 */
+		SPIN {
+			@Override
+			int idle(int counter) {
+				return counter + 1;
+			}
+		},
+		/**
+		 * Spin for a short while, and then repeatedly yield the CPU to other
+		 * threads.
+		 */
+		YIELD {
+			@Override
+			int idle(int counter) {
+				if (counter < SPIN_TRIES)
+					return counter + 1;
+
+				Thread.yield();
+				return counter;
+			}
+		},
+		/**
+		 * Spin, then yield, and then repeatedly park the thread for a short
+		 * period. Uses very little CPU when the queue is idle at the cost of
+		 * slightly increased latency.
+		 */
+		PARK {
+			@Override
+			int idle(int counter) {
+				if (counter < SPIN_TRIES)
+					return counter + 1;
+
+				if (counter < SPIN_TRIES + YIELD_TRIES) {
+					Thread.yield();
+					return counter + 1;
+				}
+
+				LockSupport.parkNanos(PARK_NANOS);
+				return counter;
+			}
+		};
+
+		private static final int SPIN_TRIES = 100;
+		private static final int YIELD_TRIES = 100;
+		private static final long PARK_NANOS = 100000L;
+
+		/**
+		 * Wait once.
+		 *
+		 * @param counter
+		 *            the number of times the caller has waited (starting at
+		 *            0)
+		 * @return the new value of the counter
+		 */
+		abstract int idle(int counter);
+	}
+
+	/**
+	 * An {@link AtomicLong} padded to occupy its own cache line, so that the
+	 * head and tail sequences are not falsely shared between producers and
+	 * consumers.
+	 */
+	@SuppressWarnings("serial")
+	static final class PaddedAtomicLong extends AtomicLong {
+		public volatile long p1, p2, p3, p4, p5, p6 = 7L;
+
+		PaddedAtomicLong(long initialValue) {
+			super(initialValue);
+		}
+
+		/**
+		 * Prevent the padding from being optimised away
+		 *
+		 * @return the sum of the padding
+		 */
+		long sumPaddingToPreventOptimisation() {
+			return p1 + p2 + p3 + p4 + p5 + p6;
+		}
+	}
+
+	private final int capacity;
+	private final int mask;
+	private final boolean checkCapacity;
+	private final Object[] items;
+	private final AtomicLongArray sequences;
+	private final WaitStrategy waitStrategy;
+
+	// the tail sequence is the total number of items ever inserted
+	private final PaddedAtomicLong tail = new PaddedAtomicLong(0);
+	private final PaddedAtomicLong head = new PaddedAtomicLong(0);
+	private final PaddedAtomicLong dropCount = new PaddedAtomicLong(0);
+
+	/**
+	 * Creates a <tt>RingBufferBlockingDroppingQueue</tt> with the given (fixed)
+	 * capacity and the {@link WaitStrategy#PARK} wait strategy.
+	 *
+	 * @param capacity
+	 *            the capacity of this queue
+	 * @throws IllegalArgumentException
+	 *             if <tt>capacity</tt> is less than 1
+	 */
+	public RingBufferBlockingDroppingQueue(int capacity) {
+		this(capacity, WaitStrategy.PARK);
+	}
+
+	/**
+	 * Creates a <tt>RingBufferBlockingDroppingQueue</tt> with the given (fixed)
+	 * capacity and wait strategy.
+	 *
+	 * @param capacity
+	 *            the capacity of this queue
+	 * @param waitStrategy
+	 *            the strategy used by consumers to wait for items
+	 * @throws IllegalArgumentException
+	 *             if <tt>capacity</tt> is less than 1
+	 */
+	public RingBufferBlockingDroppingQueue(int capacity, WaitStrategy waitStrategy) {
+		if (capacity <= 0 || capacity > (1 << 30))
+			throw new IllegalArgumentException();
+		if (waitStrategy == null)
+			throw new NullPointerException();
+
+		// the ring needs at least two slots to tell full and empty slots apart
+		int slots = 2;
+		while (slots < capacity)
+			slots <<= 1;
+
+		this.capacity = capacity;
+		this.mask = slots - 1;
+		this.checkCapacity = slots != capacity;
+		this.items = new Object[slots];
+		this.sequences = new AtomicLongArray(slots);
+		for (int i = 0; i < slots; i++)
+			sequences.set(i, i);
+		this.waitStrategy = waitStrategy;
+	}
+
+	/**
+	 * Creates a <tt>RingBufferBlockingDroppingQueue</tt> with the given (fixed)
+	 * capacity and wait strategy, initially containing the elements of the
+	 * given collection, added in traversal order of the collection's iterator.
+	 *
+	 * @param capacity
+	 *            the capacity of this queue
+	 * @param waitStrategy
+	 *            the strategy used by consumers to wait for items
+	 * @param c
+	 *            the collection of elements to initially contain
+	 * @throws IllegalArgumentException
+	 *             if <tt>capacity</tt> is less than <tt>c.size()</tt>, or
+	 *             less than 1.
+	 * @throws NullPointerException
+	 *             if the specified collection or any of its elements are null
+	 */
+	public RingBufferBlockingDroppingQueue(int capacity, WaitStrategy waitStrategy, Collection<? extends E> c) {
+		this(capacity, waitStrategy);
+		if (capacity < c.size())
+			throw new IllegalArgumentException();
+
+		for (final E e : c)
+			add(e);
+	}
+
+	/**
+	 * Get the wait strategy used by blocking retrievals
+	 *
+	 * @return the wait strategy
+	 */
+	public WaitStrategy getWaitStrategy() {
+		return waitStrategy;
+	}
+
+	@Override
+	public boolean offer(E e) {
+		if (e == null)
+			throw new NullPointerException();
+
+		long pos = tail.get();
+		for (;;) {
+			final int index = (int) pos & mask;
+			final long dif = sequences.get(index) - pos;
+
+			if (dif == 0) {
+				// when the ring is bigger than the capacity the slot sequences
+				// alone can't tell us that the queue is full
+				if (checkCapacity && pos - head.get() >= capacity)
+					return false;
+
+				if (tail.compareAndSet(pos, pos + 1)) {
+					items[index] = e;
+					sequences.lazySet(index, pos + 1);
+					return true;
+				}
+			} else if (dif < 0) {
+				if (pos - head.get() >= capacity)
+					return false;
+
+				// a consumer has claimed the slot but not yet released it
+				Thread.yield();
+			}
+
+			pos = tail.get();
+		}
+	}
+
+	@Override
+	public E put(E e) throws InterruptedException {
+		if (e == null)
+			throw new NullPointerException();
+
+		E ret = null;
+		while (!offer(e)) {
+			// drop an item to make room
+			final E dropped = poll();
+			if (dropped != null) {
+				ret = dropped;
+				dropCount.incrementAndGet();
+			}
+		}
+
+		return ret;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public E poll() {
+		long pos = head.get();
+		for (;;) {
+			final int index = (int) pos & mask;
+			final long dif = sequences.get(index) - (pos + 1);
+
+			if (dif == 0) {
+				if (head.compareAndSet(pos, pos + 1)) {
+					final E x = (E) items[index];
+					items[index] = null;
+					sequences.lazySet(index, pos + mask + 1);
+					return x;
+				}
+			} else if (dif < 0) {
+				// empty (or the producer of the head item hasn't finished
+				// writing it yet)
+				return null;
+			}
+
+			pos = head.get();
+		}
+	}
+
+	@Override
+	public E take() throws InterruptedException {
+		int counter = 0;
+		for (;;) {
+			final E x = poll();
+			if (x != null)
+				return x;
+
+			if (Thread.interrupted())
+				throw new InterruptedException();
+
+			counter = waitStrategy.idle(counter);
+		}
+	}
+
+	@Override
+	public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+		final long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+		int counter = 0;
+		for (;;) {
+			final E x = poll();
+			if (x != null)
+				return x;
+
+			if (Thread.interrupted())
+				throw new InterruptedException();
+
+			if (deadline - System.nanoTime() <= 0)
+				return null;
+
+			counter = waitStrategy.idle(counter);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public E peek() {
+		for (;;) {
+			final long pos = head.get();
+			final int index = (int) pos & mask;
+
+			if (sequences.get(index) - (pos + 1) < 0)
+				return null;
+
+			final E x = (E) items[index];
+			if (x != null && head.get() == pos)
+				return x;
+		}
+	}
+
+	@Override
+	public int size() {
+		for (;;) {
+			final long h = head.get();
+			final long t = tail.get();
+
+			if (head.get() == h) {
+				final long size = t - h;
+
+				if (size <= 0)
+					return 0;
+				return (int) Math.min(size, capacity);
+			}
+		}
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	@Override
+	public int remainingCapacity() {
+		return capacity - size();
+	}
+
+	/**
+	 * Not supported by this queue.
+	 *
+	 * @throws UnsupportedOperationException
+	 *             always
+	 */
+	@Override
+	public boolean remove(Object o) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		if (o == null)
+			return false;
+
+		for (final Object x : snapshot())
+			if (o.equals(x))
+				return true;
+
+		return false;
+	}
+
+	@Override
+	public int drainTo(Collection<? super E> c) {
+		return drainTo(c, Integer.MAX_VALUE);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public int drainTo(Collection<? super E> c, int maxElements) {
+		if (c == null)
+			throw new NullPointerException();
+		if (c == this)
+			throw new IllegalArgumentException();
+		if (maxElements <= 0)
+			return 0;
+
+		final int max = Math.min(maxElements, capacity);
+		for (;;) {
+			final long pos = head.get();
+
+			// count the run of published items at the head of the queue...
+			int n = 0;
+			while (n < max && sequences.get((int) (pos + n) & mask) == pos + n + 1)
+				n++;
+
+			if (n == 0)
+				return 0;
+
+			// ...and claim them all in one go
+			if (head.compareAndSet(pos, pos + n)) {
+				for (int i = 0; i < n; i++) {
+					final int index = (int) (pos + i) & mask;
+					final E x = (E) items[index];
+					items[index] = null;
+					sequences.lazySet(index, pos + i + mask + 1);
+					c.add(x);
+				}
+				return n;
+			}
+		}
+	}
+
+	/**
+	 * Returns a weakly consistent snapshot of the items that were in the
+	 * queue at (approximately) the time of the call.
+	 *
+	 * @return the items in the queue
+	 */
+	private List<Object> snapshot() {
+		final List<Object> list = new ArrayList<Object>(size());
+
+		final long t = tail.get();
+		for (long pos = head.get(); pos < t; pos++) {
+			final int index = (int) pos & mask;
+			final Object x = items[index];
+
+			if (x != null && sequences.get(index) == pos + 1)
+				list.add(x);
+		}
+
+		return list;
+	}
+
+	@Override
+	public Object[] toArray() {
+		return snapshot().toArray();
+	}
+
+	@Override
+	public <T> T[] toArray(T[] a) {
+		return snapshot().toArray(a);
+	}
+
+	/**
+	 * Returns an iterator over a weakly consistent snapshot of the elements
+	 * in this queue, in proper sequence. The iterator does not support
+	 * removal.
+	 *
+	 * @return an iterator over the elements in this queue in proper sequence
+	 */
+	@Override
+	public Iterator<E> iterator() {
+		@SuppressWarnings("unchecked")
+		final Iterator<E> itr = (Iterator<E>) snapshot().iterator();
+
+		return new Iterator<E>() {
+			@Override
+			public boolean hasNext() {
+				return itr.hasNext();
+			}
+
+			@Override
+			public E next() {
+				return itr.next();
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	@Override
+	public void clear() {
+		while (poll() != null)
+			;
+	}
+
+	@Override
+	public long insertCount() {
+		return tail.get();
+	}
+
+	@Override
+	public long dropCount() {
+		return dropCount.get();
+	}
+}
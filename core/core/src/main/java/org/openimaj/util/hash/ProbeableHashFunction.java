@@ -0,0 +1,59 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.util.hash;
+
+/**
+ * A {@link HashFunction} that maps objects to integer slots (for example
+ * quantised projections), and can report how close an object is to each of
+ * the neighbouring slots. This information can be used to generate
+ * query-directed probing sequences in multi-probe LSH.
+ * 
+ * @author agent
+ * 
+ * @param <OBJECT>
+ *            Type of object being hashed
+ */
+public interface ProbeableHashFunction<OBJECT> extends HashFunction<OBJECT> {
+	/**
+	 * Compute the hash code for the object, together with the costs of moving
+	 * the object into the neighbouring slots. The cost of moving to the slot
+	 * with hash code <code>code - 1</code> is written to the first element of
+	 * the costs array, and the cost of moving to <code>code + 1</code> is
+	 * written to the second. If a neighbouring slot does not exist the cost
+	 * must be set to {@link Double#POSITIVE_INFINITY}.
+	 * 
+	 * @param object
+	 *            the object
+	 * @param costs
+	 *            the array (of length 2) to fill with the costs
+	 * @return the hash code
+	 */
+	public int computeHashCode(OBJECT object, double[] costs);
+}
@@ -0,0 +1,250 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.util.hash.composition;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.openimaj.citation.annotation.Reference;
+import org.openimaj.citation.annotation.ReferenceType;
+import org.openimaj.util.hash.HashCodeUtil;
+import org.openimaj.util.hash.HashFunction;
+import org.openimaj.util.hash.HashFunctionFactory;
+import org.openimaj.util.hash.MultiProbeHashFunction;
+import org.openimaj.util.hash.ProbeableHashFunction;
+
+/**
+ * Composition of {@link ProbeableHashFunction}s that supports query-directed
+ * multi-probing. The composite hash code is computed in exactly the same way as
+ * by {@link SimpleComposition}, so a table built with a
+ * {@link SimpleComposition} of the same functions can be probed with this
+ * class.
+ * <p>
+ * The probing sequence is generated by perturbing the codes of the underlying
+ * functions by -1 or +1. Each perturbation set is scored by the sum of the
+ * squared costs of its perturbations (i.e. how far the query would have to
+ * move to fall into the perturbed slots), and sets are generated in order of
+ * increasing score using the shift/expand procedure of Lv et al.
+ * 
+ * @author agent
+ * 
+ * @param <OBJECT>
+ *            Type of object being hashed
+ */
+@Reference(
+		type = ReferenceType.Inproceedings,
+		author = { "Lv, Qin", "Josephson, William", "Wang, Zhe", "Charikar, Moses", "Li, Kai" },
+		title = "Multi-probe LSH: Efficient Indexing for High-dimensional Similarity Search",
+		year = "2007",
+		booktitle = "Proceedings of the 33rd International Conference on Very Large Data Bases",
+		pages = { "950", "", "961" },
+		series = "VLDB '07")
+public class MultiProbeComposition<OBJECT> extends HashComposition<OBJECT> implements MultiProbeHashFunction<OBJECT> {
+	private static class PerturbationSet {
+		int[] members;
+		double score;
+
+		PerturbationSet(int[] members, double score) {
+			this.members = members;
+			this.score = score;
+		}
+	}
+
+	private static final Comparator<PerturbationSet> SCORE_COMPARATOR = new Comparator<PerturbationSet>() {
+		@Override
+		public int compare(PerturbationSet o1, PerturbationSet o2) {
+			return Double.compare(o1.score, o2.score);
+		}
+	};
+
+	/**
+	 * Construct with the given functions. All the functions must be
+	 * {@link ProbeableHashFunction}s.
+	 * 
+	 * @param functions
+	 *            the underlying hash functions.
+	 */
+	public MultiProbeComposition(List<HashFunction<OBJECT>> functions) {
+		super(functions);
+		checkFunctions();
+	}
+
+	/**
+	 * Construct with the given functions. All the functions must be
+	 * {@link ProbeableHashFunction}s.
+	 * 
+	 * @param first
+	 *            the first function
+	 * @param remainder
+	 *            the remainder of the functions
+	 */
+	@SafeVarargs
+	public MultiProbeComposition(HashFunction<OBJECT> first, HashFunction<OBJECT>... remainder) {
+		super(first, remainder);
+		checkFunctions();
+	}
+
+	/**
+	 * Construct with the factory which is used to produce the required number
+	 * of functions. The factory must produce {@link ProbeableHashFunction}s.
+	 * 
+	 * @param factory
+	 *            the factory to use to produce the underlying hash functions.
+	 * @param nFuncs
+	 *            the number of functions to create for the composition
+	 */
+	public MultiProbeComposition(HashFunctionFactory<OBJECT> factory, int nFuncs) {
+		super(factory, nFuncs);
+		checkFunctions();
+	}
+
+	private void checkFunctions() {
+		for (final HashFunction<OBJECT> f : hashFunctions) {
+			if (!(f instanceof ProbeableHashFunction))
+				throw new IllegalArgumentException("All hash functions must be ProbeableHashFunctions");
+		}
+	}
+
+	@Override
+	public int computeHashCode(OBJECT object) {
+		int result = HashCodeUtil.SEED;
+
+		for (int i = 0; i < hashFunctions.size(); i++)
+			result = HashCodeUtil.hash(result, hashFunctions.get(i).computeHashCode(object));
+
+		return result;
+	}
+
+	private static int combine(int[] codes) {
+		int result = HashCodeUtil.SEED;
+
+		for (int i = 0; i < codes.length; i++)
+			result = HashCodeUtil.hash(result, codes[i]);
+
+		return result;
+	}
+
+	@Override
+	public int[] computeProbeSequence(OBJECT object, int numProbes) {
+		final int nfuncs = hashFunctions.size();
+		final int[] codes = new int[nfuncs];
+
+		// compute the codes and the costs of every possible perturbation
+		final double[] costs = new double[2];
+		final double[] pcosts = new double[2 * nfuncs];
+		final int[] pfuncs = new int[2 * nfuncs];
+		final int[] pdeltas = new int[2 * nfuncs];
+		int nperturbations = 0;
+
+		for (int i = 0; i < nfuncs; i++) {
+			codes[i] = ((ProbeableHashFunction<OBJECT>) hashFunctions.get(i)).computeHashCode(object, costs);
+
+			for (int j = 0; j < 2; j++) {
+				if (costs[j] != Double.POSITIVE_INFINITY) {
+					pcosts[nperturbations] = costs[j] * costs[j];
+					pfuncs[nperturbations] = i;
+					pdeltas[nperturbations] = j == 0 ? -1 : 1;
+					nperturbations++;
+				}
+			}
+		}
+
+		final int[] probes = new int[numProbes];
+		probes[0] = combine(codes);
+		if (numProbes == 1 || nperturbations == 0)
+			return Arrays.copyOf(probes, 1);
+
+		// sort the perturbations by increasing cost
+		final Integer[] order = new Integer[nperturbations];
+		for (int i = 0; i < nperturbations; i++)
+			order[i] = i;
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer o1, Integer o2) {
+				return Double.compare(pcosts[o1], pcosts[o2]);
+			}
+		});
+
+		final double[] z = new double[nperturbations];
+		for (int i = 0; i < nperturbations; i++)
+			z[i] = pcosts[order[i]];
+
+		// generate the perturbation sets in order of increasing score
+		final PriorityQueue<PerturbationSet> heap = new PriorityQueue<PerturbationSet>(numProbes, SCORE_COMPARATOR);
+		heap.add(new PerturbationSet(new int[] { 0 }, z[0]));
+
+		final int[] perturbed = new int[nfuncs];
+		final boolean[] used = new boolean[nfuncs];
+		int nprobes = 1;
+
+		while (nprobes < numProbes && !heap.isEmpty()) {
+			final PerturbationSet set = heap.poll();
+			final int[] members = set.members;
+			final int max = members[members.length - 1];
+
+			if (max + 1 < nperturbations) {
+				// shift: replace the largest member with the next
+				final int[] shifted = members.clone();
+				shifted[shifted.length - 1] = max + 1;
+				heap.add(new PerturbationSet(shifted, set.score - z[max] + z[max + 1]));
+
+				// expand: add the next member
+				final int[] expanded = Arrays.copyOf(members, members.length + 1);
+				expanded[members.length] = max + 1;
+				heap.add(new PerturbationSet(expanded, set.score + z[max + 1]));
+			}
+
+			// apply the set if it doesn't perturb any function twice
+			System.arraycopy(codes, 0, perturbed, 0, nfuncs);
+			Arrays.fill(used, false);
+
+			boolean valid = true;
+			for (final int m : members) {
+				final int p = order[m];
+				final int f = pfuncs[p];
+
+				if (used[f]) {
+					valid = false;
+					break;
+				}
+
+				used[f] = true;
+				perturbed[f] += pdeltas[p];
+			}
+
+			if (valid)
+				probes[nprobes++] = combine(perturbed);
+		}
+
+		return nprobes == numProbes ? probes : Arrays.copyOf(probes, nprobes);
+	}
+}
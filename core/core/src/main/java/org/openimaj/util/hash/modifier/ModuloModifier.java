@@ -30,17 +30,22 @@
 package org.openimaj.util.hash.modifier;
 
 import org.openimaj.util.hash.HashFunction;
+import org.openimaj.util.hash.MultiProbeHashFunction;
 
 /**
  * Modify the underlying hash function by applying the modulus to the value.
  * This has the effect of reducing the range of values the hash function can
  * take.
+ * <p>
+ * If the underlying function is a {@link MultiProbeHashFunction} then the
+ * modulus is applied to each code of its probe sequence; otherwise the probe
+ * sequence consists of the single hash code of the object.
  * 
  * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
  * 
  * @param <O>
  */
-public class ModuloModifier<O> extends HashModifier<O> {
+public class ModuloModifier<O> extends HashModifier<O> implements MultiProbeHashFunction<O> {
 	private int range;
 
 	/**
@@ -64,4 +69,16 @@ public class ModuloModifier<O> extends HashModifier<O> {
 
 		return (int) (innerHash % range);
 	}
+
+	@Override
+	public int[] computeProbeSequence(O object, int numProbes) {
+		if (!(hashFunction instanceof MultiProbeHashFunction))
+			return new int[] { computeHashCode(object) };
+
+		final int[] codes = ((MultiProbeHashFunction<O>) hashFunction).computeProbeSequence(object, numProbes);
+		for (int i = 0; i < codes.length; i++)
+			codes[i] = (int) ((codes[i] & 0x00000000ffffffffL) % range);
+
+		return codes;
+	}
 }
@@ -136,7 +136,7 @@ public class Parallel {
 
 		final double div = ops / (double) loops;
 		int chunksize = (int) div;
-		int remainder = (int) ((div - chunksize) * loops);
+		int remainder = ops - chunksize * loops;
 
 		if (div < 1) {
 			chunksize = 1;
@@ -235,7 +235,7 @@ public class Parallel {
 
 		final double div = ops / (double) loops;
 		int chunksize = (int) div;
-		int remainder = (int) ((div - chunksize) * loops);
+		int remainder = ops - chunksize * loops;
 
 		if (div < 1) {
 			chunksize = 1;
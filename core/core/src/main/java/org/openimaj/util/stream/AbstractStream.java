@@ -29,6 +29,7 @@
  */
 package org.openimaj.util.stream;
 
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
@@ -190,6 +191,52 @@ public abstract class AbstractStream<T> implements Stream<T> {
 		};
 	}
 
+	@Override
+	public <R> Stream<R> parallelMap(Function<T, R> mapper, int concurrency, boolean ordered) {
+		return new ParallelMapStream<T, R>(this, mapper, concurrency, ordered);
+	}
+
+	@Override
+	public <R> Stream<R> parallelMap(Function<T, R> mapper, int concurrency, boolean ordered, ThreadPoolExecutor pool)
+	{
+		return new ParallelMapStream<T, R>(this, mapper, concurrency, ordered, pool);
+	}
+
+	@Override
+	public <R> Stream<R> asyncMap(Function<T, R> mapper, int concurrency, boolean ordered) {
+		return ParallelMapStream.async(this, mapper, concurrency, ordered);
+	}
+
+	@Override
+	public Stream<List<T>> batch(final int size) {
+		if (size <= 0)
+			throw new IllegalArgumentException("batch size must be positive");
+
+		return new AbstractStream<List<T>>() {
+			@Override
+			public boolean hasNext() {
+				return AbstractStream.this.hasNext();
+			}
+
+			@Override
+			public List<T> next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+
+				final List<T> batch = new ArrayList<T>(size);
+				while (batch.size() < size && AbstractStream.this.hasNext())
+					batch.add(AbstractStream.this.next());
+
+				return batch;
+			}
+		};
+	}
+
+	@Override
+	public Stream<T> buffer(int capacity) {
+		return new BoundedBufferStream<T>(this, capacity);
+	}
+
 	/**
 	 * Throws an UnsupportedOperationException()
 	 */
@@ -0,0 +1,147 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.util.stream;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A {@link Stream} that decouples the consumer of a stream from its producer
+ * by reading the source stream ahead on a background thread into a bounded
+ * buffer. When the buffer is full the background thread blocks until the
+ * consumer catches up (backpressure), so unlike a
+ * {@link BlockingDroppingBufferedStream} no items are ever dropped and memory
+ * usage is bounded by the capacity of the buffer.
+ * <p>
+ * This is useful for letting an I/O-bound stage of a pipeline (such as
+ * reading or downloading items) run concurrently with a CPU-bound stage that
+ * consumes it. The background thread is started on the first call to
+ * {@link #hasNext()} or {@link #next()}. If reading the source stream throws
+ * an exception or {@link Error}, it is rethrown by this stream once the items
+ * read before the failure have been consumed (checked exceptions are wrapped
+ * in a {@link RuntimeException}). The source stream must not contain
+ * <tt>null</tt> items.
+ *
+ * @author agent
+ *
+ * @param <T>
+ *            The type of data item in the stream
+ */
+public class BoundedBufferStream<T> extends AbstractStream<T> {
+	private static final Object END = new Object();
+
+	private final Stream<T> source;
+	private final BlockingQueue<Object> buffer;
+	private volatile Throwable error;
+	private Thread reader;
+	private Object nextItem;
+	private boolean finished;
+
+	/**
+	 * Construct with the given source stream and buffer capacity
+	 *
+	 * @param source
+	 *            the source stream
+	 * @param capacity
+	 *            the maximum number of items to read ahead
+	 */
+	public BoundedBufferStream(Stream<T> source, int capacity) {
+		this.source = source;
+		this.buffer = new ArrayBlockingQueue<Object>(capacity);
+	}
+
+	private void start() {
+		reader = new Thread("BoundedBufferStream reader") {
+			@Override
+			public void run() {
+				try {
+					while (source.hasNext())
+						buffer.put(source.next());
+				} catch (final InterruptedException e) {
+					// stop reading
+				} catch (final Throwable t) {
+					error = t;
+				} finally {
+					try {
+						buffer.put(END);
+					} catch (final InterruptedException e) {
+						// ignore
+					}
+				}
+			}
+		};
+		reader.setDaemon(true);
+		reader.start();
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (nextItem != null)
+			return true;
+		if (finished)
+			return false;
+		if (reader == null)
+			start();
+
+		try {
+			nextItem = buffer.take();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+
+		if (nextItem == END) {
+			nextItem = null;
+			finished = true;
+
+			if (error instanceof RuntimeException)
+				throw (RuntimeException) error;
+			if (error instanceof Error)
+				throw (Error) error;
+			if (error != null)
+				throw new RuntimeException(error);
+			return false;
+		}
+
+		return true;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public T next() {
+		if (!hasNext())
+			throw new NoSuchElementException();
+
+		final T ret = (T) nextItem;
+		nextItem = null;
+		return ret;
+	}
+}
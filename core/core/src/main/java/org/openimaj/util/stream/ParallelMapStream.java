@@ -0,0 +1,229 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.util.stream;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.openimaj.util.function.Function;
+import org.openimaj.util.parallel.GlobalExecutorPool;
+import org.openimaj.util.parallel.GlobalExecutorPool.DaemonThreadFactory;
+
+/**
+ * A {@link Stream} that applies a {@link Function} to the items of another
+ * stream using multiple threads. At most <tt>concurrency</tt> items are in
+ * flight (being processed, or processed but not yet consumed) at any time;
+ * items are only pulled from the source stream when there is room, so a slow
+ * consumer of this stream applies backpressure to the source rather than
+ * causing results to accumulate in memory.
+ * <p>
+ * The results can either be produced in the same order as the source items
+ * (in which case a slow item holds back the results of later items), or in
+ * the order in which they are completed.
+ * <p>
+ * The source stream is only ever accessed from the thread consuming this
+ * stream, so it need not be thread-safe. If the function throws an exception
+ * it is rethrown (wrapped in a {@link RuntimeException} if it is checked) by
+ * {@link #next()} when the corresponding result would have been returned.
+ *
+ * @author agent
+ *
+ * @param <IN>
+ *            The type of data item in the source stream
+ * @param <OUT>
+ *            The type of data item in this stream
+ */
+public class ParallelMapStream<IN, OUT> extends AbstractStream<OUT> {
+	private final Stream<IN> source;
+	private final Function<IN, OUT> mapper;
+	private final int concurrency;
+	private final boolean ordered;
+	private final ThreadPoolExecutor pool;
+	private final boolean shutdownPool;
+
+	private final Deque<Future<OUT>> pending = new ArrayDeque<Future<OUT>>();
+	private final CompletionService<OUT> completion;
+	private int inFlight;
+
+	/**
+	 * Construct a stream that applies the mapper using the threads of the
+	 * given pool.
+	 *
+	 * @param source
+	 *            the source stream
+	 * @param mapper
+	 *            the function to apply
+	 * @param concurrency
+	 *            the maximum number of items in flight
+	 * @param ordered
+	 *            if true the results are produced in the order of the source
+	 *            items; otherwise they are produced as they are completed
+	 * @param pool
+	 *            the thread pool
+	 */
+	public ParallelMapStream(Stream<IN> source, Function<IN, OUT> mapper, int concurrency, boolean ordered,
+			ThreadPoolExecutor pool)
+	{
+		this(source, mapper, concurrency, ordered, pool, false);
+	}
+
+	/**
+	 * Construct a stream that applies the mapper using the threads of the
+	 * {@link GlobalExecutorPool}. This is appropriate for CPU-bound functions.
+	 *
+	 * @param source
+	 *            the source stream
+	 * @param mapper
+	 *            the function to apply
+	 * @param concurrency
+	 *            the maximum number of items in flight
+	 * @param ordered
+	 *            if true the results are produced in the order of the source
+	 *            items; otherwise they are produced as they are completed
+	 */
+	public ParallelMapStream(Stream<IN> source, Function<IN, OUT> mapper, int concurrency, boolean ordered) {
+		this(source, mapper, concurrency, ordered, GlobalExecutorPool.getPool(), false);
+	}
+
+	private ParallelMapStream(Stream<IN> source, Function<IN, OUT> mapper, int concurrency, boolean ordered,
+			ThreadPoolExecutor pool, boolean shutdownPool)
+	{
+		if (concurrency <= 0)
+			throw new IllegalArgumentException("concurrency must be positive");
+
+		this.source = source;
+		this.mapper = mapper;
+		this.concurrency = concurrency;
+		this.ordered = ordered;
+		this.pool = pool;
+		this.shutdownPool = shutdownPool;
+		this.completion = ordered ? null : new ExecutorCompletionService<OUT>(pool);
+	}
+
+	/**
+	 * Construct a stream that applies the mapper using a dedicated set of
+	 * <tt>concurrency</tt> daemon threads. This is appropriate for functions
+	 * that spend most of their time blocked (for example on network I/O),
+	 * where the number of concurrent calls should not be limited by the
+	 * number of processors. The threads are released once the source is
+	 * exhausted, or after they have been idle for a short while.
+	 *
+	 * @param source
+	 *            the source stream
+	 * @param mapper
+	 *            the function to apply
+	 * @param concurrency
+	 *            the maximum number of items in flight
+	 * @param ordered
+	 *            if true the results are produced in the order of the source
+	 *            items; otherwise they are produced as they are completed
+	 * @return the new stream
+	 */
+	public static <IN, OUT> ParallelMapStream<IN, OUT> async(Stream<IN> source, Function<IN, OUT> mapper,
+			int concurrency, boolean ordered)
+	{
+		if (concurrency <= 0)
+			throw new IllegalArgumentException("concurrency must be positive");
+
+		final ThreadPoolExecutor pool = new ThreadPoolExecutor(concurrency, concurrency, 10, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory());
+		pool.allowCoreThreadTimeOut(true);
+
+		return new ParallelMapStream<IN, OUT>(source, mapper, concurrency, ordered, pool, true);
+	}
+
+	private void fill() {
+		while (inFlight < concurrency && source.hasNext()) {
+			final IN item = source.next();
+			final Callable<OUT> task = new Callable<OUT>() {
+				@Override
+				public OUT call() throws Exception {
+					return mapper.apply(item);
+				}
+			};
+
+			if (ordered)
+				pending.add(pool.submit(task));
+			else
+				completion.submit(task);
+
+			inFlight++;
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		fill();
+
+		if (inFlight == 0) {
+			if (shutdownPool)
+				pool.shutdown();
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public OUT next() {
+		if (!hasNext())
+			throw new NoSuchElementException();
+
+		try {
+			final Future<OUT> future = ordered ? pending.poll() : completion.take();
+			inFlight--;
+
+			final OUT result = future.get();
+
+			// start work on the next item whilst the caller deals with this one
+			fill();
+
+			return result;
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (final ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new RuntimeException(cause);
+		}
+	}
+}
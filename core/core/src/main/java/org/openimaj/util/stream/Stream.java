@@ -30,6 +30,7 @@
 package org.openimaj.util.stream;
 
 import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.ThreadPoolExecutor;
 
 import org.openimaj.util.function.Function;
@@ -178,4 +179,98 @@ public interface Stream<T> extends Iterator<T>, Iterable<T> {
 	 * @return a new stream with transformed items from this stream
 	 */
 	public <R> Stream<R> transform(Function<Stream<T>, Stream<R>> transform);
+
+	/**
+	 * Transform the stream by creating a new stream that transforms the items
+	 * in this stream with the given {@link Function}, using multiple threads
+	 * from the {@link org.openimaj.util.parallel.GlobalExecutorPool}. At most
+	 * <tt>concurrency</tt> items are in flight at once; items are only read
+	 * from this stream when there is room, so a slow consumer limits the rate
+	 * at which this stream is read.
+	 *
+	 * @see ParallelMapStream
+	 *
+	 * @param mapper
+	 *            the function to apply
+	 * @param concurrency
+	 *            the maximum number of items being processed at once
+	 * @param ordered
+	 *            if true, the transformed items are produced in the same order
+	 *            as this stream; otherwise they are produced as soon as they
+	 *            are ready
+	 * @return a new stream with transformed items from this stream
+	 */
+	public <R> Stream<R> parallelMap(Function<T, R> mapper, int concurrency, boolean ordered);
+
+	/**
+	 * Transform the stream by creating a new stream that transforms the items
+	 * in this stream with the given {@link Function}, using multiple threads
+	 * from the given pool. At most <tt>concurrency</tt> items are in flight at
+	 * once; items are only read from this stream when there is room, so a slow
+	 * consumer limits the rate at which this stream is read.
+	 *
+	 * @see ParallelMapStream
+	 *
+	 * @param mapper
+	 *            the function to apply
+	 * @param concurrency
+	 *            the maximum number of items being processed at once
+	 * @param ordered
+	 *            if true, the transformed items are produced in the same order
+	 *            as this stream; otherwise they are produced as soon as they
+	 *            are ready
+	 * @param pool
+	 *            the thread pool.
+	 * @return a new stream with transformed items from this stream
+	 */
+	public <R> Stream<R> parallelMap(Function<T, R> mapper, int concurrency, boolean ordered, ThreadPoolExecutor pool);
+
+	/**
+	 * Transform the stream by creating a new stream that transforms the items
+	 * in this stream with the given {@link Function}, which is expected to
+	 * spend most of its time blocked on I/O (for example reading images from
+	 * URLs). The function is applied concurrently to up to
+	 * <tt>concurrency</tt> items using a dedicated set of threads, rather than
+	 * being limited by the number of processors.
+	 *
+	 * @see ParallelMapStream#async(Stream, Function, int, boolean)
+	 *
+	 * @param mapper
+	 *            the function to apply
+	 * @param concurrency
+	 *            the maximum number of items being processed at once
+	 * @param ordered
+	 *            if true, the transformed items are produced in the same order
+	 *            as this stream; otherwise they are produced as soon as they
+	 *            are ready
+	 * @return a new stream with transformed items from this stream
+	 */
+	public <R> Stream<R> asyncMap(Function<T, R> mapper, int concurrency, boolean ordered);
+
+	/**
+	 * Transform the stream by grouping consecutive items into lists of the
+	 * given size. The final list may be smaller if the stream ends. The
+	 * batches can be turned back into individual items with
+	 * {@link #map(MultiFunction)} and an
+	 * {@link org.openimaj.util.function.UnbatchFunction}.
+	 *
+	 * @param size
+	 *            the number of items in each batch
+	 * @return a new stream of batches of items from this stream
+	 */
+	public Stream<List<T>> batch(int size);
+
+	/**
+	 * Create a view of this stream that is read ahead into a bounded buffer
+	 * by a background thread. The background thread blocks when the buffer is
+	 * full, so no items are dropped, and reading this stream can proceed
+	 * concurrently with the processing of the items.
+	 *
+	 * @see BoundedBufferStream
+	 *
+	 * @param capacity
+	 *            the maximum number of items to read ahead
+	 * @return the buffered stream
+	 */
+	public Stream<T> buffer(int capacity);
 }
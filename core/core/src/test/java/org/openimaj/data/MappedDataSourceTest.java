@@ -0,0 +1,116 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link MappedByteDataSource} and {@link MappedFloatDataSource}
+ * 
+ * @author agent
+ */
+public class MappedDataSourceTest {
+	/**
+	 * Temporary folder for the test data
+	 */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Test that byte data round-trips through the mapped file, using small
+	 * segments so that multiple segments are exercised.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testBytes() throws IOException {
+		final byte[][] data = RandomData.getRandomByteArray(101, 7, (byte) -100, (byte) 100, 1);
+		final File file = folder.newFile("data.bin");
+
+		MappedByteDataSource.write(Arrays.asList(data), file);
+		final MappedByteDataSource ds = new MappedByteDataSource(file, 7, 30);
+
+		assertEquals(101, ds.size());
+		assertEquals(7, ds.numDimensions());
+
+		final byte[][] out = ds.createTemporaryArray(data.length - 5);
+		ds.getData(5, data.length, out);
+		for (int i = 0; i < out.length; i++)
+			assertArrayEquals(data[i + 5], out[i]);
+
+		final ByteBuffer view = ds.getRowView(50);
+		assertEquals(7, view.remaining());
+		for (int i = 0; i < 7; i++)
+			assertEquals(data[50][i], view.get());
+
+		int i = 0;
+		for (final byte[] row : ds)
+			assertArrayEquals(data[i++], row);
+		assertEquals(data.length, i);
+	}
+
+	/**
+	 * Test that float data round-trips through the mapped file, using small
+	 * segments so that multiple segments are exercised.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testFloats() throws IOException {
+		final float[][] data = RandomData.getRandomFloatArray(101, 7, -1, 1, 1);
+		final File file = folder.newFile("data.bin");
+
+		MappedFloatDataSource.write(Arrays.asList(data), file);
+		final MappedFloatDataSource ds = new MappedFloatDataSource(file, 7, 100);
+
+		assertEquals(101, ds.size());
+
+		final float[][] out = ds.createTemporaryArray(data.length);
+		ds.getData(0, data.length, out);
+		for (int i = 0; i < out.length; i++)
+			assertArrayEquals(data[i], out[i], 0f);
+
+		final FloatBuffer view = ds.getRowView(99);
+		assertEquals(7, view.remaining());
+		for (int i = 0; i < 7; i++)
+			assertEquals(data[99][i], view.get(), 0f);
+	}
+}
@@ -0,0 +1,219 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.util.concurrent;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import org.openimaj.util.concurrent.RingBufferBlockingDroppingQueue.WaitStrategy;
+
+/**
+ * Tests for the {@link RingBufferBlockingDroppingQueue}.
+ *
+ * @author agent
+ *
+ */
+public class RingBufferBlockingDroppingQueueTest {
+	/**
+	 * Test that a sequence of operations gives the same results as the
+	 * {@link ArrayBlockingDroppingQueue} for a range of capacities (including
+	 * those which aren't powers of two).
+	 *
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void testMatchesArrayBlockingDroppingQueue() throws InterruptedException {
+		for (final int capacity : new int[] { 1, 2, 3, 5, 8 }) {
+			final ArrayBlockingDroppingQueue<Integer> expected = new ArrayBlockingDroppingQueue<Integer>(capacity);
+			final RingBufferBlockingDroppingQueue<Integer> actual = new RingBufferBlockingDroppingQueue<Integer>(
+					capacity);
+
+			for (int i = 0; i < 50; i++) {
+				switch (i % 7) {
+				case 0:
+				case 3:
+					assertEquals(expected.offer(i), actual.offer(i));
+					break;
+				case 4:
+					assertEquals(expected.poll(), actual.poll());
+					break;
+				default:
+					assertEquals(expected.put(i), actual.put(i));
+				}
+
+				assertEquals(expected.size(), actual.size());
+				assertEquals(expected.remainingCapacity(), actual.remainingCapacity());
+				assertEquals(expected.peek(), actual.peek());
+				assertArrayEquals(expected.toArray(), actual.toArray());
+				assertEquals(expected.insertCount(), actual.insertCount());
+				assertEquals(expected.dropCount(), actual.dropCount());
+			}
+		}
+	}
+
+	/**
+	 * Test that put drops the oldest item when full
+	 *
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void testPutDropsOldest() throws InterruptedException {
+		final RingBufferBlockingDroppingQueue<Integer> queue = new RingBufferBlockingDroppingQueue<Integer>(3);
+
+		assertNull(queue.put(0));
+		assertNull(queue.put(1));
+		assertNull(queue.put(2));
+		assertFalse(queue.offer(3));
+		assertEquals(new Integer(0), queue.put(3));
+		assertEquals(new Integer(1), queue.put(4));
+
+		assertEquals(3, queue.size());
+		assertEquals(5, queue.insertCount());
+		assertEquals(2, queue.dropCount());
+		assertTrue(queue.contains(3));
+		assertFalse(queue.contains(0));
+
+		assertEquals(new Integer(2), queue.take());
+		assertEquals(new Integer(3), queue.take());
+		assertEquals(new Integer(4), queue.take());
+		assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+		assertTrue(queue.isEmpty());
+	}
+
+	/**
+	 * Test batch draining
+	 *
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void testDrainTo() throws InterruptedException {
+		final RingBufferBlockingDroppingQueue<Integer> queue = new RingBufferBlockingDroppingQueue<Integer>(6);
+		for (int i = 0; i < 10; i++)
+			queue.put(i);
+
+		final List<Integer> list = new ArrayList<Integer>();
+		assertEquals(4, queue.drainTo(list, 4));
+		assertEquals(2, queue.size());
+		assertEquals(2, queue.drainTo(list));
+		assertEquals(0, queue.drainTo(list));
+
+		for (int i = 0; i < 6; i++)
+			assertEquals(new Integer(i + 4), list.get(i));
+
+		// the slots must be reusable after a drain
+		for (int i = 0; i < 6; i++)
+			assertTrue(queue.offer(i));
+		assertFalse(queue.offer(6));
+	}
+
+	/**
+	 * Test that with concurrent producers and consumers every inserted item is
+	 * either consumed, dropped or still in the queue, and that no item is
+	 * consumed twice.
+	 *
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void testConcurrentProducersAndConsumers() throws InterruptedException {
+		for (final WaitStrategy strategy : WaitStrategy.values()) {
+			final RingBufferBlockingDroppingQueue<Integer> queue = new RingBufferBlockingDroppingQueue<Integer>(100,
+					strategy);
+
+			final int nProducers = 3;
+			final int nConsumers = 2;
+			final int nItems = 20000;
+			final boolean[] seen = new boolean[nProducers * nItems];
+			final AtomicLong consumed = new AtomicLong();
+			final AtomicLong duplicates = new AtomicLong();
+
+			final Thread[] producers = new Thread[nProducers];
+			for (int p = 0; p < nProducers; p++) {
+				final int offset = p * nItems;
+				producers[p] = new Thread() {
+					@Override
+					public void run() {
+						try {
+							for (int i = 0; i < nItems; i++)
+								queue.put(offset + i);
+						} catch (final InterruptedException e) {
+							// ignore
+						}
+					}
+				};
+				producers[p].start();
+			}
+
+			final Thread[] consumers = new Thread[nConsumers];
+			for (int c = 0; c < nConsumers; c++) {
+				consumers[c] = new Thread() {
+					@Override
+					public void run() {
+						try {
+							for (;;) {
+								final int x = queue.take();
+								synchronized (seen) {
+									if (seen[x])
+										duplicates.incrementAndGet();
+									seen[x] = true;
+								}
+								consumed.incrementAndGet();
+							}
+						} catch (final InterruptedException e) {
+							// finished
+						}
+					}
+				};
+				consumers[c].start();
+			}
+
+			for (final Thread t : producers)
+				t.join();
+			while (!queue.isEmpty())
+				Thread.sleep(1);
+			for (final Thread t : consumers) {
+				t.interrupt();
+				t.join();
+			}
+
+			assertEquals(0, duplicates.get());
+			assertEquals(nProducers * nItems, queue.insertCount());
+			assertEquals(queue.insertCount(), consumed.get() + queue.dropCount() + queue.size());
+		}
+	}
+}
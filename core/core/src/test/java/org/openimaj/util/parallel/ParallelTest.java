@@ -36,9 +36,13 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 import org.junit.Test;
 import org.openimaj.util.function.Operation;
+import org.openimaj.util.parallel.Parallel.IntRange;
 import org.openimaj.util.parallel.partition.GrowingChunkPartitioner;
 import org.openimaj.util.parallel.partition.RangePartitioner;
 
@@ -96,4 +100,33 @@ public class ParallelTest {
 
 		assertEquals(intsList.size(), out.size());
 	}
+
+	/**
+	 * Test that the range loop visits every index exactly once, and only
+	 * returns after all the chunks have completed, when the range does not
+	 * divide evenly between the threads
+	 */
+	@Test
+	public void testForRange() {
+		final ThreadPoolExecutor pool = (ThreadPoolExecutor) Executors.newFixedThreadPool(3);
+
+		try {
+			for (int n = 1; n < 200; n++) {
+				final AtomicIntegerArray counts = new AtomicIntegerArray(n);
+
+				Parallel.forRange(0, n, 1, new Operation<IntRange>() {
+					@Override
+					public void perform(IntRange range) {
+						for (int i = range.start; i < range.stop; i++)
+							counts.incrementAndGet(i);
+					}
+				}, pool);
+
+				for (int i = 0; i < n; i++)
+					assertEquals(1, counts.get(i));
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
 }
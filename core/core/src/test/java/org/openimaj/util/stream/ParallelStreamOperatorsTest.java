@@ -0,0 +1,277 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.util.stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.openimaj.util.function.Function;
+import org.openimaj.util.function.Operation;
+import org.openimaj.util.function.UnbatchFunction;
+import org.openimaj.util.stream.window.SequentialStreamAggregator;
+
+/**
+ * Tests for the parallel and buffering operators of {@link Stream}.
+ *
+ * @author agent
+ *
+ */
+public class ParallelStreamOperatorsTest {
+	private static List<Integer> range(int n) {
+		final List<Integer> list = new ArrayList<Integer>();
+		for (int i = 0; i < n; i++)
+			list.add(i);
+		return list;
+	}
+
+	private static List<Integer> collect(Stream<Integer> stream) {
+		final List<Integer> list = new ArrayList<Integer>();
+		stream.forEach(new Operation<Integer>() {
+			@Override
+			public void perform(Integer object) {
+				list.add(object);
+			}
+		});
+		return list;
+	}
+
+	/**
+	 * A function that doubles its input after sleeping for a time that
+	 * depends on the input, so that items complete out of order.
+	 */
+	private static class SlowDoubler implements Function<Integer, Integer> {
+		AtomicInteger active = new AtomicInteger();
+		AtomicInteger maxActive = new AtomicInteger();
+
+		@Override
+		public Integer apply(Integer in) {
+			final int a = active.incrementAndGet();
+			synchronized (maxActive) {
+				if (a > maxActive.get())
+					maxActive.set(a);
+			}
+			try {
+				Thread.sleep((7 - in % 7));
+			} catch (final InterruptedException e) {
+				// ignore
+			}
+			active.decrementAndGet();
+			return in * 2;
+		}
+	}
+
+	/**
+	 * Test that an ordered parallel map preserves order
+	 */
+	@Test
+	public void testOrderedParallelMap() {
+		final SlowDoubler fn = new SlowDoubler();
+		final List<Integer> result = collect(new CollectionStream<Integer>(range(100)).asyncMap(fn, 4, true));
+
+		assertEquals(100, result.size());
+		for (int i = 0; i < 100; i++)
+			assertEquals(new Integer(i * 2), result.get(i));
+
+		assertTrue(fn.maxActive.get() <= 4);
+		assertTrue(fn.maxActive.get() > 1);
+	}
+
+	/**
+	 * Test that an unordered parallel map produces every result exactly once
+	 */
+	@Test
+	public void testUnorderedParallelMap() {
+		final SlowDoubler fn = new SlowDoubler();
+		final List<Integer> result = collect(new CollectionStream<Integer>(range(100)).parallelMap(fn, 3, false));
+
+		Collections.sort(result);
+		assertEquals(100, result.size());
+		for (int i = 0; i < 100; i++)
+			assertEquals(new Integer(i * 2), result.get(i));
+
+		assertTrue(fn.maxActive.get() <= 3);
+	}
+
+	/**
+	 * Test that the parallel map doesn't read ahead of the consumer by more
+	 * than the concurrency
+	 */
+	@Test
+	public void testParallelMapBackpressure() {
+		final AtomicInteger read = new AtomicInteger();
+		final Stream<Integer> source = new CollectionStream<Integer>(range(100)).map(new Function<Integer, Integer>() {
+			@Override
+			public Integer apply(Integer in) {
+				read.incrementAndGet();
+				return in;
+			}
+		});
+
+		final Stream<Integer> mapped = source.parallelMap(new SlowDoubler(), 5, true);
+		for (int i = 0; i < 10; i++) {
+			mapped.next();
+			assertTrue(read.get() <= i + 1 + 5);
+		}
+	}
+
+	/**
+	 * Test that exceptions thrown by the function are propagated
+	 */
+	@Test
+	public void testParallelMapException() {
+		final Stream<Integer> mapped = new CollectionStream<Integer>(range(10)).parallelMap(
+				new Function<Integer, Integer>() {
+					@Override
+					public Integer apply(Integer in) {
+						if (in == 5)
+							throw new IllegalStateException();
+						return in;
+					}
+				}, 2, true);
+
+		for (int i = 0; i < 5; i++)
+			assertEquals(new Integer(i), mapped.next());
+
+		try {
+			mapped.next();
+			fail();
+		} catch (final IllegalStateException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Test batching and unbatching
+	 */
+	@Test
+	public void testBatch() {
+		final Stream<List<Integer>> batches = new CollectionStream<Integer>(range(10)).batch(4);
+
+		assertEquals(range(4), batches.next());
+		assertEquals(4, batches.next().size());
+		assertEquals(2, batches.next().size());
+		assertTrue(!batches.hasNext());
+
+		final List<Integer> result = collect(new CollectionStream<Integer>(range(10)).batch(3).map(
+				new UnbatchFunction<Integer>()));
+		assertEquals(range(10), result);
+	}
+
+	/**
+	 * Test the bounded buffer
+	 */
+	@Test
+	public void testBuffer() {
+		assertEquals(range(1000), collect(new CollectionStream<Integer>(range(1000)).buffer(10)));
+		assertEquals(range(0), collect(new CollectionStream<Integer>(range(0)).buffer(10)));
+	}
+
+	/**
+	 * Test that a failure reading the source of the bounded buffer is
+	 * rethrown after the items read before it, rather than ending the stream
+	 * early, for both exceptions and errors
+	 */
+	@Test
+	public void testBufferRethrowsFailure() {
+		for (final Throwable failure : new Throwable[] { new IllegalStateException(), new AssertionError() }) {
+			final Stream<Integer> source = new AbstractStream<Integer>() {
+				int i = 0;
+
+				@Override
+				public boolean hasNext() {
+					if (i == 5) {
+						if (failure instanceof Error)
+							throw (Error) failure;
+						throw (RuntimeException) failure;
+					}
+					return true;
+				}
+
+				@Override
+				public Integer next() {
+					return i++;
+				}
+			};
+
+			final Stream<Integer> buffered = source.buffer(2);
+			for (int i = 0; i < 5; i++)
+				assertEquals(new Integer(i), buffered.next());
+
+			try {
+				buffered.hasNext();
+				fail();
+			} catch (final Throwable t) {
+				assertSame(failure, t);
+			}
+		}
+	}
+
+	/**
+	 * Test that the new operators compose with the existing window functions
+	 */
+	@Test
+	public void testComposesWithAggregator() {
+		final List<Integer> input = new ArrayList<Integer>();
+		for (int i = 0; i < 30; i++)
+			input.add(i / 3);
+
+		final Stream<Integer> stream = new CollectionStream<Integer>(input)
+				.buffer(5)
+				.parallelMap(new SlowDoubler(), 4, true)
+				.transform(new SequentialStreamAggregator<Integer>(new Comparator<Integer>() {
+					@Override
+					public int compare(Integer o1, Integer o2) {
+						return o1.compareTo(o2);
+					}
+				}) {
+					@Override
+					public Integer combine(List<Integer> window) {
+						int sum = 0;
+						for (final int i : window)
+							sum += i;
+						return sum;
+					}
+				});
+
+		final List<Integer> result = collect(stream);
+		assertEquals(10, result.size());
+		for (int i = 0; i < 10; i++)
+			assertEquals(new Integer(6 * i), result.get(i));
+	}
+}
@@ -0,0 +1,183 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ *
+ */
+package org.openimaj.demos.sandbox.audio;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import org.openimaj.audio.AudioFormat;
+import org.openimaj.audio.analysis.FourierTransform;
+import org.openimaj.audio.filters.MelFilterBank;
+import org.openimaj.audio.samples.FloatSampleBuffer;
+
+import edu.emory.mathcs.jtransforms.fft.FloatFFT_1D;
+
+/**
+ *	Benchmark of the FFT &rarr; power spectrum &rarr; Mel filter bank chain,
+ *	comparing the allocating path (a new FFT plan and new arrays for every
+ *	chunk, as the chain used to do) with the cached-plan, reused-buffer path.
+ *	Reports chunks per second, bytes allocated per chunk (where the JVM can
+ *	report it) and the number and duration of garbage collections.
+ *
+ *	@author agent
+ */
+public class FFTFeatureChainBenchmark
+{
+	private static final int CHUNK_SIZE = 1024;
+	private static final int N_CHUNKS = 20000;
+
+	/** Consumes the results so the work can't be optimised away */
+	static volatile float sink;
+
+	private interface Chain
+	{
+		float process( FloatSampleBuffer sb );
+	}
+
+	/**
+	 * 	Run the benchmark
+	 *	@param args ignored
+	 */
+	public static void main( final String[] args )
+	{
+		final AudioFormat format = new AudioFormat( 16, 44.1, 1 );
+		final FloatSampleBuffer[] chunks = new FloatSampleBuffer[16];
+		final Random rng = new Random( 0 );
+		for( int i = 0; i < chunks.length; i++ )
+		{
+			final float[] samples = new float[CHUNK_SIZE];
+			for( int j = 0; j < samples.length; j++ )
+				samples[j] = rng.nextFloat()*2 - 1;
+			chunks[i] = new FloatSampleBuffer( samples, format );
+		}
+
+		final MelFilterBank mfb = new MelFilterBank( 40, 300, 8000 );
+
+		final Chain before = new Chain()
+		{
+			@Override
+			public float process( final FloatSampleBuffer sb )
+			{
+				final FloatFFT_1D fft = new FloatFFT_1D( CHUNK_SIZE );
+				final float[] data = new float[CHUNK_SIZE*2];
+				for( int i = 0; i < CHUNK_SIZE; i++ )
+					data[i*2] = sb.get( i );
+				fft.complexForward( data );
+
+				final float[][] power = new float[1][CHUNK_SIZE/2];
+				for( int i = 0; i < CHUNK_SIZE/2; i++ )
+				{
+					final float re = data[i*2] / CHUNK_SIZE;
+					final float im = data[i*2+1];
+					power[0][i] = 10f * (float)Math.log10( re*re + im*im );
+				}
+
+				return mfb.process( power, sb.getFormat() )[0][0];
+			}
+		};
+
+		final Chain after = new Chain()
+		{
+			final FourierTransform ft = new FourierTransform();
+			float[][] power;
+			float[][] mel;
+
+			@Override
+			public float process( final FloatSampleBuffer sb )
+			{
+				this.ft.process( sb );
+				this.power = this.ft.getPowerMagnitudes( this.power );
+				this.mel = mfb.process( this.power, sb.getFormat(), this.mel );
+				return this.mel[0][0];
+			}
+		};
+
+		// warm up both paths, then measure
+		run( "before", before, chunks, N_CHUNKS / 4, false );
+		run( "after", after, chunks, N_CHUNKS / 4, false );
+		run( "before", before, chunks, N_CHUNKS, true );
+		run( "after", after, chunks, N_CHUNKS, true );
+	}
+
+	private static void run( final String name, final Chain chain,
+			final FloatSampleBuffer[] chunks, final int n, final boolean report )
+	{
+		final long gcCount0 = gcCount();
+		final long gcTime0 = gcTime();
+		final long alloc0 = allocatedBytes();
+		final long t0 = System.nanoTime();
+
+		float sum = 0;
+		for( int i = 0; i < n; i++ )
+			sum += chain.process( chunks[i % chunks.length] );
+		FFTFeatureChainBenchmark.sink = sum;
+
+		final long t1 = System.nanoTime();
+		final long alloc1 = allocatedBytes();
+
+		if( report )
+		{
+			final double secs = (t1 - t0) / 1e9;
+			System.out.format( "%-7s %10.0f chunks/s  %10s bytes/chunk  %4d GCs (%d ms)%n",
+					name, n / secs,
+					alloc0 < 0 ? "n/a" : String.valueOf( (alloc1 - alloc0) / n ),
+					gcCount() - gcCount0, gcTime() - gcTime0 );
+		}
+	}
+
+	private static long gcCount()
+	{
+		long count = 0;
+		for( final GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans() )
+			count += Math.max( 0, gc.getCollectionCount() );
+		return count;
+	}
+
+	private static long gcTime()
+	{
+		long time = 0;
+		for( final GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans() )
+			time += Math.max( 0, gc.getCollectionTime() );
+		return time;
+	}
+
+	private static long allocatedBytes()
+	{
+		final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if( bean instanceof com.sun.management.ThreadMXBean )
+			return ((com.sun.management.ThreadMXBean)bean).getThreadAllocatedBytes(
+					Thread.currentThread().getId() );
+		return -1;
+	}
+}
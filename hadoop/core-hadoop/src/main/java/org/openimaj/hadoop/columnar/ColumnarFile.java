@@ -0,0 +1,590 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.hadoop.columnar;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.io.compress.CodecPool;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.Compressor;
+import org.apache.hadoop.io.compress.Decompressor;
+import org.apache.hadoop.util.ReflectionUtils;
+
+/**
+ * A block-compressed columnar container for keyed records made up of named
+ * byte columns (see {@link ColumnsWritable}). It is intended as an
+ * alternative to {@link Text}-{@link BytesWritable} {@link SequenceFile}s for
+ * records like lists of local features, where most consumers only need some of
+ * the data (e.g. only the descriptors).
+ * <p>
+ * Records are written in row groups. Within a row group, the keys and each of
+ * the columns are stored in separately compressed chunks. The offsets of all
+ * the chunks are held in a footer at the end of the file, so a reader can
+ * fetch and decompress just the chunks of the columns it needs and skip the
+ * rest. Row groups are assigned to input splits by their starting offset,
+ * which makes the files splittable.
+ * <p>
+ * The layout of a file is:
+ * 
+ * <pre>
+ * magic, version, codec class name, number of columns, column names
+ * row group chunks...
+ * footer: number of row groups, then for each group the number of rows and the
+ *         (offset, compressed length, raw length) of the key chunk and each
+ *         column chunk
+ * footer offset, magic
+ * </pre>
+ * 
+ * Each uncompressed chunk is a sequence of vint-length prefixed values, one per
+ * row.
+ * 
+ * @author agent
+ */
+public final class ColumnarFile {
+	private static final byte[] MAGIC = { 'O', 'I', 'C', 'F' };
+	private static final int VERSION = 1;
+	private static final int TRAILER_LENGTH = 8 + MAGIC.length;
+
+	/**
+	 * The default amount of uncompressed data buffered before a row group is
+	 * written
+	 */
+	public static final int DEFAULT_ROW_GROUP_SIZE = 4 * 1024 * 1024;
+
+	private ColumnarFile() {
+	}
+
+	/**
+	 * Location of a compressed chunk within a file
+	 */
+	static class Chunk {
+		long offset;
+		int compressedLength;
+		int rawLength;
+	}
+
+	/**
+	 * Index entry for a row group
+	 */
+	static class RowGroup {
+		int rows;
+		Chunk keys;
+		Chunk[] columns;
+
+		long start() {
+			return keys.offset;
+		}
+	}
+
+	/**
+	 * Writer for {@link ColumnarFile}s.
+	 * 
+	 * @author agent
+	 */
+	public static class Writer implements Closeable {
+		private final FSDataOutputStream out;
+		private final String[] columns;
+		private final CompressionCodec codec;
+		private final int rowGroupSize;
+
+		private final DataOutputBuffer keyBuffer = new DataOutputBuffer();
+		private final DataOutputBuffer[] columnBuffers;
+		private final DataOutputBuffer compressed = new DataOutputBuffer();
+		private int rows = 0;
+
+		private final List<RowGroup> groups = new ArrayList<RowGroup>();
+
+		/**
+		 * Construct a writer on the given stream. The stream is closed when
+		 * the writer is closed.
+		 * 
+		 * @param out
+		 *            the output stream
+		 * @param columns
+		 *            the names of the columns
+		 * @param codec
+		 *            the compression codec; may be null for no compression
+		 * @param rowGroupSize
+		 *            the amount of uncompressed data to buffer before writing
+		 *            a row group
+		 * @throws IOException
+		 */
+		public Writer(FSDataOutputStream out, String[] columns, CompressionCodec codec, int rowGroupSize)
+				throws IOException
+		{
+			this.out = out;
+			this.columns = columns.clone();
+			this.codec = codec;
+			this.rowGroupSize = rowGroupSize;
+
+			columnBuffers = new DataOutputBuffer[columns.length];
+			for (int i = 0; i < columns.length; i++)
+				columnBuffers[i] = new DataOutputBuffer();
+
+			out.write(MAGIC);
+			out.writeInt(VERSION);
+			Text.writeString(out, codec == null ? "" : codec.getClass().getName());
+			out.writeInt(columns.length);
+			for (final String c : columns)
+				Text.writeString(out, c);
+		}
+
+		/**
+		 * Construct a writer for a new file.
+		 * 
+		 * @param fs
+		 *            the filesystem
+		 * @param path
+		 *            the file to create
+		 * @param columns
+		 *            the names of the columns
+		 * @param codec
+		 *            the compression codec; may be null for no compression
+		 * @throws IOException
+		 */
+		public Writer(FileSystem fs, Path path, String[] columns, CompressionCodec codec) throws IOException {
+			this(fs.create(path), columns, codec, DEFAULT_ROW_GROUP_SIZE);
+		}
+
+		/**
+		 * Append a record. Columns missing from the value are written as
+		 * empty; columns not declared when the writer was constructed are
+		 * ignored.
+		 * 
+		 * @param key
+		 *            the key
+		 * @param value
+		 *            the columns
+		 * @throws IOException
+		 */
+		public void append(Text key, ColumnsWritable value) throws IOException {
+			WritableUtils.writeVInt(keyBuffer, key.getLength());
+			keyBuffer.write(key.getBytes(), 0, key.getLength());
+
+			long size = keyBuffer.getLength();
+			for (int i = 0; i < columns.length; i++) {
+				final BytesWritable bw = value.get(columns[i]);
+				if (bw == null) {
+					WritableUtils.writeVInt(columnBuffers[i], 0);
+				} else {
+					WritableUtils.writeVInt(columnBuffers[i], bw.getLength());
+					columnBuffers[i].write(bw.getBytes(), 0, bw.getLength());
+				}
+				size += columnBuffers[i].getLength();
+			}
+			rows++;
+
+			if (size >= rowGroupSize)
+				flushRowGroup();
+		}
+
+		private Chunk writeChunk(DataOutputBuffer buffer) throws IOException {
+			final Chunk chunk = new Chunk();
+			chunk.offset = out.getPos();
+			chunk.rawLength = buffer.getLength();
+
+			if (codec == null) {
+				out.write(buffer.getData(), 0, buffer.getLength());
+				chunk.compressedLength = buffer.getLength();
+			} else {
+				compressed.reset();
+				final Compressor compressor = CodecPool.getCompressor(codec);
+				try {
+					final OutputStream cos = codec.createOutputStream(compressed, compressor);
+					cos.write(buffer.getData(), 0, buffer.getLength());
+					cos.close();
+				} finally {
+					CodecPool.returnCompressor(compressor);
+				}
+				out.write(compressed.getData(), 0, compressed.getLength());
+				chunk.compressedLength = compressed.getLength();
+			}
+
+			buffer.reset();
+			return chunk;
+		}
+
+		private void flushRowGroup() throws IOException {
+			if (rows == 0)
+				return;
+
+			final RowGroup group = new RowGroup();
+			group.rows = rows;
+			group.keys = writeChunk(keyBuffer);
+			group.columns = new Chunk[columns.length];
+			for (int i = 0; i < columns.length; i++)
+				group.columns[i] = writeChunk(columnBuffers[i]);
+
+			groups.add(group);
+			rows = 0;
+		}
+
+		@Override
+		public void close() throws IOException {
+			flushRowGroup();
+
+			final long footer = out.getPos();
+			out.writeInt(groups.size());
+			for (final RowGroup g : groups) {
+				out.writeInt(g.rows);
+				writeChunkInfo(g.keys);
+				for (final Chunk c : g.columns)
+					writeChunkInfo(c);
+			}
+			out.writeLong(footer);
+			out.write(MAGIC);
+			out.close();
+		}
+
+		private void writeChunkInfo(Chunk c) throws IOException {
+			out.writeLong(c.offset);
+			out.writeInt(c.compressedLength);
+			out.writeInt(c.rawLength);
+		}
+	}
+
+	/**
+	 * Reader for {@link ColumnarFile}s. By default all columns are read;
+	 * {@link #setColumns(String...)} restricts reading to a subset, in which
+	 * case the chunks of the other columns are never read from the
+	 * filesystem.
+	 * 
+	 * @author agent
+	 */
+	public static class Reader implements Closeable {
+		private final FSDataInputStream in;
+		private final Configuration conf;
+		private final CompressionCodec codec;
+		private final String[] columnNames;
+		private final RowGroup[] groups;
+
+		private int[] selected;
+		private int firstGroup;
+		private int endGroup;
+
+		private int currentGroup;
+		private int remainingRows;
+		private final DataInputBuffer keyBuffer = new DataInputBuffer();
+		private DataInputBuffer[] columnBuffers;
+
+		private long bytesRead;
+
+		/**
+		 * Open a file for reading
+		 * 
+		 * @param fs
+		 *            the filesystem
+		 * @param path
+		 *            the file
+		 * @param conf
+		 *            the configuration
+		 * @throws IOException
+		 */
+		public Reader(FileSystem fs, Path path, Configuration conf) throws IOException {
+			this.conf = conf;
+			final long length = fs.getFileStatus(path).getLen();
+			this.in = fs.open(path);
+
+			try {
+				final byte[] magic = new byte[MAGIC.length];
+				in.readFully(magic);
+				if (!Arrays.equals(magic, MAGIC))
+					throw new IOException(path + " is not a columnar file");
+
+				final int version = in.readInt();
+				if (version != VERSION)
+					throw new IOException("Unsupported columnar file version " + version);
+
+				final String codecClass = Text.readString(in);
+				codec = codecClass.length() == 0 ? null : createCodec(codecClass, conf);
+
+				columnNames = new String[in.readInt()];
+				for (int i = 0; i < columnNames.length; i++)
+					columnNames[i] = Text.readString(in);
+
+				in.seek(length - TRAILER_LENGTH);
+				final long footer = in.readLong();
+				in.readFully(magic);
+				if (!Arrays.equals(magic, MAGIC))
+					throw new IOException(path + " is truncated or corrupt");
+
+				in.seek(footer);
+				groups = new RowGroup[in.readInt()];
+				for (int i = 0; i < groups.length; i++) {
+					groups[i] = new RowGroup();
+					groups[i].rows = in.readInt();
+					groups[i].keys = readChunkInfo();
+					groups[i].columns = new Chunk[columnNames.length];
+					for (int j = 0; j < columnNames.length; j++)
+						groups[i].columns[j] = readChunkInfo();
+				}
+			} catch (final IOException e) {
+				in.close();
+				throw e;
+			}
+
+			setColumns(columnNames);
+			firstGroup = currentGroup = 0;
+			endGroup = groups.length;
+		}
+
+		private static CompressionCodec createCodec(String codecClass, Configuration conf) throws IOException {
+			try {
+				return (CompressionCodec) ReflectionUtils.newInstance(conf.getClassByName(codecClass), conf);
+			} catch (final ClassNotFoundException e) {
+				throw new IOException("Unknown codec " + codecClass, e);
+			}
+		}
+
+		private Chunk readChunkInfo() throws IOException {
+			final Chunk c = new Chunk();
+			c.offset = in.readLong();
+			c.compressedLength = in.readInt();
+			c.rawLength = in.readInt();
+			return c;
+		}
+
+		/**
+		 * @return the names of all the columns in the file
+		 */
+		public String[] getColumnNames() {
+			return columnNames.clone();
+		}
+
+		/**
+		 * @return the number of row groups in the file
+		 */
+		public int getNumberOfRowGroups() {
+			return groups.length;
+		}
+
+		/**
+		 * @return the total number of records in the file
+		 */
+		public long getNumberOfRecords() {
+			long n = 0;
+			for (final RowGroup g : groups)
+				n += g.rows;
+			return n;
+		}
+
+		/**
+		 * Get the total compressed size of a column across all row groups
+		 * 
+		 * @param column
+		 *            the column name
+		 * @return the compressed size in bytes
+		 */
+		public long getCompressedSize(String column) {
+			final int idx = indexOf(column);
+			long size = 0;
+			for (final RowGroup g : groups)
+				size += g.columns[idx].compressedLength;
+			return size;
+		}
+
+		/**
+		 * Get the total uncompressed size of a column across all row groups
+		 * 
+		 * @param column
+		 *            the column name
+		 * @return the uncompressed size in bytes
+		 */
+		public long getRawSize(String column) {
+			final int idx = indexOf(column);
+			long size = 0;
+			for (final RowGroup g : groups)
+				size += g.columns[idx].rawLength;
+			return size;
+		}
+
+		private int indexOf(String column) {
+			for (int i = 0; i < columnNames.length; i++)
+				if (columnNames[i].equals(column))
+					return i;
+
+			throw new IllegalArgumentException("Unknown column " + column);
+		}
+
+		/**
+		 * Select the columns to read. This must be called before the first
+		 * call to {@link #next(Text, ColumnsWritable)}.
+		 * 
+		 * @param columns
+		 *            the column names
+		 */
+		public void setColumns(String... columns) {
+			selected = new int[columns.length];
+			for (int i = 0; i < columns.length; i++)
+				selected[i] = indexOf(columns[i]);
+
+			columnBuffers = new DataInputBuffer[selected.length];
+			for (int i = 0; i < selected.length; i++)
+				columnBuffers[i] = new DataInputBuffer();
+		}
+
+		/**
+		 * Restrict reading to the row groups that start within the given
+		 * byte range of the file. This is used to read a split of a file.
+		 * 
+		 * @param start
+		 *            the start offset (inclusive)
+		 * @param end
+		 *            the end offset (exclusive)
+		 */
+		public void selectRange(long start, long end) {
+			firstGroup = groups.length;
+			endGroup = groups.length;
+
+			for (int i = 0; i < groups.length; i++) {
+				if (groups[i].start() >= start && firstGroup == groups.length)
+					firstGroup = i;
+				if (groups[i].start() >= end) {
+					endGroup = i;
+					break;
+				}
+			}
+			if (endGroup < firstGroup)
+				endGroup = firstGroup;
+
+			currentGroup = firstGroup;
+			remainingRows = 0;
+		}
+
+		private void readChunk(Chunk chunk, DataInputBuffer buffer) throws IOException {
+			final byte[] data = new byte[chunk.compressedLength];
+			in.readFully(chunk.offset, data, 0, data.length);
+			bytesRead += data.length;
+
+			if (codec == null) {
+				buffer.reset(data, data.length);
+			} else {
+				final byte[] raw = new byte[chunk.rawLength];
+				final Decompressor decompressor = CodecPool.getDecompressor(codec);
+				try {
+					final InputStream cis = codec.createInputStream(new ByteArrayInputStream(data), decompressor);
+					IOUtils.readFully(cis, raw, 0, raw.length);
+					cis.close();
+				} finally {
+					CodecPool.returnDecompressor(decompressor);
+				}
+				buffer.reset(raw, raw.length);
+			}
+		}
+
+		private boolean nextGroup() throws IOException {
+			while (currentGroup < endGroup) {
+				final RowGroup g = groups[currentGroup++];
+				if (g.rows == 0)
+					continue;
+
+				readChunk(g.keys, keyBuffer);
+				for (int i = 0; i < selected.length; i++)
+					readChunk(g.columns[selected[i]], columnBuffers[i]);
+
+				remainingRows = g.rows;
+				return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Read the next record. Only the selected columns are set in the
+		 * value.
+		 * 
+		 * @param key
+		 *            the key to fill
+		 * @param value
+		 *            the value to fill
+		 * @return true if a record was read; false if there are no more
+		 * @throws IOException
+		 */
+		public boolean next(Text key, ColumnsWritable value) throws IOException {
+			if (remainingRows == 0 && !nextGroup())
+				return false;
+
+			final int klen = WritableUtils.readVInt(keyBuffer);
+			key.set(keyBuffer.getData(), keyBuffer.getPosition(), klen);
+			keyBuffer.skip(klen);
+
+			for (int i = 0; i < selected.length; i++) {
+				final DataInputBuffer buf = columnBuffers[i];
+				final int len = WritableUtils.readVInt(buf);
+				value.set(columnNames[selected[i]], buf.getData(), buf.getPosition(), len);
+				buf.skip(len);
+			}
+
+			remainingRows--;
+			return true;
+		}
+
+		/**
+		 * @return the fraction of the selected row groups that have been
+		 *         started
+		 */
+		public float getProgress() {
+			if (endGroup == firstGroup)
+				return 1;
+			return (float) (currentGroup - firstGroup) / (endGroup - firstGroup);
+		}
+
+		/**
+		 * @return the number of (compressed) bytes of row group data read so
+		 *         far
+		 */
+		public long getBytesRead() {
+			return bytesRead;
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+	}
+}
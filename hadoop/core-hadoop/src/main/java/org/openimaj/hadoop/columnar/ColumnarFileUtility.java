@@ -0,0 +1,215 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.hadoop.columnar;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.DefaultCodec;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.openimaj.hadoop.sequencefile.ExtractionState;
+import org.openimaj.hadoop.sequencefile.KeyValueDump;
+import org.openimaj.hadoop.sequencefile.NamingStrategy;
+import org.openimaj.hadoop.sequencefile.SequenceFileUtility;
+import org.openimaj.hadoop.sequencefile.TextBytesSequenceFileUtility;
+
+/**
+ * Utility methods for working with {@link ColumnarFile}s, in the style of the
+ * {@link SequenceFileUtility}. The utility can be pointed at either a single
+ * file or a directory of part files produced by the
+ * {@link ColumnarOutputFormat}.
+ * 
+ * @author agent
+ */
+public class ColumnarFileUtility {
+	protected Configuration config = new Configuration();
+	protected FileSystem fileSystem;
+	protected Path[] paths;
+
+	/**
+	 * Construct for reading the given file, or the part files in the given
+	 * directory
+	 * 
+	 * @param uriOrPath
+	 *            the path or uri
+	 * @throws IOException
+	 */
+	public ColumnarFileUtility(String uriOrPath) throws IOException {
+		final URI uri = SequenceFileUtility.convertToURI(uriOrPath);
+		fileSystem = SequenceFileUtility.getFileSystem(uri, config);
+		paths = SequenceFileUtility.getFilePaths(uriOrPath, "part");
+	}
+
+	/**
+	 * @return the files being read
+	 */
+	public Path[] getPaths() {
+		return paths;
+	}
+
+	/**
+	 * @return the names of the columns in the first file
+	 * @throws IOException
+	 */
+	public String[] getColumnNames() throws IOException {
+		final ColumnarFile.Reader reader = new ColumnarFile.Reader(fileSystem, paths[0], config);
+		try {
+			return reader.getColumnNames();
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * @return the total number of records in all the files. Only the file
+	 *         footers need to be read to compute this.
+	 * @throws IOException
+	 */
+	public long getNumberOfRecords() throws IOException {
+		long count = 0;
+		for (final Path p : paths) {
+			final ColumnarFile.Reader reader = new ColumnarFile.Reader(fileSystem, p, config);
+			try {
+				count += reader.getNumberOfRecords();
+			} finally {
+				reader.close();
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Pass every record in all the files to the given dump, reading only the
+	 * given columns.
+	 * 
+	 * @param dump
+	 *            the dump
+	 * @param columns
+	 *            the columns to read; if none are given, all columns are read
+	 * @throws IOException
+	 */
+	public void exportData(KeyValueDump<Text, ColumnsWritable> dump, String... columns) throws IOException {
+		final Text key = new Text();
+		final ColumnsWritable value = new ColumnsWritable();
+
+		for (final Path p : paths) {
+			final ColumnarFile.Reader reader = new ColumnarFile.Reader(fileSystem, p, config);
+			try {
+				if (columns.length > 0)
+					reader.setColumns(columns);
+
+				while (reader.next(key, value))
+					dump.dumpValue(key, value);
+			} finally {
+				reader.close();
+			}
+		}
+	}
+
+	/**
+	 * Print a summary of the files, including the compressed and uncompressed
+	 * size of each column.
+	 * 
+	 * @param out
+	 *            the stream to print to
+	 * @throws IOException
+	 */
+	public void printInfo(PrintStream out) throws IOException {
+		for (final Path p : paths) {
+			final ColumnarFile.Reader reader = new ColumnarFile.Reader(fileSystem, p, config);
+			try {
+				out.format("%s: %d records in %d row groups\n", p, reader.getNumberOfRecords(),
+						reader.getNumberOfRowGroups());
+				for (final String c : reader.getColumnNames())
+					out.format("\t%s: %d bytes (%d uncompressed)\n", c, reader.getCompressedSize(c),
+							reader.getRawSize(c));
+			} finally {
+				reader.close();
+			}
+		}
+	}
+
+	/**
+	 * Convert a {@link Text}-{@link BytesWritable} {@link SequenceFile} (or a
+	 * directory of them) into a single {@link ColumnarFile} with one column
+	 * holding the values.
+	 * 
+	 * @param sequenceFile
+	 *            the input path or uri
+	 * @param output
+	 *            the output path or uri
+	 * @param column
+	 *            the name of the column to hold the values
+	 * @throws IOException
+	 */
+	public static void convertSequenceFile(String sequenceFile, String output, final String column)
+			throws IOException
+	{
+		final Configuration config = new Configuration();
+		final URI outUri = SequenceFileUtility.convertToURI(output);
+		final FileSystem fs = SequenceFileUtility.getFileSystem(outUri, config);
+		final ColumnarFile.Writer writer = new ColumnarFile.Writer(fs, new Path(outUri), new String[] { column },
+				ReflectionUtils.newInstance(DefaultCodec.class, config));
+
+		final IOException[] error = new IOException[1];
+		final ColumnsWritable value = new ColumnsWritable();
+		try {
+			for (final Path p : SequenceFileUtility.getFilePaths(sequenceFile, "part")) {
+				final TextBytesSequenceFileUtility utility = new TextBytesSequenceFileUtility(p.toUri(), true);
+				utility.exportData(NamingStrategy.KEY, new ExtractionState(), 0, new KeyValueDump<Text, BytesWritable>() {
+					@Override
+					public void dumpValue(Text key, BytesWritable val) {
+						if (error[0] != null)
+							return;
+
+						try {
+							value.set(column, val.getBytes(), 0, val.getLength());
+							writer.append(key, value);
+						} catch (final IOException e) {
+							error[0] = e;
+						}
+					}
+				});
+			}
+		} finally {
+			writer.close();
+		}
+
+		if (error[0] != null)
+			throw error[0];
+	}
+}
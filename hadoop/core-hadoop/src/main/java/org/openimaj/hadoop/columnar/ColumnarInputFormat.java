@@ -0,0 +1,143 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.hadoop.columnar;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+
+/**
+ * {@link FileInputFormat} for {@link ColumnarFile}s. The columns to read can
+ * be restricted with {@link #setColumns(Job, String...)}; the data of any
+ * other column is not read at all.
+ * 
+ * @author agent
+ */
+public class ColumnarInputFormat extends FileInputFormat<Text, ColumnsWritable> {
+	/**
+	 * Configuration key for the columns to read
+	 */
+	public static final String COLUMNS_KEY = "openimaj.columnar.input.columns";
+
+	/**
+	 * Set the columns that should be read. If not set, all columns are read.
+	 * 
+	 * @param job
+	 *            the job
+	 * @param columns
+	 *            the column names
+	 */
+	public static void setColumns(Job job, String... columns) {
+		job.getConfiguration().setStrings(COLUMNS_KEY, columns);
+	}
+
+	/**
+	 * Get the columns that should be read
+	 * 
+	 * @param conf
+	 *            the configuration
+	 * @return the column names, or null if all columns should be read
+	 */
+	public static String[] getColumns(Configuration conf) {
+		return conf.getStrings(COLUMNS_KEY);
+	}
+
+	@Override
+	public RecordReader<Text, ColumnsWritable> createRecordReader(InputSplit split, TaskAttemptContext context)
+			throws IOException, InterruptedException
+	{
+		return new ColumnarRecordReader();
+	}
+
+	/**
+	 * {@link RecordReader} that reads the row groups of a {@link ColumnarFile}
+	 * that start within a {@link FileSplit}.
+	 * 
+	 * @author agent
+	 */
+	public static class ColumnarRecordReader extends RecordReader<Text, ColumnsWritable> {
+		private ColumnarFile.Reader reader;
+		private final Text key = new Text();
+		private final ColumnsWritable value = new ColumnsWritable();
+
+		@Override
+		public void initialize(InputSplit genericSplit, TaskAttemptContext context) throws IOException,
+				InterruptedException
+		{
+			final FileSplit split = (FileSplit) genericSplit;
+			final Configuration conf = context.getConfiguration();
+			final Path path = split.getPath();
+
+			reader = new ColumnarFile.Reader(path.getFileSystem(conf), path, conf);
+
+			final String[] columns = getColumns(conf);
+			if (columns != null)
+				reader.setColumns(columns);
+
+			reader.selectRange(split.getStart(), split.getStart() + split.getLength());
+		}
+
+		@Override
+		public boolean nextKeyValue() throws IOException, InterruptedException {
+			return reader.next(key, value);
+		}
+
+		@Override
+		public Text getCurrentKey() throws IOException, InterruptedException {
+			return key;
+		}
+
+		@Override
+		public ColumnsWritable getCurrentValue() throws IOException, InterruptedException {
+			return value;
+		}
+
+		@Override
+		public float getProgress() throws IOException, InterruptedException {
+			return reader.getProgress();
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (reader != null) {
+				reader.close();
+				reader = null;
+			}
+		}
+	}
+}
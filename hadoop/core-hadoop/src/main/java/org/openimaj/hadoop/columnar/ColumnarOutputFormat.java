@@ -0,0 +1,138 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.hadoop.columnar;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.DefaultCodec;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.util.ReflectionUtils;
+
+/**
+ * {@link FileOutputFormat} for {@link ColumnarFile}s. The columns must be set
+ * with {@link #setColumns(Job, String...)}. Chunks are compressed with the
+ * codec set through {@link FileOutputFormat#setOutputCompressorClass(Job, Class)}
+ * ({@link DefaultCodec} if unset), unless compression is disabled with
+ * {@link #setCompressChunks(Job, boolean)}.
+ * 
+ * @author agent
+ */
+public class ColumnarOutputFormat extends FileOutputFormat<Text, ColumnsWritable> {
+	/**
+	 * Configuration key for the columns to write
+	 */
+	public static final String COLUMNS_KEY = "openimaj.columnar.output.columns";
+
+	/**
+	 * Configuration key for the row group size
+	 */
+	public static final String ROW_GROUP_SIZE_KEY = "openimaj.columnar.output.rowgroup.size";
+
+	/**
+	 * Configuration key for whether chunks are compressed
+	 */
+	public static final String COMPRESS_KEY = "openimaj.columnar.output.compress";
+
+	/**
+	 * Set the columns that will be written
+	 * 
+	 * @param job
+	 *            the job
+	 * @param columns
+	 *            the column names
+	 */
+	public static void setColumns(Job job, String... columns) {
+		job.getConfiguration().setStrings(COLUMNS_KEY, columns);
+	}
+
+	/**
+	 * Set the amount of uncompressed data buffered before each row group is
+	 * written
+	 * 
+	 * @param job
+	 *            the job
+	 * @param bytes
+	 *            the row group size in bytes
+	 */
+	public static void setRowGroupSize(Job job, int bytes) {
+		job.getConfiguration().setInt(ROW_GROUP_SIZE_KEY, bytes);
+	}
+
+	/**
+	 * Set whether the chunks should be compressed. Defaults to true.
+	 * 
+	 * @param job
+	 *            the job
+	 * @param compress
+	 *            true if the chunks should be compressed
+	 */
+	public static void setCompressChunks(Job job, boolean compress) {
+		job.getConfiguration().setBoolean(COMPRESS_KEY, compress);
+	}
+
+	@Override
+	public RecordWriter<Text, ColumnsWritable> getRecordWriter(TaskAttemptContext context) throws IOException,
+			InterruptedException
+	{
+		final Configuration conf = context.getConfiguration();
+		final String[] columns = conf.getStrings(COLUMNS_KEY);
+		if (columns == null)
+			throw new IOException("The output columns have not been set");
+
+		CompressionCodec codec = null;
+		if (conf.getBoolean(COMPRESS_KEY, true)) {
+			final Class<? extends CompressionCodec> codecClass = getOutputCompressorClass(context, DefaultCodec.class);
+			codec = ReflectionUtils.newInstance(codecClass, conf);
+		}
+
+		final Path file = getDefaultWorkFile(context, "");
+		final ColumnarFile.Writer writer = new ColumnarFile.Writer(file.getFileSystem(conf).create(file, false),
+				columns, codec, conf.getInt(ROW_GROUP_SIZE_KEY, ColumnarFile.DEFAULT_ROW_GROUP_SIZE));
+
+		return new RecordWriter<Text, ColumnsWritable>() {
+			@Override
+			public void write(Text key, ColumnsWritable value) throws IOException, InterruptedException {
+				writer.append(key, value);
+			}
+
+			@Override
+			public void close(TaskAttemptContext ctx) throws IOException, InterruptedException {
+				writer.close();
+			}
+		};
+	}
+}
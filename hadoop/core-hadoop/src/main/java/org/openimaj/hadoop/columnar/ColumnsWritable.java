@@ -0,0 +1,161 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.hadoop.columnar;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * A {@link Writable} record made up of named columns of bytes. This is the
+ * value type of the {@link ColumnarInputFormat} and
+ * {@link ColumnarOutputFormat}. When read from a {@link ColumnarFile}, only
+ * the columns that were selected for reading are present.
+ * 
+ * @author agent
+ */
+public class ColumnsWritable implements Writable {
+	private final Map<String, BytesWritable> columns = new LinkedHashMap<String, BytesWritable>();
+
+	/**
+	 * Get the value of a column
+	 * 
+	 * @param name
+	 *            the column name
+	 * @return the value, or null if the column is not present
+	 */
+	public BytesWritable get(String name) {
+		return columns.get(name);
+	}
+
+	/**
+	 * Get the value of a column as a trimmed byte array
+	 * 
+	 * @param name
+	 *            the column name
+	 * @return the value, or null if the column is not present
+	 */
+	public byte[] getBytes(String name) {
+		final BytesWritable bw = columns.get(name);
+		if (bw == null)
+			return null;
+
+		final byte[] bytes = new byte[bw.getLength()];
+		System.arraycopy(bw.getBytes(), 0, bytes, 0, bytes.length);
+		return bytes;
+	}
+
+	/**
+	 * Set the value of a column
+	 * 
+	 * @param name
+	 *            the column name
+	 * @param value
+	 *            the value
+	 */
+	public void set(String name, byte[] value) {
+		set(name, value, 0, value.length);
+	}
+
+	/**
+	 * Set the value of a column from a region of an array. The data is copied.
+	 * 
+	 * @param name
+	 *            the column name
+	 * @param data
+	 *            the data
+	 * @param offset
+	 *            the offset of the value in the data
+	 * @param length
+	 *            the length of the value
+	 */
+	public void set(String name, byte[] data, int offset, int length) {
+		BytesWritable bw = columns.get(name);
+		if (bw == null) {
+			bw = new BytesWritable();
+			columns.put(name, bw);
+		}
+		bw.set(data, offset, length);
+	}
+
+	/**
+	 * @return the names of the columns that are present
+	 */
+	public Set<String> names() {
+		return columns.keySet();
+	}
+
+	/**
+	 * Remove all the columns
+	 */
+	public void clear() {
+		columns.clear();
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		WritableUtils.writeVInt(out, columns.size());
+		for (final Map.Entry<String, BytesWritable> e : columns.entrySet()) {
+			Text.writeString(out, e.getKey());
+			e.getValue().write(out);
+		}
+	}
+
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		columns.clear();
+		final int n = WritableUtils.readVInt(in);
+		for (int i = 0; i < n; i++) {
+			final String name = Text.readString(in);
+			final BytesWritable bw = new BytesWritable();
+			bw.readFields(in);
+			columns.put(name, bw);
+		}
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder("{");
+		for (final Map.Entry<String, BytesWritable> e : columns.entrySet()) {
+			if (sb.length() > 1)
+				sb.append(", ");
+			sb.append(e.getKey()).append("=").append(e.getValue().getLength()).append(" bytes");
+		}
+		return sb.append("}").toString();
+	}
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.hadoop.columnar;
+
+import java.io.IOException;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileRecordReader;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileSplit;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+
+/**
+ * {@link CombineFileInputFormat} for {@link ColumnarFile}s, which packs many
+ * (small) files or splits into each map task. The columns to read are set
+ * with {@link ColumnarInputFormat#setColumns(org.apache.hadoop.mapreduce.Job, String...)}.
+ * 
+ * @author agent
+ */
+public class CombineColumnarInputFormat extends CombineFileInputFormat<Text, ColumnsWritable> {
+	@Override
+	public RecordReader<Text, ColumnsWritable> createRecordReader(InputSplit split, TaskAttemptContext context)
+			throws IOException
+	{
+		return new CombineFileRecordReader<Text, ColumnsWritable>((CombineFileSplit) split, context,
+				ProxyRecordReader.class);
+	}
+
+	/**
+	 * Proxy RecordReader that {@link CombineFileRecordReader} can instantiate,
+	 * which translates one part of a {@link CombineFileSplit} into a
+	 * {@link FileSplit}.
+	 * 
+	 * @author agent
+	 */
+	public static class ProxyRecordReader extends RecordReader<Text, ColumnsWritable> {
+		private final int index;
+		private final ColumnarInputFormat.ColumnarRecordReader rr = new ColumnarInputFormat.ColumnarRecordReader();
+
+		/**
+		 * Construct the reader
+		 * 
+		 * @param split
+		 *            the combined split
+		 * @param context
+		 *            the context
+		 * @param index
+		 *            the index of the file within the combined split
+		 */
+		public ProxyRecordReader(CombineFileSplit split, TaskAttemptContext context, Integer index) {
+			this.index = index;
+		}
+
+		@Override
+		public void initialize(InputSplit curSplit, TaskAttemptContext context) throws IOException,
+				InterruptedException
+		{
+			final CombineFileSplit split = (CombineFileSplit) curSplit;
+			final FileSplit fileSplit = new FileSplit(split.getPath(index), split.getOffset(index),
+					split.getLength(index), split.getLocations());
+
+			rr.initialize(fileSplit, context);
+		}
+
+		@Override
+		public boolean nextKeyValue() throws IOException, InterruptedException {
+			return rr.nextKeyValue();
+		}
+
+		@Override
+		public Text getCurrentKey() throws IOException, InterruptedException {
+			return rr.getCurrentKey();
+		}
+
+		@Override
+		public ColumnsWritable getCurrentValue() throws IOException, InterruptedException {
+			return rr.getCurrentValue();
+		}
+
+		@Override
+		public float getProgress() throws IOException, InterruptedException {
+			return rr.getProgress();
+		}
+
+		@Override
+		public void close() throws IOException {
+			rr.close();
+		}
+	}
+}
@@ -0,0 +1,357 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.hadoop.mapreduce;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.lib.map.MultithreadedMapper;
+import org.apache.log4j.Logger;
+import org.openimaj.util.parallel.GlobalExecutorPool.DaemonThreadFactory;
+
+/**
+ * A {@link Mapper} that processes records through a bounded, two stage
+ * pipeline within a single map task. Records are read by the task thread and
+ * passed to a pool of <em>decode</em> threads (for example to decompress an
+ * image or parse a feature file); the decoded data is then passed to a pool of
+ * <em>extract</em> threads (for example to extract features or quantise). The
+ * results are written by the task thread in the same order as the input
+ * records.
+ * <p>
+ * In contrast to the {@link MultithreadedMapper}, which runs several
+ * independent copies of a mapper (each with their own state), a single
+ * instance of this mapper is shared by all the threads. This means that any
+ * large read-only state (for example a vocabulary and its assigner) only needs
+ * to be held once, but also that implementations of
+ * {@link #decode(Writable, Writable)} and {@link #extract(Writable, Object)}
+ * must be safe to call concurrently.
+ * <p>
+ * The number of threads in each stage and the maximum number of records in
+ * flight are configured with
+ * {@link #setNumberOfThreads(Job, int, int)} and
+ * {@link #setQueueSize(Job, int)}. The number of records processed by, and
+ * the total (thread) time spent in, each stage are reported through the
+ * {@link Counters}, from which the per-stage throughput can be determined.
+ * 
+ * @author agent
+ * 
+ * @param <KEY>
+ *            the type of key
+ * @param <VALUEIN>
+ *            the type of input value
+ * @param <DECODED>
+ *            the type of decoded value
+ * @param <VALUEOUT>
+ *            the type of output value
+ */
+public abstract class PipelinedMapper<KEY extends Writable, VALUEIN extends Writable, DECODED, VALUEOUT>
+		extends
+		Mapper<KEY, VALUEIN, KEY, VALUEOUT>
+{
+	private static final Logger logger = Logger.getLogger(PipelinedMapper.class);
+
+	/** Configuration key for the number of decode threads */
+	public static final String DECODE_THREADS_KEY = "openimaj.pipelinedmapper.decode.threads";
+
+	/** Configuration key for the number of extract threads */
+	public static final String EXTRACT_THREADS_KEY = "openimaj.pipelinedmapper.extract.threads";
+
+	/** Configuration key for the maximum number of records in flight */
+	public static final String QUEUE_SIZE_KEY = "openimaj.pipelinedmapper.queue.size";
+
+	/**
+	 * Counters reporting the progress of each stage of the pipeline. The
+	 * <code>*_MILLIS</code> counters record the total time spent by all
+	 * threads of the respective stage.
+	 */
+	public static enum Counters {
+		/** Number of records read */
+		READ,
+		/** Number of records decoded */
+		DECODED,
+		/** Total time spent decoding */
+		DECODE_MILLIS,
+		/** Number of records extracted */
+		EXTRACTED,
+		/** Total time spent extracting */
+		EXTRACT_MILLIS,
+		/** Number of records written */
+		WRITTEN,
+		/** Total time the task thread spent waiting for results */
+		WRITE_WAIT_MILLIS,
+		/** Number of records that failed in either stage */
+		FAILED
+	}
+
+	private class Record implements Runnable {
+		final KEY key;
+		VALUEIN value;
+		DECODED decoded;
+		VALUEOUT output;
+		Throwable error;
+		final CountDownLatch done = new CountDownLatch(1);
+		private boolean isDecoded;
+
+		Record(KEY key, VALUEIN value) {
+			this.key = key;
+			this.value = value;
+		}
+
+		@Override
+		public void run() {
+			try {
+				if (!isDecoded) {
+					final long t0 = System.currentTimeMillis();
+					decoded = decode(key, value);
+					value = null;
+					isDecoded = true;
+					decodeMillis.addAndGet(System.currentTimeMillis() - t0);
+					decodeCount.incrementAndGet();
+
+					extractPool.execute(this);
+				} else {
+					final long t0 = System.currentTimeMillis();
+					output = extract(key, decoded);
+					decoded = null;
+					extractMillis.addAndGet(System.currentTimeMillis() - t0);
+					extractCount.incrementAndGet();
+
+					done.countDown();
+				}
+			} catch (final Throwable t) {
+				error = t;
+				decoded = null;
+				value = null;
+				done.countDown();
+			}
+		}
+	}
+
+	private ExecutorService decodePool;
+	private ExecutorService extractPool;
+
+	private final AtomicLong decodeCount = new AtomicLong();
+	private final AtomicLong decodeMillis = new AtomicLong();
+	private final AtomicLong extractCount = new AtomicLong();
+	private final AtomicLong extractMillis = new AtomicLong();
+
+	/**
+	 * Decode the given record. This is called concurrently from the decode
+	 * threads. The key and value are private copies, so may be retained.
+	 * 
+	 * @param key
+	 *            the key
+	 * @param value
+	 *            the value
+	 * @return the decoded value
+	 * @throws Exception
+	 *             if an error occurs; the record will be skipped
+	 */
+	protected abstract DECODED decode(KEY key, VALUEIN value) throws Exception;
+
+	/**
+	 * Process the decoded data for a record. This is called concurrently from
+	 * the extract threads.
+	 * 
+	 * @param key
+	 *            the key
+	 * @param decoded
+	 *            the decoded data
+	 * @return the value to emit with the key, or null if nothing should be
+	 *         emitted
+	 * @throws Exception
+	 *             if an error occurs; the record will be skipped
+	 */
+	protected abstract VALUEOUT extract(KEY key, DECODED decoded) throws Exception;
+
+	/**
+	 * Called from the task thread when either stage failed for the given
+	 * record. The default implementation logs a warning. If this throws, the
+	 * pipeline is shut down and the exception propagates out of
+	 * {@link #run(Context)}. {@link Error}s are not passed here, but are
+	 * rethrown on the task thread in the same way.
+	 * 
+	 * @param key
+	 *            the key of the failed record
+	 * @param error
+	 *            the error
+	 */
+	protected void failed(KEY key, Throwable error) {
+		logger.warn("Problem processing record " + key + " (" + error + ")");
+	}
+
+	@Override
+	public void run(Context context) throws IOException, InterruptedException {
+		setup(context);
+
+		final Configuration conf = context.getConfiguration();
+		final int ndecode = getNumberOfDecodeThreads(conf);
+		final int nextract = getNumberOfExtractThreads(conf);
+		final int capacity = conf.getInt(QUEUE_SIZE_KEY, 2 * (ndecode + nextract));
+
+		decodePool = Executors.newFixedThreadPool(ndecode, new DaemonThreadFactory());
+		extractPool = Executors.newFixedThreadPool(nextract, new DaemonThreadFactory());
+
+		final ArrayDeque<Record> pending = new ArrayDeque<Record>(capacity);
+		long read = 0;
+		long written = 0;
+		long failed = 0;
+		long waitMillis = 0;
+
+		try {
+			while (context.nextKeyValue()) {
+				final Record r = new Record(WritableUtils.clone(context.getCurrentKey(), conf),
+						WritableUtils.clone(context.getCurrentValue(), conf));
+				read++;
+
+				pending.add(r);
+				decodePool.execute(r);
+
+				while (pending.size() >= capacity || (!pending.isEmpty() && pending.peek().done.getCount() == 0)) {
+					final Record head = pending.poll();
+
+					final long t0 = System.currentTimeMillis();
+					head.done.await();
+					waitMillis += System.currentTimeMillis() - t0;
+
+					if (write(head, context))
+						written++;
+					else if (head.error != null)
+						failed++;
+				}
+			}
+
+			while (!pending.isEmpty()) {
+				final Record head = pending.poll();
+
+				final long t0 = System.currentTimeMillis();
+				head.done.await();
+				waitMillis += System.currentTimeMillis() - t0;
+
+				if (write(head, context))
+					written++;
+				else if (head.error != null)
+					failed++;
+			}
+		} finally {
+			decodePool.shutdownNow();
+			extractPool.shutdownNow();
+
+			context.getCounter(Counters.READ).increment(read);
+			context.getCounter(Counters.DECODED).increment(decodeCount.getAndSet(0));
+			context.getCounter(Counters.DECODE_MILLIS).increment(decodeMillis.getAndSet(0));
+			context.getCounter(Counters.EXTRACTED).increment(extractCount.getAndSet(0));
+			context.getCounter(Counters.EXTRACT_MILLIS).increment(extractMillis.getAndSet(0));
+			context.getCounter(Counters.WRITTEN).increment(written);
+			context.getCounter(Counters.WRITE_WAIT_MILLIS).increment(waitMillis);
+			context.getCounter(Counters.FAILED).increment(failed);
+		}
+
+		cleanup(context);
+	}
+
+	private boolean write(Record r, Context context) throws IOException, InterruptedException {
+		if (r.error instanceof Error)
+			throw (Error) r.error;
+
+		if (r.error != null) {
+			failed(r.key, r.error);
+			return false;
+		}
+
+		context.progress();
+		if (r.output == null)
+			return false;
+
+		context.write(r.key, r.output);
+		return true;
+	}
+
+	/**
+	 * Set the number of threads used by each stage of the pipeline.
+	 * 
+	 * @param job
+	 *            the job
+	 * @param decodeThreads
+	 *            the number of decode threads
+	 * @param extractThreads
+	 *            the number of extract threads
+	 */
+	public static void setNumberOfThreads(Job job, int decodeThreads, int extractThreads) {
+		job.getConfiguration().setInt(DECODE_THREADS_KEY, decodeThreads);
+		job.getConfiguration().setInt(EXTRACT_THREADS_KEY, extractThreads);
+	}
+
+	/**
+	 * Set the maximum number of records that can be in the pipeline at once.
+	 * By default this is twice the total number of threads.
+	 * 
+	 * @param job
+	 *            the job
+	 * @param size
+	 *            the maximum number of records in flight
+	 */
+	public static void setQueueSize(Job job, int size) {
+		job.getConfiguration().setInt(QUEUE_SIZE_KEY, size);
+	}
+
+	/**
+	 * Get the number of decode threads. Defaults to 1.
+	 * 
+	 * @param conf
+	 *            the configuration
+	 * @return the number of decode threads
+	 */
+	public static int getNumberOfDecodeThreads(Configuration conf) {
+		return Math.max(1, conf.getInt(DECODE_THREADS_KEY, 1));
+	}
+
+	/**
+	 * Get the number of extract threads. Defaults to the number of
+	 * processors.
+	 * 
+	 * @param conf
+	 *            the configuration
+	 * @return the number of extract threads
+	 */
+	public static int getNumberOfExtractThreads(Configuration conf) {
+		final int n = conf.getInt(EXTRACT_THREADS_KEY, 0);
+		return n > 0 ? n : Runtime.getRuntime().availableProcessors();
+	}
+}
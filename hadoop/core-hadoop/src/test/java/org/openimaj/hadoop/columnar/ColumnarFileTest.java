@@ -0,0 +1,190 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.hadoop.columnar;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.DefaultCodec;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link ColumnarFile}
+ * 
+ * @author agent
+ */
+public class ColumnarFileTest {
+	private static final int NRECORDS = 1000;
+
+	/**
+	 * Temporary folder
+	 */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Configuration conf;
+	private FileSystem fs;
+	private Path path;
+	private byte[][] ids;
+	private byte[][] descriptors;
+
+	/**
+	 * Write a test file
+	 * 
+	 * @throws IOException
+	 */
+	@Before
+	public void setup() throws IOException {
+		conf = new Configuration();
+		fs = FileSystem.getLocal(conf);
+		path = new Path(new File(folder.getRoot(), "test.cf").getAbsolutePath());
+
+		final Random rng = new Random(0);
+		ids = new byte[NRECORDS][];
+		descriptors = new byte[NRECORDS][];
+
+		final ColumnarFile.Writer writer = new ColumnarFile.Writer(fs.create(path), new String[] { "ids",
+				"descriptors" }, ReflectionUtils.newInstance(DefaultCodec.class, conf), 16 * 1024);
+		final ColumnsWritable value = new ColumnsWritable();
+		for (int i = 0; i < NRECORDS; i++) {
+			ids[i] = ("id" + i).getBytes();
+			descriptors[i] = new byte[rng.nextInt(512)];
+			rng.nextBytes(descriptors[i]);
+
+			value.set("ids", ids[i]);
+			value.set("descriptors", descriptors[i]);
+			writer.append(new Text("key" + i), value);
+		}
+		writer.close();
+	}
+
+	/**
+	 * Test that all the records can be read back
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testReadAll() throws IOException {
+		final ColumnarFile.Reader reader = new ColumnarFile.Reader(fs, path, conf);
+		assertArrayEquals(new String[] { "ids", "descriptors" }, reader.getColumnNames());
+		assertEquals(NRECORDS, reader.getNumberOfRecords());
+		assertTrue(reader.getNumberOfRowGroups() > 1);
+
+		final Text key = new Text();
+		final ColumnsWritable value = new ColumnsWritable();
+		int i = 0;
+		while (reader.next(key, value)) {
+			assertEquals("key" + i, key.toString());
+			assertArrayEquals(ids[i], value.getBytes("ids"));
+			assertArrayEquals(descriptors[i], value.getBytes("descriptors"));
+			i++;
+		}
+		reader.close();
+
+		assertEquals(NRECORDS, i);
+	}
+
+	/**
+	 * Test that reading a subset of the columns only returns those columns and
+	 * doesn't read the data of the others
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testProjection() throws IOException {
+		final ColumnarFile.Reader all = new ColumnarFile.Reader(fs, path, conf);
+		final ColumnarFile.Reader projected = new ColumnarFile.Reader(fs, path, conf);
+		projected.setColumns("ids");
+
+		final Text key = new Text();
+		final ColumnsWritable value = new ColumnsWritable();
+		while (all.next(key, value))
+			;
+		value.clear();
+
+		int i = 0;
+		while (projected.next(key, value)) {
+			assertArrayEquals(ids[i], value.getBytes("ids"));
+			assertNull(value.get("descriptors"));
+			i++;
+		}
+		assertEquals(NRECORDS, i);
+
+		assertTrue(projected.getBytesRead() < all.getBytesRead() - projected.getCompressedSize("descriptors") / 2);
+
+		all.close();
+		projected.close();
+	}
+
+	/**
+	 * Test that splitting a file by byte ranges reads every record exactly once
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testSplits() throws IOException {
+		final long length = fs.getFileStatus(path).getLen();
+		final boolean[] seen = new boolean[NRECORDS];
+		final Text key = new Text();
+		final ColumnsWritable value = new ColumnsWritable();
+
+		final long splitSize = length / 7;
+		for (long start = 0; start < length; start += splitSize) {
+			final ColumnarFile.Reader reader = new ColumnarFile.Reader(fs, path, conf);
+			reader.setColumns("ids");
+			reader.selectRange(start, Math.min(length, start + splitSize));
+
+			while (reader.next(key, value)) {
+				final int i = Integer.parseInt(key.toString().substring(3));
+				assertFalse(seen[i]);
+				seen[i] = true;
+			}
+			reader.close();
+		}
+
+		for (final boolean b : seen)
+			assertTrue(b);
+	}
+}
@@ -0,0 +1,416 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.hadoop.mapreduce;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.StatusReporter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
+import org.apache.hadoop.mapreduce.lib.map.WrappedMapper;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.apache.hadoop.mapreduce.task.MapContextImpl;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openimaj.io.FileUtils;
+
+/**
+ * Tests for the {@link PipelinedMapper}
+ * 
+ * @author agent
+ */
+public class PipelinedMapperTest {
+	static class UpperCaseMapper extends PipelinedMapper<LongWritable, Text, String, Text> {
+		final Random rng = new Random();
+		final Set<Thread> threads = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+		final List<Long> failedKeys = new ArrayList<Long>();
+		final List<Thread> failedThreads = new ArrayList<Thread>();
+
+		@Override
+		protected String decode(LongWritable key, Text value) throws Exception {
+			threads.add(Thread.currentThread());
+
+			// jumble the order in which records complete
+			Thread.sleep(rng.nextInt(3));
+			return value.toString();
+		}
+
+		@Override
+		protected Text extract(LongWritable key, String decoded) throws Exception {
+			threads.add(Thread.currentThread());
+
+			if (decoded.endsWith("0"))
+				throw new Exception("failed " + decoded);
+			if (decoded.endsWith("5"))
+				return null;
+
+			Thread.sleep(rng.nextInt(3));
+			return new Text(decoded.toUpperCase());
+		}
+
+		@Override
+		protected void failed(LongWritable key, Throwable error) {
+			failedKeys.add(key.get());
+			failedThreads.add(Thread.currentThread());
+		}
+	}
+
+	/**
+	 * Reader producing the lines "line 0" to "line n-1", keyed by line
+	 * number, that records the maximum number of records in the pipeline.
+	 */
+	static class LineReader extends RecordReader<LongWritable, Text> {
+		final int nlines;
+		final LongWritable key = new LongWritable();
+		final Text value = new Text();
+		int current = -1;
+		int maxInFlight;
+		LineReporter reporter;
+		UpperCaseMapper mapper;
+
+		LineReader(int nlines) {
+			this.nlines = nlines;
+		}
+
+		@Override
+		public void initialize(InputSplit split, TaskAttemptContext context) {
+		}
+
+		@Override
+		public boolean nextKeyValue() {
+			// every record taken from the pipeline either reports progress
+			// or fails
+			final int consumed = reporter.progress + mapper.failedKeys.size();
+			maxInFlight = Math.max(maxInFlight, current + 1 - consumed);
+
+			if (++current >= nlines)
+				return false;
+
+			key.set(current);
+			value.set("line " + current);
+			return true;
+		}
+
+		@Override
+		public LongWritable getCurrentKey() {
+			return key;
+		}
+
+		@Override
+		public Text getCurrentValue() {
+			return value;
+		}
+
+		@Override
+		public float getProgress() {
+			return (float) current / nlines;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	static class LineReporter extends StatusReporter {
+		final Counters counters = new Counters();
+		int progress;
+
+		@Override
+		public Counter getCounter(Enum<?> name) {
+			return counters.findCounter(name);
+		}
+
+		@Override
+		public Counter getCounter(String group, String name) {
+			return counters.findCounter(group, name);
+		}
+
+		@Override
+		public void progress() {
+			progress++;
+		}
+
+		// not declared by all versions of StatusReporter
+		public float getProgress() {
+			return 0;
+		}
+
+		@Override
+		public void setStatus(String status) {
+		}
+
+		long get(PipelinedMapper.Counters counter) {
+			return counters.findCounter(counter).getValue();
+		}
+	}
+
+	static class LineWriter extends RecordWriter<LongWritable, Text> {
+		final List<Long> keys = new ArrayList<Long>();
+		final List<String> values = new ArrayList<String>();
+
+		@Override
+		public void write(LongWritable key, Text value) {
+			keys.add(key.get());
+			values.add(value.toString());
+		}
+
+		@Override
+		public void close(TaskAttemptContext context) {
+		}
+	}
+
+	/**
+	 * Working dir
+	 */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Test that all records are processed and written in order, and that
+	 * failures are counted.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testOrdering() throws Exception {
+		final int nlines = 500;
+		final File input = folder.newFile("input");
+		final PrintWriter pw = new PrintWriter(input);
+		for (int i = 0; i < nlines; i++)
+			pw.println("line " + i);
+		pw.close();
+
+		final File output = new File(folder.getRoot(), "out.dir");
+
+		final Job job = new Job(new Configuration());
+		job.setInputFormatClass(TextInputFormat.class);
+		job.setOutputFormatClass(TextOutputFormat.class);
+		job.setOutputKeyClass(LongWritable.class);
+		job.setOutputValueClass(Text.class);
+		job.setMapperClass(UpperCaseMapper.class);
+		job.setNumReduceTasks(0);
+		PipelinedMapper.setNumberOfThreads(job, 2, 3);
+		PipelinedMapper.setQueueSize(job, 8);
+		FileInputFormat.setInputPaths(job, new Path(input.getAbsolutePath()));
+		FileOutputFormat.setOutputPath(job, new Path(output.getAbsolutePath()));
+
+		job.waitForCompletion(false);
+
+		final String[] lines = FileUtils.readlines(new File(output, "part-m-00000"));
+
+		int j = 0;
+		for (int i = 0; i < nlines; i++) {
+			if (i % 5 == 0)
+				continue;
+
+			assertEquals("LINE " + i, lines[j++].split("\t")[1]);
+		}
+		assertEquals(j, lines.length);
+
+		assertEquals(nlines, job.getCounters().findCounter(PipelinedMapper.Counters.READ).getValue());
+		assertEquals(nlines, job.getCounters().findCounter(PipelinedMapper.Counters.DECODED).getValue());
+		assertEquals(nlines / 10, job.getCounters().findCounter(PipelinedMapper.Counters.FAILED).getValue());
+		assertEquals(lines.length, job.getCounters().findCounter(PipelinedMapper.Counters.WRITTEN).getValue());
+	}
+
+	private static void run(UpperCaseMapper mapper, LineReader reader, LineWriter writer, LineReporter reporter)
+			throws IOException, InterruptedException
+	{
+		final Configuration conf = new Configuration();
+		conf.setInt(PipelinedMapper.DECODE_THREADS_KEY, 2);
+		conf.setInt(PipelinedMapper.EXTRACT_THREADS_KEY, 3);
+		conf.setInt(PipelinedMapper.QUEUE_SIZE_KEY, 8);
+
+		reader.reporter = reporter;
+		reader.mapper = mapper;
+
+		final Mapper<LongWritable, Text, LongWritable, Text>.Context context =
+				new WrappedMapper<LongWritable, Text, LongWritable, Text>().getMapContext(
+						new MapContextImpl<LongWritable, Text, LongWritable, Text>(conf, new TaskAttemptID(), reader,
+								writer, null, reporter, null));
+
+		mapper.run(context);
+	}
+
+	private static void assertShutdown(UpperCaseMapper mapper) throws InterruptedException {
+		assertFalse(mapper.threads.isEmpty());
+
+		for (final Thread t : mapper.threads) {
+			t.join(10000);
+			assertFalse(t.isAlive());
+		}
+	}
+
+	/**
+	 * Test the pipeline directly against a task context: records must be
+	 * written in order, failures must be passed to
+	 * {@link PipelinedMapper#failed(org.apache.hadoop.io.Writable, Throwable)}
+	 * on the task thread, the number of records in flight must not exceed
+	 * the queue size, and the threads must be stopped afterwards.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testPipeline() throws Exception {
+		final int nlines = 500;
+		final UpperCaseMapper mapper = new UpperCaseMapper();
+		final LineReader reader = new LineReader(nlines);
+		final LineWriter writer = new LineWriter();
+		final LineReporter reporter = new LineReporter();
+
+		run(mapper, reader, writer, reporter);
+
+		int j = 0;
+		for (int i = 0; i < nlines; i++) {
+			if (i % 5 == 0)
+				continue;
+
+			assertEquals(i, (long) writer.keys.get(j));
+			assertEquals("LINE " + i, writer.values.get(j));
+			j++;
+		}
+		assertEquals(j, writer.keys.size());
+
+		assertEquals(nlines / 10, mapper.failedKeys.size());
+		for (int i = 0; i < mapper.failedKeys.size(); i++) {
+			assertEquals(i * 10, (long) mapper.failedKeys.get(i));
+			assertSame(Thread.currentThread(), mapper.failedThreads.get(i));
+		}
+
+		assertTrue(reader.maxInFlight > 1);
+		assertTrue(reader.maxInFlight <= 8);
+
+		assertEquals(nlines, reporter.get(PipelinedMapper.Counters.READ));
+		assertEquals(nlines, reporter.get(PipelinedMapper.Counters.DECODED));
+		assertEquals(nlines - nlines / 10, reporter.get(PipelinedMapper.Counters.EXTRACTED));
+		assertEquals(nlines / 10, reporter.get(PipelinedMapper.Counters.FAILED));
+		assertEquals(j, reporter.get(PipelinedMapper.Counters.WRITTEN));
+
+		assertShutdown(mapper);
+	}
+
+	/**
+	 * Test that an exception thrown by
+	 * {@link PipelinedMapper#failed(org.apache.hadoop.io.Writable, Throwable)}
+	 * stops the pipeline and propagates out of the task.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testFailedPropagates() throws Exception {
+		final UpperCaseMapper mapper = new UpperCaseMapper() {
+			@Override
+			protected void failed(LongWritable key, Throwable error) {
+				super.failed(key, error);
+				if (key.get() == 20)
+					throw new IllegalStateException("stop");
+			}
+		};
+		final LineWriter writer = new LineWriter();
+		final LineReporter reporter = new LineReporter();
+
+		try {
+			run(mapper, new LineReader(500), writer, reporter);
+			fail("expected exception");
+		} catch (final IllegalStateException e) {
+			assertEquals("stop", e.getMessage());
+		}
+
+		assertEquals(16, writer.keys.size());
+		assertEquals(19, (long) writer.keys.get(15));
+		assertEquals(3, mapper.failedKeys.size());
+		assertEquals(2, reporter.get(PipelinedMapper.Counters.FAILED));
+		assertEquals(16, reporter.get(PipelinedMapper.Counters.WRITTEN));
+
+		assertShutdown(mapper);
+	}
+
+	/**
+	 * Test that an {@link Error} in a pipeline thread is rethrown on the task
+	 * thread rather than the record being skipped.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testErrorRethrown() throws Exception {
+		final Error error = new Error("fatal");
+		final UpperCaseMapper mapper = new UpperCaseMapper() {
+			@Override
+			protected Text extract(LongWritable key, String decoded) throws Exception {
+				if (key.get() == 31)
+					throw error;
+				return super.extract(key, decoded);
+			}
+		};
+		final LineWriter writer = new LineWriter();
+
+		try {
+			run(mapper, new LineReader(500), writer, new LineReporter());
+			fail("expected error");
+		} catch (final Error e) {
+			assertSame(error, e);
+		}
+
+		assertEquals(24, writer.keys.size());
+		assertEquals(29, (long) writer.keys.get(23));
+		assertEquals(4, mapper.failedKeys.size());
+
+		assertShutdown(mapper);
+	}
+}
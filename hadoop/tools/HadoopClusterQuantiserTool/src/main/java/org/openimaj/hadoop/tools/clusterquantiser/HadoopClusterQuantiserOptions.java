@@ -44,9 +44,11 @@ import org.kohsuke.args4j.CmdLineException;
 import org.kohsuke.args4j.CmdLineOptionsProvider;
 import org.kohsuke.args4j.Option;
 import org.kohsuke.args4j.ProxyOptionHandler;
+import org.openimaj.hadoop.mapreduce.PipelinedMapper;
 import org.openimaj.hadoop.sequencefile.SequenceFileUtility;
 import org.openimaj.hadoop.tools.clusterquantiser.HadoopClusterQuantiserOptions.MapperMode.MapperModeOp;
 import org.openimaj.hadoop.tools.clusterquantiser.HadoopClusterQuantiserTool.ClusterQuantiserMapper;
+import org.openimaj.hadoop.tools.clusterquantiser.HadoopClusterQuantiserTool.PipelinedClusterQuantiserMapper;
 import org.openimaj.ml.clustering.SpatialClusters;
 import org.openimaj.tools.clusterquantiser.AbstractClusterQuantiserOptions;
 import org.openimaj.tools.clusterquantiser.ClusterType;
@@ -66,6 +68,12 @@ public class HadoopClusterQuantiserOptions extends AbstractClusterQuantiserOptio
 			public MapperModeOp getOptions() {
 				return new MultithreadOp();
 			}
+		},
+		PIPELINED {
+			@Override
+			public MapperModeOp getOptions() {
+				return new PipelinedOp();
+			}
 		};
 
 		public static abstract class MapperModeOp {
@@ -98,6 +106,28 @@ public class HadoopClusterQuantiserOptions extends AbstractClusterQuantiserOptio
 				System.out.println("NThreads = " + MultithreadedMapper.getNumberOfThreads(job));
 			}
 		}
+
+		private static class PipelinedOp extends MapperModeOp {
+			@Option(
+					name = "--decode-threads",
+					required = false,
+					usage = "Use NUMBER threads per mapper to parse the feature files. defaults 1.",
+					metaVar = "NUMBER")
+			private int decodeThreads = 1;
+
+			@Override
+			public void prepareJobMapper(Job job, Class<ClusterQuantiserMapper> mapperClass,
+					AbstractClusterQuantiserOptions opts)
+			{
+				int concurrency = opts.getConcurrency();
+				if (opts.getConcurrency() <= 0)
+					concurrency = Runtime.getRuntime().availableProcessors();
+
+				job.setMapperClass(PipelinedClusterQuantiserMapper.class);
+				PipelinedMapper.setNumberOfThreads(job, decodeThreads, concurrency);
+				System.out.println("NThreads = " + decodeThreads + " decode, " + concurrency + " quantise");
+			}
+		}
 	}
 
 	private boolean beforeMaps;
@@ -47,6 +47,7 @@ import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
 import org.kohsuke.args4j.CmdLineException;
+import org.openimaj.hadoop.mapreduce.PipelinedMapper;
 import org.openimaj.hadoop.mapreduce.TextBytesJobUtil;
 import org.openimaj.hadoop.sequencefile.MetadataConfiguration;
 import org.openimaj.hadoop.sequencefile.TextBytesSequenceFileUtility;
@@ -116,7 +117,45 @@ public class HadoopClusterQuantiserTool extends Configured implements Tool {
 			loadCluster(context);
 		}
 
+		/**
+		 * Quantise the features in the given file with the loaded cluster
+		 * assigner. The assigner only uses local state during assignment, so
+		 * this can safely be called from multiple threads.
+		 * 
+		 * @param input
+		 *            the features
+		 * @return the quantised features in ASCII form
+		 */
 		@SuppressWarnings("unchecked")
+		protected static byte[] quantise(FeatureFile input) {
+			final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			PrintWriter pw = null;
+			try {
+				pw = new PrintWriter(baos);
+				pw.format("%d\n%d\n", input.size(), tree.numClusters());
+
+				for (final FeatureFileFeature fff : input) {
+					int cluster = -1;
+
+					if (tree.getClass().getName().contains("Byte"))
+						cluster = ((HardAssigner<byte[], ?, ?>) assigner).assign(fff.data);
+					else
+						cluster = ((HardAssigner<int[], ?, ?>) assigner).assign(ByteArrayConverter
+								.byteToInt(fff.data));
+
+					pw.format("%s %d\n", fff.location.trim(), cluster);
+				}
+			} finally {
+				if (pw != null) {
+					pw.flush();
+					pw.close();
+					input.close();
+				}
+			}
+
+			return baos.toByteArray();
+		}
+
 		@Override
 		protected void
 				map(Text key, BytesWritable value, Mapper<Text, BytesWritable, Text, BytesWritable>.Context context)
@@ -126,39 +165,12 @@ public class HadoopClusterQuantiserTool extends Configured implements Tool {
 				final long t1 = System.currentTimeMillis();
 
 				System.out.println("[" + Thread.currentThread().getId() + "]" + "Calling map ");
-				ByteArrayOutputStream baos = null;
 				if (options.isInfoMode()) {
 					ClusterQuantiser.do_info(options);
 				} else if (options.isQuantMode()) {
-
 					final FeatureFile input = options.getFileType().read(new ByteArrayInputStream(value.getBytes()));
 
-					baos = new ByteArrayOutputStream();
-					PrintWriter pw = null;
-					try {
-						pw = new PrintWriter(baos);
-						pw.format("%d\n%d\n", input.size(), tree.numClusters());
-
-						for (final FeatureFileFeature fff : input) {
-							int cluster = -1;
-
-							if (tree.getClass().getName().contains("Byte"))
-								cluster = ((HardAssigner<byte[], ?, ?>) assigner).assign(fff.data);
-							else
-								cluster = ((HardAssigner<int[], ?, ?>) assigner).assign(ByteArrayConverter
-										.byteToInt(fff.data));
-
-							pw.format("%s %d\n", fff.location.trim(), cluster);
-						}
-					} finally {
-						if (pw != null) {
-							pw.flush();
-							pw.close();
-							input.close();
-						}
-					}
-
-					context.write(key, new BytesWritable(baos.toByteArray()));
+					context.write(key, new BytesWritable(quantise(input)));
 				}
 				final long t2 = System.currentTimeMillis();
 				System.out.println("[" + Thread.currentThread().getId() + "]" + "Job time taken: " + (t2 - t1) / 1000.0
@@ -169,6 +181,45 @@ public class HadoopClusterQuantiserTool extends Configured implements Tool {
 		}
 	}
 
+	/**
+	 * Quantiser mapper that parses the feature files and assigns the features
+	 * to clusters in a multithreaded pipeline within each map task. As with
+	 * the {@link ClusterQuantiserMapper}, the vocabulary is loaded once per JVM
+	 * and shared between all the threads.
+	 * 
+	 * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+	 */
+	static class PipelinedClusterQuantiserMapper extends PipelinedMapper<Text, BytesWritable, FeatureFile, BytesWritable> {
+		private HadoopClusterQuantiserOptions options;
+
+		@Override
+		protected void setup(Mapper<Text, BytesWritable, Text, BytesWritable>.Context context) throws IOException,
+				InterruptedException
+		{
+			ClusterQuantiserMapper.loadCluster(context);
+			options = ClusterQuantiserMapper.options;
+		}
+
+		@Override
+		protected FeatureFile decode(Text key, BytesWritable value) throws Exception {
+			if (!options.isQuantMode())
+				return null;
+
+			return options.getFileType().read(new ByteArrayInputStream(value.getBytes(), 0, value.getLength()));
+		}
+
+		@Override
+		protected BytesWritable extract(Text key, FeatureFile input) throws Exception {
+			if (input == null) {
+				if (options.isInfoMode())
+					ClusterQuantiser.do_info(options);
+				return null;
+			}
+
+			return new BytesWritable(ClusterQuantiserMapper.quantise(input));
+		}
+	}
+
 	@Override
 	public int run(String[] args) throws Exception {
 		final HadoopClusterQuantiserOptions options = new HadoopClusterQuantiserOptions(args, true);
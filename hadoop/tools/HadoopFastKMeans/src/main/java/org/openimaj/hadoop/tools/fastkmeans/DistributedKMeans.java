@@ -0,0 +1,470 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.hadoop.tools.fastkmeans;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.filecache.DistributedCache;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.map.MultithreadedMapper;
+import org.openimaj.hadoop.mapreduce.MultiStagedJob;
+import org.openimaj.hadoop.mapreduce.stage.helper.SequenceFileStage;
+import org.openimaj.hadoop.sequencefile.ExtractionState;
+import org.openimaj.hadoop.sequencefile.KeyValueDump;
+import org.openimaj.hadoop.sequencefile.NamingStrategy;
+import org.openimaj.hadoop.sequencefile.SequenceFileUtility;
+import org.openimaj.io.IOUtils;
+import org.openimaj.ml.clustering.ByteCentroidsResult;
+import org.openimaj.ml.clustering.assignment.HardAssigner;
+import org.openimaj.ml.clustering.assignment.hard.ExactByteAssigner;
+import org.openimaj.ml.clustering.assignment.hard.KDTreeByteEuclideanAssigner;
+import org.openimaj.ml.clustering.kmeans.ByteKMeans;
+import org.openimaj.tools.clusterquantiser.FeatureFile;
+import org.openimaj.tools.clusterquantiser.FeatureFileFeature;
+import org.openimaj.tools.clusterquantiser.FileType;
+import org.openimaj.util.pair.IntFloatPair;
+
+/**
+ * Distributed k-means over every feature in a corpus of feature files, rather
+ * than over a sample of features as in {@link AKMeans}. Each iteration is a
+ * single {@link IterationStage} run through a {@link MultiStagedJob}. The
+ * current centroids are broadcast to the mappers through the
+ * {@link DistributedCache}, and the mappers assign all the features of each
+ * feature file to their nearest centroid with the same (approximate KD-Tree or
+ * exact) assigners that {@link ByteKMeans} uses. A combiner pre-aggregates
+ * the assigned features into partial sums, so only a single sum per centroid
+ * per spill is shuffled to the reducers that compute the new centroids.
+ * 
+ * @author agent
+ */
+public class DistributedKMeans {
+	/**
+	 * Config option for the path of the current centroids
+	 */
+	public static final String CENTROIDS_PATH = "org.openimaj.hadoop.tools.fastkmeans.distributed.CentroidsPath";
+
+	/**
+	 * Config option for the dimensionality of the centroids
+	 */
+	public static final String CENTROIDS_DIMS = "org.openimaj.hadoop.tools.fastkmeans.distributed.CentroidsDims";
+
+	/**
+	 * Config option for exact assignment mode
+	 */
+	public static final String CENTROIDS_EXACT = "org.openimaj.hadoop.tools.fastkmeans.distributed.CentroidsExact";
+
+	/**
+	 * Counters reported by each iteration
+	 */
+	public static enum Counters {
+		/** Number of features assigned */
+		FEATURES,
+		/** Total squared distance of the features to their assigned centroid */
+		DISTORTION,
+		/** Number of feature files that could not be read */
+		FAILED_FILES
+	}
+
+	/**
+	 * Mapper that reads feature files and emits every feature keyed by the
+	 * index of its nearest centroid. The centroids and assigner are shared
+	 * between all the tasks (and threads) within a JVM.
+	 * 
+	 * @author agent
+	 */
+	public static class Map extends Mapper<Text, BytesWritable, IntWritable, BytesWritable> {
+		private static String loadedCentroids = null;
+		private static HardAssigner<byte[], float[], IntFloatPair> assigner = null;
+		private FileType fileType;
+
+		@Override
+		protected void setup(Context context) throws IOException, InterruptedException {
+			fileType = FileType.valueOf(context.getConfiguration().get(ImageFeatureSelect.FILETYPE_KEY));
+			loadCentroids(context.getConfiguration());
+		}
+
+		protected static synchronized void loadCentroids(Configuration conf) throws IOException {
+			final Path centroidsPath = new Path(conf.get(CENTROIDS_PATH));
+			if (centroidsPath.toString().equals(loadedCentroids))
+				return;
+
+			// prefer the copy in the distributed cache, but fall back to the
+			// original if the cache isn't populated (i.e. in local mode)
+			Path localPath = null;
+			final Path[] cached = DistributedCache.getLocalCacheFiles(conf);
+			if (cached != null) {
+				for (final Path p : cached) {
+					if (p.getName().equals(centroidsPath.getName()))
+						localPath = p;
+				}
+			}
+
+			System.out.println("Loading centroids from: " + (localPath != null ? localPath : centroidsPath));
+			InputStream is = null;
+			try {
+				if (localPath != null)
+					is = FileSystem.getLocal(conf).open(localPath);
+				else
+					is = centroidsPath.getFileSystem(conf).open(centroidsPath);
+
+				final ByteCentroidsResult centroids = IOUtils.read(is, ByteCentroidsResult.class);
+
+				if (conf.getBoolean(CENTROIDS_EXACT, false))
+					assigner = new ExactByteAssigner(centroids);
+				else
+					assigner = new KDTreeByteEuclideanAssigner(centroids);
+
+				loadedCentroids = centroidsPath.toString();
+			} finally {
+				if (is != null)
+					is.close();
+			}
+		}
+
+		@Override
+		public void map(Text key, BytesWritable value, Context context) throws IOException, InterruptedException {
+			final byte[][] features;
+			try {
+				final FeatureFile input = fileType.read(new ByteArrayInputStream(value.getBytes(), 0, value
+						.getLength()));
+				features = new byte[input.size()][];
+				int i = 0;
+				for (final FeatureFileFeature fff : input)
+					features[i++] = fff.data;
+				input.close();
+			} catch (final Exception e) {
+				System.out.println("Failed to read features from " + key + " (" + e + ")");
+				context.getCounter(Counters.FAILED_FILES).increment(1);
+				return;
+			}
+
+			final int[] indices = new int[features.length];
+			final float[] distances = new float[features.length];
+			assigner.assignDistance(features, indices, distances);
+
+			double distortion = 0;
+			for (int i = 0; i < features.length; i++) {
+				context.write(new IntWritable(indices[i]), new BytesWritable(features[i]));
+				distortion += distances[i];
+			}
+
+			context.getCounter(Counters.FEATURES).increment(features.length);
+			context.getCounter(Counters.DISTORTION).increment(Math.round(distortion));
+		}
+	}
+
+	/**
+	 * Get the dimensionality of the centroids from the configuration. There is
+	 * deliberately no default, as {@link PartialSum} relies on the
+	 * dimensionality being right to tell features and partial sums apart.
+	 * 
+	 * @param conf
+	 *            the configuration
+	 * @return the dimensionality
+	 * @throws IOException
+	 *             if the dimensionality hasn't been set
+	 */
+	static int getDims(Configuration conf) throws IOException {
+		final int dims = conf.getInt(CENTROIDS_DIMS, -1);
+		if (dims < 1)
+			throw new IOException("The dimensionality of the centroids (" + CENTROIDS_DIMS + ") has not been set");
+		return dims;
+	}
+
+	/**
+	 * Running sum of the features assigned to a centroid. Serialised as the
+	 * count followed by the per-dimension sums. The values seen by the
+	 * combiner and reducer are a mix of raw features and serialised sums,
+	 * which are told apart by their length alone: a feature is
+	 * <code>dims</code> bytes and a sum is <code>8 * (dims + 1)</code> bytes.
+	 * These can't be equal for any positive <code>dims</code>, but a feature
+	 * of the wrong dimensionality could be mistaken for a sum, so the
+	 * dimensionality must be the true dimensionality of the features.
+	 */
+	static class PartialSum {
+		long count;
+		final long[] sum;
+
+		PartialSum(int dims) {
+			if (dims < 1)
+				throw new IllegalArgumentException("dims must be positive");
+
+			sum = new long[dims];
+		}
+
+		static PartialSum sum(int dims, Iterable<BytesWritable> values) throws IOException {
+			final PartialSum ps = new PartialSum(dims);
+			for (final BytesWritable val : values)
+				ps.accumulate(val);
+			return ps;
+		}
+
+		void accumulate(BytesWritable value) throws IOException {
+			final int length = value.getLength();
+			final byte[] bytes = value.getBytes();
+
+			if (length == sum.length) {
+				for (int i = 0; i < sum.length; i++)
+					sum[i] += bytes[i];
+				count++;
+			} else if (length == 8 * (sum.length + 1)) {
+				final DataInputStream dis = new DataInputStream(new ByteArrayInputStream(bytes, 0, length));
+				count += dis.readLong();
+				for (int i = 0; i < sum.length; i++)
+					sum[i] += dis.readLong();
+			} else {
+				throw new IOException("Inconsistency in sum and feature length");
+			}
+		}
+
+		BytesWritable toWritable() throws IOException {
+			final ByteArrayOutputStream bos = new ByteArrayOutputStream(8 * (sum.length + 1));
+			final DataOutputStream dos = new DataOutputStream(bos);
+			dos.writeLong(count);
+			for (final long s : sum)
+				dos.writeLong(s);
+			dos.close();
+
+			return new BytesWritable(bos.toByteArray());
+		}
+
+		byte[] mean() {
+			final byte[] out = new byte[sum.length];
+			for (int i = 0; i < sum.length; i++) {
+				final long v = Math.round((double) sum[i] / count);
+				out[i] = (byte) Math.max(Byte.MIN_VALUE, Math.min(Byte.MAX_VALUE, v));
+			}
+			return out;
+		}
+	}
+
+	/**
+	 * Combiner that pre-aggregates the features (or partial sums) assigned to
+	 * each centroid into a single partial sum.
+	 * 
+	 * @author agent
+	 */
+	public static class Combine extends Reducer<IntWritable, BytesWritable, IntWritable, BytesWritable> {
+		private int dims;
+
+		@Override
+		protected void setup(Context context) throws IOException, InterruptedException {
+			dims = getDims(context.getConfiguration());
+		}
+
+		@Override
+		protected void reduce(IntWritable key, Iterable<BytesWritable> values, Context context) throws IOException,
+				InterruptedException
+		{
+			context.write(key, PartialSum.sum(dims, values).toWritable());
+		}
+	}
+
+	/**
+	 * Reducer that computes the new centroid from all the features (or partial
+	 * sums) assigned to it. Centroids that had nothing assigned are not
+	 * emitted.
+	 * 
+	 * @author agent
+	 */
+	public static class Reduce extends Reducer<IntWritable, BytesWritable, IntWritable, BytesWritable> {
+		private int dims;
+
+		@Override
+		protected void setup(Context context) throws IOException, InterruptedException {
+			dims = getDims(context.getConfiguration());
+		}
+
+		@Override
+		protected void reduce(IntWritable key, Iterable<BytesWritable> values, Context context) throws IOException,
+				InterruptedException
+		{
+			final PartialSum ps = PartialSum.sum(dims, values);
+			if (ps.count > 0)
+				context.write(key, new BytesWritable(ps.mean()));
+		}
+	}
+
+	/**
+	 * A single k-means iteration over the corpus. The input is always the
+	 * original feature files; the output is a sequence file of the updated
+	 * centroids keyed by their index.
+	 * 
+	 * @author agent
+	 */
+	public static class IterationStage
+			extends
+			SequenceFileStage<Text, BytesWritable, IntWritable, BytesWritable, IntWritable, BytesWritable>
+	{
+		private Path centroids;
+		private int dims;
+		private HadoopFastKMeansOptions options;
+
+		/**
+		 * Construct the stage
+		 * 
+		 * @param centroids
+		 *            the location of the current {@link ByteCentroidsResult}
+		 * @param dims
+		 *            the dimensionality of the centroids
+		 * @param options
+		 *            the tool options
+		 */
+		public IterationStage(Path centroids, int dims, HadoopFastKMeansOptions options) {
+			this.centroids = centroids;
+			this.dims = dims;
+			this.options = options;
+		}
+
+		@Override
+		public void setup(Job job) throws IOException {
+			final Configuration conf = job.getConfiguration();
+			conf.set(CENTROIDS_PATH, centroids.toString());
+			conf.setInt(CENTROIDS_DIMS, dims);
+			conf.setBoolean(CENTROIDS_EXACT, options.exact);
+			conf.set(ImageFeatureSelect.FILETYPE_KEY, options.fileType);
+
+			DistributedCache.addCacheFile(centroids.toUri(), conf);
+			((JobConf) conf).setNumTasksToExecutePerJvm(-1);
+		}
+
+		@Override
+		public void setMapperClass(Job job,
+				Class<? extends Mapper<Text, BytesWritable, IntWritable, BytesWritable>> mapper)
+		{
+			job.setMapperClass(MultithreadedMapper.class);
+			MultithreadedMapper.setNumberOfThreads(job, options.concurrency);
+			MultithreadedMapper.setMapperClass(job, mapper);
+		}
+
+		@Override
+		public Class<? extends Mapper<Text, BytesWritable, IntWritable, BytesWritable>> mapper() {
+			return DistributedKMeans.Map.class;
+		}
+
+		@Override
+		public Class<? extends Reducer<IntWritable, BytesWritable, IntWritable, BytesWritable>> combiner() {
+			return DistributedKMeans.Combine.class;
+		}
+
+		@Override
+		public Class<? extends Reducer<IntWritable, BytesWritable, IntWritable, BytesWritable>> reducer() {
+			return DistributedKMeans.Reduce.class;
+		}
+
+		@Override
+		public void finished(Job job) {
+			try {
+				final long n = job.getCounters().findCounter(Counters.FEATURES).getValue();
+				final long d = job.getCounters().findCounter(Counters.DISTORTION).getValue();
+				System.out.println("Assigned " + n + " features; mean distortion " + (n > 0 ? (double) d / n : 0));
+			} catch (final IOException e) {
+				System.out.println("Unable to read counters: " + e);
+			}
+		}
+	}
+
+	static class UpdateCentroidsDump extends KeyValueDump<IntWritable, BytesWritable> {
+		byte[][] centroids;
+		int changed = 0;
+
+		UpdateCentroidsDump(byte[][] centroids) {
+			this.centroids = centroids;
+		}
+
+		@Override
+		public void dumpValue(IntWritable key, BytesWritable val) {
+			final byte[] bytes = new byte[val.getLength()];
+			System.arraycopy(val.getBytes(), 0, bytes, 0, bytes.length);
+
+			if (!Arrays.equals(centroids[key.get()], bytes))
+				changed++;
+
+			centroids[key.get()] = bytes;
+		}
+	}
+
+	/**
+	 * Get the sequence files that make up the given inputs
+	 * 
+	 * @param inputs
+	 *            the input paths or uris
+	 * @return the part files
+	 * @throws IOException
+	 */
+	public static Path[] getInputPaths(List<String> inputs) throws IOException {
+		final List<Path> sequenceFiles = new ArrayList<Path>();
+		for (final String input : inputs) {
+			for (final Path p : SequenceFileUtility.getFilePaths(input, "part"))
+				sequenceFiles.add(p);
+		}
+		return sequenceFiles.toArray(new Path[sequenceFiles.size()]);
+	}
+
+	/**
+	 * Update the given centroids in place with the output of an
+	 * {@link IterationStage}. Centroids that had no features assigned in the
+	 * iteration are left unchanged.
+	 * 
+	 * @param parts
+	 *            the output part files of the iteration
+	 * @param cluster
+	 *            the centroids to update
+	 * @return the number of centroids that changed
+	 * @throws IOException
+	 */
+	public static int updateCentroids(Path[] parts, ByteCentroidsResult cluster) throws IOException {
+		final UpdateCentroidsDump dump = new UpdateCentroidsDump(cluster.centroids);
+
+		for (final Path part : parts) {
+			final IntBytesSequenceMemoryUtility utility = new IntBytesSequenceMemoryUtility(part.toUri(), true);
+			utility.exportData(NamingStrategy.KEY, new ExtractionState(), 0, dump);
+		}
+
+		return dump.changed;
+	}
+}
@@ -45,7 +45,9 @@ import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.lib.map.MultithreadedMapper;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
+import org.openimaj.hadoop.mapreduce.MultiStagedJob;
 import org.openimaj.hadoop.mapreduce.TextBytesJobUtil;
+import org.openimaj.hadoop.sequencefile.SequenceFileUtility;
 import org.openimaj.io.IOUtils;
 import org.openimaj.ml.clustering.ByteCentroidsResult;
 
@@ -114,6 +116,9 @@ public class HadoopFastKMeans extends Configured implements Tool {
 			return 1;
 		}
 
+		if (options.distributed)
+			return runDistributed(initialCentroids, cluster);
+
 		// Prepare the AKM procedure
 		String currentCompletePath = initialCentroids;
 		for (int i = 0; i < options.iter; i++) {
@@ -151,6 +156,39 @@ public class HadoopFastKMeans extends Configured implements Tool {
 		return 0;
 	}
 
+	/**
+	 * Run the k-means iterations over all of the features in the input using
+	 * {@link DistributedKMeans}. Each iteration is a {@link MultiStagedJob}
+	 * writing to its own directory, so an interrupted run can be restarted
+	 * without recomputing the completed iterations.
+	 */
+	private int runDistributed(String initialCentroids, ByteCentroidsResult cluster) throws Exception {
+		final Path[] corpus = DistributedKMeans.getInputPaths(options.inputs);
+		final String[] args = options.original_args == null ? new String[0] : options.original_args;
+
+		Path centroidsPath = new Path(initialCentroids);
+		for (int i = 0; i < options.iter; i++) {
+			System.out.println("Calling distributed iteration: " + i);
+
+			final MultiStagedJob job = new MultiStagedJob(corpus, new Path(options.output + "/dist-" + i), args);
+			job.queueStage(new DistributedKMeans.IterationStage(centroidsPath, cluster.numDimensions(), options));
+			final Path result = job.runAll();
+
+			final int changed = DistributedKMeans.updateCentroids(
+					SequenceFileUtility.getFilePaths(result.toString(), "part"), cluster);
+
+			centroidsPath = new Path(options.output + "/dist-" + i + "-centroids");
+			replaceSequenceFileWithCluster(centroidsPath.toString(), cluster);
+
+			System.out.println(changed + " of " + cluster.numClusters() + " centroids changed");
+			if (changed <= options.convergenceThreshold * cluster.numClusters())
+				break;
+		}
+
+		replaceSequenceFileWithCluster(options.output + "/final", cluster);
+		return 0;
+	}
+
 	static byte[][] trimNullClusters(byte[][] bytes) {
 		int i = 0;
 		while (i < bytes.length && bytes[i] != null) {
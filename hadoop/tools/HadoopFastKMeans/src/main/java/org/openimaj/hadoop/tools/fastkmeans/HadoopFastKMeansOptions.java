@@ -91,6 +91,20 @@ public class HadoopFastKMeansOptions {
 			usage = "How many times should the Kmeans iterate")
 	public int iter = 3;
 
+	@Option(
+			name = "--distributed",
+			aliases = "-dist",
+			required = false,
+			usage = "Iterate over all the features in the input rather than the selected samples. The samples are only used to initialise the centroids.")
+	public boolean distributed = false;
+
+	@Option(
+			name = "--convergence-threshold",
+			aliases = "-ct",
+			required = false,
+			usage = "In distributed mode, stop iterating when no more than this proportion of the centroids change in an iteration.")
+	public double convergenceThreshold = 0.001;
+
 	@Option(name = "--samples-only", aliases = "-so", required = false, usage = "Extract samples only.")
 	public boolean samplesOnly = false;
 
@@ -0,0 +1,226 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.hadoop.tools.fastkmeans;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.BytesWritable;
+import org.junit.Test;
+import org.openimaj.hadoop.tools.fastkmeans.DistributedKMeans.PartialSum;
+
+/**
+ * Tests for the combiner and reducer arithmetic of {@link DistributedKMeans}
+ * 
+ * @author agent
+ */
+public class DistributedKMeansTest {
+	private static List<byte[]> createFeatures(Random rng, int n, int dims) {
+		final List<byte[]> features = new ArrayList<byte[]>();
+		for (int i = 0; i < n; i++) {
+			final byte[] f = new byte[dims];
+			rng.nextBytes(f);
+			features.add(f);
+		}
+		return features;
+	}
+
+	private static List<BytesWritable> wrap(List<byte[]> features) {
+		final List<BytesWritable> values = new ArrayList<BytesWritable>();
+		for (final byte[] f : features)
+			values.add(new BytesWritable(f));
+		return values;
+	}
+
+	private static void assertSumEquals(PartialSum expected, PartialSum actual) {
+		assertEquals(expected.count, actual.count);
+		assertArrayEquals(expected.sum, actual.sum);
+	}
+
+	/**
+	 * Summing raw features must give the count and per-dimension sums
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testSumFeatures() throws IOException {
+		final List<byte[]> features = createFeatures(new Random(0), 100, 16);
+		final PartialSum ps = PartialSum.sum(16, wrap(features));
+
+		assertEquals(100, ps.count);
+		for (int d = 0; d < 16; d++) {
+			long expected = 0;
+			for (final byte[] f : features)
+				expected += f[d];
+			assertEquals(expected, ps.sum[d]);
+		}
+	}
+
+	/**
+	 * Combining the features in groups, then combining the partial sums (mixed
+	 * with some more raw features) again, must give the same result as summing
+	 * all the raw features, as Hadoop may run the combiner any number of times
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testCombineTwice() throws IOException {
+		final int dims = 128;
+		final Random rng = new Random(1);
+		final List<byte[]> features = createFeatures(rng, 1000, dims);
+		final PartialSum expected = PartialSum.sum(dims, wrap(features));
+
+		// first round: combine in uneven groups
+		final List<BytesWritable> firstRound = new ArrayList<BytesWritable>();
+		int start = 0;
+		while (start < 900) {
+			final int end = Math.min(900, start + 1 + rng.nextInt(150));
+			firstRound.add(PartialSum.sum(dims, wrap(features.subList(start, end))).toWritable());
+			start = end;
+		}
+
+		// second round: combine pairs of partial sums, plus the remaining
+		// raw features
+		final List<BytesWritable> secondRound = new ArrayList<BytesWritable>();
+		for (int i = 0; i < firstRound.size(); i += 2)
+			secondRound.add(PartialSum.sum(dims, firstRound.subList(i, Math.min(i + 2, firstRound.size())))
+					.toWritable());
+		secondRound.addAll(wrap(features.subList(900, 1000)));
+
+		final PartialSum combined = PartialSum.sum(dims, secondRound);
+		assertSumEquals(expected, combined);
+		assertArrayEquals(expected.mean(), combined.mean());
+	}
+
+	/**
+	 * The mean must be rounded to the nearest value
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testMean() throws IOException {
+		final List<byte[]> features = new ArrayList<byte[]>();
+		features.add(new byte[] { 1, -1, 127, -128 });
+		features.add(new byte[] { 2, -2, 127, -128 });
+		features.add(new byte[] { 2, -2, 126, -127 });
+
+		final PartialSum ps = PartialSum.sum(4, wrap(features));
+		assertArrayEquals(new byte[] { 2, -2, 127, -128 }, ps.mean());
+	}
+
+	/**
+	 * A serialised partial sum must round-trip
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testSerialisation() throws IOException {
+		final PartialSum ps = PartialSum.sum(8, wrap(createFeatures(new Random(2), 10, 8)));
+		final BytesWritable w = ps.toWritable();
+		assertEquals(8 * (8 + 1), w.getLength());
+
+		assertSumEquals(ps, PartialSum.sum(8, Arrays.asList(w)));
+	}
+
+	/**
+	 * For every dimensionality a feature and a serialised sum must be
+	 * recognised by their length, and any other length must be rejected
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testLengths() throws IOException {
+		for (int dims = 1; dims <= 1024; dims++) {
+			final PartialSum feature = new PartialSum(dims);
+			feature.accumulate(new BytesWritable(new byte[dims]));
+			assertEquals(1, feature.count);
+
+			final PartialSum sum = new PartialSum(dims);
+			sum.accumulate(feature.toWritable());
+			assertEquals(1, sum.count);
+
+			for (final int length : new int[] { 0, dims - 1, dims + 1, 8 * dims, 8 * (dims + 1) + 1 }) {
+				if (length == dims || length == 8 * (dims + 1))
+					continue;
+
+				try {
+					new PartialSum(dims).accumulate(new BytesWritable(new byte[length]));
+					fail("length " + length + " accepted for dims " + dims);
+				} catch (final IOException e) {
+					// expected
+				}
+			}
+		}
+	}
+
+	/**
+	 * The check is purely length based, so a feature of length
+	 * <code>8 * (dims + 1)</code> is read as a sum. This is why the
+	 * dimensionality must be right, and why it has no default.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testWrongDimensionalityIsAmbiguous() throws IOException {
+		final byte[] feature = new byte[8 * (16 + 1)];
+		feature[7] = 5;
+
+		final PartialSum ps = new PartialSum(16);
+		ps.accumulate(new BytesWritable(feature));
+		assertEquals(5, ps.count);
+
+		final Configuration conf = new Configuration(false);
+		try {
+			DistributedKMeans.getDims(conf);
+			fail("missing dimensionality accepted");
+		} catch (final IOException e) {
+			// expected
+		}
+
+		conf.setInt(DistributedKMeans.CENTROIDS_DIMS, 136);
+		assertEquals(136, DistributedKMeans.getDims(conf));
+	}
+
+	/**
+	 * A non-positive dimensionality must be rejected
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testZeroDims() {
+		new PartialSum(0);
+	}
+}
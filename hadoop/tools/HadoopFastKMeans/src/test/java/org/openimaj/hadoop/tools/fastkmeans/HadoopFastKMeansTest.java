@@ -30,16 +30,38 @@
 package org.openimaj.hadoop.tools.fastkmeans;
 
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.List;
 
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.Text;
 import org.apache.hadoop.util.ToolRunner;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
+import org.openimaj.hadoop.sequencefile.ExtractionState;
+import org.openimaj.hadoop.sequencefile.KeyValueDump;
+import org.openimaj.hadoop.sequencefile.NamingStrategy;
+import org.openimaj.hadoop.sequencefile.SequenceFileUtility;
+import org.openimaj.hadoop.sequencefile.TextBytesSequenceFileUtility;
 import org.openimaj.hadoop.tools.fastkmeans.HadoopFastKMeans;
 import org.openimaj.hadoop.tools.fastkmeans.HadoopFastKMeansOptions;
+import org.openimaj.io.IOUtils;
+import org.openimaj.ml.clustering.ByteCentroidsResult;
+import org.openimaj.ml.clustering.kmeans.ByteKMeans;
+import org.openimaj.tools.clusterquantiser.FeatureFile;
+import org.openimaj.tools.clusterquantiser.FeatureFileFeature;
+import org.openimaj.tools.clusterquantiser.FileType;
 
 
 public class HadoopFastKMeansTest {
@@ -82,6 +104,82 @@ public class HadoopFastKMeansTest {
 		ToolRunner.run(hfkm, new String[]{});
 	}
 	
+	@Test
+	public void testDistributed() throws Exception{
+		HadoopFastKMeans hfkm = new HadoopFastKMeans();
+		HadoopFastKMeansOptions hfkmo = new HadoopFastKMeansOptions(null);
+		hfkmo.inputs = new ArrayList<String>();
+		hfkmo.inputs.add(featureSeqFile.getAbsolutePath());
+		hfkmo.output = tmpOut.getAbsolutePath();
+		hfkmo.forceRM = true;
+		hfkmo.nsamples = 1000;
+		hfkmo.distributed = true;
+		hfkmo.exact = true;
+		hfkm.setOptions(hfkmo);
+		assertEquals(0, ToolRunner.run(hfkm, new String[]{}));
+		
+		final ByteCentroidsResult initial = readCentroids(new File(tmpOut, "init"));
+		final ByteCentroidsResult distributed = readCentroids(new File(tmpOut, "final"));
+		assertEquals(hfkmo.k, distributed.numClusters());
+		assertEquals(initial.numDimensions(), distributed.numDimensions());
+		
+		// run the same number of iterations locally over all the features
+		// from the same starting point
+		final byte[][] features = readFeatures(featureSeqFile);
+		final ByteKMeans.Result local = new ByteKMeans.Result();
+		local.centroids = initial.centroids;
+		ByteKMeans.createExact(hfkmo.k, hfkmo.iter).cluster(features, local);
+		
+		// the local implementation truncates rather than rounds the means, and
+		// reseeds empty clusters randomly, so only most of the centroids
+		// are expected to be within a couple of levels per dimension
+		int close = 0;
+		for (int i = 0; i < hfkmo.k; i++) {
+			double diff = 0;
+			for (int d = 0; d < distributed.numDimensions(); d++)
+				diff += Math.abs(distributed.centroids[i][d] - local.centroids[i][d]);
+			if (diff / distributed.numDimensions() <= 2)
+				close++;
+		}
+		assertTrue(close >= 0.9 * hfkmo.k);
+	}
+	
+	private static ByteCentroidsResult readCentroids(File file) throws IOException {
+		final InputStream is = new FileInputStream(file);
+		try {
+			return IOUtils.read(is, ByteCentroidsResult.class);
+		} finally {
+			is.close();
+		}
+	}
+	
+	private static byte[][] readFeatures(File seqFile) throws IOException {
+		final FileType fileType = FileType.valueOf(new HadoopFastKMeansOptions(null).fileType);
+		final List<byte[]> features = new ArrayList<byte[]>();
+		final IOException[] error = new IOException[1];
+		
+		for (final Path part : SequenceFileUtility.getFilePaths(seqFile.getAbsolutePath(), "part")) {
+			final TextBytesSequenceFileUtility utility = new TextBytesSequenceFileUtility(part.toUri(), true);
+			utility.exportData(NamingStrategy.KEY, new ExtractionState(), 0, new KeyValueDump<Text, BytesWritable>() {
+				@Override
+				public void dumpValue(Text key, BytesWritable val) {
+					try {
+						final FeatureFile ff = fileType.read(new ByteArrayInputStream(val.getBytes(), 0, val.getLength()));
+						for (final FeatureFileFeature fff : ff)
+							features.add(fff.data);
+						ff.close();
+					} catch (final IOException e) {
+						error[0] = e;
+					}
+				}
+			});
+		}
+		
+		if (error[0] != null)
+			throw error[0];
+		return features.toArray(new byte[features.size()][]);
+	}
+	
 	public static void main(String args[]) throws Exception{
 		HadoopFastKMeansTest test = new HadoopFastKMeansTest();
 		test.setUp();
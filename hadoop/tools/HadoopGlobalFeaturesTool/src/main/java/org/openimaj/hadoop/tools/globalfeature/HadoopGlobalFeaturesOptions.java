@@ -70,6 +70,12 @@ public class HadoopGlobalFeaturesOptions {
 	@Option(name="--remove", aliases="-rm", required=false, usage="Remove the existing output location if it exists.", metaVar="BOOLEAN")
 	private boolean replace = false;
 
+	@Option(name="--decode-threads", required=false, usage="Use a pipelined mapper with NUMBER threads per mapper to decode images. defaults 1.", metaVar="NUMBER")
+	protected int decodeThreads = 0;
+
+	@Option(name="--extract-threads", required=false, usage="Use a pipelined mapper with NUMBER threads per mapper to extract features. defaults n processors.", metaVar="NUMBER")
+	protected int extractThreads = 0;
+
 	private boolean beforeMaps;
 	
 	/**
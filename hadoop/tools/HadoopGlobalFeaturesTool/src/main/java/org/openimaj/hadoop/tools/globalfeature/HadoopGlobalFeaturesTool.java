@@ -31,6 +31,7 @@ package org.openimaj.hadoop.tools.globalfeature;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -48,6 +49,7 @@ import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
 import org.apache.log4j.Logger;
 import org.openimaj.feature.FeatureVector;
+import org.openimaj.hadoop.mapreduce.PipelinedMapper;
 import org.openimaj.hadoop.mapreduce.TextBytesJobUtil;
 import org.openimaj.hadoop.sequencefile.MetadataConfiguration;
 import org.openimaj.hadoop.tools.HadoopToolsUtil;
@@ -87,19 +89,62 @@ public class HadoopGlobalFeaturesTool extends Configured implements Tool
 				final MBFImage img = ImageUtilities.readMBF(new ByteArrayInputStream(value.getBytes()));
 				final FeatureVector fv = options.featureOp.extract(img);
 
-				final ByteArrayOutputStream baos = new ByteArrayOutputStream();
-				if (options.binary)
-					IOUtils.writeBinary(baos, fv);
-				else
-					IOUtils.writeASCII(baos, fv);
-
-				context.write(key, new BytesWritable(baos.toByteArray()));
+				context.write(key, serialise(fv, options.binary));
 			} catch (final Exception e) {
 				logger.warn("Problem processing image " + key + " (" + e + ")");
 			}
 		}
 	}
 
+	/**
+	 * Feature extraction mapper that decodes images and extracts features in
+	 * a multithreaded pipeline within each map task.
+	 * 
+	 * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+	 */
+	static class PipelinedGlobalFeaturesMapper extends PipelinedMapper<Text, BytesWritable, MBFImage, BytesWritable> {
+		private ThreadLocal<HadoopGlobalFeaturesOptions> threadOptions;
+
+		@Override
+		protected void setup(final Mapper<Text, BytesWritable, Text, BytesWritable>.Context context) {
+			// the feature extractors are not guaranteed to be thread-safe, so
+			// each extract thread gets its own
+			threadOptions = new ThreadLocal<HadoopGlobalFeaturesOptions>() {
+				@Override
+				protected HadoopGlobalFeaturesOptions initialValue() {
+					return new HadoopGlobalFeaturesOptions(context.getConfiguration().getStrings(ARGS_KEY));
+				}
+			};
+		}
+
+		@Override
+		protected MBFImage decode(Text key, BytesWritable value) throws Exception {
+			return ImageUtilities.readMBF(new ByteArrayInputStream(value.getBytes(), 0, value.getLength()));
+		}
+
+		@Override
+		protected BytesWritable extract(Text key, MBFImage image) throws Exception {
+			final HadoopGlobalFeaturesOptions options = threadOptions.get();
+
+			return serialise(options.featureOp.extract(image), options.binary);
+		}
+
+		@Override
+		protected void failed(Text key, Throwable t) {
+			logger.warn("Problem processing image " + key + " (" + t + ")");
+		}
+	}
+
+	private static BytesWritable serialise(FeatureVector fv, boolean binary) throws IOException {
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		if (binary)
+			IOUtils.writeBinary(baos, fv);
+		else
+			IOUtils.writeASCII(baos, fv);
+
+		return new BytesWritable(baos.toByteArray());
+	}
+
 	@Override
 	public int run(String[] args) throws Exception {
 		final HadoopGlobalFeaturesOptions options = new HadoopGlobalFeaturesOptions(args, true);
@@ -117,7 +162,12 @@ public class HadoopGlobalFeaturesTool extends Configured implements Tool
 
 		final Job job = TextBytesJobUtil.createJob(allPaths, new Path(options.output), metadata, this.getConf());
 		job.setJarByClass(this.getClass());
-		job.setMapperClass(GlobalFeaturesMapper.class);
+		if (options.decodeThreads > 0 || options.extractThreads > 0) {
+			job.setMapperClass(PipelinedGlobalFeaturesMapper.class);
+			PipelinedMapper.setNumberOfThreads(job, options.decodeThreads, options.extractThreads);
+		} else {
+			job.setMapperClass(GlobalFeaturesMapper.class);
+		}
 		job.getConfiguration().setStrings(ARGS_KEY, args);
 		job.setNumReduceTasks(0);
 
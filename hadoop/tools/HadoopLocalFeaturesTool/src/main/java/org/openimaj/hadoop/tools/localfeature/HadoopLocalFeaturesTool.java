@@ -39,6 +39,7 @@ import org.apache.hadoop.conf.Configured;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.BytesWritable;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
@@ -47,11 +48,16 @@ import org.apache.hadoop.util.ToolRunner;
 import org.apache.log4j.Logger;
 import org.openimaj.feature.local.LocalFeature;
 import org.openimaj.feature.local.list.LocalFeatureList;
+import org.openimaj.hadoop.columnar.ColumnarOutputFormat;
+import org.openimaj.hadoop.columnar.ColumnsWritable;
+import org.openimaj.hadoop.mapreduce.PipelinedMapper;
 import org.openimaj.hadoop.mapreduce.TextBytesJobUtil;
 import org.openimaj.hadoop.sequencefile.MetadataConfiguration;
 import org.openimaj.hadoop.sequencefile.TextBytesSequenceFileUtility;
+import org.openimaj.image.Image;
 import org.openimaj.io.IOUtils;
 import org.openimaj.time.Timer;
+import org.openimaj.tools.localfeature.options.LocalFeatureMode.LocalFeatureModeOp;
 
 /**
  * Hadoop version of the LocalFeaturesTool. Capable of extracting features from
@@ -69,7 +75,7 @@ public class HadoopLocalFeaturesTool extends Configured implements Tool {
 	 * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
 	 * @author Sina Samangooei (ss@ecs.soton.ac.uk)
 	 */
-	static class LocalFeaturesMapper extends Mapper<Text, BytesWritable, Text, BytesWritable> {
+	static class LocalFeaturesMapper extends Mapper<Text, BytesWritable, Text, Writable> {
 		static enum Counters {
 			SUCCESSFUL, FAILED;
 		}
@@ -99,7 +105,6 @@ public class HadoopLocalFeaturesTool extends Configured implements Tool {
 				final Timer t = Timer.timer();
 				logger.info("Generating Keypoint for image: " + key);
 				logger.trace("Keypoint mode: " + options.getMode());
-				ByteArrayOutputStream baos = null;
 				final LocalFeatureList<? extends LocalFeature<?, ?>> kpl = options.getMode().extract(value.getBytes());
 
 				logger.debug("Keypoints generated! Found: " + kpl.size());
@@ -109,13 +114,7 @@ public class HadoopLocalFeaturesTool extends Configured implements Tool {
 				}
 
 				logger.trace("Writing");
-				baos = new ByteArrayOutputStream();
-				if (options.isAsciiMode()) {
-					IOUtils.writeASCII(baos, kpl);
-				} else {
-					IOUtils.writeBinary(baos, kpl);
-				}
-				context.write(key, new BytesWritable(baos.toByteArray()));
+				context.write(key, serialise(kpl, options));
 				logger.info("Done in " + t.duration() + "ms");
 				context.getCounter(Counters.SUCCESSFUL).increment(1L);
 			} catch (final Throwable e) {
@@ -126,6 +125,69 @@ public class HadoopLocalFeaturesTool extends Configured implements Tool {
 		}
 	}
 
+	/**
+	 * Feature extraction mapper that decodes images and extracts features in
+	 * a multithreaded pipeline within each map task. Images are decoded with
+	 * {@link LocalFeatureModeOp#decode(byte[])} and the features are extracted
+	 * with {@link LocalFeatureModeOp#extractDecoded(Image)}, which together are
+	 * exactly what {@link LocalFeatureModeOp#extract(byte[])} does, so the
+	 * output is the same as that of the {@link LocalFeaturesMapper}.
+	 * 
+	 * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+	 */
+	static class PipelinedLocalFeaturesMapper extends PipelinedMapper<Text, BytesWritable, Image<?, ?>, Writable> {
+		private HadoopLocalFeaturesToolOptions options;
+		private ThreadLocal<HadoopLocalFeaturesToolOptions> threadOptions;
+
+		@Override
+		protected void setup(final Context context) throws IOException, InterruptedException {
+			options = new HadoopLocalFeaturesToolOptions(context.getConfiguration().getStrings(ARGS_KEY));
+			options.prepare();
+
+			// the mode options hold state, so each extract thread gets its own
+			threadOptions = new ThreadLocal<HadoopLocalFeaturesToolOptions>() {
+				@Override
+				protected HadoopLocalFeaturesToolOptions initialValue() {
+					final HadoopLocalFeaturesToolOptions opts = new HadoopLocalFeaturesToolOptions(context
+							.getConfiguration().getStrings(ARGS_KEY));
+					opts.prepare();
+					return opts;
+				}
+			};
+		}
+
+		@Override
+		protected Image<?, ?> decode(Text key, BytesWritable value) throws Exception {
+			return threadOptions.get().getMode().decode(value.getBytes());
+		}
+
+		@Override
+		protected Writable extract(Text key, Image<?, ?> image) throws Exception {
+			final LocalFeatureList<? extends LocalFeature<?, ?>> kpl = threadOptions.get().getMode()
+					.extractDecoded(image);
+
+			if (options.dontwrite)
+				return null;
+
+			return serialise(kpl, options);
+		}
+	}
+
+	private static Writable serialise(LocalFeatureList<? extends LocalFeature<?, ?>> kpl,
+			HadoopLocalFeaturesToolOptions options) throws IOException
+	{
+		if (options.columnar)
+			return LocalFeatureColumns.toColumns(kpl);
+
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		if (options.isAsciiMode()) {
+			IOUtils.writeASCII(baos, kpl);
+		} else {
+			IOUtils.writeBinary(baos, kpl);
+		}
+		return new BytesWritable(baos.toByteArray());
+	}
+
 	@Override
 	public int run(String[] args) throws Exception {
 		final HadoopLocalFeaturesToolOptions options = new HadoopLocalFeaturesToolOptions(args, true);
@@ -148,7 +210,14 @@ public class HadoopLocalFeaturesTool extends Configured implements Tool {
 		job.getConfiguration().setStrings(ARGS_KEY, args);
 		job.setNumReduceTasks(0);
 
-		SequenceFileOutputFormat.setCompressOutput(job, !options.dontcompress);
+		if (options.columnar) {
+			job.setOutputFormatClass(ColumnarOutputFormat.class);
+			job.setOutputValueClass(ColumnsWritable.class);
+			ColumnarOutputFormat.setColumns(job, LocalFeatureColumns.COLUMNS);
+			ColumnarOutputFormat.setCompressChunks(job, !options.dontcompress);
+		} else {
+			SequenceFileOutputFormat.setCompressOutput(job, !options.dontcompress);
+		}
 
 		long start, end;
 		start = System.currentTimeMillis();
@@ -43,8 +43,10 @@ import org.kohsuke.args4j.CmdLineOptionsProvider;
 import org.kohsuke.args4j.CmdLineParser;
 import org.kohsuke.args4j.Option;
 import org.kohsuke.args4j.ProxyOptionHandler;
+import org.openimaj.hadoop.mapreduce.PipelinedMapper;
 import org.openimaj.hadoop.sequencefile.SequenceFileUtility;
 import org.openimaj.hadoop.tools.localfeature.HadoopLocalFeaturesTool.LocalFeaturesMapper;
+import org.openimaj.hadoop.tools.localfeature.HadoopLocalFeaturesTool.PipelinedLocalFeaturesMapper;
 import org.openimaj.hadoop.tools.localfeature.HadoopLocalFeaturesToolOptions.MapperMode.MapperModeOp;
 import org.openimaj.tools.localfeature.options.ExtractorOptions;
 
@@ -90,6 +92,33 @@ public class HadoopLocalFeaturesToolOptions extends ExtractorOptions {
 					}
 				};
 			}
+		},
+		PIPELINED {
+			@Override
+			public MapperModeOp getOptions() {
+				return new MapperModeOp() {
+					@Option(
+							name = "--decode-threads",
+							required = false,
+							usage = "Use NUMBER threads per mapper to decode images. defaults 1.",
+							metaVar = "NUMBER")
+					private int decodeThreads = 1;
+
+					@Option(
+							name = "--extract-threads",
+							required = false,
+							usage = "Use NUMBER threads per mapper to extract features. defaults n processors.",
+							metaVar = "NUMBER")
+					private int extractThreads = Runtime.getRuntime().availableProcessors();
+
+					@Override
+					public void prepareJobMapper(Job job, Class<LocalFeaturesMapper> mapperClass) {
+						job.setMapperClass(PipelinedLocalFeaturesMapper.class);
+						PipelinedMapper.setNumberOfThreads(job, decodeThreads, extractThreads);
+						System.out.println("Using pipelined mapper");
+					}
+				};
+			}
 		};
 
 		@Override
@@ -134,6 +163,13 @@ public class HadoopLocalFeaturesToolOptions extends ExtractorOptions {
 			metaVar = "BOOLEAN")
 	boolean dontcompress = false;
 
+	@Option(
+			name = "--columnar",
+			required = false,
+			usage = "Write a columnar file with the feature locations and descriptors in separate columns instead of a sequencefile. The features are always stored in binary form.",
+			metaVar = "BOOLEAN")
+	boolean columnar = false;
+
 	private boolean beforeMap;
 
 	/**
@@ -0,0 +1,148 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.hadoop.tools.localfeature;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.openimaj.feature.FeatureVector;
+import org.openimaj.feature.local.LocalFeature;
+import org.openimaj.feature.local.Location;
+import org.openimaj.hadoop.columnar.ColumnarFile;
+import org.openimaj.hadoop.columnar.ColumnsWritable;
+import org.openimaj.io.IOUtils;
+
+/**
+ * Conversion between lists of local features and the columns of a
+ * {@link ColumnarFile}. The locations and the descriptors of the features in
+ * a list are stored in separate columns, so consumers that only need the
+ * descriptors (e.g. for quantisation) never have to read the locations, and
+ * vice-versa. Both columns hold the number of features as an int followed by
+ * the binary form of each location or feature vector.
+ * 
+ * @author agent
+ */
+public final class LocalFeatureColumns {
+	/**
+	 * Name of the column holding the feature locations
+	 */
+	public static final String LOCATIONS = "locations";
+
+	/**
+	 * Name of the column holding the feature descriptors
+	 */
+	public static final String DESCRIPTORS = "descriptors";
+
+	/**
+	 * All the columns
+	 */
+	public static final String[] COLUMNS = { LOCATIONS, DESCRIPTORS };
+
+	private LocalFeatureColumns() {
+	}
+
+	/**
+	 * Convert a list of features to columns
+	 * 
+	 * @param features
+	 *            the features
+	 * @return the columns
+	 * @throws IOException
+	 */
+	public static ColumnsWritable toColumns(List<? extends LocalFeature<?, ?>> features) throws IOException {
+		final DataOutputBuffer locations = new DataOutputBuffer();
+		final DataOutputBuffer descriptors = new DataOutputBuffer();
+
+		locations.writeInt(features.size());
+		descriptors.writeInt(features.size());
+		for (final LocalFeature<?, ?> f : features) {
+			f.getLocation().writeBinary(locations);
+			f.getFeatureVector().writeBinary(descriptors);
+		}
+
+		final ColumnsWritable columns = new ColumnsWritable();
+		columns.set(LOCATIONS, locations.getData(), 0, locations.getLength());
+		columns.set(DESCRIPTORS, descriptors.getData(), 0, descriptors.getLength());
+		return columns;
+	}
+
+	/**
+	 * Read the descriptors from the value of the {@link #DESCRIPTORS} column
+	 * 
+	 * @param column
+	 *            the column value
+	 * @param type
+	 *            the type of feature vector
+	 * @return the descriptors
+	 * @throws IOException
+	 */
+	public static <T extends FeatureVector> List<T> readDescriptors(BytesWritable column, Class<T> type)
+			throws IOException
+	{
+		final DataInputStream in = new DataInputStream(new ByteArrayInputStream(column.getBytes(), 0,
+				column.getLength()));
+		final int n = in.readInt();
+		final List<T> descriptors = new ArrayList<T>(n);
+		for (int i = 0; i < n; i++) {
+			final T fv = IOUtils.newInstance(type);
+			fv.readBinary(in);
+			descriptors.add(fv);
+		}
+		return descriptors;
+	}
+
+	/**
+	 * Read the locations from the value of the {@link #LOCATIONS} column
+	 * 
+	 * @param column
+	 *            the column value
+	 * @param type
+	 *            the type of location
+	 * @return the locations
+	 * @throws IOException
+	 */
+	public static <T extends Location> List<T> readLocations(BytesWritable column, Class<T> type) throws IOException {
+		final DataInputStream in = new DataInputStream(new ByteArrayInputStream(column.getBytes(), 0,
+				column.getLength()));
+		final int n = in.readInt();
+		final List<T> locations = new ArrayList<T>(n);
+		for (int i = 0; i < n; i++) {
+			final T loc = IOUtils.newInstance(type);
+			loc.readBinary(in);
+			locations.add(loc);
+		}
+		return locations;
+	}
+}
@@ -45,11 +45,15 @@ import org.openimaj.feature.local.LocalFeatureExtractor;
 import org.openimaj.image.MBFImage;
 import org.openimaj.image.feature.local.aggregate.VLAD;
 import org.openimaj.io.IOUtils;
+import org.openimaj.knn.FloatNearestNeighboursExact;
+import org.openimaj.knn.IncrementalNearestNeighbours;
+import org.openimaj.knn.pq.FloatIVFADCNearestNeighbours;
 import org.openimaj.knn.pq.FloatProductQuantiser;
 import org.openimaj.knn.pq.IncrementalFloatADCNearestNeighbours;
 import org.openimaj.ml.pca.FeatureVectorPCA;
 import org.openimaj.util.array.ArrayUtils;
 import org.openimaj.util.function.Function;
+import org.openimaj.util.pair.IntFloatPair;
 
 /**
  * Class representing the data required to build a VLAD + PCA +
@@ -62,6 +66,7 @@ public class VLADIndexerData {
 	private VLAD<float[]> vlad;
 	private FeatureVectorPCA pca;
 	private FloatProductQuantiser pq;
+	private FloatNearestNeighboursExact coarseQuantiser;
 	private LocalFeatureExtractor<LocalFeature<?, ?>, MBFImage> extractor;
 	private Function<List<? extends LocalFeature<?, ?>>, List<FloatLocalFeatureAdaptor<?>>> postProcess;
 
@@ -83,10 +88,40 @@ public class VLADIndexerData {
 	public VLADIndexerData(VLAD<float[]> vlad, FeatureVectorPCA pca, FloatProductQuantiser pq,
 			LocalFeatureExtractor<LocalFeature<?, ?>, MBFImage> extractor,
 			Function<List<? extends LocalFeature<?, ?>>, List<FloatLocalFeatureAdaptor<?>>> postProcess)
+	{
+		this(vlad, pca, pq, null, extractor, postProcess);
+	}
+
+	/**
+	 * Construct with the given data, including a coarse quantiser for
+	 * building inverted-file (IVFADC) indexes. In this case the product
+	 * quantiser must have been trained on the residuals of the pca-vlad
+	 * vectors from their closest coarse centroids.
+	 * 
+	 * @param vlad
+	 *            the VLAD extractor
+	 * @param pca
+	 *            the PCA basis
+	 * @param pq
+	 *            the (residual) product quantiser
+	 * @param coarseQuantiser
+	 *            the coarse quantiser; can be null if inverted-file indexes
+	 *            are not required
+	 * @param extractor
+	 *            the raw local feature extractor
+	 * @param postProcess
+	 *            the process to apply to the raw features before VLAD
+	 *            aggregation
+	 */
+	public VLADIndexerData(VLAD<float[]> vlad, FeatureVectorPCA pca, FloatProductQuantiser pq,
+			FloatNearestNeighboursExact coarseQuantiser,
+			LocalFeatureExtractor<LocalFeature<?, ?>, MBFImage> extractor,
+			Function<List<? extends LocalFeature<?, ?>>, List<FloatLocalFeatureAdaptor<?>>> postProcess)
 	{
 		this.vlad = vlad;
 		this.pca = pca;
 		this.pq = pq;
+		this.coarseQuantiser = coarseQuantiser;
 		this.extractor = extractor;
 		this.postProcess = postProcess;
 	}
@@ -167,12 +202,26 @@ public class VLADIndexerData {
 	}
 
 	/**
-	 * Create an {@link IncrementalFloatADCNearestNeighbours} pre-prepared to
-	 * index data
+	 * Get the coarse quantiser used for inverted-file indexes
 	 * 
-	 * @return a new {@link IncrementalFloatADCNearestNeighbours}
+	 * @return the coarse quantiser; null if there isn't one
 	 */
-	public IncrementalFloatADCNearestNeighbours createIncrementalIndex() {
+	public FloatNearestNeighboursExact getCoarseQuantiser() {
+		return coarseQuantiser;
+	}
+
+	/**
+	 * Create an incremental index pre-prepared to index data. If this
+	 * {@link VLADIndexerData} has a coarse quantiser the index will be a
+	 * {@link FloatIVFADCNearestNeighbours}; otherwise it will be an
+	 * {@link IncrementalFloatADCNearestNeighbours}.
+	 * 
+	 * @return a new incremental index
+	 */
+	public IncrementalNearestNeighbours<float[], float[], IntFloatPair> createIncrementalIndex() {
+		if (coarseQuantiser != null)
+			return new FloatIVFADCNearestNeighbours(coarseQuantiser, pq, numDimensions());
+
 		return new IncrementalFloatADCNearestNeighbours(pq, pca.getMean().length);
 	}
 
@@ -188,7 +237,7 @@ public class VLADIndexerData {
 	 * @return the index at which the features were added in the nearest
 	 *         neighbours object
 	 */
-	public int index(List<? extends LocalFeature<?, ?>> features, IncrementalFloatADCNearestNeighbours nn) {
+	public int index(List<? extends LocalFeature<?, ?>> features, IncrementalNearestNeighbours<float[], ?, ?> nn) {
 		return nn.add(extractPcaVlad(features));
 	}
 
@@ -203,7 +252,7 @@ public class VLADIndexerData {
 	 * @return the index at which the features were added in the nearest
 	 *         neighbours object
 	 */
-	public int index(MBFImage image, IncrementalFloatADCNearestNeighbours nn) {
+	public int index(MBFImage image, IncrementalNearestNeighbours<float[], ?, ?> nn) {
 		return nn.add(extractPcaVlad(image));
 	}
 
@@ -45,6 +45,8 @@ import org.openimaj.feature.local.list.MemoryLocalFeatureList;
 import org.openimaj.feature.normalisation.HellingerNormaliser;
 import org.openimaj.image.MBFImage;
 import org.openimaj.image.feature.local.aggregate.VLAD;
+import org.openimaj.knn.FloatNearestNeighboursExact;
+import org.openimaj.knn.pq.FloatIVFADCNearestNeighboursUtilities;
 import org.openimaj.knn.pq.FloatProductQuantiser;
 import org.openimaj.knn.pq.FloatProductQuantiserUtilities;
 import org.openimaj.math.matrix.algorithm.pca.ThinSvdPrincipalComponentAnalysis;
@@ -113,6 +115,7 @@ public class VLADIndexerDataBuilder {
 	private int numPcaDims = 128;
 	private int numPqIterations = 100;
 	private int numPqAssigners = 16;
+	private int numCoarseCentroids = 0;
 	private float sampleProp = 0.1f;
 	private float pcaSampleProp;
 	private Function<List<? extends LocalFeature<?, ?>>, List<FloatLocalFeatureAdaptor<?>>> postProcess = StandardPostProcesses.NONE;
@@ -153,6 +156,54 @@ public class VLADIndexerDataBuilder {
 			List<File> localFeatures, boolean normalise, int numVladCentroids, int numIterations, int numPcaDims,
 			int numPqIterations, int numPqAssigners, float sampleProp, float pcaSampleProp,
 			Function<List<? extends LocalFeature<?, ?>>, List<FloatLocalFeatureAdaptor<?>>> postProcess)
+	{
+		this(extractor, localFeatures, normalise, numVladCentroids, numIterations, numPcaDims, numPqIterations,
+				numPqAssigners, 0, sampleProp, pcaSampleProp, postProcess);
+	}
+
+	/**
+	 * Construct a {@link VLADIndexerDataBuilder} with the given parameters.
+	 * If the number of coarse centroids is greater than zero, a coarse
+	 * quantiser will be learned and the product quantiser will be trained on
+	 * residuals so that the resultant {@link VLADIndexerData} creates
+	 * inverted-file (IVFADC) indexes.
+	 * 
+	 * @param extractor
+	 *            the local feature extractor used to generate the input
+	 *            features
+	 * @param localFeatures
+	 *            a list of file locations of the files containing the input
+	 *            local features (one per image)
+	 * @param normalise
+	 *            should the resultant VLAD features be l2 normalised?
+	 * @param numVladCentroids
+	 *            the number of centroids for VLAD (~64)
+	 * @param numIterations
+	 *            the number of clustering iterations (~100)
+	 * @param numPcaDims
+	 *            the number of dimensions to project down to using PCA (~128
+	 *            for normal SIFT)
+	 * @param numPqIterations
+	 *            the number of iterations for clustering the product quantisers
+	 *            (~100)
+	 * @param numPqAssigners
+	 *            the number of product quantiser assigners (~16)
+	 * @param numCoarseCentroids
+	 *            the number of coarse centroids (inverted lists) for IVFADC
+	 *            indexing (~1024), or 0 for exhaustive ADC indexing
+	 * @param sampleProp
+	 *            the proportion of features to sample for the clustering the
+	 *            VLAD centroids
+	 * @param pcaSampleProp
+	 *            the proportion of images to sample for computing the PCA basis
+	 * @param postProcess
+	 *            the post-processing to apply to the raw features before input
+	 *            to VLAD
+	 */
+	public VLADIndexerDataBuilder(LocalFeatureExtractor<LocalFeature<?, ?>, MBFImage> extractor,
+			List<File> localFeatures, boolean normalise, int numVladCentroids, int numIterations, int numPcaDims,
+			int numPqIterations, int numPqAssigners, int numCoarseCentroids, float sampleProp, float pcaSampleProp,
+			Function<List<? extends LocalFeature<?, ?>>, List<FloatLocalFeatureAdaptor<?>>> postProcess)
 	{
 		super();
 		this.extractor = extractor;
@@ -163,6 +214,7 @@ public class VLADIndexerDataBuilder {
 		this.numPcaDims = numPcaDims;
 		this.numPqIterations = numPqIterations;
 		this.numPqAssigners = numPqAssigners;
+		this.numCoarseCentroids = numCoarseCentroids;
 		this.sampleProp = sampleProp;
 		this.pcaSampleProp = pcaSampleProp;
 		this.postProcess = postProcess == null ? StandardPostProcesses.NONE : postProcess;
@@ -179,7 +231,9 @@ public class VLADIndexerDataBuilder {
 	 * <li>PCA is performed on the VLAD features
 	 * <li>Whitening is applied to the PCA basis
 	 * <li>The VLAD features are projected by the basis
-	 * <li>Product quantisers are learned
+	 * <li>If requested, a coarse quantiser is learned for inverted-file indexing
+	 * <li>Product quantisers are learned (on the residuals if there is a coarse
+	 * quantiser)
 	 * <li>The final {@link VLADIndexerData} object is created
 	 * </ol>
 	 * 
@@ -205,11 +259,24 @@ public class VLADIndexerDataBuilder {
 		System.out.println("Projecting with PCA");
 		final float[][] pcaVlads = projectFeatures(pca, vlads);
 
+		// learn coarse quantiser for inverted-file indexing
+		FloatNearestNeighboursExact coarse = null;
+		if (numCoarseCentroids > 0) {
+			System.out.println("Learning Coarse Quantiser");
+			coarse = FloatIVFADCNearestNeighboursUtilities.trainCoarseQuantiser(pcaVlads, numCoarseCentroids,
+					numPqIterations);
+		}
+
 		// learn PQs
 		System.out.println("Learning Product Quantiser Parameters");
-		final FloatProductQuantiser pq = FloatProductQuantiserUtilities.train(pcaVlads, numPqAssigners, numPqIterations);
-
-		return new VLADIndexerData(vlad, pca, pq, extractor, postProcess);
+		final FloatProductQuantiser pq;
+		if (coarse != null)
+			pq = FloatIVFADCNearestNeighboursUtilities.trainResidualQuantiser(coarse, pcaVlads, numPqAssigners,
+					numPqIterations);
+		else
+			pq = FloatProductQuantiserUtilities.train(pcaVlads, numPqAssigners, numPqIterations);
+
+		return new VLADIndexerData(vlad, pca, pq, coarse, extractor, postProcess);
 	}
 
 	/**
@@ -72,6 +72,8 @@ public class GradientFeatureExtractor implements ScaleSpaceFeatureExtractor<Orie
 
 	private GradientScaleSpaceImageExtractorProperties<FImage> currentGradientProperties = new GradientScaleSpaceImageExtractorProperties<FImage>();
 
+	private boolean sharedGradients = false;
+
 	/**
 	 * The magnification factor determining the size of the sampling region
 	 * relative to the scale of the interest point.
@@ -128,6 +130,29 @@ public class GradientFeatureExtractor implements ScaleSpaceFeatureExtractor<Orie
 		return ret;
 	}
 
+	/**
+	 * Set precomputed gradient magnitudes and orientations for the given
+	 * image, as computed by
+	 * {@link FImageGradients#gradientMagnitudesAndOrientations(FImage, FImage, FImage)}
+	 * . Subsequent extractions from the image will use these rather than
+	 * recomputing them. This allows the gradients of an image to be computed
+	 * once and shared between several extractors working concurrently. The
+	 * given images are never modified by this extractor.
+	 *
+	 * @param image
+	 *            the image
+	 * @param magnitude
+	 *            the gradient magnitudes of the image
+	 * @param orientation
+	 *            the gradient orientations of the image
+	 */
+	public void setGradients(FImage image, FImage magnitude, FImage orientation) {
+		currentGradientProperties.image = image;
+		currentGradientProperties.magnitude = magnitude;
+		currentGradientProperties.orientation = orientation;
+		sharedGradients = true;
+	}
+
 	/**
 	 * Get the GradientScaleSpaceImageExtractorProperties for the given
 	 * properties. The returned properties are the same as the input properties,
@@ -150,7 +175,7 @@ public class GradientFeatureExtractor implements ScaleSpaceFeatureExtractor<Orie
 
 			// only if the size of the image has changed do we need to reset the
 			// gradient and orientation images.
-			if (currentGradientProperties.orientation == null ||
+			if (sharedGradients || currentGradientProperties.orientation == null ||
 					currentGradientProperties.orientation.height != currentGradientProperties.image.height ||
 					currentGradientProperties.orientation.width != currentGradientProperties.image.width)
 			{
@@ -158,6 +183,7 @@ public class GradientFeatureExtractor implements ScaleSpaceFeatureExtractor<Orie
 						currentGradientProperties.image.height);
 				currentGradientProperties.magnitude = new FImage(currentGradientProperties.image.width,
 						currentGradientProperties.image.height);
+				sharedGradients = false;
 			}
 
 			FImageGradients.gradientMagnitudesAndOrientations(currentGradientProperties.image,
@@ -103,23 +103,42 @@ public abstract class AbstractOctaveExtremaFinder<OCTAVE extends GaussianOctave<
 
 		final FImage[] images = octave.images;
 		final int height = images[0].height;
-		final int width = images[0].width;
 		final int borderDist = octave.options.getBorderPixels();
 
 		// search through the scale-space images, leaving a border
 		for (currentScaleIndex = 1; currentScaleIndex < images.length - 1; currentScaleIndex++) {
-			for (int y = borderDist; y < height - borderDist; y++) {
-				for (int x = borderDist; x < width - borderDist; x++) {
-					final float val = images[currentScaleIndex].pixels[y][x];
-
-					if (firstCheck(val, x, y, currentScaleIndex, images) &&
-							isLocalExtremum(val, images[currentScaleIndex - 1], x, y) &&
-							isLocalExtremum(val, images[currentScaleIndex], x, y) &&
-							isLocalExtremum(val, images[currentScaleIndex + 1], x, y) &&
-							isNotEdge(images[currentScaleIndex], x, y))
-					{
-						processExtrema(images, currentScaleIndex, x, y, octave.octaveSize);
-					}
+			findExtrema(images, borderDist, height - borderDist, borderDist);
+		}
+	}
+
+	/**
+	 * Search for extrema within a horizontal band of rows of the current
+	 * scale (see {@link #getCurrentScaleIndex()}) of the current octave,
+	 * passing each one to {@link #processExtrema(FImage[], int, int, int, float)}.
+	 * 
+	 * @param images
+	 *            the scale images
+	 * @param startY
+	 *            the first row of the band (inclusive)
+	 * @param stopY
+	 *            the last row of the band (exclusive)
+	 * @param borderDist
+	 *            the number of border columns to skip
+	 */
+	protected void findExtrema(FImage[] images, int startY, int stopY, int borderDist) {
+		final int width = images[0].width;
+
+		for (int y = startY; y < stopY; y++) {
+			for (int x = borderDist; x < width - borderDist; x++) {
+				final float val = images[currentScaleIndex].pixels[y][x];
+
+				if (firstCheck(val, x, y, currentScaleIndex, images) &&
+						isLocalExtremum(val, images[currentScaleIndex - 1], x, y) &&
+						isLocalExtremum(val, images[currentScaleIndex], x, y) &&
+						isLocalExtremum(val, images[currentScaleIndex + 1], x, y) &&
+						isNotEdge(images[currentScaleIndex], x, y))
+				{
+					processExtrema(images, currentScaleIndex, x, y, octave.octaveSize);
 				}
 			}
 		}
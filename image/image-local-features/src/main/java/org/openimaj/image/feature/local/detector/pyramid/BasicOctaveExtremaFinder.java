@@ -129,6 +129,38 @@ public class BasicOctaveExtremaFinder extends AbstractOctaveExtremaFinder<Gaussi
 		normMagnitudeScales = magnitudeThreshold / octave.options.getScales();
 	}
 
+	/**
+	 * Search for extrema within a horizontal band of rows of a single scale
+	 * of the octave. The extrema are reported in exactly the same way as by
+	 * {@link #process(GaussianOctave)}, so that the search of an octave can
+	 * be split across several finders working concurrently, with one finder
+	 * per band.
+	 * <p>
+	 * Subclasses that carry state between extrema (such as the duplicate
+	 * suppression of the {@link InterpolatingOctaveExtremaFinder}) only do so
+	 * within the band.
+	 * 
+	 * @param octave
+	 *            the octave
+	 * @param scaleIndex
+	 *            the index of the scale to search
+	 * @param startY
+	 *            the first row of the band (inclusive)
+	 * @param stopY
+	 *            the last row of the band (exclusive)
+	 */
+	public void process(GaussianOctave<FImage> octave, int scaleIndex, int startY, int stopY) {
+		beforeProcess(octave);
+
+		this.octave = octave;
+		this.currentScaleIndex = scaleIndex;
+
+		final int height = octave.images[0].height;
+		final int borderDist = octave.options.getBorderPixels();
+
+		findExtrema(octave.images, Math.max(startY, borderDist), Math.min(stopY, height - borderDist), borderDist);
+	}
+
 	@Override
 	protected boolean firstCheck(float val, int x, int y, int s, FImage[] dogs) {
 		// perform magnitude check
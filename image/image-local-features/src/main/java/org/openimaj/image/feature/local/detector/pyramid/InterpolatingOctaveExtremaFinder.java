@@ -121,10 +121,10 @@ public class InterpolatingOctaveExtremaFinder extends BasicOctaveExtremaFinder {
 	}
 
 	@Override
-	public void process(GaussianOctave<FImage> octave) {
-		map = new boolean[octave.images[0].height][octave.images[0].width];
+	protected void beforeProcess(GaussianOctave<FImage> octave) {
+		super.beforeProcess(octave);
 
-		super.process(octave);
+		map = new boolean[octave.images[0].height][octave.images[0].width];
 	}
 
 	@Override
@@ -29,11 +29,23 @@
  */
 package org.openimaj.image.feature.local.engine;
 
+import gnu.trove.list.array.TFloatArrayList;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadPoolExecutor;
+
 import org.openimaj.citation.annotation.Reference;
 import org.openimaj.citation.annotation.ReferenceType;
 import org.openimaj.citation.annotation.References;
+import org.openimaj.feature.OrientedFeatureVector;
 import org.openimaj.feature.local.list.LocalFeatureList;
+import org.openimaj.feature.local.list.MemoryLocalFeatureList;
 import org.openimaj.image.FImage;
+import org.openimaj.image.analysis.pyramid.OctaveProcessor;
 import org.openimaj.image.analysis.pyramid.gaussian.GaussianOctave;
 import org.openimaj.image.analysis.pyramid.gaussian.GaussianPyramid;
 import org.openimaj.image.feature.local.descriptor.gradient.SIFTFeatureProvider;
@@ -42,10 +54,14 @@ import org.openimaj.image.feature.local.detector.dog.collector.OctaveKeypointCol
 import org.openimaj.image.feature.local.detector.dog.extractor.DominantOrientationExtractor;
 import org.openimaj.image.feature.local.detector.dog.extractor.GradientFeatureExtractor;
 import org.openimaj.image.feature.local.detector.dog.extractor.OrientationHistogramExtractor;
+import org.openimaj.image.feature.local.detector.dog.pyramid.DoGOctave;
 import org.openimaj.image.feature.local.detector.dog.pyramid.DoGOctaveExtremaFinder;
 import org.openimaj.image.feature.local.detector.pyramid.BasicOctaveExtremaFinder;
 import org.openimaj.image.feature.local.detector.pyramid.OctaveInterestPointFinder;
+import org.openimaj.image.feature.local.detector.pyramid.OctaveInterestPointListener;
+import org.openimaj.image.feature.local.extraction.ScaleSpaceImageExtractorProperties;
 import org.openimaj.image.feature.local.keypoints.Keypoint;
+import org.openimaj.image.processing.convolution.FImageGradients;
 
 /**
  * <p>
@@ -57,6 +73,16 @@ import org.openimaj.image.feature.local.keypoints.Keypoint;
  * the work needed to extract SIFT features into a single place without having
  * to deal with the setup of pyramid finders, collectors and providers.
  * </p>
+ * <p>
+ * If the engine is constructed with a thread pool, the work is done in
+ * parallel. Each octave is processed as soon as it has been built, while the
+ * pyramid goes on to build the next one. Within an octave, extrema are found
+ * in bands of rows, and descriptors are extracted in chunks of keypoints, by
+ * the pool threads. The features are identical to, and in the same order as,
+ * those found by the sequential engine. The calling thread runs any tasks
+ * that have not started by the time it needs their results, so the engine can
+ * be used from within tasks running on the same pool.
+ * </p>
  * 
  * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
  * 
@@ -82,8 +108,13 @@ import org.openimaj.image.feature.local.keypoints.Keypoint;
 		)
 })
 public class DoGSIFTEngine implements Engine<Keypoint, FImage> {
+	/** The number of keypoints described by each task in parallel mode */
+	private static final int DESCRIPTOR_CHUNK_SIZE = 64;
+
 	DoGSIFTEngineOptions<FImage> options;
 
+	ThreadPoolExecutor pool;
+
 	/**
 	 * Construct a DoGSIFTEngine with the default options.
 	 */
@@ -101,32 +132,30 @@ public class DoGSIFTEngine implements Engine<Keypoint, FImage> {
 		this.options = options;
 	}
 
+	/**
+	 * Construct a DoGSIFTEngine with the given options that processes each
+	 * image in parallel using the given pool.
+	 * 
+	 * @param options
+	 *            the options
+	 * @param pool
+	 *            the thread pool; if null the image is processed sequentially
+	 */
+	public DoGSIFTEngine(DoGSIFTEngineOptions<FImage> options, ThreadPoolExecutor pool) {
+		this.options = options;
+		this.pool = pool;
+	}
+
 	@Override
 	public LocalFeatureList<Keypoint> findFeatures(FImage image) {
+		if (pool != null)
+			return findFeaturesParallel(image);
+
 		final OctaveInterestPointFinder<GaussianOctave<FImage>, FImage> finder =
-				new DoGOctaveExtremaFinder(new BasicOctaveExtremaFinder(options.magnitudeThreshold,
-						options.eigenvalueRatio));
+				new DoGOctaveExtremaFinder(createExtremaFinder());
 
 		final Collector<GaussianOctave<FImage>, Keypoint, FImage> collector = new OctaveKeypointCollector<FImage>(
-				new GradientFeatureExtractor(
-						new DominantOrientationExtractor(
-								options.peakThreshold,
-								new OrientationHistogramExtractor(
-										options.numOriHistBins,
-										options.scaling,
-										options.smoothingIterations,
-										options.samplingSize
-								)
-						),
-						new SIFTFeatureProvider(
-								options.numOriBins,
-								options.numSpatialBins,
-								options.valueThreshold,
-								options.gaussianSigma
-						),
-						options.magnificationFactor * options.numSpatialBins
-				)
-				);
+				createFeatureExtractor());
 
 		finder.setOctaveInterestPointListener(collector);
 
@@ -138,6 +167,211 @@ public class DoGSIFTEngine implements Engine<Keypoint, FImage> {
 		return collector.getFeatures();
 	}
 
+	private BasicOctaveExtremaFinder createExtremaFinder() {
+		return new BasicOctaveExtremaFinder(options.magnitudeThreshold, options.eigenvalueRatio);
+	}
+
+	private GradientFeatureExtractor createFeatureExtractor() {
+		return new GradientFeatureExtractor(
+				new DominantOrientationExtractor(
+						options.peakThreshold,
+						new OrientationHistogramExtractor(
+								options.numOriHistBins,
+								options.scaling,
+								options.smoothingIterations,
+								options.samplingSize
+						)
+				),
+				new SIFTFeatureProvider(
+						options.numOriBins,
+						options.numSpatialBins,
+						options.valueThreshold,
+						options.gaussianSigma
+				),
+				options.magnificationFactor * options.numSpatialBins
+		);
+	}
+
+	private LocalFeatureList<Keypoint> findFeaturesParallel(FImage image) {
+		final List<FutureTask<List<Keypoint>>> octaveTasks = new ArrayList<FutureTask<List<Keypoint>>>();
+
+		options.setOctaveProcessor(new OctaveProcessor<GaussianOctave<FImage>, FImage>() {
+			@Override
+			public void process(final GaussianOctave<FImage> octave) {
+				octaveTasks.add(submit(new Callable<List<Keypoint>>() {
+					@Override
+					public List<Keypoint> call() {
+						return processOctave(octave);
+					}
+				}));
+			}
+		});
+
+		final GaussianPyramid<FImage> pyr = new GaussianPyramid<FImage>(options);
+		pyr.process(image);
+
+		final LocalFeatureList<Keypoint> features = new MemoryLocalFeatureList<Keypoint>();
+		for (final FutureTask<List<Keypoint>> task : octaveTasks)
+			features.addAll(await(task));
+
+		return features;
+	}
+
+	/**
+	 * Find and describe the keypoints of a single octave in parallel. The
+	 * extrema are found in bands of rows of each DoG scale; the gradients of
+	 * each scale containing keypoints are then computed once, and the
+	 * keypoints are described in chunks.
+	 */
+	private List<Keypoint> processOctave(final GaussianOctave<FImage> octave) {
+		final DoGOctave<FImage> dog = new DoGOctave<FImage>(octave.parentPyramid, octave.octaveSize);
+		dog.process(octave);
+
+		final int nscales = dog.images.length;
+		final int height = dog.images[0].height;
+		final int nthreads = pool.getMaximumPoolSize();
+		final int bandHeight = Math.max(1, (height + nthreads - 1) / nthreads);
+
+		// find the extrema of each scale; x, y, and scale are stored consecutively
+		final List<List<FutureTask<TFloatArrayList>>> bandTasks = new ArrayList<List<FutureTask<TFloatArrayList>>>();
+		for (int s = 1; s < nscales - 1; s++) {
+			final List<FutureTask<TFloatArrayList>> tasks = new ArrayList<FutureTask<TFloatArrayList>>();
+
+			for (int y = 0; y < height; y += bandHeight) {
+				final int scaleIndex = s;
+				final int startY = y;
+
+				tasks.add(submit(new Callable<TFloatArrayList>() {
+					@Override
+					public TFloatArrayList call() {
+						final TFloatArrayList points = new TFloatArrayList();
+						final BasicOctaveExtremaFinder finder = createExtremaFinder();
+
+						finder.setOctaveInterestPointListener(new OctaveInterestPointListener<GaussianOctave<FImage>, FImage>() {
+							@Override
+							public void foundInterestPoint(OctaveInterestPointFinder<GaussianOctave<FImage>, FImage> f,
+									float x, float y, float octaveScale)
+							{
+								points.add(x);
+								points.add(y);
+								points.add(octaveScale);
+							}
+						});
+						finder.process(dog, scaleIndex, startY, startY + bandHeight);
+
+						return points;
+					}
+				}));
+			}
+
+			bandTasks.add(tasks);
+		}
+
+		final TFloatArrayList[] scalePoints = new TFloatArrayList[nscales];
+		for (int s = 1; s < nscales - 1; s++) {
+			scalePoints[s] = new TFloatArrayList();
+
+			for (final FutureTask<TFloatArrayList> task : bandTasks.get(s - 1))
+				scalePoints[s].addAll(await(task));
+		}
+
+		// compute the gradients of each scale that has keypoints
+		final List<FutureTask<FImage[]>> gradientTasks = new ArrayList<FutureTask<FImage[]>>();
+		for (int s = 1; s < nscales - 1; s++) {
+			if (scalePoints[s].isEmpty()) {
+				gradientTasks.add(null);
+				continue;
+			}
+
+			final FImage scaleImage = octave.images[s];
+			gradientTasks.add(submit(new Callable<FImage[]>() {
+				@Override
+				public FImage[] call() {
+					final FImage mag = new FImage(scaleImage.width, scaleImage.height);
+					final FImage ori = new FImage(scaleImage.width, scaleImage.height);
+					FImageGradients.gradientMagnitudesAndOrientations(scaleImage, mag, ori);
+
+					return new FImage[] { mag, ori };
+				}
+			}));
+		}
+
+		// describe the keypoints
+		final List<FutureTask<List<Keypoint>>> descriptorTasks = new ArrayList<FutureTask<List<Keypoint>>>();
+		for (int s = 1; s < nscales - 1; s++) {
+			if (scalePoints[s].isEmpty())
+				continue;
+
+			final FImage scaleImage = octave.images[s];
+			final FImage[] gradients = await(gradientTasks.get(s - 1));
+			final float[] points = scalePoints[s].toArray();
+
+			for (int i = 0; i < points.length; i += 3 * DESCRIPTOR_CHUNK_SIZE) {
+				final int start = i;
+				final int stop = Math.min(points.length, i + 3 * DESCRIPTOR_CHUNK_SIZE);
+
+				descriptorTasks.add(submit(new Callable<List<Keypoint>>() {
+					@Override
+					public List<Keypoint> call() {
+						final GradientFeatureExtractor extractor = createFeatureExtractor();
+						extractor.setGradients(scaleImage, gradients[0], gradients[1]);
+
+						final ScaleSpaceImageExtractorProperties<FImage> props = new ScaleSpaceImageExtractorProperties<FImage>();
+						props.image = scaleImage;
+
+						final float octSize = octave.octaveSize;
+						final List<Keypoint> keypoints = new ArrayList<Keypoint>();
+						for (int j = start; j < stop; j += 3) {
+							props.x = points[j];
+							props.y = points[j + 1];
+							props.scale = points[j + 2];
+
+							for (final OrientedFeatureVector fv : extractor.extractFeature(props)) {
+								keypoints.add(new Keypoint(octSize * props.x, octSize * props.y, fv.orientation,
+										octSize * props.scale, fv.values));
+							}
+						}
+
+						return keypoints;
+					}
+				}));
+			}
+		}
+
+		final List<Keypoint> keypoints = new ArrayList<Keypoint>();
+		for (final FutureTask<List<Keypoint>> task : descriptorTasks)
+			keypoints.addAll(await(task));
+
+		return keypoints;
+	}
+
+	private <T> FutureTask<T> submit(Callable<T> callable) {
+		final FutureTask<T> task = new FutureTask<T>(callable);
+		pool.execute(task);
+		return task;
+	}
+
+	/**
+	 * Get the result of a task, running it on the calling thread if it has
+	 * not been started by the pool.
+	 */
+	private static <T> T await(FutureTask<T> task) {
+		task.run();
+
+		try {
+			return task.get();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (final ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			if (e.getCause() instanceof Error)
+				throw (Error) e.getCause();
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
 	/**
 	 * @return the current options used by the engine
 	 */
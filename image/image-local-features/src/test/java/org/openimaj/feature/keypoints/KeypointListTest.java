@@ -36,7 +36,9 @@ import static org.junit.Assert.assertTrue;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 
 import org.junit.Before;
@@ -46,6 +48,7 @@ import org.junit.rules.TemporaryFolder;
 import org.openimaj.feature.local.list.FileLocalFeatureList;
 import org.openimaj.feature.local.list.LocalFeatureList;
 import org.openimaj.feature.local.list.MemoryLocalFeatureList;
+import org.openimaj.feature.local.list.MemoryMappedLocalFeatureList;
 import org.openimaj.feature.local.list.StreamLocalFeatureList;
 import org.openimaj.image.FImage;
 import org.openimaj.image.ImageUtilities;
@@ -238,6 +241,50 @@ public class KeypointListTest {
 		ascii.delete();
 	}
 
+	/**
+	 * Test that a memory mapped list gives the same keypoints as the original
+	 * list through all of its accessors
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void memoryMappedTest() throws IOException {
+		final File binary = folder.newFile("kpt-memoryMappedTest.bin");
+		IOUtils.writeBinary(binary, keys);
+
+		final MemoryMappedLocalFeatureList<Keypoint> mkl = MemoryMappedLocalFeatureList.read(binary, Keypoint.class);
+
+		assertEquals(keys.size(), mkl.size());
+		assertEquals(keys.vecLength(), mkl.vecLength());
+		assertEquals(keys, mkl);
+
+		final Iterator<Keypoint> iter = mkl.flyweightIterator();
+		final byte[] block = mkl.getFeatureBlock();
+		final int flen = mkl.featureLength();
+		for (int i = 0; i < keys.size(); i++) {
+			final Keypoint k = keys.get(i);
+			assertEquals(k, iter.next());
+
+			assertTrue(Arrays.equals(k.ivec, Arrays.copyOfRange(block, i * flen, (i + 1) * flen)));
+
+			final ByteBuffer loc = mkl.getLocationBuffer(i);
+			assertEquals(k.x, loc.getFloat(), 0);
+			assertEquals(k.y, loc.getFloat(), 0);
+			assertEquals(k.scale, loc.getFloat(), 0);
+			assertEquals(k.ori, loc.getFloat(), 0);
+
+			final byte[] vec = new byte[flen];
+			mkl.getFeatureBuffer(i).get(vec);
+			assertTrue(Arrays.equals(k.ivec, vec));
+		}
+
+		assertEquals(keys.subList(2, 4), mkl.subList(2, 4));
+		assertEquals(keys.subList(3, 4), mkl.subList(2, 4).subList(1, 2));
+		assertEquals(3, mkl.randomSubList(3).size());
+
+		binary.delete();
+	}
+
 	/**
 	 * Allow the streaming of keypoints from a file
 	 * 
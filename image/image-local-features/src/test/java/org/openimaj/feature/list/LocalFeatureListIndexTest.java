@@ -33,12 +33,16 @@ import static org.junit.Assert.*;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.util.Map.Entry;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.openimaj.feature.local.list.LocalFeatureList;
 import org.openimaj.feature.local.list.LocalFeatureListIndex;
+import org.openimaj.feature.local.list.MemoryMappedLocalFeatureList;
 import org.openimaj.image.ImageUtilities;
 import org.openimaj.image.feature.local.engine.DoGSIFTEngine;
 import org.openimaj.image.feature.local.keypoints.Keypoint;
@@ -54,6 +58,12 @@ import org.openimaj.io.wrappers.ReadWriteableString;
  *
  */
 public class LocalFeatureListIndexTest {
+	/**
+	 * Temp folder
+	 */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
 	/**
 	 * Make sure a LocalFeatureList can be written and read
 	 * @throws IOException
@@ -116,4 +126,34 @@ public class LocalFeatureListIndexTest {
 		}
 		
 	}
+
+	/**
+	 * Test that a memory mapped index contains the same features as the
+	 * original
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testMemoryMapped() throws IOException {
+		DoGSIFTEngine engine = new DoGSIFTEngine();
+
+		LocalFeatureList<Keypoint> keys1 = engine.findFeatures(ImageUtilities.readF(LocalFeatureListIndexTest.class.getResourceAsStream("/org/openimaj/image/data/cat.jpg")));
+		LocalFeatureList<Keypoint> keys2 = engine.findFeatures(ImageUtilities.readF(LocalFeatureListIndexTest.class.getResourceAsStream("/org/openimaj/image/data/sinaface.jpg")));
+
+		LocalFeatureListIndex<ReadWriteableString, Keypoint> index = new LocalFeatureListIndex<ReadWriteableString, Keypoint>();
+		index.put(new ReadWriteableString("cat"), keys1);
+		index.put(new ReadWriteableString("sina"), keys2);
+
+		File file = folder.newFile("index.bin");
+		IOUtils.writeBinary(file, index);
+
+		LocalFeatureListIndex<ReadWriteableString, Keypoint> index2 = LocalFeatureListIndex.readMapped(file);
+
+		assertEquals(index.size(), index2.size());
+		for (Entry<ReadWriteableString, LocalFeatureList<Keypoint>> e : index.entrySet()) {
+			LocalFeatureList<Keypoint> mapped = index2.get(e.getKey());
+			assertTrue(mapped instanceof MemoryMappedLocalFeatureList);
+			assertEquals(e.getValue(), mapped);
+		}
+	}
 }
@@ -34,6 +34,7 @@ import org.openimaj.image.processor.SinglebandImageProcessor;
 
 /**
  * Image processor for FImage capable of performing convolutions with Gaussians.
+ * Large images are processed in parallel using {@link FTiledConvolveSeparable}.
  * 
  * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
  */
@@ -126,7 +127,11 @@ public class FGaussianConvolve implements SinglebandImageProcessor<Float, FImage
 	 */
 	@Override
 	public void processImage(FImage image) {
-		FImageConvolveSeparable.convolveHorizontal(image, kernel);
-		FImageConvolveSeparable.convolveVertical(image, kernel);
+		if (image.width * image.height >= FTiledConvolveSeparable.PARALLEL_THRESHOLD) {
+			FTiledConvolveSeparable.convolve(image, kernel, kernel);
+		} else {
+			FImageConvolveSeparable.convolveHorizontal(image, kernel);
+			FImageConvolveSeparable.convolveVertical(image, kernel);
+		}
 	}
 }
@@ -34,7 +34,8 @@ import org.openimaj.image.processor.SinglebandImageProcessor;
 
 /**
  * Image processor for separable convolution of an FImage. Capable of doing
- * convolution in either the vertical, horizontal or both directions.
+ * convolution in either the vertical, horizontal or both directions. Large
+ * images are processed in parallel using {@link FTiledConvolveSeparable}.
  * 
  * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
  */
@@ -75,6 +76,11 @@ public class FImageConvolveSeparable implements SinglebandImageProcessor<Float,
 	 */
 	@Override
 	public void processImage(FImage image) {
+		if (image.width * image.height >= FTiledConvolveSeparable.PARALLEL_THRESHOLD) {
+			FTiledConvolveSeparable.convolve(image, hkernel, vkernel);
+			return;
+		}
+
 		if (hkernel != null)
 			convolveHorizontal(image, hkernel);
 		if (vkernel != null)
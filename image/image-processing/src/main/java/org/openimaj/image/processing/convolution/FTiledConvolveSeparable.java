@@ -0,0 +1,337 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.image.processing.convolution;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openimaj.image.FImage;
+import org.openimaj.image.processor.SinglebandImageProcessor;
+import org.openimaj.util.parallel.GlobalExecutorPool;
+
+/**
+ * Tiled, multi-threaded separable convolution of an {@link FImage}. The
+ * results are identical to those of {@link FImageConvolveSeparable}: edge
+ * effects are handled by duplicating the edge pixels and the products are
+ * summed in the same order.
+ * <p>
+ * The horizontal pass splits the image into bands of rows. The vertical pass
+ * splits the image into strips of {@link #TILE_WIDTH} columns; each strip is
+ * copied into a contiguous buffer so that the filter runs along rows of
+ * memory rather than down columns of the pixel array. The bands and strips
+ * are shared between the threads of a pool and the calling thread, and each
+ * thread reuses its own scratch buffer between calls.
+ * <p>
+ * The calling thread always takes part in the work and never waits for a
+ * task that has not started, so it is safe to use this class from within
+ * tasks running on the same pool.
+ * 
+ * @author agent
+ */
+public class FTiledConvolveSeparable implements SinglebandImageProcessor<Float, FImage> {
+	/**
+	 * The minimum number of pixels an image must have before
+	 * {@link FGaussianConvolve} and {@link FImageConvolveSeparable} switch to
+	 * the tiled implementation.
+	 */
+	public static final int PARALLEL_THRESHOLD = 512 * 512;
+
+	/**
+	 * The number of columns in each strip of the vertical pass
+	 */
+	public static final int TILE_WIDTH = 64;
+
+	private static final ThreadLocal<float[]> scratch = new ThreadLocal<float[]>();
+
+	private float[] hkernel;
+	private float[] vkernel;
+	private ThreadPoolExecutor pool;
+
+	/**
+	 * Specify the horizontal kernel and vertical kernel separately. The
+	 * {@link GlobalExecutorPool} is used for processing.
+	 * 
+	 * @param hkernel
+	 *            horizontal kernel (can be null)
+	 * @param vkernel
+	 *            vertical kernel (can be null)
+	 */
+	public FTiledConvolveSeparable(float[] hkernel, float[] vkernel) {
+		this(hkernel, vkernel, GlobalExecutorPool.getPool());
+	}
+
+	/**
+	 * Specify a single kernel to be used as the horizontal and vertical. The
+	 * {@link GlobalExecutorPool} is used for processing.
+	 * 
+	 * @param kernel
+	 *            both kernels
+	 */
+	public FTiledConvolveSeparable(float[] kernel) {
+		this(kernel, kernel);
+	}
+
+	/**
+	 * Specify the horizontal kernel and vertical kernel separately and the
+	 * pool to process with.
+	 * 
+	 * @param hkernel
+	 *            horizontal kernel (can be null)
+	 * @param vkernel
+	 *            vertical kernel (can be null)
+	 * @param pool
+	 *            the thread pool; if null the work is done by the calling
+	 *            thread
+	 */
+	public FTiledConvolveSeparable(float[] hkernel, float[] vkernel, ThreadPoolExecutor pool) {
+		this.hkernel = hkernel;
+		this.vkernel = vkernel;
+		this.pool = pool;
+	}
+
+	@Override
+	public void processImage(FImage image) {
+		convolve(image, hkernel, vkernel, pool);
+	}
+
+	/**
+	 * Convolve the image in place with the given horizontal and vertical
+	 * kernels using the {@link GlobalExecutorPool}.
+	 * 
+	 * @param image
+	 *            the image
+	 * @param hkernel
+	 *            horizontal kernel (can be null)
+	 * @param vkernel
+	 *            vertical kernel (can be null)
+	 */
+	public static void convolve(FImage image, float[] hkernel, float[] vkernel) {
+		convolve(image, hkernel, vkernel, GlobalExecutorPool.getPool());
+	}
+
+	/**
+	 * Convolve the image in place with the given horizontal and vertical
+	 * kernels.
+	 * 
+	 * @param image
+	 *            the image
+	 * @param hkernel
+	 *            horizontal kernel (can be null)
+	 * @param vkernel
+	 *            vertical kernel (can be null)
+	 * @param pool
+	 *            the thread pool; if null the work is done by the calling
+	 *            thread
+	 */
+	public static void convolve(FImage image, float[] hkernel, float[] vkernel, ThreadPoolExecutor pool) {
+		if (hkernel != null)
+			convolveHorizontal(image, hkernel, pool);
+		if (vkernel != null)
+			convolveVertical(image, vkernel, pool);
+	}
+
+	/**
+	 * Convolve the image in the horizontal direction with the kernel. Edge
+	 * effects are handled by duplicating the edge pixels.
+	 * 
+	 * @param image
+	 *            the image to convolve.
+	 * @param kernel
+	 *            the convolution kernel.
+	 * @param pool
+	 *            the thread pool; if null the work is done by the calling
+	 *            thread
+	 */
+	public static void convolveHorizontal(final FImage image, final float[] kernel, ThreadPoolExecutor pool) {
+		final int nthreads = pool == null ? 1 : pool.getMaximumPoolSize();
+		final int bandHeight = Math.max(1, (image.height + 4 * nthreads - 1) / (4 * nthreads));
+		final int nbands = (image.height + bandHeight - 1) / bandHeight;
+
+		run(nbands, pool, new TileOperation() {
+			@Override
+			public void perform(int band) {
+				final int r0 = band * bandHeight;
+				convolveRows(image, kernel, r0, Math.min(r0 + bandHeight, image.height));
+			}
+		});
+	}
+
+	/**
+	 * Convolve the image in the vertical direction with the kernel. Edge
+	 * effects are handled by duplicating the edge pixels.
+	 * 
+	 * @param image
+	 *            the image to convolve.
+	 * @param kernel
+	 *            the convolution kernel.
+	 * @param pool
+	 *            the thread pool; if null the work is done by the calling
+	 *            thread
+	 */
+	public static void convolveVertical(final FImage image, final float[] kernel, ThreadPoolExecutor pool) {
+		final int nstrips = (image.width + TILE_WIDTH - 1) / TILE_WIDTH;
+
+		run(nstrips, pool, new TileOperation() {
+			@Override
+			public void perform(int strip) {
+				final int c0 = strip * TILE_WIDTH;
+				convolveColumns(image, kernel, c0, Math.min(c0 + TILE_WIDTH, image.width));
+			}
+		});
+	}
+
+	private static void convolveRows(FImage image, float[] kernel, int r0, int r1) {
+		final int width = image.width;
+		final int klen = kernel.length;
+		final int halfsize = klen / 2;
+		final float[] buffer = getScratch(width + klen);
+
+		for (int r = r0; r < r1; r++) {
+			final float[] row = image.pixels[r];
+
+			for (int i = 0; i < halfsize; i++)
+				buffer[i] = row[0];
+			System.arraycopy(row, 0, buffer, halfsize, width);
+			for (int i = 0; i < halfsize; i++)
+				buffer[halfsize + width + i] = row[width - 1];
+
+			for (int i = 0; i < width; i++) {
+				float sum = 0.0f;
+
+				for (int j = 0, jj = klen - 1; j < klen; j++, jj--)
+					sum += buffer[i + j] * kernel[jj];
+
+				row[i] = sum;
+			}
+		}
+	}
+
+	private static void convolveColumns(FImage image, float[] kernel, int c0, int c1) {
+		final int height = image.height;
+		final int tw = c1 - c0;
+		final int klen = kernel.length;
+		final int halfsize = klen / 2;
+		final float[] strip = getScratch((height + 1) * tw);
+		final int acc = height * tw;
+
+		for (int r = 0; r < height; r++)
+			System.arraycopy(image.pixels[r], c0, strip, r * tw, tw);
+
+		for (int r = 0; r < height; r++) {
+			for (int c = 0; c < tw; c++)
+				strip[acc + c] = 0.0f;
+
+			for (int j = 0, jj = klen - 1; j < klen; j++, jj--) {
+				int sr = r + j - halfsize;
+				if (sr < 0)
+					sr = 0;
+				else if (sr >= height)
+					sr = height - 1;
+
+				final int off = sr * tw;
+				final float k = kernel[jj];
+				for (int c = 0; c < tw; c++)
+					strip[acc + c] += strip[off + c] * k;
+			}
+
+			System.arraycopy(strip, acc, image.pixels[r], c0, tw);
+		}
+	}
+
+	private static float[] getScratch(int size) {
+		float[] buffer = scratch.get();
+
+		if (buffer == null || buffer.length < size) {
+			buffer = new float[size];
+			scratch.set(buffer);
+		}
+
+		return buffer;
+	}
+
+	private interface TileOperation {
+		void perform(int tile);
+	}
+
+	/**
+	 * Perform the operation on each tile. Helper tasks are submitted to the
+	 * pool, and tiles are claimed by whichever thread gets to them first,
+	 * including the calling thread.
+	 */
+	private static void run(final int ntiles, ThreadPoolExecutor pool, final TileOperation op) {
+		final int nhelpers = pool == null ? 0 : Math.min(pool.getMaximumPoolSize(), ntiles) - 1;
+
+		if (nhelpers <= 0) {
+			for (int i = 0; i < ntiles; i++)
+				op.perform(i);
+			return;
+		}
+
+		final AtomicInteger next = new AtomicInteger();
+		final CountDownLatch done = new CountDownLatch(ntiles);
+		final Throwable[] exception = new Throwable[1];
+
+		final Runnable worker = new Runnable() {
+			@Override
+			public void run() {
+				int tile;
+				while ((tile = next.getAndIncrement()) < ntiles) {
+					try {
+						op.perform(tile);
+					} catch (final Throwable t) {
+						exception[0] = t;
+					} finally {
+						done.countDown();
+					}
+				}
+			}
+		};
+
+		for (int i = 0; i < nhelpers; i++)
+			pool.execute(worker);
+
+		worker.run();
+
+		try {
+			done.await();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+
+		if (exception[0] instanceof Error)
+			throw (Error) exception[0];
+		if (exception[0] instanceof RuntimeException)
+			throw (RuntimeException) exception[0];
+		if (exception[0] != null)
+			throw new RuntimeException(exception[0]);
+	}
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.image.processing.convolution;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.junit.Test;
+import org.openimaj.image.FImage;
+import org.openimaj.util.parallel.GlobalExecutorPool.DaemonThreadFactory;
+
+/**
+ * Test {@link FTiledConvolveSeparable}.
+ * 
+ * @author agent
+ */
+public class FTiledConvolveSeparableTest {
+	/**
+	 * Test that the tiled implementation gives exactly the same result as
+	 * {@link FImageConvolveSeparable} for a variety of image and kernel sizes.
+	 */
+	@Test
+	public void testConsistency() {
+		final ThreadPoolExecutor pool = (ThreadPoolExecutor) Executors.newFixedThreadPool(3, new DaemonThreadFactory());
+		final Random rng = new Random(1);
+		final int[][] sizes = { { 1, 1 }, { 5, 3 }, { 64, 1 }, { 130, 97 }, { 300, 200 } };
+		final float[][] kernels = { { 1 }, { 0.5f, 0.5f }, { 1, 2, 1 }, FGaussianConvolve.makeKernel(2f),
+				FGaussianConvolve.makeKernel(10f) };
+
+		try {
+			for (final int[] size : sizes) {
+				final FImage image = new FImage(size[0], size[1]);
+				for (int y = 0; y < image.height; y++)
+					for (int x = 0; x < image.width; x++)
+						image.pixels[y][x] = rng.nextFloat();
+
+				for (final float[] kernel : kernels) {
+					final FImage expected = image.clone();
+					FImageConvolveSeparable.convolveHorizontal(expected, kernel);
+					FImageConvolveSeparable.convolveVertical(expected, kernel);
+
+					final FImage actual = image.clone();
+					FTiledConvolveSeparable.convolve(actual, kernel, kernel, pool);
+
+					final FImage sequential = image.clone();
+					FTiledConvolveSeparable.convolve(sequential, kernel, kernel, null);
+
+					for (int y = 0; y < image.height; y++) {
+						assertArrayEquals(expected.pixels[y], actual.pixels[y], 0f);
+						assertArrayEquals(expected.pixels[y], sequential.pixels[y], 0f);
+					}
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+}
@@ -46,6 +46,41 @@ import org.openimaj.util.parallel.GlobalExecutorPool;
  *            The type of data
  */
 public class KMeansConfiguration<NN extends NearestNeighbours<DATA, ?, ?>, DATA> implements Cloneable {
+	/**
+	 * The different modes of operation of the K-Means algorithm.
+	 * 
+	 * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+	 */
+	public static enum Mode {
+		/**
+		 * Standard batch (Lloyd's) K-Means. Every sample is assigned to its
+		 * nearest centroid using the configured {@link NearestNeighbours} on
+		 * every iteration.
+		 */
+		STANDARD,
+		/**
+		 * Mini-batch K-Means. Each iteration draws a random sample of
+		 * {@link KMeansConfiguration#getMiniBatchSize()} rows from the data
+		 * and moves the centroids towards their assigned samples using a
+		 * per-centroid learning rate. Each iteration only touches a small
+		 * subset of the data, so the number of iterations will typically need
+		 * to be much larger than for {@link #STANDARD}.
+		 */
+		MINI_BATCH,
+		/**
+		 * Exact Euclidean K-Means accelerated using the triangle inequality.
+		 * Each sample maintains an upper bound on the distance to its
+		 * assigned centroid and a lower bound on the distance to the second
+		 * closest centroid; the full search is only performed when the
+		 * bounds cannot rule out a change of assignment. The results are the
+		 * same as {@link #STANDARD} with exact Euclidean nearest-neighbours
+		 * (up to the breaking of ties), but the configured
+		 * {@link NearestNeighbours} factory is not used during iteration. The bounds require O(N)
+		 * additional memory, where N is the number of samples.
+		 */
+		HAMERLY
+	}
+
 	/**
 	 * The default number of samples per parallel assignment instance.
 	 */
@@ -56,6 +91,12 @@ public class KMeansConfiguration<NN extends NearestNeighbours<DATA, ?, ?>, DATA>
 	 */
 	public static final int DEFAULT_NUMBER_ITERATIONS = 30;
 
+	/**
+	 * The default number of samples drawn per iteration in
+	 * {@link Mode#MINI_BATCH} mode.
+	 */
+	public static final int DEFAULT_MINI_BATCH_SIZE = 10000;
+
 	/**
 	 * The number of clusters
 	 */
@@ -82,6 +123,16 @@ public class KMeansConfiguration<NN extends NearestNeighbours<DATA, ?, ?>, DATA>
 	 */
 	protected ExecutorService threadpool;
 
+	/**
+	 * The mode of operation
+	 */
+	protected Mode mode = Mode.STANDARD;
+
+	/**
+	 * The number of samples per iteration in {@link Mode#MINI_BATCH} mode
+	 */
+	protected int miniBatchSize = DEFAULT_MINI_BATCH_SIZE;
+
 	/**
 	 * Create configuration for data that will create <code>K</code> clusters.
 	 * The algorithm will run for a maximum of
@@ -308,4 +359,44 @@ public class KMeansConfiguration<NN extends NearestNeighbours<DATA, ?, ?>, DATA>
 	public void setNearestNeighbourFactory(NearestNeighboursFactory<? extends NN, DATA> factory) {
 		this.factory = factory;
 	}
+
+	/**
+	 * Get the mode of operation of the K-Means algorithm.
+	 * 
+	 * @return the mode
+	 */
+	public Mode getMode() {
+		return mode;
+	}
+
+	/**
+	 * Set the mode of operation of the K-Means algorithm.
+	 * 
+	 * @param mode
+	 *            the mode to set
+	 */
+	public void setMode(Mode mode) {
+		this.mode = mode;
+	}
+
+	/**
+	 * Get the number of samples drawn per iteration when operating in
+	 * {@link Mode#MINI_BATCH} mode.
+	 * 
+	 * @return the mini-batch size
+	 */
+	public int getMiniBatchSize() {
+		return miniBatchSize;
+	}
+
+	/**
+	 * Set the number of samples drawn per iteration when operating in
+	 * {@link Mode#MINI_BATCH} mode.
+	 * 
+	 * @param miniBatchSize
+	 *            the mini-batch size
+	 */
+	public void setMiniBatchSize(int miniBatchSize) {
+		this.miniBatchSize = miniBatchSize;
+	}
 }
@@ -30,6 +30,8 @@
 package org.openimaj.ml.annotation.linear;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -46,6 +48,10 @@ import org.openimaj.ml.annotation.BatchAnnotator;
 import org.openimaj.ml.annotation.ScoredAnnotation;
 import org.openimaj.ml.annotation.utils.AnnotatedListHelper;
 import org.openimaj.ml.annotation.utils.LiblinearHelper;
+import org.openimaj.ml.annotation.utils.SparseFeatureMatrix;
+import org.openimaj.util.function.Operation;
+import org.openimaj.util.parallel.Parallel;
+import org.openimaj.util.parallel.Parallel.IntRange;
 
 import de.bwaldvogel.liblinear.DenseLinear;
 import de.bwaldvogel.liblinear.DenseProblem;
@@ -62,6 +68,15 @@ import de.bwaldvogel.liblinear.SolverType;
  * features. Two modes of operation are available depending on whether the
  * problem is multiclass or multilabel. Binary classification can be achieved
  * with either mode, although multiclass mode is more efficient in this case.
+ * <p>
+ * As well as annotating objects one at a time, batches of objects (or of
+ * pre-extracted features packed into a {@link SparseFeatureMatrix}) can be
+ * annotated with {@link #annotate(List, int)} and
+ * {@link #annotate(SparseFeatureMatrix, int)}. Batch annotation multiplies the
+ * features by a dense matrix of the weights of all the trained classifiers
+ * across all available cores, which is much faster than annotating objects
+ * individually when there are many objects or (in multilabel mode) many
+ * classes.
  *
  * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
  *
@@ -111,12 +126,88 @@ public class LiblinearAnnotator<OBJECT, ANNOTATION>
 		MULTILABEL;
 	}
 
+	/**
+	 * The weights of a set of linear classifiers stored feature-major (i.e.
+	 * with the weights of all the classifiers for each feature together, as
+	 * Liblinear does for multiclass models).
+	 */
+	static class WeightMatrix {
+		final double[] weights;
+		final int numFeatures;
+		final int numOutputs;
+		final boolean hasBias;
+
+		WeightMatrix(double[] weights, int numFeatures, int numOutputs, boolean hasBias) {
+			this.weights = weights;
+			this.numFeatures = numFeatures;
+			this.numOutputs = numOutputs;
+			this.hasBias = hasBias;
+		}
+
+		/**
+		 * Compute the decision values of all the classifiers for a row of the
+		 * given matrix in the same way as Liblinear's predictValues.
+		 */
+		void decisionValues(SparseFeatureMatrix features, int row, double bias, double[] dec) {
+			Arrays.fill(dec, 0, numOutputs, 0);
+
+			for (int p = features.rowPointers[row]; p < features.rowPointers[row + 1]; p++) {
+				final int col = features.columns[p];
+
+				if (col < numFeatures) {
+					final double value = features.values[p];
+					final int base = col * numOutputs;
+
+					for (int i = 0; i < numOutputs; i++)
+						dec[i] += weights[base + i] * value;
+				}
+			}
+
+			if (bias > 0 && hasBias) {
+				final int base = numFeatures * numOutputs;
+
+				for (int i = 0; i < numOutputs; i++)
+					dec[i] += weights[base + i] * bias;
+			}
+		}
+	}
+
+	/**
+	 * Reusable buffer for selecting the k highest scoring annotations.
+	 * Ties are broken in favour of the annotation offered first.
+	 */
+	static class TopAnnotations {
+		final int[] indices;
+		final double[] scores;
+		int size;
+
+		TopAnnotations(int k) {
+			indices = new int[k];
+			scores = new double[k];
+		}
+
+		void offer(int index, double score) {
+			if (size == indices.length && score <= scores[size - 1])
+				return;
+
+			int i = size < indices.length ? size++ : size - 1;
+			while (i > 0 && scores[i - 1] < score) {
+				indices[i] = indices[i - 1];
+				scores[i] = scores[i - 1];
+				i--;
+			}
+			indices[i] = index;
+			scores[i] = score;
+		}
+	}
+
 	static abstract class InternalModel<OBJECT, ANNOTATION> {
 		ArrayList<ANNOTATION> annotationsList;
 		FeatureExtractor<? extends FeatureVector, OBJECT> extractor;
 		boolean dense;
 		double bias = -1;
 		boolean estimateProbabilities = true;
+		WeightMatrix weightMatrix;
 
 		public abstract void train(List<? extends Annotated<OBJECT, ANNOTATION>> data);
 
@@ -124,6 +215,75 @@ public class LiblinearAnnotator<OBJECT, ANNOTATION>
 
 		public abstract List<ScoredAnnotation<ANNOTATION>> annotate(OBJECT object);
 
+		/**
+		 * Create the weight matrix of the trained classifiers.
+		 */
+		abstract WeightMatrix createWeightMatrix();
+
+		/**
+		 * Determine the annotations of a row given the decision values of all
+		 * the classifiers for it.
+		 *
+		 * @param dec
+		 *            the decision values
+		 * @param scratch
+		 *            an array with at least as many elements as there are
+		 *            annotations that can be used as working space
+		 * @param top
+		 *            the buffer to fill with the scored annotation indices
+		 */
+		abstract void selectAnnotations(double[] dec, double[] scratch, TopAnnotations top);
+
+		synchronized WeightMatrix getWeightMatrix() {
+			if (weightMatrix == null)
+				weightMatrix = createWeightMatrix();
+			return weightMatrix;
+		}
+
+		List<List<ScoredAnnotation<ANNOTATION>>> annotate(final SparseFeatureMatrix features, int k) {
+			final WeightMatrix wm = getWeightMatrix();
+			final int nAnnotations = annotationsList.size();
+			final int topK = k <= 0 || k > nAnnotations ? nAnnotations : k;
+
+			final List<List<ScoredAnnotation<ANNOTATION>>> results = new ArrayList<List<ScoredAnnotation<ANNOTATION>>>(
+					Collections.<List<ScoredAnnotation<ANNOTATION>>> nCopies(features.numRows(), null));
+
+			Parallel.forRange(0, features.numRows(), 1, new Operation<IntRange>() {
+				@Override
+				public void perform(IntRange range) {
+					final double[] dec = new double[wm.numOutputs];
+					final double[] scratch = new double[nAnnotations];
+					final TopAnnotations top = new TopAnnotations(topK);
+
+					for (int r = range.start; r < range.stop; r += range.incr) {
+						wm.decisionValues(features, r, bias, dec);
+
+						top.size = 0;
+						selectAnnotations(dec, scratch, top);
+
+						final List<ScoredAnnotation<ANNOTATION>> result = new ArrayList<ScoredAnnotation<ANNOTATION>>(
+								top.size);
+						for (int i = 0; i < top.size; i++)
+							result.add(new ScoredAnnotation<ANNOTATION>(annotationsList.get(top.indices[i]),
+									(float) top.scores[i]));
+
+						results.set(r, result);
+					}
+				}
+			});
+
+			return results;
+		}
+
+		static int labelIndex(Model model, double label) {
+			final int[] labels = model.getLabels();
+			for (int i = 0; i < labels.length; i++) {
+				if (labels[i] == label)
+					return i;
+			}
+			return -1;
+		}
+
 		Feature[] computeFeature(OBJECT object) {
 			final FeatureVector feature = extractor.extractFeature(object);
 
@@ -140,17 +300,29 @@ public class LiblinearAnnotator<OBJECT, ANNOTATION>
 			if (!estimateProbabilities)
 				return;
 
-			final int nr_class = prob_estimates.length;
-			int nr_w;
-			if (nr_class == 2)
-				nr_w = 1;
-			else
-				nr_w = nr_class;
+			toProbabilities(prob_estimates, prob_estimates.length);
+		}
+
+		/**
+		 * Convert the first nr_class decision values to probability estimates
+		 * in the same way as Liblinear's predictProbability.
+		 */
+		static void toProbabilities(double[] prob_estimates, int nr_class) {
+			toProbabilities(prob_estimates, nr_class, nr_class == 2);
+		}
+
+		/**
+		 * Convert the first nr_class decision values to probability estimates
+		 * in the same way as Liblinear's predictProbability. If the model is
+		 * binary, there is a single decision value for the first class.
+		 */
+		static void toProbabilities(double[] prob_estimates, int nr_class, boolean binary) {
+			final int nr_w = binary ? 1 : nr_class;
 
 			for (int i = 0; i < nr_w; i++)
 				prob_estimates[i] = 1 / (1 + Math.exp(-prob_estimates[i]));
 
-			if (nr_class == 2) // for binary classification
+			if (binary) // for binary classification
 				prob_estimates[1] = 1. - prob_estimates[0];
 			else {
 				double sum = 0;
@@ -176,6 +348,7 @@ public class LiblinearAnnotator<OBJECT, ANNOTATION>
 		@Override
 		public void train(GroupedDataset<ANNOTATION, ? extends ListDataset<OBJECT>, OBJECT> dataset) {
 			annotationsList = new ArrayList<ANNOTATION>(dataset.getGroups());
+			weightMatrix = null;
 
 			final int nItems = dataset.numInstances();
 			final int featureLength = extractor.extractFeature(dataset.getRandomInstance()).length();
@@ -224,6 +397,7 @@ public class LiblinearAnnotator<OBJECT, ANNOTATION>
 			final AnnotatedListHelper<OBJECT, ANNOTATION> helper = new AnnotatedListHelper<OBJECT, ANNOTATION>(data);
 			final Set<ANNOTATION> annotations = helper.getAnnotations();
 			annotationsList = new ArrayList<ANNOTATION>(annotations);
+			weightMatrix = null;
 
 			final int nItems = data.size();
 			final int featureLength = extractor.extractFeature(data.get(0).getObject()).length();
@@ -285,28 +459,36 @@ public class LiblinearAnnotator<OBJECT, ANNOTATION>
 
 				if (parameter.getSolverType().isLogisticRegressionSolver()) {
 					final double[] probs = new double[annotationsList.size()];
-					clz = DenseLinear.predictProbability(model, feature, probs) - 1;
-					prob = probs[(int) clz];
+					final double label = DenseLinear.predictProbability(model, feature, probs);
+					clz = label - 1;
+					prob = probs[labelIndex(model, label)];
 				} else {
 					// clz = DenseLinear.predict(model, feature) - 1;
 					final double[] prob_estimates = new double[annotationsList.size()];
-					clz = DenseLinear.predictValues(model, feature, prob_estimates) - 1;
-					computeProbabilities(prob_estimates);
-					prob = prob_estimates[(int) clz];
+					DenseLinear.predictValues(model, feature, prob_estimates);
+					final int predicted = predictedIndex(prob_estimates);
+					clz = model.getLabels()[predicted] - 1;
+					if (estimateProbabilities)
+						toProbabilities(prob_estimates, prob_estimates.length, isBinary());
+					prob = prob_estimates[predicted];
 				}
 			} else {
 				final Feature[] feature = computeFeature(object);
 
 				if (parameter.getSolverType().isLogisticRegressionSolver()) {
 					final double[] probs = new double[annotationsList.size()];
-					clz = Linear.predictProbability(model, feature, probs) - 1;
-					prob = probs[(int) clz];
+					final double label = Linear.predictProbability(model, feature, probs);
+					clz = label - 1;
+					prob = probs[labelIndex(model, label)];
 				} else {
 					// clz = Linear.predict(model, feature) - 1;
 					final double[] prob_estimates = new double[annotationsList.size()];
-					clz = Linear.predictValues(model, feature, prob_estimates) - 1;
-					computeProbabilities(prob_estimates);
-					prob = prob_estimates[(int) clz];
+					Linear.predictValues(model, feature, prob_estimates);
+					final int predicted = predictedIndex(prob_estimates);
+					clz = model.getLabels()[predicted] - 1;
+					if (estimateProbabilities)
+						toProbabilities(prob_estimates, prob_estimates.length, isBinary());
+					prob = prob_estimates[predicted];
 				}
 			}
 
@@ -314,6 +496,63 @@ public class LiblinearAnnotator<OBJECT, ANNOTATION>
 			result.add(new ScoredAnnotation<ANNOTATION>(annotationsList.get((int) clz), (float) prob));
 			return result;
 		}
+
+		@Override
+		WeightMatrix createWeightMatrix() {
+			final double[] w = model.getFeatureWeights();
+			final int n = model.getNrFeature() + (model.getBias() >= 0 ? 1 : 0);
+
+			return new WeightMatrix(w, model.getNrFeature(), w.length / n, model.getBias() >= 0);
+		}
+
+		/**
+		 * Test whether the model has a single weight vector. This is the case
+		 * for two classes, except with the Crammer and Singer solver which
+		 * always has one weight vector per class.
+		 */
+		private boolean isBinary() {
+			return model.getLabels().length == 2 && parameter.getSolverType() != SolverType.MCSVM_CS;
+		}
+
+		/**
+		 * Get the index (in the model's labels) of the predicted class given
+		 * the decision values. This is the sign of the decision value for a
+		 * binary model, and the largest decision value otherwise. (Liblinear's
+		 * predictValues also uses the sign for two-class Crammer and Singer
+		 * models, ignoring the second weight vector.)
+		 */
+		private int predictedIndex(double[] dec) {
+			if (isBinary())
+				return dec[0] > 0 ? 0 : 1;
+
+			int predicted = 0;
+			for (int i = 1; i < model.getLabels().length; i++) {
+				if (dec[i] > dec[predicted])
+					predicted = i;
+			}
+			return predicted;
+		}
+
+		@Override
+		void selectAnnotations(double[] dec, double[] scratch, TopAnnotations top) {
+			final int[] labels = model.getLabels();
+			final int nr_class = labels.length;
+			final int nr_w = Math.min(dec.length, nr_class);
+
+			final int predicted = predictedIndex(dec);
+
+			for (int i = 0; i < nr_class; i++)
+				scratch[i] = i < nr_w ? dec[i] : 0;
+
+			if (parameter.getSolverType().isLogisticRegressionSolver() || estimateProbabilities)
+				toProbabilities(scratch, nr_class, isBinary());
+
+			top.offer(labels[predicted] - 1, scratch[predicted]);
+			for (int i = 0; i < nr_class; i++) {
+				if (i != predicted)
+					top.offer(labels[i] - 1, scratch[i]);
+			}
+		}
 	}
 
 	/**
@@ -340,6 +579,7 @@ public class LiblinearAnnotator<OBJECT, ANNOTATION>
 			final AnnotatedListHelper<OBJECT, ANNOTATION> helper = new AnnotatedListHelper<OBJECT, ANNOTATION>(data);
 			final Set<ANNOTATION> annotations = helper.getAnnotations();
 			annotationsList = new ArrayList<ANNOTATION>(annotations);
+			weightMatrix = null;
 
 			final int featureLength = extractor.extractFeature(data.get(0).getObject()).length();
 
@@ -405,12 +645,12 @@ public class LiblinearAnnotator<OBJECT, ANNOTATION>
 					if (parameter.getSolverType().isLogisticRegressionSolver()) {
 						final double[] probs = new double[annotationsList.size()];
 						clz = DenseLinear.predictProbability(models[i], feature, probs);
-						prob = probs[(int) clz - 1];
+						prob = probs[labelIndex(models[i], clz)];
 					} else {
 						final double[] prob_estimates = new double[2];
 						clz = DenseLinear.predictValues(models[i], feature, prob_estimates);
 						computeProbabilities(prob_estimates);
-						prob = prob_estimates[(int) clz - 1];
+						prob = prob_estimates[labelIndex(models[i], clz)];
 					}
 
 					if (clz == POSTIVE_CLASS) {
@@ -426,12 +666,12 @@ public class LiblinearAnnotator<OBJECT, ANNOTATION>
 					if (parameter.getSolverType().isLogisticRegressionSolver()) {
 						final double[] probs = new double[annotationsList.size()];
 						clz = Linear.predictProbability(models[i], feature, probs);
-						prob = probs[(int) clz - 1];
+						prob = probs[labelIndex(models[i], clz)];
 					} else {
 						final double[] prob_estimates = new double[2];
 						clz = Linear.predictValues(models[i], feature, prob_estimates);
 						computeProbabilities(prob_estimates);
-						prob = prob_estimates[(int) clz - 1];
+						prob = prob_estimates[labelIndex(models[i], clz)];
 					}
 
 					if (clz == POSTIVE_CLASS) {
@@ -447,6 +687,50 @@ public class LiblinearAnnotator<OBJECT, ANNOTATION>
 		public void train(GroupedDataset<ANNOTATION, ? extends ListDataset<OBJECT>, OBJECT> dataset) {
 			train(AnnotatedObject.createList(dataset));
 		}
+
+		@Override
+		WeightMatrix createWeightMatrix() {
+			final int nModels = models.length;
+			final int nFeatures = models[0].getNrFeature();
+			final boolean hasBias = models[0].getBias() >= 0;
+			final int n = nFeatures + (hasBias ? 1 : 0);
+
+			// interleave the weights of the binary classifiers so that those
+			// for each feature are together
+			final double[] w = new double[n * nModels];
+			for (int i = 0; i < nModels; i++) {
+				final double[] mw = models[i].getFeatureWeights();
+
+				for (int j = 0; j < n; j++)
+					w[j * nModels + i] = mw[j];
+			}
+
+			return new WeightMatrix(w, nFeatures, nModels, hasBias);
+		}
+
+		@Override
+		void selectAnnotations(double[] dec, double[] scratch, TopAnnotations top) {
+			final boolean probabilities = parameter.getSolverType().isLogisticRegressionSolver()
+					|| estimateProbabilities;
+
+			for (int i = 0; i < models.length; i++) {
+				final int[] labels = models[i].getLabels();
+				final int labelIndex = dec[i] > 0 || labels.length == 1 ? 0 : 1;
+
+				if (labels[labelIndex] == POSTIVE_CLASS) {
+					// as computed by toProbabilities for a binary problem
+					final double prob;
+					if (probabilities) {
+						final double p = 1 / (1 + Math.exp(-dec[i]));
+						prob = labelIndex == 0 ? p : 1 - p;
+					} else {
+						prob = labelIndex == 0 ? dec[i] : 0;
+					}
+
+					top.offer(i, prob);
+				}
+			}
+		}
 	}
 
 	InternalModel<OBJECT, ANNOTATION> internal;
@@ -522,6 +806,51 @@ public class LiblinearAnnotator<OBJECT, ANNOTATION>
 		return internal.annotate(object);
 	}
 
+	/**
+	 * Annotate a batch of objects. The features of the objects are extracted
+	 * and packed into a {@link SparseFeatureMatrix} which is annotated with
+	 * {@link #annotate(SparseFeatureMatrix, int)}.
+	 *
+	 * @param objects
+	 *            the objects to annotate
+	 * @param k
+	 *            the maximum number of annotations to return for each object;
+	 *            if less than 1 all annotations are returned
+	 * @return the annotations of each object
+	 */
+	public List<List<ScoredAnnotation<ANNOTATION>>> annotate(List<? extends OBJECT> objects, int k) {
+		final List<FeatureVector> features = new ArrayList<FeatureVector>(objects.size());
+		for (final OBJECT object : objects)
+			features.add(internal.extractor.extractFeature(object));
+
+		return annotate(SparseFeatureMatrix.pack(features), k);
+	}
+
+	/**
+	 * Annotate a batch of pre-extracted features, one per row of the given
+	 * matrix. The decision values of all the classifiers are computed by
+	 * multiplying each row by a dense matrix of their weights, in parallel
+	 * across rows. The weight matrix is created on the first call after
+	 * training.
+	 * <p>
+	 * In multiclass mode the annotations of each row are ordered with the
+	 * predicted class (as returned by {@link #annotate(Object)}) first,
+	 * followed by the other classes in decreasing order of score. In
+	 * multilabel mode the annotations are those that
+	 * {@link #annotate(Object)} would return, in decreasing order of score.
+	 * The scores are the same as those computed by {@link #annotate(Object)}.
+	 *
+	 * @param features
+	 *            the features to annotate
+	 * @param k
+	 *            the maximum number of annotations to return for each row; if
+	 *            less than 1 all annotations are returned
+	 * @return the annotations of each row
+	 */
+	public List<List<ScoredAnnotation<ANNOTATION>>> annotate(SparseFeatureMatrix features, int k) {
+		return internal.annotate(features, k);
+	}
+
 	@Override
 	public void train(GroupedDataset<ANNOTATION, ? extends ListDataset<OBJECT>, OBJECT> dataset) {
 		internal.train(dataset);
@@ -0,0 +1,212 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.ml.annotation.utils;
+
+import java.util.List;
+
+import org.openimaj.feature.FeatureVector;
+import org.openimaj.feature.SparseByteFV;
+import org.openimaj.feature.SparseDoubleFV;
+import org.openimaj.feature.SparseFloatFV;
+import org.openimaj.feature.SparseIntFV;
+import org.openimaj.feature.SparseLongFV;
+import org.openimaj.feature.SparseShortFV;
+import org.openimaj.util.array.SparseByteArray;
+import org.openimaj.util.array.SparseDoubleArray;
+import org.openimaj.util.array.SparseFloatArray;
+import org.openimaj.util.array.SparseIntArray;
+import org.openimaj.util.array.SparseLongArray;
+import org.openimaj.util.array.SparseShortArray;
+
+/**
+ * A set of feature vectors packed into a matrix in compressed sparse row (CSR)
+ * form; the non-zero elements of row <code>r</code> have their column indices
+ * and values stored in {@link #columns} and {@link #values} from position
+ * <code>rowPointers[r]</code> (inclusive) to <code>rowPointers[r+1]</code>
+ * (exclusive). Column indices are zero-based, and the elements of a row are in
+ * the order in which the feature vector provides them (which is not
+ * necessarily increasing column order).
+ * <p>
+ * Packing a feature vector does not allocate any objects per element, unlike
+ * conversion to an array of Liblinear features with
+ * {@link LiblinearHelper#convert(FeatureVector, double)}.
+ *
+ * @author agent
+ */
+public class SparseFeatureMatrix {
+	/**
+	 * The start of each row in {@link #columns} and {@link #values}; the
+	 * length is one greater than the number of rows.
+	 */
+	public final int[] rowPointers;
+
+	/**
+	 * The column index of each non-zero element
+	 */
+	public final int[] columns;
+
+	/**
+	 * The value of each non-zero element
+	 */
+	public final double[] values;
+
+	/**
+	 * The number of columns
+	 */
+	public final int numColumns;
+
+	/**
+	 * Construct with the given data.
+	 *
+	 * @param rowPointers
+	 *            the start of each row in the column and value arrays,
+	 *            followed by the number of non-zero elements
+	 * @param columns
+	 *            the column index of each non-zero element
+	 * @param values
+	 *            the value of each non-zero element
+	 * @param numColumns
+	 *            the number of columns
+	 */
+	public SparseFeatureMatrix(int[] rowPointers, int[] columns, double[] values, int numColumns) {
+		this.rowPointers = rowPointers;
+		this.columns = columns;
+		this.values = values;
+		this.numColumns = numColumns;
+	}
+
+	/**
+	 * Pack the given feature vectors into a matrix with one row per vector.
+	 * Sparse feature vectors are read directly from their sparse arrays; the
+	 * zero elements of other types of feature vector are skipped.
+	 *
+	 * @param features
+	 *            the feature vectors
+	 * @return the packed matrix
+	 */
+	public static SparseFeatureMatrix pack(List<? extends FeatureVector> features) {
+		final int[] rowPointers = new int[features.size() + 1];
+		int numColumns = 0;
+
+		for (int i = 0; i < features.size(); i++) {
+			final FeatureVector fv = features.get(i);
+			rowPointers[i + 1] = rowPointers[i] + countNonZero(fv);
+			numColumns = Math.max(numColumns, fv.length());
+		}
+
+		final int[] columns = new int[rowPointers[features.size()]];
+		final double[] values = new double[columns.length];
+
+		for (int i = 0; i < features.size(); i++)
+			fill(features.get(i), columns, values, rowPointers[i]);
+
+		return new SparseFeatureMatrix(rowPointers, columns, values, numColumns);
+	}
+
+	/**
+	 * @return the number of rows
+	 */
+	public int numRows() {
+		return rowPointers.length - 1;
+	}
+
+	/**
+	 * @return the number of non-zero elements
+	 */
+	public int numNonZero() {
+		return rowPointers[rowPointers.length - 1];
+	}
+
+	private static int countNonZero(FeatureVector feature) {
+		if (feature instanceof SparseDoubleFV)
+			return ((SparseDoubleFV) feature).values.used();
+		if (feature instanceof SparseFloatFV)
+			return ((SparseFloatFV) feature).values.used();
+		if (feature instanceof SparseByteFV)
+			return ((SparseByteFV) feature).values.used();
+		if (feature instanceof SparseShortFV)
+			return ((SparseShortFV) feature).values.used();
+		if (feature instanceof SparseIntFV)
+			return ((SparseIntFV) feature).values.used();
+		if (feature instanceof SparseLongFV)
+			return ((SparseLongFV) feature).values.used();
+
+		int count = 0;
+		for (int i = 0; i < feature.length(); i++) {
+			if (feature.getAsDouble(i) != 0)
+				count++;
+		}
+		return count;
+	}
+
+	private static void fill(FeatureVector feature, int[] columns, double[] values, int offset) {
+		int i = offset;
+
+		if (feature instanceof SparseDoubleFV) {
+			for (final SparseDoubleArray.Entry entry : ((SparseDoubleFV) feature).values.entries()) {
+				columns[i] = entry.index;
+				values[i++] = entry.value;
+			}
+		} else if (feature instanceof SparseFloatFV) {
+			for (final SparseFloatArray.Entry entry : ((SparseFloatFV) feature).values.entries()) {
+				columns[i] = entry.index;
+				values[i++] = entry.value;
+			}
+		} else if (feature instanceof SparseByteFV) {
+			for (final SparseByteArray.Entry entry : ((SparseByteFV) feature).values.entries()) {
+				columns[i] = entry.index;
+				values[i++] = entry.value;
+			}
+		} else if (feature instanceof SparseShortFV) {
+			for (final SparseShortArray.Entry entry : ((SparseShortFV) feature).values.entries()) {
+				columns[i] = entry.index;
+				values[i++] = entry.value;
+			}
+		} else if (feature instanceof SparseIntFV) {
+			for (final SparseIntArray.Entry entry : ((SparseIntFV) feature).values.entries()) {
+				columns[i] = entry.index;
+				values[i++] = entry.value;
+			}
+		} else if (feature instanceof SparseLongFV) {
+			for (final SparseLongArray.Entry entry : ((SparseLongFV) feature).values.entries()) {
+				columns[i] = entry.index;
+				values[i++] = entry.value;
+			}
+		} else {
+			for (int j = 0; j < feature.length(); j++) {
+				final double v = feature.getAsDouble(j);
+				if (v != 0) {
+					columns[i] = j;
+					values[i++] = v;
+				}
+			}
+		}
+	}
+}
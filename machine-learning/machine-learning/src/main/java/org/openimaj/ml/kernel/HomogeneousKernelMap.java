@@ -35,8 +35,9 @@ import org.openimaj.citation.annotation.References;
 import org.openimaj.feature.DoubleFV;
 import org.openimaj.feature.FeatureExtractor;
 import org.openimaj.feature.FeatureVector;
-import org.openimaj.math.util.MathUtils;
-import org.openimaj.math.util.MathUtils.ExponentAndMantissa;
+import org.openimaj.util.function.Operation;
+import org.openimaj.util.parallel.Parallel;
+import org.openimaj.util.parallel.Parallel.IntRange;
 
 /**
  * Implementation of the Homogeneous Kernel Map. The Homogeneous Kernel Map
@@ -48,6 +49,12 @@ import org.openimaj.math.util.MathUtils.ExponentAndMantissa;
  * This implementation is based directly on the VLFeat implementation written by
  * Andrea Verdaldi, although it has been refactored to better fit with Java
  * conventions.
+ * <p>
+ * As well as mapping individual values and feature vectors, whole matrices of
+ * features stored in flat row-major <code>double</code> or <code>float</code>
+ * arrays can be mapped into caller-provided buffers in parallel using the
+ * <code>evaluateRows</code> methods. Mapping into <code>float</code> buffers
+ * halves the memory required for the expanded features.
  * 
  * @see "http://www.vlfeat.org/api/homkermap.html"
  * @see "http://www.robots.ox.ac.uk/~vgg/software/homkermap/"
@@ -221,10 +228,19 @@ public class HomogeneousKernelMap {
 
 		@Override
 		public DoubleFV extractFeature(T object) {
-			return map.evaluate(inner.extractFeature(object).asDoubleFV());
+			final FeatureVector feature = inner.extractFeature(object);
+			final double[] values = feature instanceof DoubleFV ? ((DoubleFV) feature).values : feature
+					.asDoubleVector();
+
+			final DoubleFV out = new DoubleFV(values.length * map.getExpansionFactor());
+			map.evaluate(values, 0, values.length, out.values, 0);
+			return out;
 		}
 	}
 
+	private static final long MANTISSA_MASK = 0x000fffffffffffffL;
+	private static final long ONE_BITS = 0x3ff0000000000000L;
+
 	private KernelType kernelType;
 	private double period;
 	private double gamma;
@@ -425,39 +441,252 @@ public class HomogeneousKernelMap {
 	 *            the value to compute the kernel approximation for
 	 */
 	public void evaluate(double[] destination, int stride, int offset, double x) {
-		final ExponentAndMantissa em = MathUtils.frexp(x);
+		final int featureDimension = 2 * order + 1;
 
-		double mantissa = em.mantissa;
-		int exponent = em.exponent;
-		final double sign = (mantissa >= 0.0) ? +1.0 : -1.0;
-		mantissa *= 2 * sign;
-		exponent--;
+		// x = sign * mantissa * 2^exponent with mantissa in [1, 2), read
+		// directly from the IEEE representation; zeros, subnormals, infinities
+		// and NaNs all fall outside the range of the table
+		final long bits = Double.doubleToRawLongBits(x);
+		final int exponent = (int) ((bits >>> 52) & 0x7ff) - 1023;
 
-		if (mantissa == 0 || exponent <= minExponent || exponent >= maxExponent) {
-			for (int j = 0; j <= order; j++) {
+		if (exponent <= minExponent || exponent >= maxExponent) {
+			for (int j = 0; j < featureDimension; j++) {
 				destination[offset + j * stride] = 0.0;
 			}
 			return;
 		}
 
+		final double sign = bits < 0 ? -1.0 : 1.0;
+		final double t = (Double.longBitsToDouble((bits & MANTISSA_MASK) | ONE_BITS) - 1.0) * numSubdivisions;
+		final int sub = (int) t;
+		final double frac = t - sub;
+
+		final int v1offset = ((exponent - minExponent) * numSubdivisions + sub) * featureDimension;
+		final int v2offset = v1offset + featureDimension;
+
+		for (int j = 0; j < featureDimension; j++) {
+			final double f1 = table[v1offset + j];
+			final double f2 = table[v2offset + j];
+			destination[offset + j * stride] = sign * ((f2 - f1) * frac + f1);
+		}
+	}
+
+	/**
+	 * Evaluate the kernel for the given <code>x</code> value, writing the
+	 * output values into a float array at <code>offset + j*stride</code>
+	 * intervals where <code>j</code> is between 0 and
+	 * <code>2 * order + 1</code>.
+	 * 
+	 * @param destination
+	 *            the destination array
+	 * @param stride
+	 *            the stride
+	 * @param offset
+	 *            the offset
+	 * @param x
+	 *            the value to compute the kernel approximation for
+	 */
+	public void evaluate(float[] destination, int stride, int offset, double x) {
 		final int featureDimension = 2 * order + 1;
-		int v1offset = (exponent - minExponent) * numSubdivisions * featureDimension;
 
-		mantissa -= 1.0;
-		while (mantissa >= subdivision) {
-			mantissa -= subdivision;
-			v1offset += featureDimension;
+		final long bits = Double.doubleToRawLongBits(x);
+		final int exponent = (int) ((bits >>> 52) & 0x7ff) - 1023;
+
+		if (exponent <= minExponent || exponent >= maxExponent) {
+			for (int j = 0; j < featureDimension; j++) {
+				destination[offset + j * stride] = 0.0f;
+			}
+			return;
 		}
 
-		int v2offset = v1offset + featureDimension;
-		for (int j = 0; j < featureDimension; j++) {
-			final double f1 = table[v1offset++];
-			final double f2 = table[v2offset++];
+		final double sign = bits < 0 ? -1.0 : 1.0;
+		final double t = (Double.longBitsToDouble((bits & MANTISSA_MASK) | ONE_BITS) - 1.0) * numSubdivisions;
+		final int sub = (int) t;
+		final double frac = t - sub;
 
-			destination[offset + j * stride] = sign * ((f2 - f1) * (numSubdivisions * mantissa) + f1);
+		final int v1offset = ((exponent - minExponent) * numSubdivisions + sub) * featureDimension;
+		final int v2offset = v1offset + featureDimension;
+
+		for (int j = 0; j < featureDimension; j++) {
+			final double f1 = table[v1offset + j];
+			final double f2 = table[v2offset + j];
+			destination[offset + j * stride] = (float) (sign * ((f2 - f1) * frac + f1));
 		}
 	}
 
+	/**
+	 * Get the number of values produced by the map for each input value; this
+	 * is <code>2 * order + 1</code>.
+	 * 
+	 * @return the number of output values per input value
+	 */
+	public int getExpansionFactor() {
+		return 2 * order + 1;
+	}
+
+	/**
+	 * Map a sequence of values, writing the outputs for each value
+	 * consecutively (in the same layout as {@link #evaluate(DoubleFV)}) into
+	 * the destination starting at the given offset.
+	 * 
+	 * @param in
+	 *            the input values
+	 * @param inOffset
+	 *            the offset of the first input value
+	 * @param length
+	 *            the number of input values
+	 * @param out
+	 *            the destination array
+	 * @param outOffset
+	 *            the offset in the destination to start writing at
+	 */
+	public void evaluate(double[] in, int inOffset, int length, double[] out, int outOffset) {
+		final int step = 2 * order + 1;
+		for (int i = 0; i < length; i++)
+			evaluate(out, 1, outOffset + i * step, in[inOffset + i]);
+	}
+
+	/**
+	 * Map a sequence of values, writing the outputs for each value
+	 * consecutively (in the same layout as {@link #evaluate(DoubleFV)}) into
+	 * the float destination starting at the given offset.
+	 * 
+	 * @param in
+	 *            the input values
+	 * @param inOffset
+	 *            the offset of the first input value
+	 * @param length
+	 *            the number of input values
+	 * @param out
+	 *            the destination array
+	 * @param outOffset
+	 *            the offset in the destination to start writing at
+	 */
+	public void evaluate(double[] in, int inOffset, int length, float[] out, int outOffset) {
+		final int step = 2 * order + 1;
+		for (int i = 0; i < length; i++)
+			evaluate(out, 1, outOffset + i * step, in[inOffset + i]);
+	}
+
+	/**
+	 * Map a sequence of values, writing the outputs for each value
+	 * consecutively (in the same layout as {@link #evaluate(DoubleFV)}) into
+	 * the destination starting at the given offset.
+	 * 
+	 * @param in
+	 *            the input values
+	 * @param inOffset
+	 *            the offset of the first input value
+	 * @param length
+	 *            the number of input values
+	 * @param out
+	 *            the destination array
+	 * @param outOffset
+	 *            the offset in the destination to start writing at
+	 */
+	public void evaluate(float[] in, int inOffset, int length, float[] out, int outOffset) {
+		final int step = 2 * order + 1;
+		for (int i = 0; i < length; i++)
+			evaluate(out, 1, outOffset + i * step, in[inOffset + i]);
+	}
+
+	/**
+	 * Map a matrix of features stored in a flat row-major array into the
+	 * given flat row-major output array, which must have room for
+	 * <code>numRows * numColumns * (2 * order + 1)</code> values. Each row is
+	 * mapped as by {@link #evaluate(DoubleFV)}, and the rows are processed in
+	 * parallel.
+	 * 
+	 * @param in
+	 *            the input matrix
+	 * @param numRows
+	 *            the number of rows
+	 * @param numColumns
+	 *            the number of columns
+	 * @param out
+	 *            the output matrix
+	 */
+	public void evaluateRows(final double[] in, final int numRows, final int numColumns, final double[] out) {
+		checkBuffers(in.length, numRows, numColumns, out.length);
+
+		final int outColumns = numColumns * (2 * order + 1);
+		Parallel.forRange(0, numRows, 1, new Operation<IntRange>() {
+			@Override
+			public void perform(IntRange range) {
+				for (int r = range.start; r < range.stop; r += range.incr)
+					evaluate(in, r * numColumns, numColumns, out, r * outColumns);
+			}
+		});
+	}
+
+	/**
+	 * Map a matrix of features stored in a flat row-major array into the
+	 * given flat row-major float output array, which must have room for
+	 * <code>numRows * numColumns * (2 * order + 1)</code> values. Each row is
+	 * mapped as by {@link #evaluate(DoubleFV)}, and the rows are processed in
+	 * parallel.
+	 * 
+	 * @param in
+	 *            the input matrix
+	 * @param numRows
+	 *            the number of rows
+	 * @param numColumns
+	 *            the number of columns
+	 * @param out
+	 *            the output matrix
+	 */
+	public void evaluateRows(final double[] in, final int numRows, final int numColumns, final float[] out) {
+		checkBuffers(in.length, numRows, numColumns, out.length);
+
+		final int outColumns = numColumns * (2 * order + 1);
+		Parallel.forRange(0, numRows, 1, new Operation<IntRange>() {
+			@Override
+			public void perform(IntRange range) {
+				for (int r = range.start; r < range.stop; r += range.incr)
+					evaluate(in, r * numColumns, numColumns, out, r * outColumns);
+			}
+		});
+	}
+
+	/**
+	 * Map a matrix of features stored in a flat row-major float array into the
+	 * given flat row-major float output array, which must have room for
+	 * <code>numRows * numColumns * (2 * order + 1)</code> values. Each row is
+	 * mapped as by {@link #evaluate(DoubleFV)}, and the rows are processed in
+	 * parallel.
+	 * 
+	 * @param in
+	 *            the input matrix
+	 * @param numRows
+	 *            the number of rows
+	 * @param numColumns
+	 *            the number of columns
+	 * @param out
+	 *            the output matrix
+	 */
+	public void evaluateRows(final float[] in, final int numRows, final int numColumns, final float[] out) {
+		checkBuffers(in.length, numRows, numColumns, out.length);
+
+		final int outColumns = numColumns * (2 * order + 1);
+		Parallel.forRange(0, numRows, 1, new Operation<IntRange>() {
+			@Override
+			public void perform(IntRange range) {
+				for (int r = range.start; r < range.stop; r += range.incr)
+					evaluate(in, r * numColumns, numColumns, out, r * outColumns);
+			}
+		});
+	}
+
+	private void checkBuffers(int inLength, int numRows, int numColumns, int outLength) {
+		final long n = (long) numRows * numColumns;
+
+		if (n > inLength)
+			throw new IllegalArgumentException("Input array is too small for " + numRows + "x" + numColumns + " matrix");
+		if (n * (2 * order + 1) > outLength)
+			throw new IllegalArgumentException("Output array is too small for the mapped " + numRows + "x" + numColumns
+					+ " matrix");
+	}
+
 	/**
 	 * Compute the Homogeneous Kernel Map approximation of the given feature
 	 * vector
@@ -467,13 +696,8 @@ public class HomogeneousKernelMap {
 	 * @return the expanded feature vector
 	 */
 	public DoubleFV evaluate(DoubleFV in) {
-		final int step = (2 * order + 1);
-		final DoubleFV out = new DoubleFV(step * in.length());
-
-		for (int i = 0; i < in.length(); i++) {
-			evaluate(out.values, 1, i * step, in.values[i]);
-		}
-
+		final DoubleFV out = new DoubleFV((2 * order + 1) * in.length());
+		evaluate(in.values, 0, in.length(), out.values, 0);
 		return out;
 	}
 
@@ -0,0 +1,241 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.ml.annotation.linear;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+import org.openimaj.feature.IdentityFeatureExtractor;
+import org.openimaj.feature.SparseFloatFV;
+import org.openimaj.ml.annotation.AnnotatedObject;
+import org.openimaj.ml.annotation.ScoredAnnotation;
+import org.openimaj.ml.annotation.linear.LiblinearAnnotator.Mode;
+
+import de.bwaldvogel.liblinear.SolverType;
+
+/**
+ * Tests for {@link LiblinearAnnotator}
+ *
+ * @author agent
+ */
+public class LiblinearAnnotatorTest {
+	private static final int NDIMS = 50;
+	private static final int NCLASSES = 4;
+
+	private SparseFloatFV createFeature(Random rng, int clazz) {
+		final SparseFloatFV fv = new SparseFloatFV(NDIMS);
+		for (int i = 0; i < 8; i++)
+			fv.values.set(rng.nextInt(NDIMS), rng.nextFloat());
+		for (int i = 0; i < 3; i++)
+			fv.values.set(clazz * 10 + rng.nextInt(10), 1 + rng.nextFloat());
+		return fv;
+	}
+
+	private List<AnnotatedObject<SparseFloatFV, Integer>> createData(Random rng, int n, boolean multilabel) {
+		final List<AnnotatedObject<SparseFloatFV, Integer>> data = new ArrayList<AnnotatedObject<SparseFloatFV, Integer>>();
+		for (int i = 0; i < n; i++) {
+			final int clazz = rng.nextInt(NCLASSES);
+			final SparseFloatFV fv = createFeature(rng, clazz);
+			final Set<Integer> annotations = new HashSet<Integer>();
+			annotations.add(clazz);
+
+			if (multilabel && rng.nextBoolean()) {
+				final int other = (clazz + 1) % NCLASSES;
+				for (int j = 0; j < 3; j++)
+					fv.values.set(other * 10 + rng.nextInt(10), 1 + rng.nextFloat());
+				annotations.add(other);
+			}
+
+			data.add(new AnnotatedObject<SparseFloatFV, Integer>(fv, annotations));
+		}
+		return data;
+	}
+
+	private List<SparseFloatFV> createQueries(Random rng, int n) {
+		final List<SparseFloatFV> queries = new ArrayList<SparseFloatFV>();
+		for (int i = 0; i < n; i++)
+			queries.add(createFeature(rng, rng.nextInt(NCLASSES)));
+		return queries;
+	}
+
+	/**
+	 * Test that batch annotation in multiclass mode predicts the same class
+	 * with the same score as single annotation, and ranks the other classes by
+	 * score.
+	 */
+	@Test
+	public void testMulticlassBatch() {
+		checkMulticlassBatch(false);
+	}
+
+	/**
+	 * Test multiclass batch annotation against single annotation with dense
+	 * models.
+	 */
+	@Test
+	public void testMulticlassBatchDense() {
+		checkMulticlassBatch(true);
+	}
+
+	private void checkMulticlassBatch(boolean dense) {
+		final Random rng = new Random(0);
+
+		for (final SolverType solver : new SolverType[] { SolverType.L2R_L2LOSS_SVC_DUAL, SolverType.L2R_LR,
+				SolverType.MCSVM_CS })
+		{
+			final LiblinearAnnotator<SparseFloatFV, Integer> ann = new LiblinearAnnotator<SparseFloatFV, Integer>(
+					new IdentityFeatureExtractor<SparseFloatFV>(), Mode.MULTICLASS, solver, 1, 0.0001, 1, dense);
+			ann.train(createData(rng, 400, false));
+
+			final List<SparseFloatFV> queries = createQueries(rng, 100);
+			final List<List<ScoredAnnotation<Integer>>> top1 = ann.annotate(queries, 1);
+			final List<List<ScoredAnnotation<Integer>>> all = ann.annotate(queries, 0);
+
+			for (int i = 0; i < queries.size(); i++) {
+				final ScoredAnnotation<Integer> expected = ann.annotate(queries.get(i)).get(0);
+
+				assertEquals(1, top1.get(i).size());
+				assertEquals(expected.annotation, top1.get(i).get(0).annotation);
+				assertEquals(expected.confidence, top1.get(i).get(0).confidence, 1e-6);
+
+				assertEquals(NCLASSES, all.get(i).size());
+				assertEquals(expected.annotation, all.get(i).get(0).annotation);
+				for (int j = 2; j < NCLASSES; j++)
+					assertTrue(all.get(i).get(j - 1).confidence >= all.get(i).get(j).confidence);
+			}
+		}
+	}
+
+	/**
+	 * Test that a two-class model trained with the Crammer and Singer solver
+	 * (which has a weight vector for each class) predicts the class with the
+	 * highest decision value in both single and batch annotation.
+	 */
+	@Test
+	public void testTwoClassCrammerSinger() {
+		final Random rng = new Random(2);
+
+		final List<AnnotatedObject<SparseFloatFV, Integer>> data = new ArrayList<AnnotatedObject<SparseFloatFV, Integer>>();
+		for (final AnnotatedObject<SparseFloatFV, Integer> o : createData(rng, 400, false)) {
+			if (o.getAnnotations().iterator().next() < 2)
+				data.add(o);
+		}
+
+		final LiblinearAnnotator<SparseFloatFV, Integer> ann = new LiblinearAnnotator<SparseFloatFV, Integer>(
+				new IdentityFeatureExtractor<SparseFloatFV>(), Mode.MULTICLASS, SolverType.MCSVM_CS, 1, 0.0001, 1,
+				false);
+		ann.train(data);
+
+		final List<SparseFloatFV> queries = new ArrayList<SparseFloatFV>();
+		final List<Integer> classes = new ArrayList<Integer>();
+		for (int i = 0; i < 100; i++) {
+			classes.add(rng.nextInt(2));
+			queries.add(createFeature(rng, classes.get(i)));
+		}
+
+		final List<List<ScoredAnnotation<Integer>>> batch = ann.annotate(queries, 0);
+		int correct = 0;
+		for (int i = 0; i < queries.size(); i++) {
+			final ScoredAnnotation<Integer> single = ann.annotate(queries.get(i)).get(0);
+
+			assertEquals(single.annotation, batch.get(i).get(0).annotation);
+			assertEquals(single.confidence, batch.get(i).get(0).confidence, 1e-6);
+			assertTrue(single.confidence >= batch.get(i).get(1).confidence);
+
+			if (single.annotation.equals(classes.get(i)))
+				correct++;
+		}
+		assertTrue(correct > 90);
+	}
+
+	/**
+	 * Test that batch annotation in multilabel mode gives the same
+	 * annotations and scores as single annotation, ordered by score and
+	 * limited to the requested number.
+	 */
+	@Test
+	public void testMultilabelBatch() {
+		checkMultilabelBatch(false);
+	}
+
+	/**
+	 * Test multilabel batch annotation against single annotation with dense
+	 * models.
+	 */
+	@Test
+	public void testMultilabelBatchDense() {
+		checkMultilabelBatch(true);
+	}
+
+	private void checkMultilabelBatch(boolean dense) {
+		final Random rng = new Random(1);
+
+		for (final SolverType solver : new SolverType[] { SolverType.L2R_L2LOSS_SVC_DUAL, SolverType.L2R_LR }) {
+			final LiblinearAnnotator<SparseFloatFV, Integer> ann = new LiblinearAnnotator<SparseFloatFV, Integer>(
+					new IdentityFeatureExtractor<SparseFloatFV>(), Mode.MULTILABEL, solver, 1, 0.0001, 1, dense);
+			ann.train(createData(rng, 400, true));
+
+			final List<SparseFloatFV> queries = createQueries(rng, 100);
+			final List<List<ScoredAnnotation<Integer>>> all = ann.annotate(queries, 0);
+			final List<List<ScoredAnnotation<Integer>>> top1 = ann.annotate(queries, 1);
+
+			for (int i = 0; i < queries.size(); i++) {
+				final List<ScoredAnnotation<Integer>> expected = ann.annotate(queries.get(i));
+				final List<ScoredAnnotation<Integer>> actual = all.get(i);
+
+				assertEquals(expected.size(), actual.size());
+				for (final ScoredAnnotation<Integer> e : expected) {
+					boolean found = false;
+					for (final ScoredAnnotation<Integer> a : actual) {
+						if (a.annotation.equals(e.annotation)) {
+							assertEquals(e.confidence, a.confidence, 1e-6);
+							found = true;
+						}
+					}
+					assertTrue(found);
+				}
+
+				for (int j = 1; j < actual.size(); j++)
+					assertTrue(actual.get(j - 1).confidence >= actual.get(j).confidence);
+
+				assertEquals(Math.min(1, actual.size()), top1.get(i).size());
+				if (actual.size() > 0)
+					assertEquals(actual.get(0).annotation, top1.get(i).get(0).annotation);
+			}
+		}
+	}
+}
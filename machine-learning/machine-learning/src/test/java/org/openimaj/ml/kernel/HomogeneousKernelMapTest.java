@@ -0,0 +1,152 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.ml.kernel;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+import org.openimaj.feature.DoubleFV;
+import org.openimaj.ml.kernel.HomogeneousKernelMap.KernelType;
+import org.openimaj.ml.kernel.HomogeneousKernelMap.WindowType;
+
+/**
+ * Tests for {@link HomogeneousKernelMap}
+ *
+ * @author agent
+ */
+public class HomogeneousKernelMapTest {
+	private double[] createData(int n) {
+		final Random rng = new Random(0);
+		final double[] data = new double[n];
+		for (int i = 0; i < n; i++)
+			data[i] = rng.nextGaussian();
+		data[0] = 0;
+		return data;
+	}
+
+	/**
+	 * Test that the inner product of mapped values approximates the kernel for
+	 * values within a moderate range of each other
+	 */
+	@Test
+	public void testApproximatesKernel() {
+		final HomogeneousKernelMap map = new HomogeneousKernelMap(KernelType.Chi2, 1, 3, WindowType.Rectangular);
+		final double[] a = new double[map.getExpansionFactor()];
+		final double[] b = new double[map.getExpansionFactor()];
+
+		for (final double x : new double[] { 0.2, 0.5, 1 }) {
+			for (final double y : new double[] { 0.25, 0.5, 1 }) {
+				map.evaluate(a, 1, 0, x);
+				map.evaluate(b, 1, 0, y);
+
+				double dot = 0;
+				for (int i = 0; i < a.length; i++)
+					dot += a[i] * b[i];
+
+				final double k = 2 * x * y / (x + y);
+				assertEquals(k, dot, 0.05 * k);
+			}
+		}
+	}
+
+	/**
+	 * Test that negative values are mapped to the negation of the map of
+	 * their magnitude, and zero to zero.
+	 */
+	@Test
+	public void testSignAndZero() {
+		final HomogeneousKernelMap map = new HomogeneousKernelMap(KernelType.Intersection, WindowType.Rectangular);
+		final double[] pos = new double[3];
+		final double[] neg = new double[3];
+
+		map.evaluate(pos, 1, 0, 0.3);
+		map.evaluate(neg, 1, 0, -0.3);
+		for (int i = 0; i < 3; i++)
+			assertEquals(-pos[i], neg[i], 0);
+
+		// zero must overwrite every output
+		Arrays.fill(pos, 1);
+		map.evaluate(pos, 1, 0, 0);
+		assertArrayEquals(new double[3], pos, 0);
+	}
+
+	/**
+	 * Test that mapping matrices in double and float gives the same results as
+	 * mapping the rows individually
+	 */
+	@Test
+	public void testEvaluateRows() {
+		final HomogeneousKernelMap map = new HomogeneousKernelMap(KernelType.JensonShannon, 1, 2,
+				WindowType.Rectangular);
+		final int rows = 37;
+		final int cols = 101;
+		final int step = map.getExpansionFactor();
+
+		final double[] data = createData(rows * cols);
+		final float[] fdata = new float[data.length];
+		for (int i = 0; i < data.length; i++)
+			fdata[i] = (float) data[i];
+
+		final double[] out = new double[data.length * step];
+		final float[] fout = new float[data.length * step];
+		final float[] ffout = new float[data.length * step];
+		map.evaluateRows(data, rows, cols, out);
+		map.evaluateRows(data, rows, cols, fout);
+		map.evaluateRows(fdata, rows, cols, ffout);
+
+		for (int r = 0; r < rows; r++) {
+			final double[] row = Arrays.copyOfRange(data, r * cols, (r + 1) * cols);
+			final double[] expected = map.evaluate(new DoubleFV(row)).values;
+			final double[] frow = new double[cols];
+			for (int c = 0; c < cols; c++)
+				frow[c] = fdata[r * cols + c];
+			final double[] fexpected = map.evaluate(new DoubleFV(frow)).values;
+
+			for (int i = 0; i < expected.length; i++) {
+				assertEquals(expected[i], out[r * cols * step + i], 0);
+				assertEquals((float) expected[i], fout[r * cols * step + i], 0);
+				assertEquals((float) fexpected[i], ffout[r * cols * step + i], 0);
+			}
+		}
+	}
+
+	/**
+	 * Test that undersized output buffers are rejected
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testEvaluateRowsBufferSize() {
+		final HomogeneousKernelMap map = new HomogeneousKernelMap(KernelType.Chi2, WindowType.Rectangular);
+		map.evaluateRows(new double[20], 4, 5, new double[59]);
+	}
+}
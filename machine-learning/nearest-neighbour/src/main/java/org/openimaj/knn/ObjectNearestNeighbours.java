@@ -29,8 +29,11 @@
  */
 package org.openimaj.knn;
 
+import java.util.concurrent.ThreadPoolExecutor;
+
 import org.openimaj.util.comparator.DistanceComparator;
 import org.openimaj.util.pair.IntFloatPair;
+import org.openimaj.util.parallel.GlobalExecutorPool;
 
 /**
  * Abstract base class for k-nearest-neighbour calculations with any form of
@@ -85,4 +88,50 @@ public abstract class ObjectNearestNeighbours<T> implements NearestNeighbours<T,
 	public DistanceComparator<? super T> distanceComparator() {
 		return this.distance;
 	}
+
+	/**
+	 * Search for the nearest neighbour to each of the N queries using the
+	 * threads of the given pool. Results are identical to
+	 * {@link #searchNN(Object[], int[], float[])}.
+	 *
+	 * @see ParallelNearestNeighbourSearch
+	 *
+	 * @param qus
+	 *            An array of N query vectors
+	 * @param indices
+	 *            The return N-dimensional array for holding the indices of the
+	 *            nearest neighbour of each respective query.
+	 * @param distances
+	 *            The return N-dimensional array for holding the distances of
+	 *            the nearest neighbour to each respective query.
+	 * @param pool
+	 *            the thread pool (for example {@link GlobalExecutorPool#getPool()})
+	 */
+	public void searchNN(final T[] qus, int[] indices, float[] distances, ThreadPoolExecutor pool) {
+		ParallelNearestNeighbourSearch.searchNN(this, qus, indices, distances, pool);
+	}
+
+	/**
+	 * Search for the K nearest neighbours to each of the N queries using the
+	 * threads of the given pool. Results are identical to
+	 * {@link #searchKNN(Object[], int, int[][], float[][])}.
+	 *
+	 * @see ParallelNearestNeighbourSearch
+	 *
+	 * @param qus
+	 *            An array of N query vectors
+	 * @param K
+	 *            the number of neighbours to find
+	 * @param indices
+	 *            The return N*K-dimensional array for holding the indices of
+	 *            the K nearest neighbours of each respective query.
+	 * @param distances
+	 *            The return N*K-dimensional array for holding the distances of
+	 *            the nearest neighbours of each respective query.
+	 * @param pool
+	 *            the thread pool (for example {@link GlobalExecutorPool#getPool()})
+	 */
+	public void searchKNN(final T[] qus, int K, int[][] indices, float[][] distances, ThreadPoolExecutor pool) {
+		ParallelNearestNeighbourSearch.searchKNN(this, qus, K, indices, distances, pool);
+	}
 }
@@ -0,0 +1,195 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.knn;
+
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.openimaj.util.function.Operation;
+import org.openimaj.util.parallel.GlobalExecutorPool;
+import org.openimaj.util.parallel.Parallel;
+import org.openimaj.util.parallel.Parallel.IntRange;
+
+/**
+ * Batch searching of any {@link NearestNeighbours} implementation using a
+ * thread pool. The queries are split into contiguous blocks, one per worker
+ * thread, and each block is passed to the sequential batch search method of
+ * the underlying implementation; this means that every worker gets its own
+ * scratch buffers (queues, working pairs, etc.), and that the results are
+ * written back at the same positions they would have been written to by the
+ * sequential search, so the output is deterministic regardless of the number
+ * of threads.
+ * <p>
+ * The number of threads is controlled by the maximum size of the given
+ * {@link ThreadPoolExecutor}; if no pool is given the
+ * {@link GlobalExecutorPool} is used. The underlying implementation must allow
+ * concurrent searches (all the implementations in this package do). Note that
+ * the calling thread blocks until all the blocks have been searched, so these
+ * methods must not be called from a task that is itself running on the same
+ * pool.
+ *
+ * @author agent
+ */
+public final class ParallelNearestNeighbourSearch {
+	private ParallelNearestNeighbourSearch() {
+	}
+
+	/**
+	 * Search for the nearest neighbour to each of the N queries in parallel
+	 * using the {@link GlobalExecutorPool}.
+	 *
+	 * @see NearestNeighbours#searchNN(Object[], int[], Object)
+	 *
+	 * @param nn
+	 *            the nearest-neighbour implementation to search
+	 * @param qus
+	 *            An array of N query vectors
+	 * @param indices
+	 *            The return N-dimensional array for holding the indices of the
+	 *            nearest neighbour of each respective query.
+	 * @param distances
+	 *            The return N-dimensional array for holding the distances of
+	 *            the nearest neighbour to each respective query.
+	 */
+	public static <DATA, DISTANCES> void searchNN(final NearestNeighbours<DATA, DISTANCES, ?> nn, final DATA[] qus,
+			final int[] indices, final DISTANCES distances)
+	{
+		searchNN(nn, qus, indices, distances, GlobalExecutorPool.getPool());
+	}
+
+	/**
+	 * Search for the nearest neighbour to each of the N queries in parallel
+	 * using the given pool.
+	 *
+	 * @see NearestNeighbours#searchNN(Object[], int[], Object)
+	 *
+	 * @param nn
+	 *            the nearest-neighbour implementation to search
+	 * @param qus
+	 *            An array of N query vectors
+	 * @param indices
+	 *            The return N-dimensional array for holding the indices of the
+	 *            nearest neighbour of each respective query.
+	 * @param distances
+	 *            The return N-dimensional array for holding the distances of
+	 *            the nearest neighbour to each respective query.
+	 * @param pool
+	 *            the thread pool
+	 */
+	public static <DATA, DISTANCES> void searchNN(final NearestNeighbours<DATA, DISTANCES, ?> nn, final DATA[] qus,
+			final int[] indices, final DISTANCES distances, ThreadPoolExecutor pool)
+	{
+		if (qus.length == 0)
+			return;
+
+		final Class<?> distanceType = distances.getClass().getComponentType();
+
+		Parallel.forRange(0, qus.length, 1, new Operation<IntRange>() {
+			@SuppressWarnings("unchecked")
+			@Override
+			public void perform(IntRange range) {
+				final int n = range.stop - range.start;
+				final DATA[] block = Arrays.copyOfRange(qus, range.start, range.stop);
+				final int[] blockIndices = new int[n];
+				final DISTANCES blockDistances = (DISTANCES) Array.newInstance(distanceType, n);
+
+				nn.searchNN(block, blockIndices, blockDistances);
+
+				System.arraycopy(blockIndices, 0, indices, range.start, n);
+				System.arraycopy(blockDistances, 0, distances, range.start, n);
+			}
+		}, pool);
+	}
+
+	/**
+	 * Search for the K nearest neighbours to each of the N queries in parallel
+	 * using the {@link GlobalExecutorPool}.
+	 *
+	 * @see NearestNeighbours#searchKNN(Object[], int, int[][], Object[])
+	 *
+	 * @param nn
+	 *            the nearest-neighbour implementation to search
+	 * @param qus
+	 *            An array of N query vectors
+	 * @param K
+	 *            the number of neighbours to find
+	 * @param indices
+	 *            The return N*K-dimensional array for holding the indices of
+	 *            the K nearest neighbours of each respective query.
+	 * @param distances
+	 *            The return N*K-dimensional array for holding the distances of
+	 *            the nearest neighbours of each respective query.
+	 */
+	public static <DATA, DISTANCES> void searchKNN(final NearestNeighbours<DATA, DISTANCES, ?> nn, final DATA[] qus,
+			final int K, final int[][] indices, final DISTANCES[] distances)
+	{
+		searchKNN(nn, qus, K, indices, distances, GlobalExecutorPool.getPool());
+	}
+
+	/**
+	 * Search for the K nearest neighbours to each of the N queries in parallel
+	 * using the given pool.
+	 *
+	 * @see NearestNeighbours#searchKNN(Object[], int, int[][], Object[])
+	 *
+	 * @param nn
+	 *            the nearest-neighbour implementation to search
+	 * @param qus
+	 *            An array of N query vectors
+	 * @param K
+	 *            the number of neighbours to find
+	 * @param indices
+	 *            The return N*K-dimensional array for holding the indices of
+	 *            the K nearest neighbours of each respective query.
+	 * @param distances
+	 *            The return N*K-dimensional array for holding the distances of
+	 *            the nearest neighbours of each respective query.
+	 * @param pool
+	 *            the thread pool
+	 */
+	public static <DATA, DISTANCES> void searchKNN(final NearestNeighbours<DATA, DISTANCES, ?> nn, final DATA[] qus,
+			final int K, final int[][] indices, final DISTANCES[] distances, ThreadPoolExecutor pool)
+	{
+		if (qus.length == 0)
+			return;
+
+		Parallel.forRange(0, qus.length, 1, new Operation<IntRange>() {
+			@Override
+			public void perform(IntRange range) {
+				// the output rows are shared with the caller's arrays, so the
+				// blocks write their results in place
+				nn.searchKNN(Arrays.copyOfRange(qus, range.start, range.stop), K,
+						Arrays.copyOfRange(indices, range.start, range.stop),
+						Arrays.copyOfRange(distances, range.start, range.stop));
+			}
+		}, pool);
+	}
+}
@@ -35,14 +35,19 @@ import gnu.trove.set.hash.TIntHashSet;
 
 import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.ThreadPoolExecutor;
 
 import org.openimaj.knn.IncrementalNearestNeighbours;
+import org.openimaj.knn.ParallelNearestNeighbourSearch;
 import org.openimaj.util.comparator.DistanceComparator;
 import org.openimaj.util.hash.HashFunction;
 import org.openimaj.util.hash.HashFunctionFactory;
+import org.openimaj.util.hash.MultiProbeHashFunction;
 import org.openimaj.util.pair.IntFloatPair;
+import org.openimaj.util.parallel.GlobalExecutorPool;
 import org.openimaj.util.queue.BoundedPriorityQueue;
 
 /**
@@ -54,6 +59,18 @@ import org.openimaj.util.queue.BoundedPriorityQueue;
  * tables is then combined and sorted by distance (and trimmed if necessary)
  * before being returned.
  * <p>
+ * If the hash functions of the tables are {@link MultiProbeHashFunction}s
+ * (for example a {@link org.openimaj.util.hash.composition.MultiProbeComposition}
+ * of p-stable or hyperplane functions), then setting the number of probes to
+ * more than one causes each table to look in a sequence of neighbouring
+ * buckets in addition to the bucket of the query. This allows the same recall
+ * to be achieved with far fewer tables (and thus far less memory).
+ * <p>
+ * Once all the data has been added, the tables can be frozen with
+ * {@link #freeze()}. This converts each table into a compact read-only form in
+ * which the bucket codes are held in a sorted array, and the contents of all
+ * the buckets in a single array indexed by bucket offsets.
+ * <p>
  * Note: This object is not thread-safe. Multiple insertions or mixed insertions
  * and searches should not be performed concurrently without external locking.
  *
@@ -76,9 +93,15 @@ public class LSHNearestNeighbours<OBJECT>
 	 *            Type of object being hashed
 	 */
 	private static class Table<OBJECT> {
-		private final TIntObjectHashMap<TIntArrayList> table;
+		private TIntObjectHashMap<TIntArrayList> table;
 		HashFunction<OBJECT> function;
 
+		// compacted representation used once the table is frozen: the sorted
+		// bucket codes, the offset of each bucket into ids, and the ids
+		private int[] keys;
+		private int[] offsets;
+		private int[] ids;
+
 		public Table(HashFunction<OBJECT> function) {
 			this.function = function;
 			table = new TIntObjectHashMap<TIntArrayList>();
@@ -108,20 +131,65 @@ public class LSHNearestNeighbours<OBJECT>
 		 *
 		 * @param point
 		 *            query point
-		 * @param norm
-		 *            normalisation factor
-		 * @return ids of matched points
+		 * @param numProbes
+		 *            the number of buckets to probe
+		 * @param result
+		 *            the set to add the ids of matched points to
 		 */
-		protected TIntArrayList searchPoint(OBJECT point) {
-			final int hash = function.computeHashCode(point);
+		protected void searchPoint(OBJECT point, int numProbes, TIntHashSet result) {
+			if (numProbes > 1 && function instanceof MultiProbeHashFunction) {
+				final int[] hashes = ((MultiProbeHashFunction<OBJECT>) function).computeProbeSequence(point, numProbes);
+
+				for (final int hash : hashes)
+					searchBucket(hash, result);
+			} else {
+				searchBucket(function.computeHashCode(point), result);
+			}
+		}
+
+		private void searchBucket(int hash, TIntHashSet result) {
+			if (table != null) {
+				final TIntArrayList bucket = table.get(hash);
+
+				if (bucket != null)
+					result.addAll(bucket);
+			} else {
+				final int idx = Arrays.binarySearch(keys, hash);
+
+				if (idx >= 0) {
+					for (int i = offsets[idx]; i < offsets[idx + 1]; i++)
+						result.add(ids[i]);
+				}
+			}
+		}
+
+		/**
+		 * Convert the table to the compacted read-only representation
+		 */
+		protected void freeze() {
+			if (table == null)
+				return;
+
+			keys = table.keys();
+			Arrays.sort(keys);
+
+			offsets = new int[keys.length + 1];
+			for (int i = 0; i < keys.length; i++)
+				offsets[i + 1] = offsets[i] + table.get(keys[i]).size();
 
-			return table.get(hash);
+			ids = new int[offsets[keys.length]];
+			for (int i = 0; i < keys.length; i++)
+				table.get(keys[i]).toArray(ids, 0, offsets[i], offsets[i + 1] - offsets[i]);
+
+			table = null;
 		}
 	}
 
 	protected DistanceComparator<OBJECT> distanceFcn;
 	protected List<Table<OBJECT>> tables;
 	protected List<OBJECT> data = new ArrayList<OBJECT>();
+	protected int numProbes = 1;
+	protected boolean frozen = false;
 
 	/**
 	 * Construct with the given hash functions and distance function. One table
@@ -172,6 +240,56 @@ public class LSHNearestNeighbours<OBJECT>
 		return tables.size();
 	}
 
+	/**
+	 * Get the number of buckets probed in each table for each query.
+	 *
+	 * @return the number of probes
+	 */
+	public int getNumProbes() {
+		return numProbes;
+	}
+
+	/**
+	 * Set the number of buckets probed in each table for each query. Values
+	 * greater than one only have an effect for tables with
+	 * {@link MultiProbeHashFunction}s.
+	 *
+	 * @param numProbes
+	 *            the number of probes
+	 */
+	public void setNumProbes(int numProbes) {
+		if (numProbes <= 0)
+			throw new IllegalArgumentException("numProbes must be positive");
+
+		this.numProbes = numProbes;
+	}
+
+	/**
+	 * Convert all the tables to a compact read-only representation. After
+	 * this method has been called no more data can be added.
+	 */
+	public void freeze() {
+		for (final Table<OBJECT> table : tables)
+			table.freeze();
+
+		frozen = true;
+	}
+
+	/**
+	 * Has this object been frozen?
+	 *
+	 * @see #freeze()
+	 * @return true if the tables are frozen; false otherwise
+	 */
+	public boolean isFrozen() {
+		return frozen;
+	}
+
+	private void checkNotFrozen() {
+		if (frozen)
+			throw new UnsupportedOperationException("Data cannot be added once the tables are frozen");
+	}
+
 	/**
 	 * Insert data into the tables
 	 *
@@ -179,6 +297,8 @@ public class LSHNearestNeighbours<OBJECT>
 	 *            the data
 	 */
 	public void addAll(Collection<OBJECT> d) {
+		checkNotFrozen();
+
 		int i = this.data.size();
 
 		for (final OBJECT point : d) {
@@ -199,6 +319,8 @@ public class LSHNearestNeighbours<OBJECT>
 	 *            the data
 	 */
 	public void addAll(OBJECT[] d) {
+		checkNotFrozen();
+
 		int i = this.data.size();
 
 		for (final OBJECT point : d) {
@@ -214,6 +336,8 @@ public class LSHNearestNeighbours<OBJECT>
 
 	@Override
 	public int add(OBJECT o) {
+		checkNotFrozen();
+
 		final int index = this.data.size();
 		this.data.add(o);
 
@@ -253,10 +377,7 @@ public class LSHNearestNeighbours<OBJECT>
 		final TIntHashSet pl = new TIntHashSet();
 
 		for (final Table<OBJECT> table : tables) {
-			final TIntArrayList result = table.searchPoint(data);
-
-			if (result != null)
-				pl.addAll(result);
+			table.searchPoint(data, numProbes, pl);
 		}
 
 		return pl;
@@ -300,10 +421,16 @@ public class LSHNearestNeighbours<OBJECT>
 
 	@Override
 	public void searchNN(OBJECT[] qus, int[] argmins, float[] mins) {
-		final int[][] argminsWrapper = { argmins };
-		final float[][] minsWrapper = { mins };
+		final int size = qus.length;
+		final int[][] argminsWrapper = new int[size][1];
+		final float[][] minsWrapper = new float[size][1];
 
 		searchKNN(qus, 1, argminsWrapper, minsWrapper);
+
+		for (int i = 0; i < size; i++) {
+			argmins[i] = argminsWrapper[i][0];
+			mins[i] = minsWrapper[i][0];
+		}
 	}
 
 	@Override
@@ -325,10 +452,16 @@ public class LSHNearestNeighbours<OBJECT>
 
 	@Override
 	public void searchNN(List<OBJECT> qus, int[] argmins, float[] mins) {
-		final int[][] argminsWrapper = { argmins };
-		final float[][] minsWrapper = { mins };
+		final int size = qus.size();
+		final int[][] argminsWrapper = new int[size][1];
+		final float[][] minsWrapper = new float[size][1];
 
 		searchKNN(qus, 1, argminsWrapper, minsWrapper);
+
+		for (int i = 0; i < size; i++) {
+			argmins[i] = argminsWrapper[i][0];
+			mins[i] = minsWrapper[i][0];
+		}
 	}
 
 	@Override
@@ -488,4 +621,50 @@ public class LSHNearestNeighbours<OBJECT>
 
 		return new IntFloatPair(idx[0], dst[0]);
 	}
+
+	/**
+	 * Search for the nearest neighbour to each of the N queries using the
+	 * threads of the given pool. Results are identical to
+	 * {@link #searchNN(Object[], int[], float[])}.
+	 *
+	 * @see ParallelNearestNeighbourSearch
+	 *
+	 * @param qus
+	 *            An array of N query vectors
+	 * @param indices
+	 *            The return N-dimensional array for holding the indices of the
+	 *            nearest neighbour of each respective query.
+	 * @param distances
+	 *            The return N-dimensional array for holding the distances of
+	 *            the nearest neighbour to each respective query.
+	 * @param pool
+	 *            the thread pool (for example {@link GlobalExecutorPool#getPool()})
+	 */
+	public void searchNN(final OBJECT[] qus, int[] indices, float[] distances, ThreadPoolExecutor pool) {
+		ParallelNearestNeighbourSearch.searchNN(this, qus, indices, distances, pool);
+	}
+
+	/**
+	 * Search for the K nearest neighbours to each of the N queries using the
+	 * threads of the given pool. Results are identical to
+	 * {@link #searchKNN(Object[], int, int[][], float[][])}.
+	 *
+	 * @see ParallelNearestNeighbourSearch
+	 *
+	 * @param qus
+	 *            An array of N query vectors
+	 * @param K
+	 *            the number of neighbours to find
+	 * @param indices
+	 *            The return N*K-dimensional array for holding the indices of
+	 *            the K nearest neighbours of each respective query.
+	 * @param distances
+	 *            The return N*K-dimensional array for holding the distances of
+	 *            the nearest neighbours of each respective query.
+	 * @param pool
+	 *            the thread pool (for example {@link GlobalExecutorPool#getPool()})
+	 */
+	public void searchKNN(final OBJECT[] qus, int K, int[][] indices, float[][] distances, ThreadPoolExecutor pool) {
+		ParallelNearestNeighbourSearch.searchKNN(this, qus, K, indices, distances, pool);
+	}
 }
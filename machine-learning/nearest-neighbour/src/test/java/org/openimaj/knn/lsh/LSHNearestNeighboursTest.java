@@ -31,15 +31,18 @@ package org.openimaj.knn.lsh;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.util.List;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.openimaj.data.RandomData;
+import org.openimaj.knn.DoubleNearestNeighboursExact;
 import org.openimaj.lsh.functions.DoubleGaussianFactory;
 import org.openimaj.util.hash.HashFunction;
 import org.openimaj.util.hash.HashFunctionFactory;
+import org.openimaj.util.hash.composition.MultiProbeComposition;
 import org.openimaj.util.hash.composition.SimpleComposition;
 import org.openimaj.util.hash.modifier.ModuloModifier;
 import org.openimaj.util.pair.IntFloatPair;
@@ -235,4 +238,77 @@ public class LSHNearestNeighboursTest {
 			assertEquals(null, lsh.searchNN(qus[i]));
 		}
 	}
+
+	/**
+	 * Test that frozen tables give the same results as the original tables,
+	 * and that no more data can be added to them.
+	 */
+	@Test
+	public void frozenTablesGiveSameResults() {
+		final LSHNearestNeighbours<double[]> lsh = new LSHNearestNeighbours<double[]>(factory, 4,
+				gauss.distanceFunction());
+		lsh.addAll(RandomData.getRandomDoubleArray(1000, 128, 0, 10, 42));
+
+		final double[][] qus = RandomData.getRandomDoubleArray(20, 128, 0, 10, 43);
+		final int[][] expected = new int[qus.length][];
+		for (int i = 0; i < qus.length; i++)
+			expected[i] = lsh.search(qus[i]).toArray();
+
+		lsh.freeze();
+		assertTrue(lsh.isFrozen());
+
+		for (int i = 0; i < qus.length; i++) {
+			final int[] actual = lsh.search(qus[i]).toArray();
+			assertEquals(expected[i].length, actual.length);
+			assertTrue(lsh.search(qus[i]).containsAll(expected[i]));
+		}
+
+		try {
+			lsh.add(qus[0]);
+			fail();
+		} catch (final UnsupportedOperationException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Test that probing multiple buckets finds the true nearest neighbour more
+	 * often than probing a single bucket.
+	 */
+	@Test
+	public void multiProbeIncreasesRecall() {
+		final int ndims = 16;
+		final DoubleGaussianFactory g = new DoubleGaussianFactory(ndims, new MersenneTwister(1), 2);
+		final HashFunctionFactory<double[]> mpFactory = new HashFunctionFactory<double[]>() {
+			@Override
+			public HashFunction<double[]> create() {
+				return new ModuloModifier<double[]>(new MultiProbeComposition<double[]>(g, 8), 1017881);
+			}
+		};
+
+		final double[][] data = RandomData.getRandomDoubleArray(2000, ndims, 0, 1, 42);
+		final double[][] qus = RandomData.getRandomDoubleArray(100, ndims, 0, 1, 43);
+
+		final LSHNearestNeighbours<double[]> lsh = new LSHNearestNeighbours<double[]>(mpFactory, 2,
+				g.distanceFunction());
+		lsh.addAll(data);
+		lsh.freeze();
+
+		final DoubleNearestNeighboursExact exact = new DoubleNearestNeighboursExact(data);
+
+		int single = 0, multi = 0;
+		for (final double[] q : qus) {
+			final int nn = exact.searchNN(q).first;
+
+			lsh.setNumProbes(1);
+			if (lsh.search(q).contains(nn))
+				single++;
+
+			lsh.setNumProbes(32);
+			if (lsh.search(q).contains(nn))
+				multi++;
+		}
+
+		assertTrue(multi > single);
+	}
 }
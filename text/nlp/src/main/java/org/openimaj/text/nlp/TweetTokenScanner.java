@@ -0,0 +1,481 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.text.nlp;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang.StringEscapeUtils;
+
+/**
+ * A fast, single-pass scanner that produces exactly the same tokens as the
+ * {@link TweetTokeniser}, but without repeatedly running the
+ * {@link TweetTokeniser#Protect_RE} alternation of all the protected patterns
+ * at every position of the text.
+ * <p>
+ * The combined protection regex is expensive because, at each position in the
+ * text, every one of its alternatives is attempted in turn (several of which
+ * can backtrack over the whole of the current word) before moving on to the
+ * next position. This scanner instead compiles each alternative separately,
+ * and only attempts an alternative at a given position if the character at
+ * that position could start a match of the alternative. The sets of possible
+ * first characters (and pairs of first characters for ASCII text) are
+ * computed lazily by probing the alternatives themselves, so they are always
+ * consistent with the patterns. A few alternatives that can start on almost
+ * any character (emails, embedded apostrophes and abbreviations) are
+ * additionally guarded by cheap necessary conditions computed in a single
+ * backward pass over the text. As the
+ * alternatives are tried in their original order, and each is only ever
+ * skipped when it cannot possibly match, the leftmost-first semantics of the
+ * combined regex are preserved exactly.
+ * <p>
+ * Tokens are reported as offsets into the (normalised) text; no
+ * {@link String} is created for a token until {@link #token()} is called.
+ * Instances are reusable through {@link #reset(String)}, but are not
+ * thread-safe.
+ *
+ * @author agent
+ */
+public class TweetTokenScanner {
+	private static final int FLAGS = Pattern.UNICODE_CASE | Pattern.CASE_INSENSITIVE;
+
+	/** Contexts used to probe the word-boundary state before a character */
+	private static final String[] PROBE_PREFIXES = { "", "a", " " };
+
+	private static final Pattern[] ALTERNATIVES;
+	private static final int EMAIL;
+	private static final int EMBEDDED;
+	private static final int ABBREVIATION;
+
+	private static final BitSet EMAIL_CHARS;
+	private static final BitSet NOT_PUNCTUATION;
+	private static final BitSet APOSTROPHES;
+	private static final BitSet EMBEDDED_APOSTROPHES;
+
+	/**
+	 * Bit masks of the alternatives that could start with each character;
+	 * lazily computed (-1 indicates not yet computed)
+	 */
+	private static final int[] FIRST_CHARS = new int[Character.MAX_VALUE + 1];
+
+	/**
+	 * Bit masks of the alternatives that could start with each pair of ASCII
+	 * characters; lazily computed (-1 indicates not yet computed)
+	 */
+	private static final int[] FIRST_PAIRS = new int[128 * 128];
+
+	static {
+		final String[] protect = TweetTokeniser.ProtectThese;
+		if (protect.length > 31)
+			throw new AssertionError("Too many protected patterns");
+
+		ALTERNATIVES = new Pattern[protect.length];
+		for (int i = 0; i < protect.length; i++)
+			ALTERNATIVES[i] = Pattern.compile(protect[i], FLAGS);
+
+		EMAIL = Arrays.asList(protect).indexOf(TweetTokeniser.email.patternString());
+		EMBEDDED = Arrays.asList(protect).indexOf(TweetTokeniser.embedded.patternString());
+		ABBREVIATION = Arrays.asList(protect).indexOf(TweetTokeniser.abbrev.patternString());
+
+		EMAIL_CHARS = charClass("[\\w\\-.]");
+		NOT_PUNCTUATION = charClass(TweetTokeniser.embedded.nonPunctuationClass());
+		APOSTROPHES = charClass(TweetTokeniser.embedded.apostropheClass());
+		EMBEDDED_APOSTROPHES = (BitSet) APOSTROPHES.clone();
+		EMBEDDED_APOSTROPHES.and(NOT_PUNCTUATION);
+
+		Arrays.fill(FIRST_CHARS, -1);
+		Arrays.fill(FIRST_PAIRS, -1);
+	}
+
+	private static BitSet charClass(String regex) {
+		final Matcher m = Pattern.compile(regex, FLAGS).matcher("");
+		final BitSet set = new BitSet(Character.MAX_VALUE + 1);
+		final char[] c = new char[1];
+
+		for (int i = 0; i <= Character.MAX_VALUE; i++) {
+			c[0] = (char) i;
+			if (m.reset(new String(c)).matches())
+				set.set(i);
+		}
+
+		return set;
+	}
+
+	/**
+	 * Get the mask of alternatives that could possibly match starting at the
+	 * given character. Surrogates are matched by the patterns as part of a
+	 * code point, so can't be probed on their own and are assumed to be able
+	 * to start any alternative.
+	 */
+	private static int firstChars(char c) {
+		if (Character.isSurrogate(c))
+			return (1 << ALTERNATIVES.length) - 1;
+
+		// racy, but the computed value is always the same
+		int mask = FIRST_CHARS[c];
+		if (mask < 0) {
+			mask = probe((1 << ALTERNATIVES.length) - 1, String.valueOf(c));
+			FIRST_CHARS[c] = mask;
+		}
+		return mask;
+	}
+
+	/**
+	 * Get the mask of alternatives that could possibly match starting with
+	 * the given pair of ASCII characters.
+	 */
+	private static int firstPair(char c, char d) {
+		final int idx = (c << 7) | d;
+
+		int mask = FIRST_PAIRS[idx];
+		if (mask < 0) {
+			mask = probe(firstChars(c), new String(new char[] { c, d }));
+			FIRST_PAIRS[idx] = mask;
+		}
+		return mask;
+	}
+
+	/**
+	 * Work out which of the given alternatives could match text starting with
+	 * the given string. An alternative is included if, for any of the probed
+	 * preceding contexts, it either matches or needs to look at more input
+	 * than the string to decide.
+	 */
+	private static int probe(int candidates, String start) {
+		int mask = 0;
+		for (int i = 0; i < ALTERNATIVES.length; i++) {
+			if ((candidates & (1 << i)) == 0)
+				continue;
+
+			for (final String prefix : PROBE_PREFIXES) {
+				final Matcher m = ALTERNATIVES[i].matcher(prefix + start);
+				m.useTransparentBounds(true);
+				m.useAnchoringBounds(false);
+				m.region(prefix.length(), prefix.length() + start.length());
+
+				if (m.lookingAt() || m.hitEnd()) {
+					mask |= 1 << i;
+					break;
+				}
+			}
+		}
+		return mask;
+	}
+
+	private final Matcher[] matchers;
+
+	private String text;
+	private int length;
+
+	// end of the run of email characters starting at each position
+	private int[] emailRunEnd = new int[0];
+	// end of the run of non-punctuation characters starting at each position
+	private int[] wordRunEnd = new int[0];
+	// the next non-punctuation apostrophe at or after each position
+	private int[] nextApostrophe = new int[0];
+
+	private int position;
+	private int searchFrom;
+	private boolean searched;
+	private int matchStart;
+	private int matchEnd;
+
+	private int tokenStart;
+	private int tokenEnd;
+	private boolean tokenProtected;
+
+	/**
+	 * Construct a new scanner. Use {@link #reset(String)} to start scanning.
+	 */
+	public TweetTokenScanner() {
+		matchers = new Matcher[ALTERNATIVES.length];
+		for (int i = 0; i < matchers.length; i++) {
+			matchers[i] = ALTERNATIVES[i].matcher("");
+			matchers[i].useTransparentBounds(true);
+			matchers[i].useAnchoringBounds(false);
+		}
+
+		reset("");
+	}
+
+	/**
+	 * Construct a new scanner over the given text
+	 *
+	 * @param text
+	 *            the text to tokenise
+	 */
+	public TweetTokenScanner(String text) {
+		this();
+		reset(text);
+	}
+
+	/**
+	 * Start scanning the given text. The text is normalised in the same way
+	 * as by the {@link TweetTokeniser}: HTML entities are unescaped and runs
+	 * of whitespace are replaced by a single space.
+	 *
+	 * @param text
+	 *            the text to tokenise
+	 * @return this scanner
+	 */
+	public TweetTokenScanner reset(String text) {
+		this.text = squeezeWhitespace(StringEscapeUtils.unescapeHtml(fixEncoding(text)));
+		this.length = this.text.length();
+
+		for (final Matcher m : matchers)
+			m.reset(this.text);
+
+		computeRuns();
+
+		position = 0;
+		searchFrom = 0;
+		searched = false;
+		matchStart = matchEnd = -1;
+		tokenStart = tokenEnd = -1;
+		tokenProtected = false;
+
+		return this;
+	}
+
+	/**
+	 * Replace any unpaired surrogates by '?', as a round trip through UTF-8
+	 * would
+	 */
+	private static String fixEncoding(String text) {
+		for (int i = 0; i < text.length(); i++) {
+			final char c = text.charAt(i);
+
+			if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1)))
+				i++;
+			else if (Character.isSurrogate(c))
+				try {
+					return new String(text.getBytes("UTF-8"), "UTF-8");
+				} catch (final UnsupportedEncodingException e) {
+					throw new RuntimeException(e);
+				}
+		}
+		return text;
+	}
+
+	private static boolean isSpace(char c) {
+		// the characters matched by \s
+		return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+	}
+
+	private static String squeezeWhitespace(String text) {
+		final int len = text.length();
+
+		int i = 0;
+		for (; i < len; i++) {
+			final char c = text.charAt(i);
+			if (isSpace(c) && (c != ' ' || (i + 1 < len && isSpace(text.charAt(i + 1)))))
+				break;
+		}
+		if (i == len)
+			return text;
+
+		final StringBuilder sb = new StringBuilder(len);
+		sb.append(text, 0, i);
+		while (i < len) {
+			final char c = text.charAt(i++);
+
+			if (isSpace(c)) {
+				sb.append(' ');
+				while (i < len && isSpace(text.charAt(i)))
+					i++;
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+	private void computeRuns() {
+		if (emailRunEnd.length < length + 1) {
+			final int size = Math.max(length + 1, 2 * emailRunEnd.length);
+			emailRunEnd = new int[size];
+			wordRunEnd = new int[size];
+			nextApostrophe = new int[size];
+		}
+
+		emailRunEnd[length] = length;
+		wordRunEnd[length] = length;
+		nextApostrophe[length] = length;
+		for (int i = length - 1; i >= 0; i--) {
+			final char c = text.charAt(i);
+
+			emailRunEnd[i] = EMAIL_CHARS.get(c) ? emailRunEnd[i + 1] : i;
+			wordRunEnd[i] = NOT_PUNCTUATION.get(c) ? wordRunEnd[i + 1] : i;
+			nextApostrophe[i] = EMBEDDED_APOSTROPHES.get(c) ? i : nextApostrophe[i + 1];
+		}
+	}
+
+	/**
+	 * Test necessary conditions for the given alternative to match at the
+	 * given position, beyond the first character.
+	 */
+	private boolean possibleMatch(int alternative, int pos) {
+		if (alternative == EMAIL) {
+			// the local part is made of email chars and is followed by an @
+			final int end = emailRunEnd[pos];
+			return end < length && text.charAt(end) == '@';
+		} else if (alternative == EMBEDDED) {
+			// a run of non-punctuation must be followed by or contain an
+			// apostrophe (after the first character)
+			final int end = wordRunEnd[pos];
+			return (end < length && APOSTROPHES.get(text.charAt(end))) || nextApostrophe[pos + 1] < end;
+		} else if (alternative == ABBREVIATION) {
+			// a letter followed by a dot
+			return pos + 1 < length && text.charAt(pos + 1) == '.';
+		}
+		return true;
+	}
+
+	/**
+	 * Find the next protected match starting at or after the given position
+	 */
+	private boolean find(int from) {
+		for (int pos = from; pos < length; pos++) {
+			final char c = text.charAt(pos);
+			final char d = pos + 1 < length ? text.charAt(pos + 1) : 0xFFFF;
+
+			int mask;
+			if (c < 128 && d < 128)
+				mask = firstPair(c, d);
+			else
+				mask = firstChars(c);
+
+			while (mask != 0) {
+				final int alt = Integer.numberOfTrailingZeros(mask);
+				mask &= mask - 1;
+
+				if (!possibleMatch(alt, pos))
+					continue;
+
+				final Matcher m = matchers[alt];
+				m.region(pos, length);
+				if (m.lookingAt()) {
+					matchStart = pos;
+					matchEnd = m.end();
+					return true;
+				}
+			}
+		}
+
+		matchStart = matchEnd = -1;
+		return false;
+	}
+
+	/**
+	 * Advance to the next token.
+	 *
+	 * @return true if there was another token; false if the end of the text
+	 *         has been reached
+	 */
+	public boolean next() {
+		if (!searched) {
+			find(searchFrom);
+			searched = true;
+		}
+
+		final int gapEnd = matchStart >= 0 ? matchStart : length;
+
+		// unprotected tokens between protected matches are split on spaces
+		while (position < gapEnd && text.charAt(position) == ' ')
+			position++;
+
+		if (position < gapEnd) {
+			tokenStart = position;
+			while (position < gapEnd && text.charAt(position) != ' ')
+				position++;
+			tokenEnd = position;
+			tokenProtected = false;
+			return true;
+		}
+
+		if (matchStart >= 0) {
+			tokenStart = matchStart;
+			tokenEnd = matchEnd;
+			tokenProtected = true;
+
+			position = matchEnd;
+			// as with Matcher#find, don't allow an empty match to repeat
+			searchFrom = matchEnd == matchStart ? matchEnd + 1 : matchEnd;
+			searched = false;
+			return true;
+		}
+
+		tokenStart = tokenEnd = -1;
+		return false;
+	}
+
+	/**
+	 * @return the start offset of the current token in {@link #text()}
+	 */
+	public int start() {
+		return tokenStart;
+	}
+
+	/**
+	 * @return the end offset (exclusive) of the current token in
+	 *         {@link #text()}
+	 */
+	public int end() {
+		return tokenEnd;
+	}
+
+	/**
+	 * @return true if the current token was matched by one of the protected
+	 *         patterns; false if it was produced by splitting the text between
+	 *         protected tokens on whitespace
+	 */
+	public boolean isProtected() {
+		return tokenProtected;
+	}
+
+	/**
+	 * Materialise the current token as a {@link String}
+	 *
+	 * @return the current token
+	 */
+	public String token() {
+		return text.substring(tokenStart, tokenEnd);
+	}
+
+	/**
+	 * @return the normalised text being scanned
+	 */
+	public String text() {
+		return text;
+	}
+}
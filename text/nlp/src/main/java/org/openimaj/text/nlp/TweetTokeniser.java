@@ -37,10 +37,8 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import org.apache.commons.lang.StringEscapeUtils;
 import org.openimaj.text.nlp.patterns.AbbreviationPatternProvider;
 import org.openimaj.text.nlp.patterns.ComplicatedNumberPatternProvider;
 import org.openimaj.text.nlp.patterns.EmailPatternProvider;
@@ -68,7 +66,6 @@ import org.openimaj.text.util.RegexUtil;
  */
 public class TweetTokeniser implements Iterable<Token> {
 
-	private String text;
 	private ArrayList<Token> tokenize;
 	private ArrayList<Token> protectedTokens;
 	private ArrayList<Token> unprotectedTokens;
@@ -131,7 +128,6 @@ public class TweetTokeniser implements Iterable<Token> {
 	static TwitterStuffPatternProvider twitterPart = new TwitterStuffPatternProvider();
 	static EmailPatternProvider email = new EmailPatternProvider();
 	static AbbreviationPatternProvider abbrev = new AbbreviationPatternProvider(entity);
-	private static final String spaceRegex = "\\s+";
 	static String Separators = RegexUtil.regex_or_match("--+", "\u2015");
 	static String Decorations = new String(" [\u266b]+ ").replace(" ", "");
 	static EmbeddedApostrophePatternProvider embedded = new EmbeddedApostrophePatternProvider(punctuation);
@@ -161,6 +157,13 @@ public class TweetTokeniser implements Iterable<Token> {
 
 	// static Pattern Protect_RE = twitterPart.pattern();
 
+	private static final ThreadLocal<TweetTokenScanner> scanner = new ThreadLocal<TweetTokenScanner>() {
+		@Override
+		protected TweetTokenScanner initialValue() {
+			return new TweetTokenScanner();
+		}
+	};
+
 	/**
 	 * @param s
 	 *            Tokenise this string
@@ -168,83 +171,22 @@ public class TweetTokeniser implements Iterable<Token> {
 	 * @throws TweetTokeniserException
 	 */
 	public TweetTokeniser(String s) throws UnsupportedEncodingException, TweetTokeniserException {
-		// System.out.println(EdgePunct);
-		// System.out.println(new String(""));
-		this.text = new String(s);
-		// System.out.println("TWEET:" + text);
-		fixEncoding();
-		squeeze_whitespace();
-		simple_tokenize();
-	}
+		// the scanner produces the same tokens as matching Protect_RE against
+		// the text, but much faster (see TweetTokenScanner)
+		final TweetTokenScanner scanner = TweetTokeniser.scanner.get().reset(s);
 
-	private void simple_tokenize() throws TweetTokeniserException {
 		this.tokenize = new ArrayList<Token>();
-		edge_punct_munge();
-
-		final ArrayList<String> goods = new ArrayList<String>();
-		final ArrayList<String> bads = new ArrayList<String>();
-		final ArrayList<Token> res = new ArrayList<Token>();
-		final ArrayList<Token> goodt = new ArrayList<Token>();
-		final ArrayList<Token> badt = new ArrayList<Token>();
-		int i = 0;
-		final Matcher matches = Protect_RE.matcher(this.text);
-		if (matches != null) {
-			while (matches.find()) {
-				final String goodString = this.text.substring(i, matches.start());
-				goods.add(goodString);
-				final List<Token> goodStrings = unprotected_tokenize(goodString);
-				res.addAll(goodStrings);
-				goodt.addAll(goodStrings);
-				final String badString = this.text.substring(matches.start(), matches.end());
-				bads.add(badString);
-				final DefaultToken badTok = new DefaultToken(badString, 0);
-				res.add(badTok);
-				badt.add(badTok);
-				i = matches.end();
-			}
-			final String finalGood = this.text.substring(i, this.text.length());
-			final List<Token> goodStrings = unprotected_tokenize(finalGood);
-			res.addAll(goodStrings);
-			goodt.addAll(goodStrings);
-		} else {
-			final String goodString = this.text.substring(0, this.text.length());
-			final List<Token> goodStrings = unprotected_tokenize(goodString);
-			res.addAll(goodStrings);
-			goodt.addAll(goodStrings);
+		this.protectedTokens = new ArrayList<Token>();
+		this.unprotectedTokens = new ArrayList<Token>();
+		while (scanner.next()) {
+			final Token token = new DefaultToken(scanner.token(), 0);
+
+			tokenize.add(token);
+			if (scanner.isProtected())
+				protectedTokens.add(token);
+			else
+				unprotectedTokens.add(token);
 		}
-
-		this.tokenize = post_process(res);
-		this.protectedTokens = post_process(badt);
-		this.unprotectedTokens = post_process(goodt);
-	}
-
-	private ArrayList<Token> post_process(ArrayList<Token> res) {
-		return res;
-	}
-
-	private List<Token> unprotected_tokenize(String goodString) {
-		final String[] strings = goodString.split("\\s+");
-		final List<Token> t = new ArrayList<Token>();
-		for (final String s : strings) {
-			if (s.isEmpty())
-				continue;
-			t.add(new DefaultToken(s, 0));
-		}
-		return t;
-	}
-
-	private void edge_punct_munge() {
-		// this.text = EdgePunctuationPatternProvider.fixedges(this.text);
-	}
-
-	private void squeeze_whitespace() {
-		this.text = this.text.replaceAll(spaceRegex, " ");
-	}
-
-	private void fixEncoding() throws UnsupportedEncodingException {
-		this.text = new String(text.getBytes("UTF-8"), "UTF-8");
-		this.text = StringEscapeUtils.unescapeHtml(this.text);
-		// System.out.println("UTF-8:" + text);
 	}
 
 	@Override
@@ -42,6 +42,7 @@ import org.openimaj.text.util.RegexUtil;
  */
 public class EmbeddedApostrophePatternProvider extends PatternProvider {
 	private final String EmbeddedApostrophe;
+	private final String NotPunctuation;
 	private final String[] potentialApostrphe = new String[] { "'", "\u2019", "\u2018", "\u201B", "\\-" };
 
 	/**
@@ -52,6 +53,7 @@ public class EmbeddedApostrophePatternProvider extends PatternProvider {
 		final List<String> puncs = punctuation.notMinus();
 		puncs.add(" ");
 		final String notpuncs = RegexUtil.regex_char_neg(puncs);
+		this.NotPunctuation = notpuncs;
 		final String apostrophePuncs = "(?:[" + StringUtils.join(potentialApostrphe, "]+|[") + "])"; // Exactly
 																										// 1
 																										// apostrophe
@@ -71,4 +73,19 @@ public class EmbeddedApostrophePatternProvider extends PatternProvider {
 		return EmbeddedApostrophe;
 	}
 
+	/**
+	 * @return a character class matching the characters that make up the
+	 *         words either side of the apostrophe
+	 */
+	public String nonPunctuationClass() {
+		return NotPunctuation;
+	}
+
+	/**
+	 * @return a character class matching any of the apostrophe characters
+	 */
+	public String apostropheClass() {
+		return "[" + StringUtils.join(potentialApostrphe, "") + "]";
+	}
+
 }
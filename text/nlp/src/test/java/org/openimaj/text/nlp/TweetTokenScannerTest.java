@@ -0,0 +1,172 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.text.nlp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+
+import org.apache.commons.lang.StringEscapeUtils;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link TweetTokenScanner}. The scanner is checked against a
+ * direct application of the {@link TweetTokeniser#Protect_RE} regex.
+ *
+ * @author agent
+ */
+public class TweetTokenScannerTest {
+	/**
+	 * Tokenise by matching the combined protection regex over the text; the
+	 * protected tokens are marked with a leading '!'
+	 */
+	private static List<String> reference(String s) throws UnsupportedEncodingException {
+		String text = new String(s.getBytes("UTF-8"), "UTF-8");
+		text = StringEscapeUtils.unescapeHtml(text);
+		text = text.replaceAll("\\s+", " ");
+
+		final List<String> tokens = new ArrayList<String>();
+		final Matcher matches = TweetTokeniser.Protect_RE.matcher(text);
+		int i = 0;
+		while (matches.find()) {
+			addUnprotected(tokens, text.substring(i, matches.start()));
+			tokens.add("!" + text.substring(matches.start(), matches.end()));
+			i = matches.end();
+		}
+		addUnprotected(tokens, text.substring(i));
+
+		return tokens;
+	}
+
+	private static void addUnprotected(List<String> tokens, String good) {
+		for (final String s : good.split("\\s+"))
+			if (!s.isEmpty())
+				tokens.add(s);
+	}
+
+	private static List<String> scan(TweetTokenScanner scanner, String s) {
+		final List<String> tokens = new ArrayList<String>();
+
+		scanner.reset(s);
+		while (scanner.next()) {
+			final String token = scanner.token();
+			assertEquals(token, scanner.text().substring(scanner.start(), scanner.end()));
+			tokens.add(scanner.isProtected() ? "!" + token : token);
+		}
+		assertFalse(scanner.next());
+
+		return tokens;
+	}
+
+	/**
+	 * Test that the scanner gives exactly the same tokens as the regex for
+	 * every tweet in the test corpus
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testCorpus() throws IOException {
+		final BufferedReader reader = new BufferedReader(new InputStreamReader(
+				TweetTokenScannerTest.class.getResourceAsStream("/org/openimaj/twitter/tweets.txt"), "UTF-8"));
+
+		final TweetTokenScanner scanner = new TweetTokenScanner();
+		String line = null;
+		int count = 0;
+		while ((line = reader.readLine()) != null) {
+			assertEquals(line, reference(line), scan(scanner, line));
+			count++;
+		}
+		reader.close();
+
+		assertEquals(4042, count);
+	}
+
+	/**
+	 * Test awkward inputs
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testEdgeCases() throws IOException {
+		final String[] tweets = {
+				"",
+				"   ",
+				"words\r\nacross new\nlines\t\tand  tabs ",
+				"RT:@someone &lt;3 &amp;&amp; &#9829; &quot;quoted&quot;",
+				"emoji \ud83d\ude00 and a lone \ud83d surrogate \ude00 here",
+				"\u30A2\u30DE\u30BE\u30F3\uFF0F\u6D0B\u66F8 #\u65B0\u7740 \uff20user \uff03tag",
+				"U.S.A. e.g. i.e.x a.b.c end.",
+				"mail me: some.one-else@example.co.uk, or x@y.z!",
+				"D'angelo= don't rock'n'roll \u2018quoted\u2019 it\u201Bs state-of-the-art",
+				"$10,000 for 1,234.56 at 18:00h on 2.5 -- \u2015 \u266b\u266b",
+				"http://bit.l... www.example.com/path?q=1 ftp://host.org :-)) :( x-D ;^) :$",
+				"(c) ( tm ) 8-0 o_O <3 \\o/ ..."
+		};
+
+		final TweetTokenScanner scanner = new TweetTokenScanner();
+		for (final String tweet : tweets)
+			assertEquals(tweet, reference(tweet), scan(scanner, tweet));
+	}
+
+	/**
+	 * Test that the {@link TweetTokeniser} produces the scanner's tokens
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testTweetTokeniser() throws Exception {
+		final String tweet = "RT @erkthajerk: @Erkthajerk beat sale going on now til march 31st. Contact redplanetmusicgroup@gmail.com";
+		final TweetTokeniser tokeniser = new TweetTokeniser(tweet);
+
+		final List<String> tokens = new ArrayList<String>();
+		final List<String> prot = new ArrayList<String>();
+		final List<String> unprot = new ArrayList<String>();
+		for (final String t : reference(tweet)) {
+			if (t.startsWith("!")) {
+				tokens.add(t.substring(1));
+				prot.add(t.substring(1));
+			} else {
+				tokens.add(t);
+				unprot.add(t);
+			}
+		}
+
+		assertEquals(tokens, tokeniser.getStringTokens());
+		assertEquals(prot, tokeniser.getProtectedStringTokens());
+		assertEquals(unprot, tokeniser.getUnprotectedStringTokens());
+	}
+}
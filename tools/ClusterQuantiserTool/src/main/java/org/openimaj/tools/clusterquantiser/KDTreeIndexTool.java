@@ -0,0 +1,109 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.tools.clusterquantiser;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+import org.openimaj.io.IOUtils;
+import org.openimaj.knn.approximate.ByteKDTreeEnsemble;
+import org.openimaj.knn.approximate.CompactByteKDTreeEnsemble;
+import org.openimaj.knn.approximate.CompactFloatKDTreeEnsemble;
+import org.openimaj.knn.approximate.FloatKDTreeEnsemble;
+import org.openimaj.knn.approximate.ByteNearestNeighboursKDTree;
+import org.openimaj.ml.clustering.ByteCentroidsResult;
+import org.openimaj.ml.clustering.FloatCentroidsResult;
+
+/**
+ * Tool to build the ensemble of KD-Trees for a byte or float centroids file
+ * (for example one created by {@link ClusterQuantiser}) and save it in the
+ * compact format that can be memory-mapped with
+ * {@link CompactByteKDTreeEnsemble#map(File, byte[][])} or
+ * {@link CompactFloatKDTreeEnsemble#map(File, float[][])}.
+ * 
+ * @author agent
+ */
+public class KDTreeIndexTool {
+	@Option(name = "--input", aliases = "-i", required = true, usage = "The centroids file")
+	File input;
+
+	@Option(name = "--output", aliases = "-o", required = true, usage = "The output index file")
+	File output;
+
+	@Option(name = "--num-trees", aliases = "-nt", required = false, usage = "The number of trees in the ensemble")
+	int ntrees = ByteNearestNeighboursKDTree.DEFAULT_NTREES;
+
+	@Option(name = "--seed", required = false, usage = "The seed for the random number generator used to build the trees")
+	int seed = 42;
+
+	/**
+	 * Build the index
+	 * 
+	 * @throws IOException
+	 */
+	public void run() throws IOException {
+		if (IOUtils.readable(input, ByteCentroidsResult.class)) {
+			final byte[][] centroids = IOUtils.read(input, ByteCentroidsResult.class).getCentroids();
+
+			IOUtils.writeBinary(output, new CompactByteKDTreeEnsemble(new ByteKDTreeEnsemble(centroids, ntrees, seed)));
+		} else if (IOUtils.readable(input, FloatCentroidsResult.class)) {
+			final float[][] centroids = IOUtils.read(input, FloatCentroidsResult.class).getCentroids();
+
+			IOUtils.writeBinary(output, new CompactFloatKDTreeEnsemble(new FloatKDTreeEnsemble(centroids, ntrees, seed)));
+		} else {
+			throw new IOException("Unsupported centroids file: " + input);
+		}
+	}
+
+	/**
+	 * The main method of the tool.
+	 * 
+	 * @param args
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		final KDTreeIndexTool tool = new KDTreeIndexTool();
+		final CmdLineParser parser = new CmdLineParser(tool);
+
+		try {
+			parser.parseArgument(args);
+		} catch (final CmdLineException e) {
+			System.err.println(e.getMessage());
+			System.err.println("java KDTreeIndexTool [options...]");
+			parser.printUsage(System.err);
+			return;
+		}
+
+		tool.run();
+	}
+}
@@ -177,7 +177,32 @@ public enum LocalFeatureMode implements CmdLineOptionsProvider {
 		 * @return the features
 		 * @throws IOException
 		 */
-		public abstract LocalFeatureList<? extends LocalFeature<?, ?>> extract(byte[] image) throws IOException;
+		public LocalFeatureList<? extends LocalFeature<?, ?>> extract(byte[] image) throws IOException {
+			return extractDecoded(decode(image));
+		}
+
+		/**
+		 * Decode an image in exactly the way that {@link #extract(byte[])}
+		 * does, so that decoding can be separated from extraction. The result
+		 * is only meaningful to {@link #extractDecoded(Image)}.
+		 *
+		 * @param image
+		 *            the image
+		 * @return the decoded image
+		 * @throws IOException
+		 */
+		public abstract Image<?, ?> decode(byte[] image) throws IOException;
+
+		/**
+		 * Extract features from an image produced by {@link #decode(byte[])}.
+		 * The features are identical to those that {@link #extract(byte[])}
+		 * would produce from the original bytes.
+		 *
+		 * @param image
+		 *            the decoded image
+		 * @return the features
+		 */
+		public abstract LocalFeatureList<? extends LocalFeature<?, ?>> extractDecoded(Image<?, ?> image);
 
 		private LocalFeatureModeOp(LocalFeatureMode mode) {
 			this.mode = mode;
@@ -231,8 +256,8 @@ public enum LocalFeatureMode implements CmdLineOptionsProvider {
 		}
 
 		@Override
-		public LocalFeatureList<Keypoint> extract(byte[] img) throws IOException {
-			return extract(cmOp.process(img));
+		public Image<?, ?> decode(byte[] img) throws IOException {
+			return cmOp.process(img);
 		}
 
 		@Override
@@ -242,10 +267,11 @@ public enum LocalFeatureMode implements CmdLineOptionsProvider {
 
 		@Override
 		public LocalFeatureList<Keypoint> extractFeature(MBFImage img) {
-			return extract(cmOp.process(img));
+			return extractDecoded(cmOp.process(img));
 		}
 
-		private LocalFeatureList<Keypoint> extract(Image<?, ?> image) {
+		@Override
+		public LocalFeatureList<Keypoint> extractDecoded(Image<?, ?> image) {
 			LocalFeatureList<Keypoint> keys = null;
 			switch (this.cm) {
 			case SINGLE_COLOUR:
@@ -276,13 +302,18 @@ public enum LocalFeatureMode implements CmdLineOptionsProvider {
 		}
 
 		@Override
-		public LocalFeatureList<? extends Keypoint> extract(byte[] img) throws IOException {
+		public Image<?, ?> decode(byte[] img) throws IOException {
+			return cmOp.process(img);
+		}
+
+		@Override
+		public LocalFeatureList<? extends Keypoint> extractDecoded(Image<?, ?> img) {
 			final MinMaxDoGSIFTEngine engine = new MinMaxDoGSIFTEngine();
 			LocalFeatureList<MinMaxKeypoint> keys = null;
 			switch (this.cm) {
 			case SINGLE_COLOUR:
 			case INTENSITY:
-				keys = engine.findFeatures((FImage) itOp.transform(cmOp.process(img)));
+				keys = engine.findFeatures((FImage) itOp.transform(img));
 				break;
 			case INTENSITY_COLOUR:
 				throw new UnsupportedOperationException();
@@ -324,37 +355,29 @@ public enum LocalFeatureMode implements CmdLineOptionsProvider {
 		public int ntilts = 5;
 
 		@Override
-		public LocalFeatureList<Keypoint> extract(byte[] image) throws IOException {
-			LocalFeatureList<Keypoint> keys = null;
-
-			switch (this.cm) {
-			case SINGLE_COLOUR:
-			case INTENSITY:
-				final BasicASIFT basic = new BasicASIFT(!noDoubleImageSize);
-				basic.detectFeatures((FImage) itOp.transform(cmOp.process(image)), ntilts);
-				keys = basic.getFeatures();
-				break;
-			case INTENSITY_COLOUR:
-				final ColourASIFT colour = new ColourASIFT(!noDoubleImageSize);
-				colour.detectFeatures((MBFImage) itOp.transform(cmOp.process(image)), ntilts);
-			}
-			return keys;
+		public Image<?, ?> decode(byte[] image) throws IOException {
+			return cmOp.process(image);
 		}
 
 		@Override
 		public LocalFeatureList<Keypoint> extractFeature(MBFImage image) {
+			return extractDecoded(cmOp.process(image));
+		}
+
+		@Override
+		public LocalFeatureList<Keypoint> extractDecoded(Image<?, ?> image) {
 			LocalFeatureList<Keypoint> keys = null;
 
 			switch (this.cm) {
 			case SINGLE_COLOUR:
 			case INTENSITY:
 				final BasicASIFT basic = new BasicASIFT(!noDoubleImageSize);
-				basic.detectFeatures((FImage) itOp.transform(cmOp.process(image)), ntilts);
+				basic.detectFeatures((FImage) itOp.transform(image), ntilts);
 				keys = basic.getFeatures();
 				break;
 			case INTENSITY_COLOUR:
 				final ColourASIFT colour = new ColourASIFT(!noDoubleImageSize);
-				colour.detectFeatures((MBFImage) itOp.transform(cmOp.process(image)), ntilts);
+				colour.detectFeatures((MBFImage) itOp.transform(image), ntilts);
 			}
 			return keys;
 		}
@@ -377,39 +400,29 @@ public enum LocalFeatureMode implements CmdLineOptionsProvider {
 		public int ntilts = 5;
 
 		@Override
-		public LocalFeatureList<AffineSimulationKeypoint> extract(byte[] image) throws IOException {
-			final ASIFTEngine engine = new ASIFTEngine(!noDoubleImageSize, ntilts);
-			LocalFeatureList<AffineSimulationKeypoint> keys = null;
-			switch (this.cm) {
-			case SINGLE_COLOUR:
-			case INTENSITY:
-				FImage img = (FImage) cmOp.process(image);
-				img = (FImage) itOp.transform(img);
-				keys = engine.findFeatures(img);
-				break;
-			case INTENSITY_COLOUR:
-				final ColourASIFTEngine colourengine = new ColourASIFTEngine(!noDoubleImageSize, ntilts);
-				MBFImage colourimg = (MBFImage) cmOp.process(image);
-				colourimg = (MBFImage) itOp.transform(colourimg);
-				keys = colourengine.findFeatures(colourimg);
-			}
-			return keys;
+		public Image<?, ?> decode(byte[] image) throws IOException {
+			return cmOp.process(image);
 		}
 
 		@Override
 		public LocalFeatureList<AffineSimulationKeypoint> extractFeature(MBFImage image) {
+			return extractDecoded(cmOp.process(image));
+		}
+
+		@Override
+		public LocalFeatureList<AffineSimulationKeypoint> extractDecoded(Image<?, ?> image) {
 			final ASIFTEngine engine = new ASIFTEngine(!noDoubleImageSize, ntilts);
 			LocalFeatureList<AffineSimulationKeypoint> keys = null;
 			switch (this.cm) {
 			case SINGLE_COLOUR:
 			case INTENSITY:
-				FImage img = (FImage) cmOp.process(image);
+				FImage img = (FImage) image;
 				img = (FImage) itOp.transform(img);
 				keys = engine.findFeatures(img);
 				break;
 			case INTENSITY_COLOUR:
 				final ColourASIFTEngine colourengine = new ColourASIFTEngine(!noDoubleImageSize, ntilts);
-				MBFImage colourimg = (MBFImage) cmOp.process(image);
+				MBFImage colourimg = (MBFImage) image;
 				colourimg = (MBFImage) itOp.transform(colourimg);
 				keys = colourengine.findFeatures(colourimg);
 			}
@@ -508,8 +521,13 @@ public enum LocalFeatureMode implements CmdLineOptionsProvider {
 		}
 
 		@Override
-		public LocalFeatureList<? extends LocalFeature<?, ?>> extract(byte[] image) throws IOException {
-			return extract(ImageUtilities.readF(new ByteArrayInputStream(image)));
+		public Image<?, ?> decode(byte[] image) throws IOException {
+			return ImageUtilities.readF(new ByteArrayInputStream(image));
+		}
+
+		@Override
+		public LocalFeatureList<? extends LocalFeature<?, ?>> extractDecoded(Image<?, ?> image) {
+			return extract((FImage) image);
 		}
 
 		@Override
@@ -559,8 +577,13 @@ public enum LocalFeatureMode implements CmdLineOptionsProvider {
 		}
 
 		@Override
-		public LocalFeatureList<? extends LocalFeature<?, ?>> extract(byte[] image) throws IOException {
-			return extractFeature(ImageUtilities.readMBF(new ByteArrayInputStream(image)));
+		public Image<?, ?> decode(byte[] image) throws IOException {
+			return ImageUtilities.readMBF(new ByteArrayInputStream(image));
+		}
+
+		@Override
+		public LocalFeatureList<? extends LocalFeature<?, ?>> extractDecoded(Image<?, ?> image) {
+			return extractFeature((MBFImage) image);
 		}
 
 		@Override
@@ -611,8 +634,13 @@ public enum LocalFeatureMode implements CmdLineOptionsProvider {
 		}
 
 		@Override
-		public LocalFeatureList<? extends LocalFeature<?, ?>> extract(byte[] image) throws IOException {
-			return extractFeature(ImageUtilities.readF(new ByteArrayInputStream(image)));
+		public Image<?, ?> decode(byte[] image) throws IOException {
+			return ImageUtilities.readF(new ByteArrayInputStream(image));
+		}
+
+		@Override
+		public LocalFeatureList<? extends LocalFeature<?, ?>> extractDecoded(Image<?, ?> image) {
+			return extractFeature((FImage) image);
 		}
 
 		@Override
@@ -673,8 +701,13 @@ public enum LocalFeatureMode implements CmdLineOptionsProvider {
 		}
 
 		@Override
-		public LocalFeatureList<? extends LocalFeature<?, ?>> extract(byte[] image) throws IOException {
-			return extractFeature(ImageUtilities.readMBF(new ByteArrayInputStream(image)));
+		public Image<?, ?> decode(byte[] image) throws IOException {
+			return ImageUtilities.readMBF(new ByteArrayInputStream(image));
+		}
+
+		@Override
+		public LocalFeatureList<? extends LocalFeature<?, ?>> extractDecoded(Image<?, ?> image) {
+			return extractFeature((MBFImage) image);
 		}
 
 		@Override
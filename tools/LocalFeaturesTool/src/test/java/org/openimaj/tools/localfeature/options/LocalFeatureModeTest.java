@@ -0,0 +1,137 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.tools.localfeature.options;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.openimaj.feature.local.LocalFeature;
+import org.openimaj.feature.local.list.LocalFeatureList;
+import org.openimaj.image.ImageUtilities;
+import org.openimaj.image.MBFImage;
+import org.openimaj.image.processing.resize.ResizeProcessor;
+import org.openimaj.io.IOUtils;
+import org.openimaj.tools.localfeature.options.LocalFeatureMode.LocalFeatureModeOp;
+
+/**
+ * Tests for {@link LocalFeatureMode}
+ * 
+ * @author agent
+ */
+public class LocalFeatureModeTest {
+	private byte[] colour;
+	private byte[] grey;
+
+	/**
+	 * Create small colour and greyscale test images
+	 * 
+	 * @throws IOException
+	 */
+	@Before
+	public void setup() throws IOException {
+		final MBFImage image = ImageUtilities.readMBF(getClass().getResourceAsStream(
+				"/org/openimaj/image/data/cat.jpg")).process(new ResizeProcessor(96, 96));
+
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		ImageUtilities.write(image, "png", baos);
+		colour = baos.toByteArray();
+
+		baos = new ByteArrayOutputStream();
+		ImageUtilities.write(image.flatten(), "png", baos);
+		grey = baos.toByteArray();
+	}
+
+	private static LocalFeatureModeOp createOptions(LocalFeatureMode mode, String... args) throws CmdLineException {
+		final LocalFeatureModeOp op = mode.getOptions();
+
+		String[] all = args;
+		if (mode == LocalFeatureMode.PYRAMID_DENSE_SIFT || mode == LocalFeatureMode.PYRAMID_COLOUR_DENSE_SIFT)
+			all = concat(args, "--sizes", "4", "--sizes", "8");
+		else if (mode == LocalFeatureMode.ASIFT || mode == LocalFeatureMode.ASIFTENRICHED)
+			all = concat(args, "--n-tilts", "2");
+
+		new CmdLineParser(op).parseArgument(all);
+		return op;
+	}
+
+	private static String[] concat(String[] a, String... b) {
+		final String[] out = new String[a.length + b.length];
+		System.arraycopy(a, 0, out, 0, a.length);
+		System.arraycopy(b, 0, out, a.length, b.length);
+		return out;
+	}
+
+	private static byte[] serialise(LocalFeatureList<? extends LocalFeature<?, ?>> features) throws IOException {
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		IOUtils.writeBinary(baos, features);
+		return baos.toByteArray();
+	}
+
+	private void checkDecodeThenExtract(String... args) throws Exception {
+		for (final LocalFeatureMode mode : LocalFeatureMode.values()) {
+			for (final byte[] image : new byte[][] { colour, grey }) {
+				final LocalFeatureModeOp op = createOptions(mode, args);
+
+				final byte[] expected = serialise(op.extract(image));
+				final byte[] actual = serialise(op.extractDecoded(op.decode(image)));
+
+				assertArrayEquals(mode.name(), expected, actual);
+			}
+		}
+	}
+
+	/**
+	 * Decoding and then extracting separately must give exactly the same
+	 * features as extracting from the bytes in every mode
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testDecodeThenExtract() throws Exception {
+		checkDecodeThenExtract();
+	}
+
+	/**
+	 * As {@link #testDecodeThenExtract()}, but with an image transform, which
+	 * must be applied at the same point in both cases
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testDecodeThenExtractWithTransform() throws Exception {
+		checkDecodeThenExtract("-it", "RESIZE_MAX", "-dmax", "64");
+	}
+}
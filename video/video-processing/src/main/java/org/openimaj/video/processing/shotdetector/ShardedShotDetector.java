@@ -0,0 +1,252 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ *
+ */
+package org.openimaj.video.processing.shotdetector;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.openimaj.image.Image;
+import org.openimaj.util.parallel.GlobalExecutorPool;
+import org.openimaj.video.processor.ShardedVideoProcessor;
+import org.openimaj.video.processor.ShardedVideoProcessor.ProcessorFactory;
+import org.openimaj.video.processor.ShardedVideoProcessor.Shard;
+import org.openimaj.video.processor.ShardedVideoProcessor.VideoFactory;
+import org.openimaj.video.timecode.HrsMinSecFrameTimecode;
+import org.openimaj.video.timecode.VideoTimecode;
+
+/**
+ *	Offline shot detection that processes time shards of a video
+ *	concurrently using a {@link ShardedVideoProcessor}, and stitches the
+ *	results back together so that they are the same as those of a
+ *	single detector run over the whole video.
+ *	<p>
+ *	Each shard is processed by its own detector (from the given factory)
+ *	starting one frame before the shard, so that the interframe distance
+ *	of its first frame is computed against the true previous frame. The
+ *	distances of the frames owned by each shard are then concatenated and
+ *	replayed through the shot boundary logic of a single detector (see
+ *	{@link VideoShotDetector#checkForShotBoundary(double, Image)}), so
+ *	that fades spanning the seams between shards are merged exactly as they
+ *	would be sequentially. Keyframes are taken from the frames at which the
+ *	shard detectors exceeded the threshold.
+ *	<p>
+ *	This requires that the interframe distance of a detector only depends on
+ *	the current and previous frames, which is true for the detectors in this
+ *	package.
+ *
+ *	@author agent
+ *
+ *	@param <I> The type of image
+ */
+public class ShardedShotDetector<I extends Image<?,I>>
+{
+	/**
+	 *	Detector used to replay the stitched interframe distances.
+	 *
+	 *	@param <I> The type of image
+	 */
+	private static class StitchedShotDetector<I extends Image<?,I>>
+		extends VideoShotDetector<I>
+	{
+		public StitchedShotDetector( final double fps, final double threshold )
+		{
+			super( fps );
+			this.threshold = threshold;
+			this.setFindKeyframes( false );
+			this.setStoreAllDifferentials( true );
+		}
+
+		@Override
+		protected double getInterframeDistance( final I thisFrame )
+		{
+			throw new UnsupportedOperationException(
+					"Stitched detectors can only replay existing distances" );
+		}
+	}
+
+	/**
+	 *	Listener that keeps a copy of the frames that could become keyframes;
+	 *	that is, those whose distance exceeds the threshold, and the first
+	 *	frame. Frame numbers are those seen by the shard detector.
+	 *
+	 *	@param <I> The type of image
+	 */
+	private static class BoundaryFrameRecorder<I extends Image<?,I>>
+		implements ShotDetectedListener<I>
+	{
+		private final double threshold;
+		private final TreeMap<Long, I> frames = new TreeMap<Long, I>();
+
+		public BoundaryFrameRecorder( final double threshold )
+		{
+			this.threshold = threshold;
+		}
+
+		@Override
+		public void shotDetected( final ShotBoundary<I> sb, final VideoKeyframe<I> vk )
+		{
+			// not used
+		}
+
+		@Override
+		public void differentialCalculated( final VideoTimecode vt, final double d, final I frame )
+		{
+			if( frame != null && (d > this.threshold || vt.getFrameNumber() == 0) )
+				this.frames.put( vt.getFrameNumber(), frame.clone() );
+		}
+	}
+
+	private final VideoFactory<I> videoFactory;
+	private final ProcessorFactory<I, ? extends VideoShotDetector<I>> detectorFactory;
+	private final int numShards;
+	private final ThreadPoolExecutor pool;
+
+	/**
+	 *	Construct with the given factories and number of shards. Processing
+	 *	uses the {@link GlobalExecutorPool}.
+	 *
+	 *	@param videoFactory Factory for independent instances of the video
+	 *	@param detectorFactory Factory for the shot detectors
+	 *	@param numShards The number of shards to split the video into
+	 */
+	public ShardedShotDetector( final VideoFactory<I> videoFactory,
+			final ProcessorFactory<I, ? extends VideoShotDetector<I>> detectorFactory,
+			final int numShards )
+	{
+		this( videoFactory, detectorFactory, numShards, GlobalExecutorPool.getPool() );
+	}
+
+	/**
+	 *	Construct with the given factories, number of shards and thread pool.
+	 *
+	 *	@param videoFactory Factory for independent instances of the video
+	 *	@param detectorFactory Factory for the shot detectors
+	 *	@param numShards The number of shards to split the video into
+	 *	@param pool The thread pool used to process the shards
+	 */
+	public ShardedShotDetector( final VideoFactory<I> videoFactory,
+			final ProcessorFactory<I, ? extends VideoShotDetector<I>> detectorFactory,
+			final int numShards, final ThreadPoolExecutor pool )
+	{
+		this.videoFactory = videoFactory;
+		this.detectorFactory = detectorFactory;
+		this.numShards = numShards;
+		this.pool = pool;
+	}
+
+	/**
+	 *	Detect the shots in the video. The returned detector holds the shot
+	 *	boundaries and interframe distances of the whole video, as if it
+	 *	had processed the video itself.
+	 *
+	 *	@return A detector containing the stitched results
+	 */
+	public VideoShotDetector<I> detect()
+	{
+		final Map<VideoShotDetector<I>, BoundaryFrameRecorder<I>> recorders =
+				new IdentityHashMap<VideoShotDetector<I>, BoundaryFrameRecorder<I>>();
+
+		final ProcessorFactory<I, VideoShotDetector<I>> factory =
+				new ProcessorFactory<I, VideoShotDetector<I>>()
+		{
+			@Override
+			public VideoShotDetector<I> create()
+			{
+				final VideoShotDetector<I> d = ShardedShotDetector.this.detectorFactory.create();
+				d.setStoreAllDifferentials( true );
+				d.setFindKeyframes( false );
+
+				final BoundaryFrameRecorder<I> r = new BoundaryFrameRecorder<I>( d.getThreshold() );
+				d.addShotDetectedListener( r );
+				synchronized( recorders )
+				{
+					recorders.put( d, r );
+				}
+				return d;
+			}
+		};
+
+		final ShardedVideoProcessor<I, VideoShotDetector<I>> svp =
+				new ShardedVideoProcessor<I, VideoShotDetector<I>>(
+						this.videoFactory, factory, this.numShards, 1, this.pool );
+		final List<Shard<VideoShotDetector<I>>> shards = svp.process();
+		final double fps = svp.getFPS();
+
+		final StitchedShotDetector<I> stitched = new StitchedShotDetector<I>(
+				fps, this.detectorFactory.create().getThreshold() );
+
+		// The keyframe images found by the shards, by absolute frame number
+		final TreeMap<Long, I> keyframes = new TreeMap<Long, I>();
+
+		for( final Shard<VideoShotDetector<I>> shard : shards )
+		{
+			final double[] diffs = shard.processor.getDifferentials().values;
+			for( int i = 0; i < diffs.length; i++ )
+				if( shard.owns( i ) )
+					stitched.checkForShotBoundary( diffs[i], null );
+
+			// The shard detectors' own boundaries can't be used for this, as
+			// their start shot may have merged a real boundary into a fade
+			for( final Map.Entry<Long, I> e : recorders.get( shard.processor ).frames.entrySet() )
+				if( shard.owns( e.getKey() ) )
+					keyframes.put( shard.toAbsolute( e.getKey() ), e.getValue() );
+		}
+
+		for( final ShotBoundary<I> sb : stitched.getShotBoundaries() )
+		{
+			long frame = sb.getTimecode().getFrameNumber();
+			if( sb instanceof FadeShotBoundary )
+			{
+				// The keyframe of a fade is the frame of the boundary
+				// that turned it into a fade
+				final FadeShotBoundary<I> fsb = (FadeShotBoundary<I>) sb;
+				final Long next = keyframes.higherKey( fsb.getStartTimecode().getFrameNumber() );
+				frame = next == null ? -1 : next;
+				if( frame > fsb.getEndTimecode().getFrameNumber() )
+					frame = -1;
+			}
+
+			final I image = keyframes.get( frame );
+			if( image != null )
+			{
+				final VideoTimecode tc = new HrsMinSecFrameTimecode( frame, fps );
+				sb.setKeyframe( new VideoKeyframe<I>( tc, image ) );
+			}
+		}
+
+		return stitched;
+	}
+}
@@ -262,15 +262,29 @@ public abstract class VideoShotDetector<I extends Image<?,I>>
 	 *  @param frame The new frame to process.
 	 */
 	private void checkForShotBoundary( final I frame )
+	{
+		this.checkForShotBoundary( this.getInterframeDistance( frame ), frame );
+	}
+
+	/**
+	 * 	Checks whether the given interframe distance (between the given frame
+	 * 	and the previous frame) represents a shot boundary, and if so, it will
+	 * 	add a shot boundary to the shot boundary list. This allows distances
+	 * 	that have already been computed (for example by detectors working on
+	 * 	separate parts of a video) to be replayed through the boundary logic.
+	 *
+	 *	@param dist The distance between the frame and the previous frame
+	 *  @param frame The new frame to process.
+	 */
+	protected void checkForShotBoundary( final double dist, final I frame )
 	{
 		this.lastFrameWasBoundary = false;
-		final double dist = this.getInterframeDistance( frame );
 
 		if( this.storeAllDiffs )
 		{
 			this.differentials.add( dist );
 			this.fireDifferentialCalculated( new HrsMinSecFrameTimecode(
-					this.frameCounter, this.video.getFPS() ), dist, frame );
+					this.frameCounter, this.fps ), dist, frame );
 		}
 
 //		System.out.println( "is "+dist+" > "+this.threshold+"? "+(dist>this.threshold) );
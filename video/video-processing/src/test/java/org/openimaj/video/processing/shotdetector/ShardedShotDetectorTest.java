@@ -0,0 +1,273 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.video.processing.shotdetector;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openimaj.image.MBFImage;
+import org.openimaj.video.ArrayBackedVideo;
+import org.openimaj.video.Video;
+import org.openimaj.video.processor.ShardedVideoProcessor.ProcessorFactory;
+import org.openimaj.video.processor.ShardedVideoProcessor.VideoFactory;
+
+/**
+ * Tests for {@link ShardedShotDetector}
+ *
+ * @author agent
+ */
+public class ShardedShotDetectorTest {
+	private static final double FPS = 25;
+	private static final double THRESHOLD = 0.05;
+	private static final int NFRAMES = 300;
+
+	private MBFImage[] frames;
+	private HistogramVideoShotDetector sequential;
+
+	/**
+	 * Create a synthetic video with hard cuts (one of them exactly on the
+	 * shard seam at frame 200 for 3 shards), and fades running across the
+	 * shard seams at frame 100 (3 shards) and 150 (2 and 4 shards). The
+	 * sequential results are computed frame by frame.
+	 */
+	@Before
+	public void setup() {
+		final Random rng = new Random(1);
+		frames = new MBFImage[NFRAMES];
+
+		float[] col = { 0.2f, 0.5f, 0.8f };
+		for (int i = 0; i < NFRAMES; i++) {
+			if (i % 37 == 0 || i == 200 || (i >= 99 && i <= 101) || i == 149 || i == 150)
+				col = new float[] { rng.nextFloat(), rng.nextFloat(), rng.nextFloat() };
+
+			frames[i] = new MBFImage(32, 24, 3);
+			frames[i].fill(new Float[] { col[0], col[1], col[2] });
+			frames[i].getBand(0).pixels[0][0] = rng.nextFloat() * 0.01f;
+		}
+
+		sequential = createDetector();
+		sequential.setStoreAllDifferentials(true);
+		for (final MBFImage frame : frames)
+			sequential.processFrame(frame);
+		sequential.processingComplete();
+	}
+
+	private HistogramVideoShotDetector createDetector() {
+		final HistogramVideoShotDetector d = new HistogramVideoShotDetector(FPS);
+		d.setThreshold(THRESHOLD);
+		return d;
+	}
+
+	private VideoShotDetector<MBFImage> detectSharded(int numShards) {
+		return detectSharded(new VideoFactory<MBFImage>() {
+			@Override
+			public Video<MBFImage> create() {
+				return new ArrayBackedVideo<MBFImage>(frames, FPS, false);
+			}
+		}, numShards);
+	}
+
+	private VideoShotDetector<MBFImage> detectSharded(VideoFactory<MBFImage> videoFactory, int numShards) {
+
+		final ProcessorFactory<MBFImage, HistogramVideoShotDetector> detectorFactory =
+				new ProcessorFactory<MBFImage, HistogramVideoShotDetector>() {
+					@Override
+					public HistogramVideoShotDetector create() {
+						return createDetector();
+					}
+				};
+
+		return new ShardedShotDetector<MBFImage>(videoFactory, detectorFactory, numShards).detect();
+	}
+
+	/**
+	 * Video over the synthetic frames with the frame numbering and seeking
+	 * of a decoder-backed video
+	 */
+	private class DecoderLikeVideo extends Video<MBFImage> {
+		private final MBFImage buffer = new MBFImage(32, 24, 3);
+		private int current = -1;
+
+		@Override
+		public MBFImage getNextFrame() {
+			if (current + 1 >= frames.length)
+				return null;
+
+			buffer.internalCopy(frames[++current]);
+			return buffer;
+		}
+
+		@Override
+		public MBFImage getCurrentFrame() {
+			return buffer;
+		}
+
+		@Override
+		public int getCurrentFrameIndex() {
+			return Math.max(current, 0);
+		}
+
+		@Override
+		public void setCurrentFrameIndex(long newFrame) {
+			current = (int) newFrame - 1;
+			getNextFrame();
+		}
+
+		@Override
+		public boolean hasNextFrame() {
+			return current + 1 < frames.length;
+		}
+
+		@Override
+		public long countFrames() {
+			return frames.length;
+		}
+
+		@Override
+		public void reset() {
+			current = -1;
+		}
+
+		@Override
+		public long getTimeStamp() {
+			return (long) (getCurrentFrameIndex() * 1000 / FPS);
+		}
+
+		@Override
+		public double getFPS() {
+			return FPS;
+		}
+
+		@Override
+		public int getWidth() {
+			return buffer.getWidth();
+		}
+
+		@Override
+		public int getHeight() {
+			return buffer.getHeight();
+		}
+	}
+
+	private boolean spans(ShotBoundary<MBFImage> sb, long seam) {
+		if (!(sb instanceof FadeShotBoundary))
+			return false;
+
+		final FadeShotBoundary<MBFImage> fsb = (FadeShotBoundary<MBFImage>) sb;
+		return fsb.getStartTimecode().getFrameNumber() < seam && fsb.getEndTimecode().getFrameNumber() >= seam;
+	}
+
+	/**
+	 * The synthetic video must actually contain fades across the seams,
+	 * otherwise the other tests prove nothing
+	 */
+	@Test
+	public void testFadesCrossSeams() {
+		boolean at100 = false, at150 = false;
+		for (final ShotBoundary<MBFImage> sb : sequential.getShotBoundaries()) {
+			at100 |= spans(sb, 100);
+			at150 |= spans(sb, 150);
+		}
+
+		assertTrue(at100);
+		assertTrue(at150);
+	}
+
+	/**
+	 * The stitched boundaries and interframe distances must match the
+	 * sequential detector for any number of shards
+	 */
+	@Test
+	public void testBoundariesAndDistances() {
+		for (final int numShards : new int[] { 1, 2, 3, 4, 7 }) {
+			final VideoShotDetector<MBFImage> sharded = detectSharded(numShards);
+
+			assertEquals(sequential.getShotBoundaries().toString(), sharded.getShotBoundaries().toString());
+			assertArrayEquals(sequential.getDifferentials().values, sharded.getDifferentials().values, 0);
+		}
+	}
+
+	/**
+	 * Sharding must give the sequential results for a video that, like
+	 * <code>XuggleVideo</code>, reports the last frame returned as the
+	 * current frame, seeks so that the requested frame is the current one,
+	 * and decodes every frame into the same image
+	 */
+	@Test
+	public void testDecoderLikeVideo() {
+		final VideoFactory<MBFImage> videoFactory = new VideoFactory<MBFImage>() {
+			@Override
+			public Video<MBFImage> create() {
+				return new DecoderLikeVideo();
+			}
+		};
+
+		for (final int numShards : new int[] { 2, 3, 4 }) {
+			final VideoShotDetector<MBFImage> sharded = detectSharded(videoFactory, numShards);
+
+			assertEquals(sequential.getShotBoundaries().toString(), sharded.getShotBoundaries().toString());
+			assertArrayEquals(sequential.getDifferentials().values, sharded.getDifferentials().values, 0);
+		}
+	}
+
+	/**
+	 * The stitched keyframes must match those of the sequential detector
+	 * for any number of shards
+	 */
+	@Test
+	public void testKeyframes() {
+		final List<ShotBoundary<MBFImage>> expected = sequential.getShotBoundaries();
+
+		for (final int numShards : new int[] { 1, 2, 3, 4, 7 }) {
+			final List<ShotBoundary<MBFImage>> actual = detectSharded(numShards).getShotBoundaries();
+			assertEquals(expected.size(), actual.size());
+
+			for (int i = 0; i < expected.size(); i++) {
+				final VideoKeyframe<MBFImage> e = expected.get(i).getKeyframe();
+				final VideoKeyframe<MBFImage> a = actual.get(i).getKeyframe();
+				assertNotNull(e);
+				assertNotNull(a);
+
+				assertEquals(e.getTimecode().getFrameNumber(), a.getTimecode().getFrameNumber());
+				for (int b = 0; b < 3; b++) {
+					for (int y = 0; y < e.getImage().getHeight(); y++)
+						assertArrayEquals(e.getImage().getBand(b).pixels[y], a.getImage().getBand(b).pixels[y], 0f);
+				}
+			}
+		}
+	}
+}
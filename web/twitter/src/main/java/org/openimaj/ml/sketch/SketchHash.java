@@ -0,0 +1,134 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.ml.sketch;
+
+/**
+ * Seeded 64-bit hashing for the primitive sketches. A single hash of an item
+ * is computed once and split into two 32-bit halves from which the
+ * per-row/per-probe locations are derived by double hashing (Kirsch &amp;
+ * Mitzenmacher, "Less Hashing, Same Performance: Building a Better Bloom
+ * Filter"). Strings are hashed directly from their characters, so no byte
+ * array is allocated per update.
+ * <p>
+ * The hash of an item only depends on the seed, so sketches built with the
+ * same seed (and dimensions) on different machines can be merged.
+ * 
+ * @author agent
+ */
+public final class SketchHash {
+	private static final long C1 = 0x87c37b91114253d5L;
+	private static final long C2 = 0x4cf5ad432745937fL;
+
+	private SketchHash() {
+	}
+
+	/**
+	 * Compute the 64-bit hash of the characters of the given sequence. The
+	 * mixing follows the MurmurHash3 x64 body and finaliser, processing four
+	 * UTF-16 code units per step.
+	 * 
+	 * @param data
+	 *            the data to hash
+	 * @param seed
+	 *            the seed
+	 * @return the hash
+	 */
+	public static long hash(CharSequence data, long seed) {
+		final int len = data.length();
+		long h = seed;
+
+		int i = 0;
+		for (; i + 4 <= len; i += 4) {
+			final long k = data.charAt(i) |
+					((long) data.charAt(i + 1) << 16) |
+					((long) data.charAt(i + 2) << 32) |
+					((long) data.charAt(i + 3) << 48);
+
+			h ^= mixK(k);
+			h = Long.rotateLeft(h, 27) * 5 + 0x52dce729;
+		}
+
+		if (i < len) {
+			long k = 0;
+			for (int shift = 0; i < len; i++, shift += 16)
+				k |= (long) data.charAt(i) << shift;
+			h ^= mixK(k);
+		}
+
+		return fmix(h ^ len);
+	}
+
+	/**
+	 * Compute the 64-bit hash of a primitive key (for example a token id or a
+	 * hash computed elsewhere).
+	 * 
+	 * @param key
+	 *            the key to hash
+	 * @param seed
+	 *            the seed
+	 * @return the hash
+	 */
+	public static long hash(long key, long seed) {
+		return fmix(seed ^ mixK(key));
+	}
+
+	/**
+	 * Get the location of the <code>i</code>th probe of the given hash in a
+	 * table of the given width.
+	 * 
+	 * @param hash
+	 *            the 64-bit hash of the item
+	 * @param i
+	 *            the probe (row) number
+	 * @param width
+	 *            the width of the table
+	 * @return the location in <code>[0, width)</code>
+	 */
+	public static int index(long hash, int i, int width) {
+		final int combined = (int) hash + i * (int) (hash >>> 32);
+
+		return (combined & Integer.MAX_VALUE) % width;
+	}
+
+	private static long mixK(long k) {
+		k *= C1;
+		k = Long.rotateLeft(k, 31);
+		return k * C2;
+	}
+
+	private static long fmix(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+}
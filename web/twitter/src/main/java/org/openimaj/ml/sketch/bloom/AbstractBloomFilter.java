@@ -0,0 +1,369 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.ml.sketch.bloom;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+
+import org.openimaj.io.ReadWriteableBinary;
+import org.openimaj.ml.sketch.SketchHash;
+import org.openimaj.ml.sketch.SummarySketcher;
+
+/**
+ * Base class for Bloom filters backed by a fixed size bit set packed into
+ * longs. The probe locations of an item are derived from a single seeded hash
+ * (see {@link SketchHash}), so filters with the same number of bits, number
+ * of hashes and seed can be {@link #merge merged} (by OR-ing their bits).
+ * <p>
+ * The binary form written by {@link #writeBinary(DataOutput)} is a small
+ * fixed header followed directly by the big-endian words of the bit set, so a
+ * serialised partial can be merged straight out of a {@link ByteBuffer} with
+ * {@link #merge(ByteBuffer)}.
+ * 
+ * @author agent
+ */
+public abstract class AbstractBloomFilter implements SummarySketcher<String, Boolean>, ReadWriteableBinary {
+	private static final byte[] HEADER = "BLMF".getBytes();
+
+	/** The size of the serialised header in bytes */
+	public static final int HEADER_BYTES = 4 + 4 + 8;
+
+	protected int numBits;
+	protected int numHashes;
+	protected long seed;
+
+	protected AbstractBloomFilter(int numBits, int numHashes, long seed) {
+		if (numBits <= 0 || numHashes <= 0)
+			throw new IllegalArgumentException("Invalid filter dimensions: " + numBits + " bits, " + numHashes
+					+ " hashes");
+
+		this.numBits = numBits;
+		this.numHashes = numHashes;
+		this.seed = seed;
+		allocate(numWords());
+	}
+
+	/**
+	 * Compute the number of bits required to hold the given number of items
+	 * with the given false positive probability.
+	 * 
+	 * @param expectedItems
+	 *            the expected number of distinct items
+	 * @param fpp
+	 *            the desired false positive probability
+	 * @return the number of bits
+	 */
+	public static int bitsFor(long expectedItems, double fpp) {
+		final double bits = -expectedItems * Math.log(fpp) / (Math.log(2) * Math.log(2));
+		return (int) Math.min(Integer.MAX_VALUE, Math.max(64, Math.ceil(bits)));
+	}
+
+	/**
+	 * Compute the optimal number of hash functions for the given number of
+	 * bits and expected number of items.
+	 * 
+	 * @param expectedItems
+	 *            the expected number of distinct items
+	 * @param numBits
+	 *            the number of bits
+	 * @return the number of hash functions
+	 */
+	public static int hashesFor(long expectedItems, int numBits) {
+		return Math.max(1, (int) Math.round((double) numBits / expectedItems * Math.log(2)));
+	}
+
+	protected int numWords() {
+		return (numBits + 63) >>> 6;
+	}
+
+	/**
+	 * Allocate (and clear) the given number of words of bits
+	 * 
+	 * @param words
+	 *            the number of words
+	 */
+	protected abstract void allocate(int words);
+
+	/**
+	 * Get the word of bits at the given position
+	 * 
+	 * @param i
+	 *            the position
+	 * @return the word
+	 */
+	protected abstract long word(int i);
+
+	/**
+	 * Set the given bit
+	 * 
+	 * @param bit
+	 *            the bit
+	 * @return true if the bit was previously clear
+	 */
+	protected abstract boolean setBit(int bit);
+
+	/**
+	 * OR the given words into the bit set. The buffer contains exactly
+	 * {@link #numWords()} values.
+	 * 
+	 * @param words
+	 *            the words to merge
+	 */
+	protected abstract void orWords(LongBuffer words);
+
+	/**
+	 * Add the given item to the filter
+	 * 
+	 * @param item
+	 *            the item
+	 * @return true if the filter changed (i.e. the item was definitely not
+	 *         present before)
+	 */
+	public boolean add(String item) {
+		return addHash(SketchHash.hash(item, seed));
+	}
+
+	/**
+	 * Add an item identified by a primitive key to the filter
+	 * 
+	 * @param key
+	 *            the key
+	 * @return true if the filter changed (i.e. the item was definitely not
+	 *         present before)
+	 */
+	public boolean add(long key) {
+		return addHash(SketchHash.hash(key, seed));
+	}
+
+	protected boolean addHash(long hash) {
+		boolean changed = false;
+		for (int i = 0; i < numHashes; i++)
+			changed |= setBit(SketchHash.index(hash, i, numBits));
+		return changed;
+	}
+
+	/**
+	 * Test whether the given item might have been added to the filter. False
+	 * positives are possible, but false negatives are not.
+	 * 
+	 * @param item
+	 *            the item
+	 * @return false if the item has definitely not been added
+	 */
+	public boolean mightContain(String item) {
+		return containsHash(SketchHash.hash(item, seed));
+	}
+
+	/**
+	 * Test whether an item identified by a primitive key might have been
+	 * added to the filter. False positives are possible, but false negatives
+	 * are not.
+	 * 
+	 * @param key
+	 *            the key
+	 * @return false if the item has definitely not been added
+	 */
+	public boolean mightContain(long key) {
+		return containsHash(SketchHash.hash(key, seed));
+	}
+
+	protected boolean containsHash(long hash) {
+		for (int i = 0; i < numHashes; i++) {
+			final int bit = SketchHash.index(hash, i, numBits);
+			if ((word(bit >>> 6) & (1L << bit)) == 0)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Adds the item if the value is true; otherwise does nothing.
+	 */
+	@Override
+	public void update(String data, Boolean value) {
+		if (value)
+			add(data);
+	}
+
+	@Override
+	public Boolean query(String data) {
+		return mightContain(data);
+	}
+
+	/**
+	 * @return the number of bits in the filter
+	 */
+	public int getNumBits() {
+		return numBits;
+	}
+
+	/**
+	 * @return the number of hash functions
+	 */
+	public int getNumHashes() {
+		return numHashes;
+	}
+
+	/**
+	 * @return the hash seed
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * @return the number of bits that are set
+	 */
+	public long cardinality() {
+		long count = 0;
+		for (int i = 0, n = numWords(); i < n; i++)
+			count += Long.bitCount(word(i));
+		return count;
+	}
+
+	/**
+	 * Test whether this filter can be merged with another; this requires the
+	 * number of bits, number of hashes and seeds to be equal.
+	 * 
+	 * @param other
+	 *            the other filter
+	 * @return true if the filters are compatible
+	 */
+	public boolean isCompatible(AbstractBloomFilter other) {
+		return numBits == other.numBits && numHashes == other.numHashes && seed == other.seed;
+	}
+
+	/**
+	 * Merge another filter into this one. Afterwards this filter contains the
+	 * union of the items of both filters.
+	 * 
+	 * @param other
+	 *            the filter to merge
+	 * @throws IllegalArgumentException
+	 *             if the filters are not compatible
+	 */
+	public void merge(AbstractBloomFilter other) {
+		if (!isCompatible(other))
+			throw new IllegalArgumentException("Filters have different dimensions or seeds");
+
+		final LongBuffer words = LongBuffer.allocate(numWords());
+		other.writeWords(words);
+		words.flip();
+		orWords(words);
+	}
+
+	/**
+	 * Merge a filter serialised by {@link #writeBinary(DataOutput)} or
+	 * {@link #write(ByteBuffer)} directly from a buffer. The words are read in
+	 * place from the buffer, and its position is advanced past the serialised
+	 * filter.
+	 * 
+	 * @param buffer
+	 *            the buffer
+	 * @throws IllegalArgumentException
+	 *             if the serialised filter is not compatible
+	 */
+	public void merge(ByteBuffer buffer) {
+		final int b = buffer.getInt();
+		final int h = buffer.getInt();
+		final long s = buffer.getLong();
+
+		if (b != numBits || h != numHashes || s != seed)
+			throw new IllegalArgumentException("Filters have different dimensions or seeds");
+
+		final LongBuffer words = buffer.asLongBuffer();
+		words.limit(numWords());
+		orWords(words);
+		buffer.position(buffer.position() + numWords() * 8);
+	}
+
+	/**
+	 * Write all the words of the bit set into the given buffer
+	 * 
+	 * @param words
+	 *            the buffer
+	 */
+	protected void writeWords(LongBuffer words) {
+		for (int i = 0, n = numWords(); i < n; i++)
+			words.put(word(i));
+	}
+
+	/**
+	 * @return the number of bytes required to serialise this filter (excluding
+	 *         the {@link #binaryHeader()})
+	 */
+	public int serialisedSize() {
+		return HEADER_BYTES + numWords() * 8;
+	}
+
+	/**
+	 * Serialise this filter to the given buffer in the same format as
+	 * {@link #writeBinary(DataOutput)}.
+	 * 
+	 * @param buffer
+	 *            the buffer
+	 */
+	public void write(ByteBuffer buffer) {
+		buffer.putInt(numBits);
+		buffer.putInt(numHashes);
+		buffer.putLong(seed);
+
+		writeWords(buffer.asLongBuffer());
+		buffer.position(buffer.position() + numWords() * 8);
+	}
+
+	@Override
+	public void writeBinary(DataOutput out) throws IOException {
+		final ByteBuffer buffer = ByteBuffer.allocate(serialisedSize());
+		write(buffer);
+		out.write(buffer.array());
+	}
+
+	@Override
+	public void readBinary(DataInput in) throws IOException {
+		numBits = in.readInt();
+		numHashes = in.readInt();
+		seed = in.readLong();
+
+		final byte[] data = new byte[numWords() * 8];
+		in.readFully(data);
+
+		allocate(numWords());
+		orWords(ByteBuffer.wrap(data).asLongBuffer());
+	}
+
+	@Override
+	public byte[] binaryHeader() {
+		return HEADER;
+	}
+}
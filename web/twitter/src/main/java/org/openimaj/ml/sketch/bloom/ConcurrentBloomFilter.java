@@ -0,0 +1,95 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.ml.sketch.bloom;
+
+import java.nio.LongBuffer;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread-safe Bloom filter backed by an {@link AtomicLongArray}. Bits are
+ * set with lock-free compare-and-set, so concurrent additions never lose
+ * bits.
+ * 
+ * @author agent
+ */
+public class ConcurrentBloomFilter extends AbstractBloomFilter {
+	private AtomicLongArray bits;
+
+	/**
+	 * Construct an empty filter
+	 * 
+	 * @param numBits
+	 *            the number of bits
+	 * @param numHashes
+	 *            the number of hash functions
+	 * @param seed
+	 *            the hash seed; filters must share the seed to be merged
+	 */
+	public ConcurrentBloomFilter(int numBits, int numHashes, long seed) {
+		super(numBits, numHashes, seed);
+	}
+
+	@Override
+	protected void allocate(int words) {
+		bits = new AtomicLongArray(words);
+	}
+
+	@Override
+	protected long word(int i) {
+		return bits.get(i);
+	}
+
+	@Override
+	protected boolean setBit(int bit) {
+		final int i = bit >>> 6;
+		final long mask = 1L << bit;
+
+		while (true) {
+			final long old = bits.get(i);
+			if ((old & mask) != 0)
+				return false;
+			if (bits.compareAndSet(i, old, old | mask))
+				return true;
+		}
+	}
+
+	@Override
+	protected void orWords(LongBuffer words) {
+		for (int i = 0, n = bits.length(); i < n; i++) {
+			final long w = words.get(i);
+
+			long old;
+			while (((old = bits.get(i)) | w) != old) {
+				if (bits.compareAndSet(i, old, old | w))
+					break;
+			}
+		}
+	}
+}
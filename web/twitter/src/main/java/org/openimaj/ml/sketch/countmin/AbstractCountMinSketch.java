@@ -0,0 +1,390 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.ml.sketch.countmin;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+
+import org.openimaj.io.ReadWriteableBinary;
+import org.openimaj.ml.sketch.SketchHash;
+import org.openimaj.ml.sketch.SummarySketcher;
+
+/**
+ * Base class for CountMin sketches backed by a flat, fixed size table of
+ * <code>depth * width</code> long counters. All rows are addressed from a
+ * single seeded hash of the item (see {@link SketchHash}), so two sketches
+ * with the same dimensions and seed can be {@link #merge merged}; this allows
+ * partial sketches built by different mappers or bolts to be combined.
+ * <p>
+ * The binary form written by {@link #writeBinary(DataOutput)} is a small
+ * fixed header (depth, width, seed and total count) followed directly by the
+ * big-endian counter table. A serialised partial can therefore be merged
+ * straight out of a {@link ByteBuffer} using {@link #merge(ByteBuffer)}
+ * without constructing an intermediate sketch.
+ * 
+ * @author agent
+ */
+public abstract class AbstractCountMinSketch implements SummarySketcher<String, Long>, ReadWriteableBinary {
+	private static final byte[] HEADER = "CMSK".getBytes();
+
+	/** The size of the serialised header in bytes */
+	public static final int HEADER_BYTES = 4 + 4 + 8 + 8;
+
+	/**
+	 * The maximum number of counters (<code>depth * width</code>) in a sketch.
+	 * This is limited so that the serialised sketch fits in a single array or
+	 * {@link ByteBuffer}.
+	 */
+	public static final int MAX_COUNTERS = (Integer.MAX_VALUE - HEADER_BYTES) / 8;
+
+	protected int depth;
+	protected int width;
+	protected long seed;
+
+	protected AbstractCountMinSketch(int depth, int width, long seed) {
+		checkDimensions(depth, width);
+
+		this.depth = depth;
+		this.width = width;
+		this.seed = seed;
+		allocate(depth * width);
+	}
+
+	/**
+	 * Compute the width required for the given relative error. With this
+	 * width, the estimate of an item exceeds its true count by at most
+	 * <code>epsilon * totalCount()</code> with probability given by
+	 * {@link #depthFor(double)}.
+	 * 
+	 * @param epsilon
+	 *            the relative error
+	 * @return the width
+	 */
+	public static int widthFor(double epsilon) {
+		return (int) Math.ceil(Math.E / epsilon);
+	}
+
+	/**
+	 * Compute the depth required for the error bound to hold with probability
+	 * <code>1 - delta</code>.
+	 * 
+	 * @param delta
+	 *            the probability of exceeding the error bound
+	 * @return the depth
+	 */
+	public static int depthFor(double delta) {
+		return (int) Math.ceil(Math.log(1 / delta));
+	}
+
+	/**
+	 * Allocate (and zero) the counter table and total count.
+	 * 
+	 * @param size
+	 *            the number of counters
+	 */
+	protected abstract void allocate(int size);
+
+	/**
+	 * Get the value of the counter at the given position in the table
+	 * 
+	 * @param i
+	 *            the position
+	 * @return the counter value
+	 */
+	protected abstract long counter(int i);
+
+	/**
+	 * Add the given counts to the counter table and total count. The buffer
+	 * contains exactly <code>depth * width</code> values.
+	 * 
+	 * @param counters
+	 *            the counters to add
+	 * @param total
+	 *            the total count to add
+	 */
+	protected abstract void addCounters(LongBuffer counters, long total);
+
+	/**
+	 * Update the sketch with the given hashed item.
+	 * 
+	 * @param hash
+	 *            the item hash computed with {@link SketchHash} and this
+	 *            sketch's seed
+	 * @param count
+	 *            the (non-negative) count to add
+	 * @return the estimated count of the item after the update
+	 */
+	protected abstract long addHash(long hash, long count);
+
+	/**
+	 * @return the sum of all counts added to the sketch
+	 */
+	public abstract long totalCount();
+
+	/**
+	 * Increment the count of the given item
+	 * 
+	 * @param item
+	 *            the item
+	 * @return the estimated count of the item after the update
+	 */
+	public long add(String item) {
+		return addHash(SketchHash.hash(item, seed), 1);
+	}
+
+	/**
+	 * Add to the count of the given item
+	 * 
+	 * @param item
+	 *            the item
+	 * @param count
+	 *            the (non-negative) count to add
+	 * @return the estimated count of the item after the update
+	 */
+	public long add(String item, long count) {
+		checkCount(count);
+		return addHash(SketchHash.hash(item, seed), count);
+	}
+
+	/**
+	 * Add to the count of an item identified by a primitive key
+	 * 
+	 * @param key
+	 *            the key
+	 * @param count
+	 *            the (non-negative) count to add
+	 * @return the estimated count of the item after the update
+	 */
+	public long add(long key, long count) {
+		checkCount(count);
+		return addHash(SketchHash.hash(key, seed), count);
+	}
+
+	/**
+	 * Estimate the count of the given item. The estimate is never less than
+	 * the true count.
+	 * 
+	 * @param item
+	 *            the item
+	 * @return the estimated count
+	 */
+	public long estimate(String item) {
+		return estimateHash(SketchHash.hash(item, seed));
+	}
+
+	/**
+	 * Estimate the count of an item identified by a primitive key. The
+	 * estimate is never less than the true count.
+	 * 
+	 * @param key
+	 *            the key
+	 * @return the estimated count
+	 */
+	public long estimate(long key) {
+		return estimateHash(SketchHash.hash(key, seed));
+	}
+
+	protected long estimateHash(long hash) {
+		long min = Long.MAX_VALUE;
+		for (int r = 0, offset = 0; r < depth; r++, offset += width) {
+			final long v = counter(offset + SketchHash.index(hash, r, width));
+			if (v < min)
+				min = v;
+		}
+		return min;
+	}
+
+	private static void checkDimensions(int depth, int width) {
+		if (depth <= 0 || width <= 0 || (long) depth * width > MAX_COUNTERS)
+			throw new IllegalArgumentException("Invalid sketch dimensions: " + depth + "x" + width);
+	}
+
+	private static void checkCount(long count) {
+		if (count < 0)
+			throw new IllegalArgumentException("CountMin sketches only support non-negative updates");
+	}
+
+	@Override
+	public void update(String data, Long value) {
+		add(data, value);
+	}
+
+	@Override
+	public Long query(String data) {
+		return estimate(data);
+	}
+
+	/**
+	 * @return the number of rows
+	 */
+	public int getDepth() {
+		return depth;
+	}
+
+	/**
+	 * @return the number of counters per row
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * @return the hash seed
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * Test whether this sketch can be merged with another; this requires the
+	 * dimensions and seeds to be equal.
+	 * 
+	 * @param other
+	 *            the other sketch
+	 * @return true if the sketches are compatible
+	 */
+	public boolean isCompatible(AbstractCountMinSketch other) {
+		return depth == other.depth && width == other.width && seed == other.seed;
+	}
+
+	/**
+	 * Add the counts of another sketch to this one. The result is the same as
+	 * if this sketch had seen both streams (or, if either sketch used
+	 * conservative update, an upper bound on it).
+	 * 
+	 * @param other
+	 *            the sketch to merge into this one
+	 * @throws IllegalArgumentException
+	 *             if the sketches are not compatible
+	 */
+	public void merge(AbstractCountMinSketch other) {
+		if (!isCompatible(other))
+			throw new IllegalArgumentException("Sketches have different dimensions or seeds");
+
+		final LongBuffer counters = LongBuffer.allocate(depth * width);
+		other.writeCounters(counters);
+		counters.flip();
+		addCounters(counters, other.totalCount());
+	}
+
+	/**
+	 * Merge a sketch serialised by {@link #writeBinary(DataOutput)} or
+	 * {@link #write(ByteBuffer)} directly from a buffer. The counters are read
+	 * in place from the buffer, and its position is advanced past the
+	 * serialised sketch.
+	 * 
+	 * @param buffer
+	 *            the buffer
+	 * @throws IllegalArgumentException
+	 *             if the serialised sketch is not compatible
+	 */
+	public void merge(ByteBuffer buffer) {
+		final int d = buffer.getInt();
+		final int w = buffer.getInt();
+		final long s = buffer.getLong();
+		final long total = buffer.getLong();
+
+		if (d != depth || w != width || s != seed)
+			throw new IllegalArgumentException("Sketches have different dimensions or seeds");
+
+		final LongBuffer counters = buffer.asLongBuffer();
+		counters.limit(depth * width);
+		addCounters(counters, total);
+		buffer.position(buffer.position() + depth * width * 8);
+	}
+
+	/**
+	 * Write all the counters in table order into the given buffer
+	 * 
+	 * @param counters
+	 *            the buffer
+	 */
+	protected void writeCounters(LongBuffer counters) {
+		for (int i = 0, n = depth * width; i < n; i++)
+			counters.put(counter(i));
+	}
+
+	/**
+	 * @return the number of bytes required to serialise this sketch (excluding
+	 *         the {@link #binaryHeader()})
+	 */
+	public int serialisedSize() {
+		return HEADER_BYTES + depth * width * 8;
+	}
+
+	/**
+	 * Serialise this sketch to the given buffer in the same format as
+	 * {@link #writeBinary(DataOutput)}.
+	 * 
+	 * @param buffer
+	 *            the buffer
+	 */
+	public void write(ByteBuffer buffer) {
+		buffer.putInt(depth);
+		buffer.putInt(width);
+		buffer.putLong(seed);
+		buffer.putLong(totalCount());
+
+		final LongBuffer counters = buffer.asLongBuffer();
+		writeCounters(counters);
+		buffer.position(buffer.position() + depth * width * 8);
+	}
+
+	@Override
+	public void writeBinary(DataOutput out) throws IOException {
+		final ByteBuffer buffer = ByteBuffer.allocate(serialisedSize());
+		write(buffer);
+		out.write(buffer.array());
+	}
+
+	@Override
+	public void readBinary(DataInput in) throws IOException {
+		depth = in.readInt();
+		width = in.readInt();
+		seed = in.readLong();
+		final long total = in.readLong();
+
+		checkDimensions(depth, width);
+
+		final byte[] data = new byte[depth * width * 8];
+		in.readFully(data);
+
+		allocate(depth * width);
+		addCounters(ByteBuffer.wrap(data).asLongBuffer(), total);
+	}
+
+	@Override
+	public byte[] binaryHeader() {
+		return HEADER;
+	}
+}
@@ -0,0 +1,109 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.ml.sketch.countmin;
+
+import java.nio.LongBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.openimaj.ml.sketch.SketchHash;
+
+/**
+ * A thread-safe CountMin sketch backed by an {@link AtomicLongArray}. Updates
+ * are lock-free: each row counter is incremented atomically and independently,
+ * so a concurrent query may observe an update in some rows but not others,
+ * but an estimate never falls below the count of the updates that have
+ * completed.
+ * <p>
+ * Conservative update is not offered because it cannot be made atomic across
+ * rows without locking; two racing conservative updates to the same item
+ * could both raise the counters to the same value and lose a count. Where
+ * conservative update is needed from several threads, give each thread its
+ * own {@link CountMinSketch} and {@link #merge} them.
+ * 
+ * @author agent
+ */
+public class ConcurrentCountMinSketch extends AbstractCountMinSketch {
+	private AtomicLongArray table;
+	private AtomicLong total;
+
+	/**
+	 * Construct an empty sketch.
+	 * 
+	 * @param depth
+	 *            the number of rows (hash functions)
+	 * @param width
+	 *            the number of counters per row
+	 * @param seed
+	 *            the hash seed; sketches must share the seed to be merged
+	 */
+	public ConcurrentCountMinSketch(int depth, int width, long seed) {
+		super(depth, width, seed);
+	}
+
+	@Override
+	protected void allocate(int size) {
+		table = new AtomicLongArray(size);
+		total = new AtomicLong();
+	}
+
+	@Override
+	protected long counter(int i) {
+		return table.get(i);
+	}
+
+	@Override
+	protected long addHash(long hash, long count) {
+		total.addAndGet(count);
+
+		long min = Long.MAX_VALUE;
+		for (int r = 0, offset = 0; r < depth; r++, offset += width) {
+			final long v = table.addAndGet(offset + SketchHash.index(hash, r, width), count);
+			if (v < min)
+				min = v;
+		}
+		return min;
+	}
+
+	@Override
+	public long totalCount() {
+		return total.get();
+	}
+
+	@Override
+	protected void addCounters(LongBuffer counters, long total) {
+		this.total.addAndGet(total);
+		for (int i = 0, n = table.length(); i < n; i++) {
+			final long v = counters.get(i);
+			if (v != 0)
+				table.addAndGet(i, v);
+		}
+	}
+}
@@ -0,0 +1,141 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.ml.sketch.countmin;
+
+import java.nio.LongBuffer;
+
+import org.openimaj.ml.sketch.SketchHash;
+
+/**
+ * A single-threaded CountMin sketch backed by a <code>long[]</code> counter
+ * table. Optionally, the sketch can use conservative update, in which each
+ * update only raises the counters that would otherwise underestimate the new
+ * count of the item; this considerably reduces the overestimation for
+ * low-frequency items in skewed streams such as tweet tokens.
+ * <p>
+ * Instances are not thread-safe; either use a {@link ConcurrentCountMinSketch}
+ * or give each thread its own sketch and {@link #merge} them.
+ * 
+ * @author agent
+ */
+public class CountMinSketch extends AbstractCountMinSketch {
+	private long[] table;
+	private long total;
+	private final boolean conservative;
+
+	/**
+	 * Construct an empty sketch using standard updates.
+	 * 
+	 * @param depth
+	 *            the number of rows (hash functions)
+	 * @param width
+	 *            the number of counters per row
+	 * @param seed
+	 *            the hash seed; sketches must share the seed to be merged
+	 */
+	public CountMinSketch(int depth, int width, long seed) {
+		this(depth, width, seed, false);
+	}
+
+	/**
+	 * Construct an empty sketch.
+	 * 
+	 * @param depth
+	 *            the number of rows (hash functions)
+	 * @param width
+	 *            the number of counters per row
+	 * @param seed
+	 *            the hash seed; sketches must share the seed to be merged
+	 * @param conservative
+	 *            if true, use conservative update
+	 */
+	public CountMinSketch(int depth, int width, long seed, boolean conservative) {
+		super(depth, width, seed);
+		this.conservative = conservative;
+	}
+
+	/**
+	 * @return true if the sketch uses conservative update
+	 */
+	public boolean isConservative() {
+		return conservative;
+	}
+
+	@Override
+	protected void allocate(int size) {
+		table = new long[size];
+		total = 0;
+	}
+
+	@Override
+	protected long counter(int i) {
+		return table[i];
+	}
+
+	@Override
+	protected long addHash(long hash, long count) {
+		total += count;
+
+		if (conservative) {
+			final long target = estimateHash(hash) + count;
+			for (int r = 0, offset = 0; r < depth; r++, offset += width) {
+				final int i = offset + SketchHash.index(hash, r, width);
+				if (table[i] < target)
+					table[i] = target;
+			}
+			return target;
+		}
+
+		long min = Long.MAX_VALUE;
+		for (int r = 0, offset = 0; r < depth; r++, offset += width) {
+			final long v = table[offset + SketchHash.index(hash, r, width)] += count;
+			if (v < min)
+				min = v;
+		}
+		return min;
+	}
+
+	@Override
+	public long totalCount() {
+		return total;
+	}
+
+	@Override
+	protected void addCounters(LongBuffer counters, long total) {
+		this.total += total;
+		for (int i = 0; i < table.length; i++)
+			table[i] += counters.get(i);
+	}
+
+	@Override
+	protected void writeCounters(LongBuffer counters) {
+		counters.put(table);
+	}
+}
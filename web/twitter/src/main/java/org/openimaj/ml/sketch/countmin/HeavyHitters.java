@@ -0,0 +1,183 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.ml.sketch.countmin;
+
+import gnu.trove.iterator.TObjectLongIterator;
+import gnu.trove.map.hash.TObjectLongHashMap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.openimaj.util.pair.ObjectLongPair;
+
+/**
+ * Tracks the (approximately) most frequent items of a stream using a
+ * CountMin sketch. Every item offered is counted by the sketch, and the
+ * <code>k</code> items with the highest estimated counts seen so far are
+ * retained together with their estimates. The bookkeeping of the retained
+ * items is synchronised, so the tracker can be shared between threads when
+ * it wraps a {@link ConcurrentCountMinSketch}.
+ * 
+ * @author agent
+ */
+public class HeavyHitters {
+	private final AbstractCountMinSketch sketch;
+	private final int k;
+	private final TObjectLongHashMap<String> top;
+
+	private String minItem;
+	private long minCount;
+
+	/**
+	 * Construct with the given sketch and number of items to track
+	 * 
+	 * @param sketch
+	 *            the sketch used to count the items
+	 * @param k
+	 *            the number of items to retain; must be at least 1
+	 */
+	public HeavyHitters(AbstractCountMinSketch sketch, int k) {
+		if (k < 1)
+			throw new IllegalArgumentException("The number of items to retain must be at least 1");
+
+		this.sketch = sketch;
+		this.k = k;
+		this.top = new TObjectLongHashMap<String>(2 * k);
+	}
+
+	/**
+	 * Count an occurrence of the given item
+	 * 
+	 * @param item
+	 *            the item
+	 * @return the estimated count of the item
+	 */
+	public long offer(String item) {
+		return offer(item, 1);
+	}
+
+	/**
+	 * Add to the count of the given item
+	 * 
+	 * @param item
+	 *            the item
+	 * @param count
+	 *            the count to add
+	 * @return the estimated count of the item
+	 */
+	public long offer(String item, long count) {
+		final long estimate = sketch.add(item, count);
+
+		synchronized (top) {
+			track(item, estimate);
+		}
+
+		return estimate;
+	}
+
+	private void track(String item, long estimate) {
+		if (top.containsKey(item)) {
+			// estimates from racing updates may arrive out of order
+			if (estimate > top.get(item)) {
+				top.put(item, estimate);
+				if (item.equals(minItem))
+					findMin();
+			}
+		} else if (top.size() < k) {
+			top.put(item, estimate);
+			if (minItem == null || estimate < minCount) {
+				minItem = item;
+				minCount = estimate;
+			}
+		} else if (estimate > minCount) {
+			top.remove(minItem);
+			top.put(item, estimate);
+			findMin();
+		}
+	}
+
+	private void findMin() {
+		minItem = null;
+		minCount = Long.MAX_VALUE;
+
+		final TObjectLongIterator<String> iter = top.iterator();
+		while (iter.hasNext()) {
+			iter.advance();
+			if (iter.value() < minCount) {
+				minItem = iter.key();
+				minCount = iter.value();
+			}
+		}
+	}
+
+	/**
+	 * Get the retained items and their estimated counts, sorted in
+	 * descending order of count.
+	 * 
+	 * @return the heavy hitters
+	 */
+	public List<ObjectLongPair<String>> getHeavyHitters() {
+		return getHeavyHitters(0);
+	}
+
+	/**
+	 * Get the retained items whose estimated count is at least the given
+	 * fraction of the total count of the stream, sorted in descending order
+	 * of count.
+	 * 
+	 * @param phi
+	 *            the minimum fraction of the total count
+	 * @return the heavy hitters
+	 */
+	public List<ObjectLongPair<String>> getHeavyHitters(double phi) {
+		final double threshold = phi * sketch.totalCount();
+		final List<ObjectLongPair<String>> result = new ArrayList<ObjectLongPair<String>>(k);
+
+		synchronized (top) {
+			final TObjectLongIterator<String> iter = top.iterator();
+			while (iter.hasNext()) {
+				iter.advance();
+				if (iter.value() >= threshold)
+					result.add(ObjectLongPair.pair(iter.key(), iter.value()));
+			}
+		}
+
+		Collections.sort(result, ObjectLongPair.SECOND_ITEM_DESCENDING_COMPARATOR);
+		return result;
+	}
+
+	/**
+	 * @return the underlying sketch
+	 */
+	public AbstractCountMinSketch getSketch() {
+		return sketch;
+	}
+}
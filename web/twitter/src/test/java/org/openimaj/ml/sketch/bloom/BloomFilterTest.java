@@ -0,0 +1,135 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.ml.sketch.bloom;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+/**
+ * Tests for the primitive Bloom filters
+ * 
+ * @author agent
+ */
+public class BloomFilterTest {
+	private static final long SEED = 42;
+	private static final int N = 10000;
+
+	/**
+	 * No false negatives, and the false positive rate is close to the design
+	 * rate
+	 */
+	@Test
+	public void testFalsePositiveRate() {
+		final int bits = AbstractBloomFilter.bitsFor(N, 0.01);
+		final BloomFilter filter = new BloomFilter(bits, AbstractBloomFilter.hashesFor(N, bits), SEED);
+
+		for (int i = 0; i < N; i++)
+			filter.add("in" + i);
+		for (int i = 0; i < N; i++)
+			assertTrue(filter.mightContain("in" + i));
+
+		int fp = 0;
+		for (int i = 0; i < N; i++)
+			if (filter.mightContain("out" + i))
+				fp++;
+		assertTrue(fp < 0.02 * N);
+
+		assertFalse(filter.add("in0"));
+	}
+
+	/**
+	 * Merging partial filters gives the union
+	 */
+	@Test
+	public void testMerge() {
+		final BloomFilter a = new BloomFilter(1 << 16, 5, SEED);
+		final ConcurrentBloomFilter b = new ConcurrentBloomFilter(1 << 16, 5, SEED);
+		final BloomFilter all = new BloomFilter(1 << 16, 5, SEED);
+		for (int i = 0; i < N; i++) {
+			all.add(i);
+			if (i % 2 == 0)
+				a.add(i);
+			else
+				b.add(i);
+		}
+
+		final BloomFilter merged = new BloomFilter(1 << 16, 5, SEED);
+		merged.merge(a);
+		merged.merge(b);
+
+		final ByteBuffer buffer = ByteBuffer.allocate(a.serialisedSize() + b.serialisedSize());
+		a.write(buffer);
+		b.write(buffer);
+		buffer.flip();
+		final ConcurrentBloomFilter fromBuffer = new ConcurrentBloomFilter(1 << 16, 5, SEED);
+		fromBuffer.merge(buffer);
+		fromBuffer.merge(buffer);
+
+		assertEquals(all.cardinality(), merged.cardinality());
+		assertEquals(all.cardinality(), fromBuffer.cardinality());
+		for (int i = 0; i < N; i++) {
+			assertTrue(merged.mightContain(i));
+			assertTrue(fromBuffer.mightContain(i));
+		}
+	}
+
+	/**
+	 * Binary serialisation round trip
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testReadWrite() throws IOException {
+		final BloomFilter filter = new BloomFilter(1000, 3, SEED);
+		for (int i = 0; i < 100; i++)
+			filter.add("item" + i);
+
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		filter.writeBinary(new DataOutputStream(baos));
+
+		final ConcurrentBloomFilter read = new ConcurrentBloomFilter(64, 1, 0);
+		read.readBinary(new DataInputStream(new ByteArrayInputStream(baos.toByteArray())));
+
+		assertTrue(read.isCompatible(filter));
+		assertEquals(filter.cardinality(), read.cardinality());
+		for (int i = 0; i < 100; i++)
+			assertTrue(read.mightContain("item" + i));
+	}
+}
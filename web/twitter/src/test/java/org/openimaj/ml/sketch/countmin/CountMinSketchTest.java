@@ -0,0 +1,290 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.ml.sketch.countmin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import gnu.trove.map.hash.TObjectLongHashMap;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.openimaj.util.pair.ObjectLongPair;
+
+/**
+ * Tests for the primitive CountMin sketches
+ * 
+ * @author agent
+ */
+public class CountMinSketchTest {
+	private static final long SEED = 42;
+
+	/**
+	 * Generate a Zipf-like stream of items
+	 */
+	private static String[] stream(int n, long seed) {
+		final Random rng = new Random(seed);
+		final String[] items = new String[n];
+		for (int i = 0; i < n; i++)
+			items[i] = "token" + (int) Math.floor(Math.exp(rng.nextDouble() * Math.log(5000)));
+		return items;
+	}
+
+	private static TObjectLongHashMap<String> exact(String[] items) {
+		final TObjectLongHashMap<String> counts = new TObjectLongHashMap<String>();
+		for (final String s : items)
+			counts.adjustOrPutValue(s, 1, 1);
+		return counts;
+	}
+
+	/**
+	 * Estimates never undercount, and conservative update is at least as
+	 * accurate as standard update
+	 */
+	@Test
+	public void testEstimates() {
+		final String[] items = stream(50000, 1);
+		final TObjectLongHashMap<String> counts = exact(items);
+
+		final CountMinSketch standard = new CountMinSketch(4, 512, SEED);
+		final CountMinSketch conservative = new CountMinSketch(4, 512, SEED, true);
+		for (final String s : items) {
+			standard.add(s);
+			conservative.add(s);
+		}
+
+		assertEquals(items.length, standard.totalCount());
+		assertEquals(items.length, conservative.totalCount());
+
+		long stdError = 0, consError = 0;
+		for (final String s : counts.keySet()) {
+			final long c = counts.get(s);
+			assertTrue(standard.estimate(s) >= c);
+			assertTrue(conservative.estimate(s) >= c);
+			assertTrue(conservative.estimate(s) <= standard.estimate(s));
+
+			stdError += standard.estimate(s) - c;
+			consError += conservative.estimate(s) - c;
+		}
+		assertTrue(consError < stdError);
+	}
+
+	/**
+	 * Merging partial sketches gives the same result as a single sketch,
+	 * whether merged from another sketch or from a serialised buffer
+	 */
+	@Test
+	public void testMerge() {
+		final String[] items = stream(20000, 2);
+
+		final CountMinSketch all = new CountMinSketch(5, 1000, SEED);
+		final CountMinSketch a = new CountMinSketch(5, 1000, SEED);
+		final ConcurrentCountMinSketch b = new ConcurrentCountMinSketch(5, 1000, SEED);
+		for (int i = 0; i < items.length; i++) {
+			all.add(items[i]);
+			if (i % 2 == 0)
+				a.add(items[i]);
+			else
+				b.add(items[i]);
+		}
+
+		final CountMinSketch merged = new CountMinSketch(5, 1000, SEED);
+		merged.merge(a);
+		merged.merge(b);
+
+		final ByteBuffer buffer = ByteBuffer.allocate(a.serialisedSize() + b.serialisedSize());
+		a.write(buffer);
+		b.write(buffer);
+		buffer.flip();
+
+		final ConcurrentCountMinSketch fromBuffer = new ConcurrentCountMinSketch(5, 1000, SEED);
+		fromBuffer.merge(buffer);
+		fromBuffer.merge(buffer);
+		assertEquals(0, buffer.remaining());
+
+		assertEquals(all.totalCount(), merged.totalCount());
+		assertEquals(all.totalCount(), fromBuffer.totalCount());
+		for (final String s : items) {
+			assertEquals(all.estimate(s), merged.estimate(s));
+			assertEquals(all.estimate(s), fromBuffer.estimate(s));
+		}
+	}
+
+	/**
+	 * Sketches with different seeds can't be merged
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testIncompatibleMerge() {
+		new CountMinSketch(5, 1000, SEED).merge(new CountMinSketch(5, 1000, SEED + 1));
+	}
+
+	/**
+	 * Sketches whose serialised form would not fit in an array are rejected
+	 */
+	@Test
+	public void testDimensions() {
+		final int w = AbstractCountMinSketch.MAX_COUNTERS / 4;
+		assertEquals(Integer.MAX_VALUE - 7, AbstractCountMinSketch.HEADER_BYTES + 8L * 4 * w);
+
+		for (final int[] dims : new int[][] { { 0, 10 }, { 10, 0 }, { 5, w }, { 4, w + 1 }, { 65536, 65536 } }) {
+			try {
+				new CountMinSketch(dims[0], dims[1], SEED);
+				fail(dims[0] + "x" + dims[1]);
+			} catch (final IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+
+	/**
+	 * Serialised sketches with invalid dimensions are rejected before any
+	 * allocation
+	 * 
+	 * @throws IOException
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testReadInvalidDimensions() throws IOException {
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		final DataOutputStream dos = new DataOutputStream(baos);
+		dos.writeInt(65536);
+		dos.writeInt(65536);
+		dos.writeLong(SEED);
+		dos.writeLong(0);
+
+		new CountMinSketch(1, 1, 0).readBinary(new DataInputStream(new ByteArrayInputStream(baos.toByteArray())));
+	}
+
+	/**
+	 * Binary serialisation round trip
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testReadWrite() throws IOException {
+		final CountMinSketch sketch = new CountMinSketch(3, 100, SEED);
+		for (final String s : stream(1000, 3))
+			sketch.add(s);
+
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		sketch.writeBinary(new DataOutputStream(baos));
+		assertEquals(sketch.serialisedSize(), baos.size());
+
+		final CountMinSketch read = new CountMinSketch(1, 1, 0);
+		read.readBinary(new DataInputStream(new ByteArrayInputStream(baos.toByteArray())));
+
+		assertTrue(read.isCompatible(sketch));
+		assertEquals(sketch.totalCount(), read.totalCount());
+		for (int i = 0; i < 5000; i++)
+			assertEquals(sketch.estimate("token" + i), read.estimate("token" + i));
+	}
+
+	/**
+	 * Concurrent updates are not lost
+	 * 
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void testConcurrentUpdates() throws InterruptedException {
+		final ConcurrentCountMinSketch sketch = new ConcurrentCountMinSketch(4, 64, SEED);
+		final int nThreads = 4;
+		final int perThread = 20000;
+
+		final Thread[] threads = new Thread[nThreads];
+		for (int t = 0; t < nThreads; t++) {
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; i < perThread; i++)
+						sketch.add("item" + (i % 10));
+				}
+			};
+			threads[t].start();
+		}
+		for (final Thread t : threads)
+			t.join();
+
+		assertEquals(nThreads * perThread, sketch.totalCount());
+		for (int i = 0; i < 10; i++)
+			assertTrue(sketch.estimate("item" + i) >= nThreads * perThread / 10);
+	}
+
+	/**
+	 * The most frequent items are tracked
+	 */
+	@Test
+	public void testHeavyHitters() {
+		final String[] items = stream(50000, 4);
+		final TObjectLongHashMap<String> counts = exact(items);
+
+		final HeavyHitters hh = new HeavyHitters(new CountMinSketch(5, 2000, SEED, true), 10);
+		for (final String s : items)
+			hh.offer(s);
+
+		final List<ObjectLongPair<String>> top = hh.getHeavyHitters();
+		assertEquals(10, top.size());
+		for (int i = 1; i < top.size(); i++)
+			assertTrue(top.get(i - 1).second >= top.get(i).second);
+
+		// the true most frequent items of the stream
+		for (int i = 1; i <= 3; i++)
+			assertTrue(contains(top, "token" + i));
+
+		for (final ObjectLongPair<String> p : top)
+			assertTrue(p.second >= counts.get(p.first));
+
+		final List<ObjectLongPair<String>> frequent = hh.getHeavyHitters(0.05);
+		for (final ObjectLongPair<String> p : frequent)
+			assertTrue(p.second >= 0.05 * items.length);
+		assertTrue(frequent.size() < top.size());
+	}
+
+	/**
+	 * At least one item must be tracked
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testHeavyHittersZero() {
+		new HeavyHitters(new CountMinSketch(5, 2000, SEED), 0);
+	}
+
+	private static boolean contains(List<ObjectLongPair<String>> list, String item) {
+		for (final ObjectLongPair<String> p : list)
+			if (p.first.equals(item))
+				return true;
+		return false;
+	}
+}